@@ -0,0 +1,174 @@
+package org.apache.ctakes.temporal.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ctakes.temporal.ae.DocTimeRelAnnotator;
+import org.apache.ctakes.temporal.ae.EventAnnotator;
+import org.apache.ctakes.temporal.eval.AnnotationCopier;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.impl.Serialization;
+import org.apache.uima.jcas.JCas;
+import org.cleartk.classifier.CleartkAnnotator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.JCasFactory;
+import org.uimafit.util.JCasUtil;
+
+import com.google.common.collect.Lists;
+
+import edu.mayo.bmi.uima.core.type.textsem.EventMention;
+
+/**
+ * The temporal annotators in prediction mode (with stub classifiers), and the gold annotation
+ * copier. Annotators that add annotations get a fresh copy of the input CAS before each call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnnotatorBenchmark {
+
+  private static final String GOLD_VIEW_NAME = "GoldView";
+
+  @Param({ "100" })
+  public int sentences;
+
+  private Fixtures fixtures;
+
+  private AnalysisEngine eventAnnotator;
+
+  private AnalysisEngine docTimeRelAnnotator;
+
+  private AnalysisEngine annotationCopier;
+
+  /**
+   * Tokens, sentences and entities, but no events
+   */
+  private byte[] eventAnnotatorInput;
+
+  private JCas eventAnnotatorCas;
+
+  /**
+   * Tokens, sentences and events
+   */
+  private JCas docTimeRelAnnotatorCas;
+
+  /**
+   * Gold annotations in the gold view, and only the text in the default view
+   */
+  private byte[] annotationCopierInput;
+
+  private JCas annotationCopierCas;
+
+  @Setup
+  public void setUp() throws Exception {
+    this.fixtures = new Fixtures(this.sentences);
+
+    // the event annotator predicts the fixture's gold outcome for each word
+    JCas jCas = this.fixtures.createAnnotatedJCas();
+    StubClassifiers.EventClassifierFactory.setOutcomes(jCas);
+    this.eventAnnotator = AnalysisEngineFactory.createPrimitive(
+        EventAnnotator.class,
+        CleartkAnnotator.PARAM_IS_TRAINING,
+        false,
+        CleartkAnnotator.PARAM_CLASSIFIER_FACTORY_CLASS_NAME,
+        StubClassifiers.EventClassifierFactory.class.getName());
+    this.docTimeRelAnnotator = AnalysisEngineFactory.createPrimitive(
+        DocTimeRelAnnotator.class,
+        CleartkAnnotator.PARAM_IS_TRAINING,
+        false,
+        CleartkAnnotator.PARAM_CLASSIFIER_FACTORY_CLASS_NAME,
+        StubClassifiers.DocTimeRelClassifierFactory.class.getName());
+    this.annotationCopier = AnalysisEngineFactory.createPrimitive(AnnotationCopier.getDescription(
+        GOLD_VIEW_NAME,
+        CAS.NAME_DEFAULT_SOFA,
+        EventMention.class));
+
+    // the DocTimeRel annotator only changes the event properties, so it can reuse one CAS
+    this.docTimeRelAnnotatorCas = jCas;
+
+    // the event annotator input is the same CAS without its events
+    JCas eventInput = this.fixtures.createAnnotatedJCas();
+    for (EventMention mention : Lists.newArrayList(JCasUtil.select(eventInput, EventMention.class))) {
+      mention.removeFromIndexes();
+    }
+    this.eventAnnotatorInput = serialize(eventInput);
+    this.eventAnnotatorCas = JCasFactory.createJCas();
+
+    // the copier input has the gold annotations in the gold view only
+    JCas copierInput = JCasFactory.createJCas();
+    this.fixtures.initialize(copierInput);
+    JCas goldView = copierInput.createView(GOLD_VIEW_NAME);
+    goldView.setDocumentText(this.fixtures.getText());
+    List<EventMention> goldMentions = new ArrayList<EventMention>();
+    for (EventMention mention : JCasUtil.select(jCas, EventMention.class)) {
+      goldMentions.add(new EventMention(goldView, mention.getBegin(), mention.getEnd()));
+    }
+    for (EventMention mention : goldMentions) {
+      mention.addToIndexes();
+    }
+    this.annotationCopierInput = serialize(copierInput);
+    this.annotationCopierCas = JCasFactory.createJCas();
+  }
+
+  @Setup(Level.Invocation)
+  public void resetInputs() throws Exception {
+    deserialize(this.eventAnnotatorInput, this.eventAnnotatorCas);
+    deserialize(this.annotationCopierInput, this.annotationCopierCas);
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.eventAnnotator.destroy();
+    this.docTimeRelAnnotator.destroy();
+    this.annotationCopier.destroy();
+    this.fixtures.delete();
+  }
+
+  @Benchmark
+  public JCas eventAnnotatorProcess() throws Exception {
+    this.eventAnnotator.process(this.eventAnnotatorCas);
+    return this.eventAnnotatorCas;
+  }
+
+  @Benchmark
+  public JCas docTimeRelAnnotatorProcess() throws Exception {
+    this.docTimeRelAnnotator.process(this.docTimeRelAnnotatorCas);
+    return this.docTimeRelAnnotatorCas;
+  }
+
+  @Benchmark
+  public JCas annotationCopierProcess() throws Exception {
+    this.annotationCopier.process(this.annotationCopierCas);
+    return this.annotationCopierCas;
+  }
+
+  private static byte[] serialize(JCas jCas) throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    Serialization.serializeCAS(jCas.getCas(), output);
+    return output.toByteArray();
+  }
+
+  private static void deserialize(byte[] bytes, JCas jCas) throws Exception {
+    Serialization.deserializeCAS(jCas.getCas(), new ByteArrayInputStream(bytes));
+  }
+}
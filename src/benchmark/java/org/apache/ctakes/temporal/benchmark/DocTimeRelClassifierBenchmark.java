@@ -0,0 +1,166 @@
+package org.apache.ctakes.temporal.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ctakes.temporal.ae.DocTimeRelAnnotator;
+import org.apache.ctakes.temporal.classifier.BatchClassifier;
+import org.apache.ctakes.temporal.classifier.BatchLIBSVMStringOutcomeDataWriter;
+import org.apache.ctakes.temporal.classifier.HashingFeaturesEncoder;
+import org.apache.ctakes.temporal.classifier.HashingLIBSVMStringOutcomeDataWriter;
+import org.apache.ctakes.temporal.classifier.HashingLinearStringOutcomeDataWriter;
+import org.apache.ctakes.temporal.classifier.LinearStringOutcomeDataWriter;
+import org.cleartk.classifier.Classifier;
+import org.cleartk.classifier.DataWriter;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.Instance;
+import org.cleartk.classifier.jar.JarClassifierBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.Files;
+
+/**
+ * Classifying the events of a document one at a time, as {@link DocTimeRelAnnotator} did, and all
+ * at once with {@link BatchClassifier#classifyAll(List)}, with a LIBSVM (linear or RBF kernel) or
+ * pure-Java linear model trained on synthetic instances shaped like the annotator's (token and
+ * part of speech features of a window around each event, four DocTimeRel outcomes), with features
+ * numbered through cleartk's map of feature names and values, or hashed with the
+ * {@link HashingFeaturesEncoder}.
+ *
+ * Scores are in microseconds per event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(DocTimeRelClassifierBenchmark.EVENTS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocTimeRelClassifierBenchmark {
+
+  public static final int EVENTS = 300;
+
+  private static final int TRAINING_INSTANCES = 3000;
+
+  private static final String[] OUTCOMES = { "BEFORE", "OVERLAP", "AFTER", "BEFORE/OVERLAP" };
+
+  private static final String[] CONTEXTS = {
+      "Preceding_0_3_0",
+      "Preceding_0_3_1",
+      "Preceding_0_3_2",
+      "Covered_0",
+      "Following_0_3_0",
+      "Following_0_3_1",
+      "Following_0_3_2" };
+
+  /**
+   * A LIBSVM model with a linear or RBF kernel, or a {@link LinearStringOutcomeDataWriter} model.
+   */
+  @Param({ "libsvm-linear", "libsvm-rbf", "linear" })
+  public String model;
+
+  @Param({ "lexicon", "hashing" })
+  public String encoder;
+
+  private File directory;
+
+  private Classifier<String> classifier;
+
+  private List<List<Feature>> document;
+
+  @Setup
+  public void setUp() throws Exception {
+    this.directory = Files.createTempDir();
+    Random random = new Random(7);
+    boolean hashing = this.encoder.equals("hashing");
+    DataWriter<String> dataWriter;
+    if (this.model.equals("linear")) {
+      dataWriter = hashing
+          ? new HashingLinearStringOutcomeDataWriter(this.directory)
+          : new LinearStringOutcomeDataWriter(this.directory);
+    } else {
+      dataWriter = hashing
+          ? new HashingLIBSVMStringOutcomeDataWriter(this.directory)
+          : new BatchLIBSVMStringOutcomeDataWriter(this.directory);
+    }
+    for (int i = 0; i < TRAINING_INSTANCES; ++i) {
+      int outcome = random.nextInt(OUTCOMES.length);
+      dataWriter.write(new Instance<String>(OUTCOMES[outcome], createFeatures(random, outcome)));
+    }
+    dataWriter.finish();
+    if (this.model.equals("linear")) {
+      JarClassifierBuilder.trainAndPackage(this.directory);
+    } else {
+      String kernel = this.model.equals("libsvm-rbf") ? "2" : "0";
+      JarClassifierBuilder.trainAndPackage(this.directory, "-c", "1000", "-t", kernel);
+    }
+    @SuppressWarnings("unchecked")
+    Classifier<String> classifier = (Classifier<String>) JarClassifierBuilder.fromTrainingDirectory(
+        this.directory).loadClassifierFromTrainingDirectory(this.directory);
+    this.classifier = classifier;
+    this.document = new ArrayList<List<Feature>>();
+    for (int i = 0; i < EVENTS; ++i) {
+      this.document.add(createFeatures(random, random.nextInt(OUTCOMES.length)));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    delete(this.directory);
+  }
+
+  @Benchmark
+  public List<String> classifyEach() throws Exception {
+    List<String> outcomes = new ArrayList<String>(this.document.size());
+    for (List<Feature> features : this.document) {
+      outcomes.add(this.classifier.classify(features));
+    }
+    return outcomes;
+  }
+
+  @Benchmark
+  public List<String> classifyAll() throws Exception {
+    return ((BatchClassifier<String>) this.classifier).classifyAll(this.document);
+  }
+
+  /**
+   * Features that mostly follow a shared word distribution, with a quarter of the words drawn from
+   * words typical of the outcome.
+   */
+  private static List<Feature> createFeatures(Random random, int outcome) {
+    List<Feature> features = new ArrayList<Feature>();
+    for (String context : CONTEXTS) {
+      int word = random.nextInt(4) == 0
+          ? outcome * 50 + random.nextInt(50)
+          : (int) Math.min(1999, Math.abs(random.nextGaussian() * 300));
+      features.add(new Feature(context + "_TokenText", "w" + word));
+      features.add(new Feature(context + "_PartOfSpeech", "P" + (word % 30)));
+    }
+    return features;
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
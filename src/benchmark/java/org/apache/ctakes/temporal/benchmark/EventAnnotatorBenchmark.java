@@ -0,0 +1,161 @@
+package org.apache.ctakes.temporal.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ctakes.temporal.ae.EventAnnotator;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.cleartk.classifier.CleartkAnnotator;
+import org.cleartk.classifier.CleartkProcessingException;
+import org.cleartk.classifier.DataWriter;
+import org.cleartk.classifier.Instance;
+import org.cleartk.classifier.jar.DefaultDataWriterFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.util.JCasUtil;
+
+import com.google.common.collect.Lists;
+
+import edu.mayo.bmi.uima.core.type.textsem.EventMention;
+
+/**
+ * The event annotator's feature extraction, before ({@link LegacyEventAnnotator}) and after the
+ * precomputed feature names and reused buffers of {@link EventAnnotator}, in training mode (with a
+ * data writer that drops the instances) and in prediction mode (with a stub classifier).
+ *
+ * Scores are in tokens per second. Run with <code>-prof gc</code> to also get the bytes allocated
+ * per token (gc.alloc.rate.norm), e.g.
+ * <code>mvn -P benchmark verify -Djmh.args="EventAnnotatorBenchmark -prof gc"</code>. The profiler
+ * also counts what the per-call setup allocates, so in prediction mode the setup restores the
+ * input CAS in place, by removing the events that the last call added, rather than by
+ * deserializing a copy of the CAS, which would allocate the whole CAS again on every call. (The
+ * removed events stay on the CAS heap, which UIMA only reclaims on a reset, so the heap still grows
+ * by the events of each call, as the annotator's own allocation.)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(EventAnnotatorBenchmark.TOKENS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventAnnotatorBenchmark {
+
+  public static final int SENTENCES = 100;
+
+  public static final int TOKENS = SENTENCES * Fixtures.TOKENS_PER_SENTENCE;
+
+  @Param({ "legacy", "current" })
+  public String implementation;
+
+  @Param({ "training", "prediction" })
+  public String mode;
+
+  private Fixtures fixtures;
+
+  private AnalysisEngine annotator;
+
+  private JCas jCas;
+
+  /**
+   * In prediction mode, the events to remove from the CAS before the next call, reused so that
+   * restoring the input does not allocate
+   */
+  private List<EventMention> addedEvents;
+
+  @Setup
+  public void setUp() throws Exception {
+    this.fixtures = new Fixtures(SENTENCES);
+    this.jCas = this.fixtures.createAnnotatedJCas();
+    StubClassifiers.EventClassifierFactory.setOutcomes(this.jCas);
+    Class<? extends EventAnnotator> annotatorClass = this.implementation.equals("legacy")
+        ? LegacyEventAnnotator.class
+        : EventAnnotator.class;
+    if (this.mode.equals("training")) {
+      this.annotator = AnalysisEngineFactory.createPrimitive(
+          annotatorClass,
+          CleartkAnnotator.PARAM_IS_TRAINING,
+          true,
+          DefaultDataWriterFactory.PARAM_DATA_WRITER_CLASS_NAME,
+          DiscardingDataWriter.class.getName(),
+          DefaultDataWriterFactory.PARAM_OUTPUT_DIRECTORY,
+          this.fixtures.getTextFile().getParentFile());
+    } else {
+      this.annotator = AnalysisEngineFactory.createPrimitive(
+          annotatorClass,
+          CleartkAnnotator.PARAM_IS_TRAINING,
+          false,
+          CleartkAnnotator.PARAM_CLASSIFIER_FACTORY_CLASS_NAME,
+          StubClassifiers.EventClassifierFactory.class.getName());
+      for (EventMention mention : Lists.newArrayList(JCasUtil.select(this.jCas, EventMention.class))) {
+        mention.removeFromIndexes();
+      }
+      this.addedEvents = new ArrayList<EventMention>(TOKENS);
+    }
+  }
+
+  /**
+   * Prediction adds events to the CAS, so restore the input CAS (tokens, sentences and entities,
+   * but no events) before each call, by removing them again.
+   */
+  @Setup(Level.Invocation)
+  public void resetInput() {
+    if (this.mode.equals("prediction")) {
+      this.addedEvents.clear();
+      FSIterator<Annotation> events = this.jCas.getAnnotationIndex(EventMention.type).iterator();
+      while (events.hasNext()) {
+        this.addedEvents.add((EventMention) events.next());
+      }
+      for (int i = 0; i < this.addedEvents.size(); ++i) {
+        this.addedEvents.get(i).removeFromIndexes();
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.annotator.destroy();
+    this.fixtures.delete();
+  }
+
+  @Benchmark
+  public JCas process() throws Exception {
+    this.annotator.process(this.jCas);
+    return this.jCas;
+  }
+
+  /**
+   * Drops the training instances, so that only feature extraction is measured.
+   */
+  public static class DiscardingDataWriter implements DataWriter<String> {
+
+    public DiscardingDataWriter(File outputDirectory) {
+    }
+
+    @Override
+    public void write(Instance<String> instance) throws CleartkProcessingException {
+    }
+
+    @Override
+    public void finish() throws CleartkProcessingException {
+    }
+  }
+}
@@ -0,0 +1,250 @@
+package org.apache.ctakes.temporal.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+
+import org.apache.ctakes.temporal.ae.THYMEKnowtatorXMLReader;
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.cleartk.util.ViewURIUtil;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.JCasFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import edu.mayo.bmi.uima.core.type.syntax.BaseToken;
+import edu.mayo.bmi.uima.core.type.textspan.Sentence;
+
+/**
+ * Generates a synthetic THYME document, i.e. a plain text file in a doc&lt;N&gt; directory and its
+ * Knowtator XML in the matching Set&lt;NN&gt; directory, in a temporary directory, so that the
+ * benchmarks need no corpus, UMLS or network access.
+ *
+ * The document repeats one sentence, which has two events (one with a TLINK to a date), a date and
+ * a drug.
+ */
+public class Fixtures {
+
+  /**
+   * The number of tokens in each sentence of the fixture document
+   */
+  public static final int TOKENS_PER_SENTENCE = 12;
+
+  private static final String[] WORDS = new String[] {
+      "The",
+      "patient",
+      "reported",
+      "pain",
+      "on",
+      "March",
+      "3",
+      "and",
+      "was",
+      "given",
+      "aspirin",
+      "." };
+
+  private static final String[] PARTS_OF_SPEECH = new String[] {
+      "DT",
+      "NN",
+      "VBD",
+      "NN",
+      "IN",
+      "NNP",
+      "CD",
+      "CC",
+      "VBD",
+      "VBN",
+      "NN",
+      "." };
+
+  private File directory;
+
+  private File textFile;
+
+  private File knowtatorXMLDirectory;
+
+  private File knowtatorXMLFile;
+
+  private String text;
+
+  private int nextId;
+
+  /**
+   * Write a document of the given number of sentences to a new temporary directory.
+   */
+  public Fixtures(int nSentences) throws IOException {
+    this.directory = Files.createTempDir();
+    this.textFile = new File(new File(this.directory, "doc1"), "fixture");
+    this.knowtatorXMLDirectory = new File(this.directory, "xml");
+    this.knowtatorXMLFile = new File(
+        THYMEKnowtatorXMLReader.getKnowtatorXML(this.knowtatorXMLDirectory, this.textFile.toURI()));
+
+    StringBuilder text = new StringBuilder();
+    StringBuilder annotations = new StringBuilder();
+    StringBuilder mentions = new StringBuilder();
+    this.nextId = 0;
+    for (int i = 0; i < nSentences; ++i) {
+      int[] begins = new int[WORDS.length];
+      int[] ends = new int[WORDS.length];
+      for (int j = 0; j < WORDS.length; ++j) {
+        if (j > 0) {
+          text.append(' ');
+        }
+        begins[j] = text.length();
+        text.append(WORDS[j]);
+        ends[j] = text.length();
+      }
+      text.append('\n');
+
+      String pain = this.addAnnotation(annotations, text, begins[3], ends[3]);
+      this.addClassMention(mentions, pain, "EVENT", this.addStringSlot(
+          mentions,
+          "DocTimeRel",
+          "BEFORE"));
+      String date = this.addAnnotation(annotations, text, begins[5], ends[6]);
+      this.addClassMention(mentions, date, "TIMEX3", this.addStringSlot(mentions, "class", "DATE"));
+      String given = this.addAnnotation(annotations, text, begins[9], ends[9]);
+      this.addClassMention(mentions, given, "EVENT", this.addStringSlot(
+          mentions,
+          "DocTimeRel",
+          "OVERLAP"));
+      String aspirin = this.addAnnotation(annotations, text, begins[10], ends[10]);
+      this.addClassMention(mentions, aspirin, "Medications/Drugs");
+      String tlink = this.addAnnotation(annotations, null, -1, -1);
+      this.addClassMention(
+          mentions,
+          tlink,
+          "TLINK",
+          this.addComplexSlot(mentions, "Event", pain),
+          this.addComplexSlot(mentions, "related_to", date),
+          this.addStringSlot(mentions, "Relationtype", "OVERLAP"));
+    }
+    this.text = text.toString();
+
+    StringBuilder xml = new StringBuilder();
+    xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    xml.append("<annotations textSource=\"fixture\">\n");
+    xml.append(annotations);
+    xml.append(mentions);
+    xml.append("</annotations>\n");
+
+    this.textFile.getParentFile().mkdirs();
+    Files.write(this.text, this.textFile, Charsets.UTF_8);
+    this.knowtatorXMLFile.getParentFile().mkdirs();
+    Files.write(xml, this.knowtatorXMLFile, Charsets.UTF_8);
+  }
+
+  public File getTextFile() {
+    return this.textFile;
+  }
+
+  public File getKnowtatorXMLDirectory() {
+    return this.knowtatorXMLDirectory;
+  }
+
+  public URI getKnowtatorXML() {
+    return this.knowtatorXMLFile.toURI();
+  }
+
+  public String getText() {
+    return this.text;
+  }
+
+  /**
+   * Set the document text and URI of an empty CAS, as the collection reader would.
+   */
+  public void initialize(JCas jCas) {
+    ViewURIUtil.setURI(jCas, this.textFile.toURI());
+    jCas.setDocumentText(this.text);
+  }
+
+  /**
+   * Create a CAS with the document text, gold annotations, sentences and tokens (with parts of
+   * speech).
+   */
+  public JCas createAnnotatedJCas() throws UIMAException {
+    JCas jCas = JCasFactory.createJCas();
+    this.initialize(jCas);
+    AnalysisEngine reader = AnalysisEngineFactory.createPrimitive(THYMEKnowtatorXMLReader.getDescription(this.knowtatorXMLDirectory));
+    try {
+      reader.process(jCas);
+    } finally {
+      reader.destroy();
+    }
+    int offset = 0;
+    while (offset < this.text.length()) {
+      int sentenceEnd = this.text.indexOf('\n', offset);
+      new Sentence(jCas, offset, sentenceEnd).addToIndexes();
+      for (int j = 0; j < WORDS.length; ++j) {
+        BaseToken token = new BaseToken(jCas, offset, offset + WORDS[j].length());
+        token.setPartOfSpeech(PARTS_OF_SPEECH[j]);
+        token.addToIndexes();
+        offset = token.getEnd() + 1;
+      }
+    }
+    return jCas;
+  }
+
+  /**
+   * Remove the generated files.
+   */
+  public void delete() {
+    delete(this.directory);
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private String addAnnotation(StringBuilder xml, CharSequence text, int begin, int end) {
+    String id = "fixture_" + this.nextId++;
+    xml.append("  <annotation>\n");
+    xml.append("    <mention id=\"").append(id).append("\" />\n");
+    xml.append("    <annotator id=\"fixture\">");
+    xml.append(THYMEKnowtatorXMLReader.ANNOTATOR_NAMES[0]);
+    xml.append("</annotator>\n");
+    if (text != null) {
+      xml.append("    <span start=\"").append(begin).append("\" end=\"").append(end).append("\" />\n");
+      xml.append("    <spannedText>").append(text.subSequence(begin, end)).append("</spannedText>\n");
+    }
+    xml.append("  </annotation>\n");
+    return id;
+  }
+
+  private void addClassMention(StringBuilder xml, String id, String mentionClass, String... slotIds) {
+    xml.append("  <classMention id=\"").append(id).append("\">\n");
+    xml.append("    <mentionClass id=\"").append(mentionClass).append("\">");
+    xml.append(mentionClass).append("</mentionClass>\n");
+    for (String slotId : slotIds) {
+      xml.append("    <hasSlotMention id=\"").append(slotId).append("\" />\n");
+    }
+    xml.append("  </classMention>\n");
+  }
+
+  private String addStringSlot(StringBuilder xml, String name, String value) {
+    return this.addSlot(xml, "stringSlotMention", name, value);
+  }
+
+  private String addComplexSlot(StringBuilder xml, String name, String annotationId) {
+    return this.addSlot(xml, "complexSlotMention", name, annotationId);
+  }
+
+  private String addSlot(StringBuilder xml, String elementName, String name, String value) {
+    String id = "fixture_" + this.nextId++;
+    xml.append("  <").append(elementName).append(" id=\"").append(id).append("\">\n");
+    xml.append("    <mentionSlot id=\"").append(name).append("\" />\n");
+    xml.append("    <").append(elementName).append("Value value=\"").append(value).append("\" />\n");
+    xml.append("  </").append(elementName).append(">\n");
+    return id;
+  }
+}
@@ -0,0 +1,87 @@
+package org.apache.ctakes.temporal.benchmark;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ctakes.knowtator.KnowtatorAnnotation;
+import org.apache.ctakes.knowtator.KnowtatorXMLParser;
+import org.apache.ctakes.sharp.ae.KnowtatorXMLReader;
+import org.apache.ctakes.temporal.ae.THYMEKnowtatorXMLReader;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.JCasFactory;
+
+/**
+ * Parsing Knowtator XML, and converting it into CAS annotations, without a cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KnowtatorBenchmark {
+
+  @Param({ "100" })
+  public int sentences;
+
+  @Param({ "DOM", "STREAMING" })
+  public KnowtatorXMLParser.Mode mode;
+
+  private Fixtures fixtures;
+
+  private KnowtatorXMLParser parser;
+
+  private AnalysisEngine reader;
+
+  private JCas jCas;
+
+  @Setup
+  public void setUp() throws Exception {
+    this.fixtures = new Fixtures(this.sentences);
+    this.parser = new KnowtatorXMLParser(THYMEKnowtatorXMLReader.ANNOTATOR_NAMES);
+    this.parser.setMode(this.mode);
+    this.reader = AnalysisEngineFactory.createPrimitive(
+        THYMEKnowtatorXMLReader.class,
+        KnowtatorXMLReader.PARAM_KNOWTATOR_XML_DIRECTORY,
+        this.fixtures.getKnowtatorXMLDirectory(),
+        KnowtatorXMLReader.PARAM_STREAMING_PARSER,
+        this.mode == KnowtatorXMLParser.Mode.STREAMING);
+    this.jCas = JCasFactory.createJCas();
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.reader.destroy();
+    this.fixtures.delete();
+  }
+
+  @Benchmark
+  public Collection<KnowtatorAnnotation> parse() throws Exception {
+    return this.parser.parse(this.fixtures.getKnowtatorXML());
+  }
+
+  /**
+   * Includes resetting the CAS and setting its text and URI, which is small next to the parse.
+   */
+  @Benchmark
+  public JCas readerProcess() throws Exception {
+    this.jCas.reset();
+    this.fixtures.initialize(this.jCas);
+    this.reader.process(this.jCas);
+    return this.jCas;
+  }
+}
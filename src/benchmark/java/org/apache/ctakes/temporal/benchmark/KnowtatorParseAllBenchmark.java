@@ -0,0 +1,99 @@
+package org.apache.ctakes.temporal.benchmark;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ctakes.knowtator.KnowtatorAnnotation;
+import org.apache.ctakes.knowtator.KnowtatorXMLParser;
+import org.apache.ctakes.temporal.ae.THYMEKnowtatorXMLReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.Files;
+
+/**
+ * Parsing a corpus of Knowtator XML files with {@link KnowtatorXMLParser#parseAll} on different
+ * numbers of threads, without a cache. The corpus is {@link #FILES} copies of the fixture document's
+ * Knowtator XML; the thread pool is created once per trial, so only the parsing is measured.
+ *
+ * Scores are in microseconds per file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(KnowtatorParseAllBenchmark.FILES)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KnowtatorParseAllBenchmark {
+
+  public static final int FILES = 64;
+
+  @Param({ "100" })
+  public int sentences;
+
+  @Param({ "DOM", "STREAMING" })
+  public KnowtatorXMLParser.Mode mode;
+
+  @Param({ "1", "2", "4", "8" })
+  public int threads;
+
+  private Fixtures fixtures;
+
+  private File corpusDirectory;
+
+  private List<URI> knowtatorXMLs;
+
+  private KnowtatorXMLParser parser;
+
+  private ExecutorService executor;
+
+  @Setup
+  public void setUp() throws Exception {
+    this.fixtures = new Fixtures(this.sentences);
+    this.corpusDirectory = Files.createTempDir();
+    File source = new File(this.fixtures.getKnowtatorXML());
+    this.knowtatorXMLs = new ArrayList<URI>();
+    for (int i = 0; i < FILES; ++i) {
+      File file = new File(this.corpusDirectory, "fixture" + i + ".knowtator.xml");
+      Files.copy(source, file);
+      this.knowtatorXMLs.add(file.toURI());
+    }
+    this.parser = new KnowtatorXMLParser(THYMEKnowtatorXMLReader.ANNOTATOR_NAMES);
+    this.parser.setMode(this.mode);
+    this.executor = Executors.newFixedThreadPool(this.threads);
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.executor.shutdownNow();
+    for (File file : this.corpusDirectory.listFiles()) {
+      file.delete();
+    }
+    this.corpusDirectory.delete();
+    this.fixtures.delete();
+  }
+
+  @Benchmark
+  public Map<URI, Collection<KnowtatorAnnotation>> parseAll() throws Exception {
+    return this.parser.parseAll(this.knowtatorXMLs, this.executor);
+  }
+}
@@ -0,0 +1,75 @@
+package org.apache.ctakes.temporal.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ctakes.temporal.eval.SpanDiff;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.uimafit.factory.JCasFactory;
+import org.uimafit.util.JCasUtil;
+
+import edu.mayo.bmi.uima.core.type.textsem.EventMention;
+
+/**
+ * The span comparison of EvaluationOfAnnotationSpans_ImplBase.test, i.e. aligning the gold and
+ * system annotations of a document with {@link SpanDiff}. The system annotations drop every fifth
+ * gold span and shift every seventh.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpanDiffBenchmark {
+
+  @Param({ "1000" })
+  public int sentences;
+
+  private Fixtures fixtures;
+
+  private List<Annotation> gold;
+
+  private List<Annotation> system;
+
+  @Setup
+  public void setUp() throws Exception {
+    this.fixtures = new Fixtures(this.sentences);
+    JCas jCas = this.fixtures.createAnnotatedJCas();
+    JCas systemView = JCasFactory.createJCas();
+    this.fixtures.initialize(systemView);
+    this.gold = new ArrayList<Annotation>(JCasUtil.select(jCas, EventMention.class));
+    this.system = new ArrayList<Annotation>();
+    for (int i = 0; i < this.gold.size(); ++i) {
+      Annotation annotation = this.gold.get(i);
+      if (i % 5 != 0) {
+        int end = i % 7 == 0 ? annotation.getEnd() - 1 : annotation.getEnd();
+        this.system.add(new EventMention(systemView, annotation.getBegin(), end));
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.fixtures.delete();
+  }
+
+  @Benchmark
+  public SpanDiff spanDiff() {
+    return new SpanDiff(this.gold, this.system);
+  }
+}
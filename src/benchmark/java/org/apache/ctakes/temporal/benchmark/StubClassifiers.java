@@ -0,0 +1,105 @@
+package org.apache.ctakes.temporal.benchmark;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.cleartk.classifier.Classifier;
+import org.cleartk.classifier.ClassifierFactory;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.ScoredOutcome;
+import org.cleartk.classifier.chunking.BIOChunking;
+import org.uimafit.util.JCasUtil;
+
+import edu.mayo.bmi.uima.core.type.syntax.BaseToken;
+import edu.mayo.bmi.uima.core.type.textsem.EventMention;
+import edu.mayo.bmi.uima.core.type.textspan.Sentence;
+
+/**
+ * Classifiers that need no trained model, so that the annotators can be benchmarked in prediction
+ * mode. They are given to the annotators by class name, through
+ * {@link org.cleartk.classifier.CleartkAnnotator#PARAM_CLASSIFIER_FACTORY_CLASS_NAME}.
+ */
+public class StubClassifiers {
+
+  /**
+   * Looks up the outcome of the first feature's value (for the event annotator, the token text) in
+   * a fixed table, e.g. the gold BIO outcomes of the fixture's words.
+   */
+  public static class LookupClassifier implements Classifier<String> {
+
+    private Map<Object, String> outcomes;
+
+    public LookupClassifier(Map<Object, String> outcomes) {
+      this.outcomes = outcomes;
+    }
+
+    @Override
+    public String classify(List<Feature> features) {
+      String outcome = features.isEmpty() ? null : this.outcomes.get(features.get(0).getValue());
+      return outcome == null ? "O" : outcome;
+    }
+
+    @Override
+    public List<ScoredOutcome<String>> score(List<Feature> features, int maxResults) {
+      return Collections.singletonList(new ScoredOutcome<String>(this.classify(features), 1.0));
+    }
+  }
+
+  /**
+   * Creates a {@link LookupClassifier} from the table set with {@link #setOutcomes(Map)}.
+   */
+  public static class EventClassifierFactory implements ClassifierFactory<String> {
+
+    private static Map<Object, String> OUTCOMES = new HashMap<Object, String>();
+
+    public static void setOutcomes(Map<Object, String> outcomes) {
+      OUTCOMES = new HashMap<Object, String>(outcomes);
+    }
+
+    /**
+     * Predict the gold BIO outcome of each word of the given CAS (which must have sentences, tokens
+     * and events).
+     */
+    public static void setOutcomes(JCas jCas) throws AnalysisEngineProcessException {
+      BIOChunking<BaseToken, EventMention> chunking = new BIOChunking<BaseToken, EventMention>(
+          BaseToken.class,
+          EventMention.class);
+      Map<Object, String> outcomes = new HashMap<Object, String>();
+      for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
+        List<BaseToken> tokens = JCasUtil.selectCovered(jCas, BaseToken.class, sentence);
+        List<EventMention> events = JCasUtil.selectCovered(jCas, EventMention.class, sentence);
+        List<String> tokenOutcomes = chunking.createOutcomes(jCas, tokens, events);
+        for (int i = 0; i < tokens.size(); ++i) {
+          outcomes.put(tokens.get(i).getCoveredText(), tokenOutcomes.get(i));
+        }
+      }
+      setOutcomes(outcomes);
+    }
+
+    @Override
+    public Classifier<String> createClassifier() throws IOException {
+      return new LookupClassifier(OUTCOMES);
+    }
+  }
+
+  /**
+   * Creates a classifier that labels every event OVERLAP.
+   */
+  public static class DocTimeRelClassifierFactory implements ClassifierFactory<String> {
+
+    @Override
+    public Classifier<String> createClassifier() throws IOException {
+      return new LookupClassifier(Collections.<Object, String> emptyMap()) {
+        @Override
+        public String classify(List<Feature> features) {
+          return "OVERLAP";
+        }
+      };
+    }
+  }
+}
@@ -1,15 +1,27 @@
 package org.apache.ctakes.knowtator;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import com.google.common.base.Objects;
 import com.google.common.base.Objects.ToStringHelper;
 
 /**
  * Represents a Knowtator annotation.
+ *
+ * Annotations are kept compact so that the gold annotations of a whole corpus can be held in
+ * memory: spans are packed into a single <code>int[]</code>, slot maps are shared empty maps until
+ * the first slot is added and small array-backed maps after that, and slot names are interned.
+ * Annotations are only created by the parser, so the slot maps are read-only for
+ * everyone else.
  */
 public class KnowtatorAnnotation {
   /**
@@ -17,34 +29,80 @@ public class KnowtatorAnnotation {
    */
   public String id;
 
+  private static final int[] NO_SPANS = new int[0];
+
+  /**
+   * The character offsets of this annotation, packed as begin0, end0, begin1, end1, ...
+   */
+  private int[] spanOffsets = NO_SPANS;
+
+  /**
+   * The span returned by {@link #getCoveringSpan()}, computed on first request.
+   */
+  private Span coveringSpan;
+
   /**
    * The character offsets of this annotation (empty if not associated with a span of text).
    */
-  public List<Span> spans = new ArrayList<Span>();
+  public List<Span> getSpans() {
+    return new AbstractList<Span>() {
+      @Override
+      public Span get(int index) {
+        return new Span(getSpanBegin(index), getSpanEnd(index));
+      }
+
+      @Override
+      public int size() {
+        return getSpanCount();
+      }
+    };
+  }
 
   /**
-   * Get a span that approximates {@link #spans}, giving the earliest begin offset and the latest
-   * end offset.
+   * The number of spans, i.e. the size of {@link #getSpans()}, without creating any Span objects.
+   */
+  public int getSpanCount() {
+    return this.spanOffsets.length / 2;
+  }
+
+  public int getSpanBegin(int index) {
+    return this.spanOffsets[index * 2];
+  }
+
+  public int getSpanEnd(int index) {
+    return this.spanOffsets[index * 2 + 1];
+  }
+
+  /**
+   * Get a span that approximates {@link #getSpans()}, giving the earliest begin offset and the
+   * latest end offset.
    */
   public Span getCoveringSpan() {
-    int begin = Integer.MAX_VALUE;
-    int end = Integer.MIN_VALUE;
-    for (KnowtatorAnnotation.Span span : this.spans) {
-      if (span.begin < begin) {
-        begin = span.begin;
-      }
-      if (span.end > end) {
-        end = span.end;
+    if (this.coveringSpan == null) {
+      int begin = Integer.MAX_VALUE;
+      int end = Integer.MIN_VALUE;
+      for (int i = 0; i < this.spanOffsets.length; i += 2) {
+        if (this.spanOffsets[i] < begin) {
+          begin = this.spanOffsets[i];
+        }
+        if (this.spanOffsets[i + 1] > end) {
+          end = this.spanOffsets[i + 1];
+        }
       }
+      this.coveringSpan = new Span(begin, end);
     }
-    return new Span(begin, end);
+    return this.coveringSpan;
   }
 
   /**
-   * Create a new span and add it to the list (not publicly available)
+   * Add a span to this annotation (not publicly available)
    */
   void addSpan(int begin, int end) {
-    this.spans.add(new Span(begin, end));
+    int length = this.spanOffsets.length;
+    this.spanOffsets = Arrays.copyOf(this.spanOffsets, length + 2);
+    this.spanOffsets[length] = begin;
+    this.spanOffsets[length + 1] = end;
+    this.coveringSpan = null;
   }
 
   /**
@@ -57,20 +115,53 @@ public class KnowtatorAnnotation {
    */
   public String type;
 
+  private Map<String, String> stringSlots = Collections.emptyMap();
+
+  private Map<String, Boolean> booleanSlots = Collections.emptyMap();
+
+  private Map<String, KnowtatorAnnotation> annotationSlots = Collections.emptyMap();
+
+  /**
+   * The string-valued annotation attributes (read-only)
+   */
+  public Map<String, String> getStringSlots() {
+    return this.stringSlots;
+  }
+
+  /**
+   * The boolean-valued annotation attributes (read-only)
+   */
+  public Map<String, Boolean> getBooleanSlots() {
+    return this.booleanSlots;
+  }
+
   /**
-   * The string-valued annotation attributes
+   * The annotation-valued annotation attributes, i.e. links between annotations (read-only)
    */
-  public Map<String, String> stringSlots = new HashMap<String, String>();
+  public Map<String, KnowtatorAnnotation> getAnnotationSlots() {
+    return this.annotationSlots;
+  }
+
+  /**
+   * Add a string-valued attribute (not publicly available)
+   */
+  void addStringSlot(String name, String value) {
+    this.stringSlots = SlotMap.with(this.stringSlots, name, value);
+  }
 
   /**
-   * The boolean-valued annotation attributes
+   * Add a boolean-valued attribute (not publicly available)
    */
-  public Map<String, Boolean> booleanSlots = new HashMap<String, Boolean>();
+  void addBooleanSlot(String name, Boolean value) {
+    this.booleanSlots = SlotMap.with(this.booleanSlots, name, value);
+  }
 
   /**
-   * The annotation-valued annotation attributes (i.e. links between annotations)
+   * Add an annotation-valued attribute (not publicly available)
    */
-  public Map<String, KnowtatorAnnotation> annotationSlots = new HashMap<String, KnowtatorAnnotation>();
+  void addAnnotationSlot(String name, KnowtatorAnnotation value) {
+    this.annotationSlots = SlotMap.with(this.annotationSlots, name, value);
+  }
 
   /**
    * Construct a new KnowtatorAnnotation. (Not publicly available.)
@@ -78,41 +169,52 @@ public class KnowtatorAnnotation {
   KnowtatorAnnotation() {
   }
 
+  /**
+   * Hashes only the id, which Knowtator assigns uniquely, rather than walking the annotation graph.
+   */
   @Override
   public int hashCode() {
-    return Objects.hashCode(
-        this.id,
-        this.spans,
-        this.spannedText,
-        this.type,
-        this.stringSlots,
-        this.booleanSlots,
-        this.annotationSlots);
+    return this.id == null ? 0 : this.id.hashCode();
   }
 
+  /**
+   * Compares all attributes, but compares linked annotations only by their ids, so that comparison
+   * does not walk (or loop forever on) the annotation graph.
+   */
   @Override
   public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    }
     if (obj == null || obj.getClass() != this.getClass()) {
       return false;
     }
     KnowtatorAnnotation that = (KnowtatorAnnotation) obj;
-    return Objects.equal(this.id, that.id) && Objects.equal(this.spans, that.spans)
+    return Objects.equal(this.id, that.id) && Arrays.equals(this.spanOffsets, that.spanOffsets)
         && Objects.equal(this.spannedText, that.spannedText) && Objects.equal(this.type, that.type)
-        && Objects.equal(this.stringSlots, that.stringSlots)
-        && Objects.equal(this.booleanSlots, that.booleanSlots)
-        && Objects.equal(this.annotationSlots, that.annotationSlots);
+        && this.stringSlots.equals(that.stringSlots)
+        && this.booleanSlots.equals(that.booleanSlots)
+        && getIds(this.annotationSlots).equals(getIds(that.annotationSlots));
+  }
+
+  private static Map<String, String> getIds(Map<String, KnowtatorAnnotation> annotationSlots) {
+    Map<String, String> ids = Collections.emptyMap();
+    for (Map.Entry<String, KnowtatorAnnotation> entry : annotationSlots.entrySet()) {
+      ids = SlotMap.with(ids, entry.getKey(), entry.getValue().id);
+    }
+    return ids;
   }
 
   @Override
   public String toString() {
     ToStringHelper builder = Objects.toStringHelper(this);
     builder.add("id", this.id);
-    builder.add("spans", this.spans);
+    builder.add("spans", this.getSpans());
     builder.add("spannedText", this.spannedText);
     builder.add("type", this.type);
     builder.add("stringSlots", this.stringSlots);
     builder.add("booleanSlots", this.booleanSlots);
-    builder.add("mentionSlots", this.annotationSlots);
+    builder.add("mentionSlots", getIds(this.annotationSlots));
     return builder.toString();
   }
 
@@ -123,12 +225,12 @@ public class KnowtatorAnnotation {
     /**
      * The offset of the first character in the text span.
      */
-    public int begin;
+    public final int begin;
 
     /**
      * The offset immediately after the last character in the text span.
      */
-    public int end;
+    public final int end;
 
     /**
      * Construct a new Span. (Not publicly available.)
@@ -140,7 +242,7 @@ public class KnowtatorAnnotation {
 
     @Override
     public int hashCode() {
-      return Objects.hashCode(this.begin, this.end);
+      return 31 * this.begin + this.end;
     }
 
     @Override
@@ -162,4 +264,124 @@ public class KnowtatorAnnotation {
 
   }
 
-}
\ No newline at end of file
+  /**
+   * A read-only map backed by parallel arrays of interned names and values. Annotations rarely have
+   * more than a handful of slots, so a linear scan is cheaper than hashing, and there are no entry
+   * objects or hash tables to allocate.
+   */
+  private static class SlotMap<V> extends AbstractMap<String, V> {
+
+    /**
+     * Returns a map with the given name set to the given value. The map passed in is modified and
+     * returned if it is already a SlotMap; otherwise a new SlotMap is created.
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> Map<String, V> with(Map<String, V> map, String name, V value) {
+      SlotMap<V> slotMap;
+      if (map instanceof SlotMap) {
+        slotMap = (SlotMap<V>) map;
+      } else {
+        slotMap = new SlotMap<V>(Math.max(map.size(), 2));
+        for (Map.Entry<String, V> entry : map.entrySet()) {
+          slotMap.set(entry.getKey(), entry.getValue());
+        }
+      }
+      slotMap.set(name, value);
+      return slotMap;
+    }
+
+    private String[] names;
+
+    private Object[] values;
+
+    private int size;
+
+    private SlotMap(int capacity) {
+      this.names = new String[capacity];
+      this.values = new Object[capacity];
+    }
+
+    private void set(String name, V value) {
+      name = name.intern();
+      for (int i = 0; i < this.size; ++i) {
+        if (this.names[i] == name) {
+          this.values[i] = value;
+          return;
+        }
+      }
+      if (this.size == this.names.length) {
+        this.names = Arrays.copyOf(this.names, this.size * 2);
+        this.values = Arrays.copyOf(this.values, this.size * 2);
+      }
+      this.names[this.size] = name;
+      this.values[this.size] = value;
+      ++this.size;
+    }
+
+    private int indexOf(Object name) {
+      for (int i = 0; i < this.size; ++i) {
+        if (this.names[i] == name || this.names[i].equals(name)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    public int size() {
+      return this.size;
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+      return this.indexOf(name) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(Object name) {
+      int index = this.indexOf(name);
+      return index < 0 ? null : (V) this.values[index];
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+      return new AbstractSet<Map.Entry<String, V>>() {
+        @Override
+        public int size() {
+          return size;
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, V>> iterator() {
+          return new Iterator<Map.Entry<String, V>>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+              return this.index < size;
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public Map.Entry<String, V> next() {
+              if (this.index >= size) {
+                throw new NoSuchElementException();
+              }
+              Map.Entry<String, V> entry = new AbstractMap.SimpleImmutableEntry<String, V>(
+                  names[this.index],
+                  (V) values[this.index]);
+              ++this.index;
+              return entry;
+            }
+
+            @Override
+            public void remove() {
+              throw new UnsupportedOperationException();
+            }
+          };
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,421 @@
+package org.apache.ctakes.knowtator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * A persistent cache of parsed Knowtator XML files.
+ *
+ * Each entry holds the {@link KnowtatorAnnotation} graph of one file in a compact binary form,
+ * together with the path, size, modification time and SHA-1 of the file it was parsed from and the
+ * annotator names it was filtered with. If the size and modification time still match, a lookup is
+ * a single sequential read of the entry. If only the modification time differs (e.g. the corpus was
+ * copied), the content hash decides whether the entry is still valid, and if it is, the entry is
+ * updated with the new modification time so the file is not hashed again.
+ *
+ * Caches are shared per directory (see {@link #forDirectory(File)}) so that the hit and miss
+ * counters cover every parser that uses the same directory.
+ */
+public class KnowtatorAnnotationCache {
+
+  private static final Logger LOGGER = Logger.getLogger(KnowtatorAnnotationCache.class.getName());
+
+  private static final int MAGIC = 0x4B414331; // "KAC1"
+
+  private static final int VERSION = 1;
+
+  /**
+   * Where the modification time of the Knowtator XML is stored in an entry: after the magic number,
+   * the version and the length
+   */
+  private static final int LAST_MODIFIED_OFFSET = 16;
+
+  private static final Map<File, KnowtatorAnnotationCache> CACHES = new HashMap<File, KnowtatorAnnotationCache>();
+
+  /**
+   * Get the cache that stores its entries in the given directory, creating it if necessary.
+   */
+  public static KnowtatorAnnotationCache forDirectory(File directory) {
+    File key = directory.getAbsoluteFile();
+    synchronized (CACHES) {
+      KnowtatorAnnotationCache cache = CACHES.get(key);
+      if (cache == null) {
+        cache = new KnowtatorAnnotationCache(key);
+        CACHES.put(key, cache);
+      }
+      return cache;
+    }
+  }
+
+  private File directory;
+
+  private AtomicLong hits = new AtomicLong();
+
+  private AtomicLong misses = new AtomicLong();
+
+  private KnowtatorAnnotationCache(File directory) {
+    this.directory = directory;
+  }
+
+  public File getDirectory() {
+    return this.directory;
+  }
+
+  /**
+   * The number of lookups answered from the cache.
+   */
+  public long getHits() {
+    return this.hits.get();
+  }
+
+  /**
+   * The number of lookups that required the Knowtator XML to be parsed.
+   */
+  public long getMisses() {
+    return this.misses.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s[%s hits=%d misses=%d]",
+        this.getClass().getSimpleName(),
+        this.directory,
+        this.getHits(),
+        this.getMisses());
+  }
+
+  /**
+   * Look up the annotations previously parsed from the given file with the given annotator names.
+   *
+   * @return The annotations, or <code>null</code> if there is no valid entry for the file.
+   */
+  public Collection<KnowtatorAnnotation> get(File knowtatorXML, Set<String> annotatorNames) {
+    File entryFile = this.getEntryFile(knowtatorXML, annotatorNames);
+    Collection<KnowtatorAnnotation> result = null;
+    if (entryFile.exists()) {
+      try {
+        result = this.read(entryFile, knowtatorXML, annotatorNames);
+      } catch (IOException e) {
+        discard(entryFile, e);
+      } catch (RuntimeException e) {
+        // a corrupt entry can also fail with e.g. an invalid string or annotation index
+        discard(entryFile, e);
+      }
+    }
+    if (result == null) {
+      this.misses.incrementAndGet();
+    } else {
+      this.hits.incrementAndGet();
+    }
+    return result;
+  }
+
+  /**
+   * Delete an unreadable entry, so that the file is parsed again and a new entry is written.
+   */
+  private static void discard(File entryFile, Exception e) {
+    LOGGER.warning(String.format("deleting unreadable cache entry %s: %s", entryFile, e));
+    entryFile.delete();
+  }
+
+  /**
+   * Store the annotations parsed from the given file with the given annotator names.
+   *
+   * Failures to write are logged and otherwise ignored; the cache is only an optimization.
+   */
+  public void put(
+      File knowtatorXML,
+      Set<String> annotatorNames,
+      Collection<KnowtatorAnnotation> annotations) {
+    File entryFile = this.getEntryFile(knowtatorXML, annotatorNames);
+    try {
+      this.write(entryFile, knowtatorXML, annotatorNames, annotations);
+    } catch (IOException e) {
+      LOGGER.warning(String.format("could not write cache entry %s: %s", entryFile, e));
+    }
+  }
+
+  /**
+   * The cache only applies to Knowtator XML stored as plain files.
+   */
+  static File toFile(URI knowtatorXML) {
+    return "file".equals(knowtatorXML.getScheme()) ? new File(knowtatorXML) : null;
+  }
+
+  private File getEntryFile(File knowtatorXML, Set<String> annotatorNames) {
+    String key = knowtatorXML.getAbsolutePath() + '\n' + joinSorted(annotatorNames);
+    String name = Hashing.sha1().hashString(key, Charsets.UTF_8).toString();
+    return new File(this.directory, name + ".kac");
+  }
+
+  private static String joinSorted(Set<String> names) {
+    return Joiner.on('\n').join(new TreeSet<String>(names));
+  }
+
+  private static byte[] contentHash(File file) throws IOException {
+    return Files.hash(file, Hashing.sha1()).asBytes();
+  }
+
+  private Collection<KnowtatorAnnotation> read(
+      File entryFile,
+      File knowtatorXML,
+      Set<String> annotatorNames) throws IOException {
+    long entryLength = entryFile.length();
+    DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(
+        entryFile)));
+    try {
+      // check that the entry describes this version of this file
+      if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+        return null;
+      }
+      long length = input.readLong();
+      long lastModified = input.readLong();
+      byte[] hash = new byte[input.readUnsignedByte()];
+      input.readFully(hash);
+      if (!readString(input, entryLength).equals(knowtatorXML.getAbsolutePath())
+          || !readString(input, entryLength).equals(joinSorted(annotatorNames))) {
+        return null;
+      }
+      if (length != knowtatorXML.length()) {
+        return null;
+      }
+      boolean touched = lastModified != knowtatorXML.lastModified();
+      if (touched && !Arrays.equals(hash, contentHash(knowtatorXML))) {
+        return null;
+      }
+
+      // string table
+      String[] strings = new String[readCount(input, entryLength)];
+      for (int i = 0; i < strings.length; ++i) {
+        strings[i] = readString(input, entryLength);
+      }
+
+      // annotations (first create them all, so that slots can refer to any of them)
+      int nResults = input.readInt();
+      KnowtatorAnnotation[] annotations = new KnowtatorAnnotation[readCount(input, entryLength)];
+      for (int i = 0; i < annotations.length; ++i) {
+        annotations[i] = new KnowtatorAnnotation();
+      }
+      for (KnowtatorAnnotation annotation : annotations) {
+        annotation.id = lookup(strings, input.readInt());
+        annotation.type = lookup(strings, input.readInt());
+        annotation.spannedText = lookup(strings, input.readInt());
+        for (int i = input.readInt(); i > 0; --i) {
+          int begin = input.readInt();
+          int end = input.readInt();
+          annotation.addSpan(begin, end);
+        }
+        for (int i = input.readInt(); i > 0; --i) {
+          String name = lookup(strings, input.readInt());
+          annotation.addStringSlot(name, lookup(strings, input.readInt()));
+        }
+        for (int i = input.readInt(); i > 0; --i) {
+          String name = lookup(strings, input.readInt());
+          annotation.addBooleanSlot(name, input.readBoolean());
+        }
+        for (int i = input.readInt(); i > 0; --i) {
+          String name = lookup(strings, input.readInt());
+          annotation.addAnnotationSlot(name, annotations[input.readInt()]);
+        }
+      }
+      if (touched) {
+        updateLastModified(entryFile, knowtatorXML.lastModified());
+      }
+      return new ArrayList<KnowtatorAnnotation>(Arrays.asList(annotations).subList(0, nResults));
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Record the new modification time of a file whose content is unchanged. Failures are logged and
+   * otherwise ignored, since the content hash is then just checked again next time.
+   */
+  private static void updateLastModified(File entryFile, long lastModified) {
+    try {
+      RandomAccessFile entry = new RandomAccessFile(entryFile, "rw");
+      try {
+        entry.seek(LAST_MODIFIED_OFFSET);
+        entry.writeLong(lastModified);
+      } finally {
+        entry.close();
+      }
+    } catch (IOException e) {
+      LOGGER.warning(String.format("could not update cache entry %s: %s", entryFile, e));
+    }
+  }
+
+  private void write(
+      File entryFile,
+      File knowtatorXML,
+      Set<String> annotatorNames,
+      Collection<KnowtatorAnnotation> annotations) throws IOException {
+
+    // number all annotations: the results first, then anything only reachable through slots
+    final Map<KnowtatorAnnotation, Integer> indexes = new IdentityHashMap<KnowtatorAnnotation, Integer>();
+    List<KnowtatorAnnotation> all = new ArrayList<KnowtatorAnnotation>(annotations);
+    for (KnowtatorAnnotation annotation : all) {
+      indexes.put(annotation, indexes.size());
+    }
+    for (int i = 0; i < all.size(); ++i) {
+      for (KnowtatorAnnotation value : all.get(i).getAnnotationSlots().values()) {
+        if (!indexes.containsKey(value)) {
+          indexes.put(value, indexes.size());
+          all.add(value);
+        }
+      }
+    }
+
+    // number all strings, so that repeated names and values are only stored once
+    StringTable strings = new StringTable();
+    for (KnowtatorAnnotation annotation : all) {
+      strings.add(annotation.id);
+      strings.add(annotation.type);
+      strings.add(annotation.spannedText);
+      for (Map.Entry<String, String> entry : annotation.getStringSlots().entrySet()) {
+        strings.add(entry.getKey());
+        strings.add(entry.getValue());
+      }
+      for (String name : annotation.getBooleanSlots().keySet()) {
+        strings.add(name);
+      }
+      for (String name : annotation.getAnnotationSlots().keySet()) {
+        strings.add(name);
+      }
+    }
+
+    // write to a temporary file and then rename so that readers never see partial entries
+    if (!this.directory.exists()) {
+      this.directory.mkdirs();
+    }
+    File tempFile = File.createTempFile(entryFile.getName(), ".tmp", this.directory);
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+        tempFile)));
+    try {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeLong(knowtatorXML.length());
+      output.writeLong(knowtatorXML.lastModified());
+      byte[] hash = contentHash(knowtatorXML);
+      output.writeByte(hash.length);
+      output.write(hash);
+      writeString(output, knowtatorXML.getAbsolutePath());
+      writeString(output, joinSorted(annotatorNames));
+
+      output.writeInt(strings.list.size());
+      for (String string : strings.list) {
+        writeString(output, string);
+      }
+
+      output.writeInt(annotations.size());
+      output.writeInt(all.size());
+      for (KnowtatorAnnotation annotation : all) {
+        output.writeInt(strings.indexOf(annotation.id));
+        output.writeInt(strings.indexOf(annotation.type));
+        output.writeInt(strings.indexOf(annotation.spannedText));
+        output.writeInt(annotation.getSpanCount());
+        for (int i = 0; i < annotation.getSpanCount(); ++i) {
+          output.writeInt(annotation.getSpanBegin(i));
+          output.writeInt(annotation.getSpanEnd(i));
+        }
+        output.writeInt(annotation.getStringSlots().size());
+        for (Map.Entry<String, String> entry : annotation.getStringSlots().entrySet()) {
+          output.writeInt(strings.indexOf(entry.getKey()));
+          output.writeInt(strings.indexOf(entry.getValue()));
+        }
+        output.writeInt(annotation.getBooleanSlots().size());
+        for (Map.Entry<String, Boolean> entry : annotation.getBooleanSlots().entrySet()) {
+          output.writeInt(strings.indexOf(entry.getKey()));
+          output.writeBoolean(entry.getValue());
+        }
+        output.writeInt(annotation.getAnnotationSlots().size());
+        for (Map.Entry<String, KnowtatorAnnotation> entry : annotation.getAnnotationSlots().entrySet()) {
+          output.writeInt(strings.indexOf(entry.getKey()));
+          output.writeInt(indexes.get(entry.getValue()));
+        }
+      }
+    } finally {
+      output.close();
+    }
+    if (!tempFile.renameTo(entryFile)) {
+      entryFile.delete();
+      if (!tempFile.renameTo(entryFile)) {
+        tempFile.delete();
+        throw new IOException("could not rename " + tempFile + " to " + entryFile);
+      }
+    }
+  }
+
+  private static String lookup(String[] strings, int index) {
+    return index < 0 ? null : strings[index];
+  }
+
+  /**
+   * Strings are written as a length and UTF-8 bytes (unlike writeUTF, not limited to 64K).
+   */
+  private static void writeString(DataOutputStream output, String string) throws IOException {
+    byte[] bytes = string.getBytes(Charsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  private static String readString(DataInputStream input, long entryLength) throws IOException {
+    byte[] bytes = new byte[readCount(input, entryLength)];
+    input.readFully(bytes);
+    return new String(bytes, Charsets.UTF_8);
+  }
+
+  /**
+   * Read a count of bytes or items, which cannot be more than the entry's length unless the entry
+   * is corrupt (so a corrupt count does not allocate a huge array).
+   */
+  private static int readCount(DataInputStream input, long entryLength) throws IOException {
+    int count = input.readInt();
+    if (count < 0 || count > entryLength) {
+      throw new IOException("invalid count " + count);
+    }
+    return count;
+  }
+
+  private static class StringTable {
+    public List<String> list = new ArrayList<String>();
+
+    private Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+    public void add(String string) {
+      if (string != null && !this.indexes.containsKey(string)) {
+        this.indexes.put(string, this.list.size());
+        this.list.add(string);
+      }
+    }
+
+    public int indexOf(String string) {
+      return string == null ? -1 : this.indexes.get(string);
+    }
+  }
+}
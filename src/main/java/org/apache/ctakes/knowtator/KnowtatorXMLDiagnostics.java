@@ -0,0 +1,269 @@
+package org.apache.ctakes.knowtator;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.stream.Location;
+
+import org.jdom2.Element;
+import org.jdom2.output.XMLOutputter;
+
+/**
+ * Counts the problems found while parsing Knowtator XML, such as missing elements and attributes
+ * and annotations from annotators that are not part of the gold standard.
+ *
+ * Problems are counted per kind (e.g. "no @id on &lt;mention&gt;"), both per file and over all
+ * files parsed. Recording a problem only increments a counter: the offending XML is serialized only
+ * while fewer than {@link #getMaxSamples()} samples have been kept for that kind, and only if the
+ * parser's logger is enabled for {@link #getSampleLevel()}. Each file with problems produces a
+ * single warning summarizing its counts.
+ *
+ * All methods are thread-safe, so one instance can collect the problems of a parser shared by many
+ * threads.
+ */
+public class KnowtatorXMLDiagnostics {
+
+  private static final Logger LOGGER = Logger.getLogger(KnowtatorXMLParser.class.getName());
+
+  private static final ThreadLocal<XMLOutputter> XML_OUTPUTTERS = new ThreadLocal<XMLOutputter>() {
+    @Override
+    protected XMLOutputter initialValue() {
+      return new XMLOutputter();
+    }
+  };
+
+  private volatile Level sampleLevel = Level.FINE;
+
+  private volatile int maxSamples = 5;
+
+  private int fileCount;
+
+  private SortedMap<String, Integer> problemCounts = new TreeMap<String, Integer>();
+
+  private Map<URI, SortedMap<String, Integer>> fileProblemCounts = new LinkedHashMap<URI, SortedMap<String, Integer>>();
+
+  private SortedMap<String, List<String>> samples = new TreeMap<String, List<String>>();
+
+  private SortedMap<String, Integer> ignoredAnnotatorCounts = new TreeMap<String, Integer>();
+
+  /**
+   * The level at which the parser's logger must be enabled for offending XML to be kept as samples
+   * (and logged individually).
+   */
+  public Level getSampleLevel() {
+    return this.sampleLevel;
+  }
+
+  public void setSampleLevel(Level sampleLevel) {
+    this.sampleLevel = sampleLevel;
+  }
+
+  /**
+   * The maximum number of samples of offending XML kept for each kind of problem.
+   */
+  public int getMaxSamples() {
+    return this.maxSamples;
+  }
+
+  public void setMaxSamples(int maxSamples) {
+    this.maxSamples = maxSamples;
+  }
+
+  /**
+   * The number of files parsed (not counting those read from a {@link KnowtatorAnnotationCache}).
+   */
+  public synchronized int getFileCount() {
+    return this.fileCount;
+  }
+
+  /**
+   * The number of problems of each kind, over all files.
+   */
+  public synchronized SortedMap<String, Integer> getProblemCounts() {
+    return new TreeMap<String, Integer>(this.problemCounts);
+  }
+
+  /**
+   * The number of problems of each kind in the given file (empty if the file had no problems).
+   */
+  public synchronized SortedMap<String, Integer> getProblemCounts(URI knowtatorXML) {
+    SortedMap<String, Integer> counts = this.fileProblemCounts.get(knowtatorXML);
+    return counts == null
+        ? new TreeMap<String, Integer>()
+        : new TreeMap<String, Integer>(counts);
+  }
+
+  /**
+   * The files that had at least one problem, in the order they were parsed.
+   */
+  public synchronized List<URI> getFilesWithProblems() {
+    return new ArrayList<URI>(this.fileProblemCounts.keySet());
+  }
+
+  /**
+   * The samples of offending XML kept for the given kind of problem.
+   */
+  public synchronized List<String> getSamples(String kind) {
+    List<String> kindSamples = this.samples.get(kind);
+    return kindSamples == null
+        ? Collections.<String> emptyList()
+        : new ArrayList<String>(kindSamples);
+  }
+
+  /**
+   * The number of annotations skipped for each annotator that was not requested.
+   */
+  public synchronized SortedMap<String, Integer> getIgnoredAnnotatorCounts() {
+    return new TreeMap<String, Integer>(this.ignoredAnnotatorCounts);
+  }
+
+  public synchronized void reset() {
+    this.fileCount = 0;
+    this.problemCounts.clear();
+    this.fileProblemCounts.clear();
+    this.samples.clear();
+    this.ignoredAnnotatorCounts.clear();
+  }
+
+  @Override
+  public synchronized String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append(String.format(
+        "%d Knowtator XML files parsed, %d with problems%n",
+        this.fileCount,
+        this.fileProblemCounts.size()));
+    for (Map.Entry<String, Integer> entry : this.problemCounts.entrySet()) {
+      builder.append(String.format("%8d  %s%n", entry.getValue(), entry.getKey()));
+      for (String sample : this.getSamples(entry.getKey())) {
+        builder.append(String.format("          e.g. %s%n", sample));
+      }
+    }
+    for (Map.Entry<String, Integer> entry : this.ignoredAnnotatorCounts.entrySet()) {
+      builder.append(String.format(
+          "%8d  annotations ignored from annotator \"%s\"%n",
+          entry.getValue(),
+          entry.getKey()));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Start recording the problems of one file. (Not publicly available.)
+   */
+  FileProblems startFile(URI knowtatorXML) {
+    return new FileProblems(knowtatorXML);
+  }
+
+  /**
+   * Add the problems of one file to the totals. (Not publicly available.)
+   */
+  void finishFile(FileProblems file) {
+    synchronized (this) {
+      ++this.fileCount;
+      if (!file.problemCounts.isEmpty()) {
+        this.fileProblemCounts.put(file.knowtatorXML, file.problemCounts);
+        for (Map.Entry<String, Integer> entry : file.problemCounts.entrySet()) {
+          increment(this.problemCounts, entry.getKey(), entry.getValue());
+        }
+      }
+      for (Map.Entry<String, Integer> entry : file.ignoredAnnotatorCounts.entrySet()) {
+        increment(this.ignoredAnnotatorCounts, entry.getKey(), entry.getValue());
+      }
+    }
+    if (!file.problemCounts.isEmpty() && LOGGER.isLoggable(Level.WARNING)) {
+      LOGGER.warning(String.format("problems in %s: %s", file.knowtatorXML, file.problemCounts));
+    }
+    if (!file.ignoredAnnotatorCounts.isEmpty() && LOGGER.isLoggable(Level.FINE)) {
+      LOGGER.fine(String.format(
+          "Ignored annotators %s in %s",
+          file.ignoredAnnotatorCounts.keySet(),
+          file.knowtatorXML));
+    }
+  }
+
+  private synchronized boolean wantsSample(String kind) {
+    List<String> kindSamples = this.samples.get(kind);
+    return kindSamples == null || kindSamples.size() < this.maxSamples;
+  }
+
+  private synchronized void addSample(String kind, String sample) {
+    List<String> kindSamples = this.samples.get(kind);
+    if (kindSamples == null) {
+      kindSamples = new ArrayList<String>();
+      this.samples.put(kind, kindSamples);
+    }
+    if (kindSamples.size() < this.maxSamples) {
+      kindSamples.add(sample);
+    }
+  }
+
+  private static void increment(Map<String, Integer> counts, String key, int amount) {
+    Integer count = counts.get(key);
+    counts.put(key, count == null ? amount : count + amount);
+  }
+
+  /**
+   * The problems of a single file, recorded by a single thread. (Not publicly available.)
+   */
+  class FileProblems {
+
+    private URI knowtatorXML;
+
+    private SortedMap<String, Integer> problemCounts = new TreeMap<String, Integer>();
+
+    private SortedMap<String, Integer> ignoredAnnotatorCounts = new TreeMap<String, Integer>();
+
+    private FileProblems(URI knowtatorXML) {
+      this.knowtatorXML = knowtatorXML;
+    }
+
+    public void missingElement(Element parent, String childName) {
+      this.problem("no <" + childName + "> in <" + parent.getName() + ">", parent);
+    }
+
+    public void missingElement(String parentName, String childName, Location location) {
+      this.problem("no <" + childName + "> in <" + parentName + ">", location);
+    }
+
+    public void missingAttribute(Element element, String attributeName) {
+      this.problem("no @" + attributeName + " on <" + element.getName() + ">", element);
+    }
+
+    public void missingAttribute(String elementName, String attributeName, Location location) {
+      this.problem("no @" + attributeName + " on <" + elementName + ">", location);
+    }
+
+    public void ignoredAnnotator(String annotatorName) {
+      increment(this.ignoredAnnotatorCounts, annotatorName, 1);
+    }
+
+    /**
+     * Count the problem, and serialize the offending XML (an Element, or a stream Location) only if
+     * a sample is wanted.
+     */
+    private void problem(String kind, Object offending) {
+      increment(this.problemCounts, kind, 1);
+      Level level = sampleLevel;
+      if (LOGGER.isLoggable(level) && wantsSample(kind)) {
+        String xml = offending instanceof Element
+            ? XML_OUTPUTTERS.get().outputString((Element) offending)
+            : describe((Location) offending);
+        String sample = String.format("%s: %s", this.knowtatorXML, xml);
+        addSample(kind, sample);
+        LOGGER.log(level, String.format("%s in %s", kind, sample));
+      }
+    }
+
+    private String describe(Location location) {
+      return String.format("line %d, column %d", location.getLineNumber(), location.getColumnNumber());
+    }
+  }
+}
@@ -1,64 +1,242 @@
 package org.apache.ctakes.knowtator;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.logging.Logger;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.jdom2.Element;
 import org.jdom2.JDOMException;
 import org.jdom2.input.SAXBuilder;
-import org.jdom2.output.XMLOutputter;
 
+/**
+ * Parses Knowtator XML files into {@link KnowtatorAnnotation}s.
+ *
+ * A parser is meant to be created once and reused: the XML machinery (JDOM builder) is created
+ * once per thread and kept, and {@link #parse(URI)} may be called
+ * concurrently from several threads once the parser has been configured.
+ */
 public class KnowtatorXMLParser {
 
-  private static final Logger LOGGER = Logger.getLogger(KnowtatorXMLParser.class.getName());
+  /**
+   * How the Knowtator XML is read: {@link #DOM} builds a JDOM tree and walks it,
+   * {@link #STREAMING} reads each element exactly once with StAX and never builds a tree.
+   */
+  public static enum Mode {
+    DOM, STREAMING
+  };
+
+  private static final XMLInputFactory STREAM_FACTORY = XMLInputFactory.newInstance();
+  static {
+    STREAM_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+  }
+
+  /**
+   * SAXBuilders are not thread-safe, but are expensive to create (JAXP factory lookups and a new
+   * XMLReader), so each thread keeps one and reuses its XMLReader across documents.
+   */
+  private static final ThreadLocal<SAXBuilder> SAX_BUILDERS = new ThreadLocal<SAXBuilder>() {
+    @Override
+    protected SAXBuilder initialValue() {
+      SAXBuilder builder = new SAXBuilder();
+      builder.setReuseParser(true);
+      return builder;
+    }
+  };
+
+  private final Set<String> annotatorNames;
 
-  private XMLOutputter xmlOutputter = new XMLOutputter();
+  private volatile Mode mode = Mode.DOM;
 
-  private Set<String> annotatorNames;
+  private volatile KnowtatorAnnotationCache cache;
+
+  private final KnowtatorXMLDiagnostics diagnostics = new KnowtatorXMLDiagnostics();
 
   public KnowtatorXMLParser(String... annotatorNames) {
     this(new HashSet<String>(Arrays.asList(annotatorNames)));
   }
 
   public KnowtatorXMLParser(Set<String> annotatorNames) {
-    this.annotatorNames = annotatorNames;
+    this.annotatorNames = Collections.unmodifiableSet(new HashSet<String>(annotatorNames));
+  }
+
+  public Mode getMode() {
+    return this.mode;
+  }
+
+  public void setMode(Mode mode) {
+    this.mode = mode;
+  }
+
+  /**
+   * The problems (missing elements, attributes, etc.) found in all files parsed so far.
+   */
+  public KnowtatorXMLDiagnostics getDiagnostics() {
+    return this.diagnostics;
+  }
+
+  public KnowtatorAnnotationCache getCache() {
+    return this.cache;
+  }
+
+  /**
+   * Set a cache to be checked before parsing, and filled after parsing (<code>null</code> for no
+   * caching).
+   */
+  public void setCache(KnowtatorAnnotationCache cache) {
+    this.cache = cache;
   }
 
   public Collection<KnowtatorAnnotation> parse(URI knowtatorXML) throws JDOMException, IOException {
+    File cacheableFile = this.cache == null ? null : KnowtatorAnnotationCache.toFile(knowtatorXML);
+    if (cacheableFile != null) {
+      Collection<KnowtatorAnnotation> cached = this.cache.get(cacheableFile, this.annotatorNames);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    KnowtatorXMLDiagnostics.FileProblems problems = this.diagnostics.startFile(knowtatorXML);
+    Collection<KnowtatorAnnotation> annotations;
+    try {
+      switch (this.mode) {
+        case STREAMING:
+          annotations = this.parseStreaming(knowtatorXML, problems);
+          break;
+        default:
+          annotations = this.parseDOM(knowtatorXML, problems);
+          break;
+      }
+    } finally {
+      this.diagnostics.finishFile(problems);
+    }
+    if (cacheableFile != null) {
+      this.cache.put(cacheableFile, this.annotatorNames, annotations);
+    }
+    return annotations;
+  }
 
-    Element annotationsElem = new SAXBuilder().build(knowtatorXML.toURL()).getRootElement();
+  /**
+   * Parse many Knowtator XML files, one thread per available processor.
+   *
+   * @see #parseAll(Collection, ExecutorService)
+   */
+  public Map<URI, Collection<KnowtatorAnnotation>> parseAll(Collection<URI> knowtatorXMLs)
+      throws JDOMException, IOException {
+    return this.parseAll(knowtatorXMLs, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Parse many Knowtator XML files using the given number of threads.
+   *
+   * @see #parseAll(Collection, ExecutorService)
+   */
+  public Map<URI, Collection<KnowtatorAnnotation>> parseAll(
+      Collection<URI> knowtatorXMLs,
+      int nThreads) throws JDOMException, IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+    try {
+      return this.parseAll(knowtatorXMLs, executor);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Parse many Knowtator XML files on the given executor. Since {@link #parse(URI)} is thread-safe,
+   * all worker threads share this parser, each with its own thread-confined XML machinery.
+   *
+   * @return The annotations of each file, in the iteration order of the files given.
+   */
+  public Map<URI, Collection<KnowtatorAnnotation>> parseAll(
+      Collection<URI> knowtatorXMLs,
+      ExecutorService executor) throws JDOMException, IOException {
+    Map<URI, Future<Collection<KnowtatorAnnotation>>> futures = new LinkedHashMap<URI, Future<Collection<KnowtatorAnnotation>>>();
+    for (final URI knowtatorXML : knowtatorXMLs) {
+      futures.put(knowtatorXML, executor.submit(new Callable<Collection<KnowtatorAnnotation>>() {
+        @Override
+        public Collection<KnowtatorAnnotation> call() throws Exception {
+          return KnowtatorXMLParser.this.parse(knowtatorXML);
+        }
+      }));
+    }
+    Map<URI, Collection<KnowtatorAnnotation>> results = new LinkedHashMap<URI, Collection<KnowtatorAnnotation>>();
+    try {
+      for (Map.Entry<URI, Future<Collection<KnowtatorAnnotation>>> entry : futures.entrySet()) {
+        results.put(entry.getKey(), entry.getValue().get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while parsing Knowtator XML");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof JDOMException) {
+        throw (JDOMException) cause;
+      } else if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else {
+        throw new RuntimeException(cause);
+      }
+    } finally {
+      for (Future<Collection<KnowtatorAnnotation>> future : futures.values()) {
+        future.cancel(true);
+      }
+    }
+    return results;
+  }
+
+  private Collection<KnowtatorAnnotation> parseDOM(
+      URI knowtatorXML,
+      KnowtatorXMLDiagnostics.FileProblems problems) throws JDOMException, IOException {
+
+    Element annotationsElem = SAX_BUILDERS.get().build(knowtatorXML.toURL()).getRootElement();
 
     // parse <annotation> elements
-    Set<String> ignoredAnnotators = new HashSet<String>();
     Map<String, KnowtatorAnnotation> annotations = new HashMap<String, KnowtatorAnnotation>();
     for (Element annotationElem : annotationsElem.getChildren("annotation")) {
-      for (Element annotatorElem : this.getChild(annotationElem, "annotator")) {
+      for (Element annotatorElem : getChild(problems, annotationElem, "annotator")) {
         String annotatorName = annotatorElem.getText();
         if (!this.annotatorNames.contains(annotatorName)) {
-          ignoredAnnotators.add(annotatorName);
+          problems.ignoredAnnotator(annotatorName);
         } else {
-          for (Element mentionElem : this.getChild(annotationElem, "mention")) {
-            for (String id : this.getAttributeValue(mentionElem, "id")) {
+          for (Element mentionElem : getChild(problems, annotationElem, "mention")) {
+            for (String id : getAttributeValue(problems, mentionElem, "id")) {
               KnowtatorAnnotation annotation = new KnowtatorAnnotation();
               annotation.id = id;
               annotations.put(id, annotation);
               List<Element> spanElems = annotationElem.getChildren("span");
               if (!spanElems.isEmpty()) {
-                for (Element spannedTextElem : this.getChild(annotationElem, "spannedText")) {
+                for (Element spannedTextElem : getChild(problems, annotationElem, "spannedText")) {
                   annotation.spannedText = spannedTextElem.getText();
                 }
                 for (Element spanElem : spanElems) {
-                  for (String startStr : this.getAttributeValue(spanElem, "start")) {
-                    for (String endStr : this.getAttributeValue(spanElem, "end")) {
+                  for (String startStr : getAttributeValue(problems, spanElem, "start")) {
+                    for (String endStr : getAttributeValue(problems, spanElem, "end")) {
                       annotation.addSpan(Integer.parseInt(startStr), Integer.parseInt(endStr));
                     }
                   }
@@ -69,12 +247,12 @@ public class KnowtatorXMLParser {
         }
       }
     }
-    LOGGER.fine(String.format("Ignored annotators %s in %s", ignoredAnnotators, knowtatorXML));
 
     // parse <stringSlotMention> elements
     Map<String, Slot<String>> stringSlots = new HashMap<String, Slot<String>>();
     for (Element slotMentionElem : annotationsElem.getChildren("stringSlotMention")) {
-      for (IdAndSlot<String> idAndSlot : this.parseSlotMention(
+      for (IdAndSlot<String> idAndSlot : parseSlotMention(
+          problems,
           slotMentionElem,
           "stringSlotMentionValue")) {
         stringSlots.put(idAndSlot.id, idAndSlot.slot);
@@ -84,7 +262,8 @@ public class KnowtatorXMLParser {
     // parse <booleanSlotMention> elements
     Map<String, Slot<Boolean>> booleanSlots = new HashMap<String, Slot<Boolean>>();
     for (Element slotMentionElem : annotationsElem.getChildren("booleanSlotMention")) {
-      for (IdAndSlot<String> idAndSlot : this.parseSlotMention(
+      for (IdAndSlot<String> idAndSlot : parseSlotMention(
+          problems,
           slotMentionElem,
           "booleanSlotMentionValue")) {
         Slot<String> slot = idAndSlot.slot;
@@ -96,7 +275,8 @@ public class KnowtatorXMLParser {
     // parse <complexSlotMention> elements
     Map<String, Slot<KnowtatorAnnotation>> mentionSlots = new HashMap<String, Slot<KnowtatorAnnotation>>();
     for (Element slotMentionElem : annotationsElem.getChildren("complexSlotMention")) {
-      for (IdAndSlot<String> idAndSlot : this.parseSlotMention(
+      for (IdAndSlot<String> idAndSlot : parseSlotMention(
+          problems,
           slotMentionElem,
           "complexSlotMentionValue")) {
         Slot<String> slot = idAndSlot.slot;
@@ -109,25 +289,25 @@ public class KnowtatorXMLParser {
 
     // parse <classMention> elements
     for (Element classMentionElem : annotationsElem.getChildren("classMention")) {
-      for (String id : this.getAttributeValue(classMentionElem, "id")) {
+      for (String id : getAttributeValue(problems, classMentionElem, "id")) {
         KnowtatorAnnotation annotation = annotations.get(id);
         if (annotation == null) {
           continue;
         }
         annotation.type = classMentionElem.getChildText("mentionClass");
         for (Element hasSlotMentionElem : classMentionElem.getChildren("hasSlotMention")) {
-          for (String slotId : this.getAttributeValue(hasSlotMentionElem, "id")) {
+          for (String slotId : getAttributeValue(problems, hasSlotMentionElem, "id")) {
             Slot<String> stringSlot = stringSlots.get(slotId);
             if (stringSlot != null) {
-              annotation.stringSlots.put(stringSlot.name, stringSlot.value);
+              annotation.addStringSlot(stringSlot.name, stringSlot.value);
             } else {
               Slot<Boolean> booleanSlot = booleanSlots.get(slotId);
               if (booleanSlot != null) {
-                annotation.booleanSlots.put(booleanSlot.name, booleanSlot.value);
+                annotation.addBooleanSlot(booleanSlot.name, booleanSlot.value);
               } else {
                 Slot<KnowtatorAnnotation> mentionSlot = mentionSlots.get(slotId);
                 if (mentionSlot != null) {
-                  annotation.annotationSlots.put(mentionSlot.name, mentionSlot.value);
+                  annotation.addAnnotationSlot(mentionSlot.name, mentionSlot.value);
                 } else {
                   throw new RuntimeException("no slot for " + slotId);
                 }
@@ -141,35 +321,276 @@ public class KnowtatorXMLParser {
     return annotations.values();
   }
 
-  private Option<Element> getChild(final Element element, final String cname) {
+  private Collection<KnowtatorAnnotation> parseStreaming(
+      URI knowtatorXML,
+      KnowtatorXMLDiagnostics.FileProblems problems) throws IOException {
+    InputStream inputStream = knowtatorXML.toURL().openStream();
+    try {
+      XMLStreamReader reader = STREAM_FACTORY.createXMLStreamReader(inputStream);
+      try {
+        return this.parseStreaming(reader, problems);
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException("error reading " + knowtatorXML, e);
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  private Collection<KnowtatorAnnotation> parseStreaming(
+      XMLStreamReader reader,
+      KnowtatorXMLDiagnostics.FileProblems problems) throws XMLStreamException {
+    Map<String, KnowtatorAnnotation> annotations = new HashMap<String, KnowtatorAnnotation>();
+    Map<String, Slot<String>> stringSlots = new HashMap<String, Slot<String>>();
+    Map<String, Slot<Boolean>> booleanSlots = new HashMap<String, Slot<Boolean>>();
+    Map<String, Slot<String>> unresolvedMentionSlots = new HashMap<String, Slot<String>>();
+    List<ClassMention> classMentions = new ArrayList<ClassMention>();
+
+    // move to the root <annotations> element, then visit each of its children once
+    while (reader.next() != XMLStreamConstants.START_ELEMENT) {
+      // skip prolog, comments, DTD, etc.
+    }
+    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      String name = reader.getLocalName();
+      if ("annotation".equals(name)) {
+        this.readAnnotation(reader, problems, annotations);
+      } else if ("stringSlotMention".equals(name)) {
+        for (IdAndSlot<String> idAndSlot : readSlotMention(reader, problems, "stringSlotMentionValue")) {
+          stringSlots.put(idAndSlot.id, idAndSlot.slot);
+        }
+      } else if ("booleanSlotMention".equals(name)) {
+        for (IdAndSlot<String> idAndSlot : readSlotMention(reader, problems, "booleanSlotMentionValue")) {
+          Slot<String> slot = idAndSlot.slot;
+          Boolean value = Boolean.parseBoolean(slot.value);
+          booleanSlots.put(idAndSlot.id, new Slot<Boolean>(slot.name, value));
+        }
+      } else if ("complexSlotMention".equals(name)) {
+        for (IdAndSlot<String> idAndSlot : readSlotMention(reader, problems, "complexSlotMentionValue")) {
+          unresolvedMentionSlots.put(idAndSlot.id, idAndSlot.slot);
+        }
+      } else if ("classMention".equals(name)) {
+        for (ClassMention classMention : readClassMention(reader, problems)) {
+          classMentions.add(classMention);
+        }
+      } else {
+        skipElement(reader);
+      }
+    }
+
+    // slot values may refer to annotations anywhere in the file, so resolve them at the end
+    Map<String, Slot<KnowtatorAnnotation>> mentionSlots = new HashMap<String, Slot<KnowtatorAnnotation>>();
+    for (Map.Entry<String, Slot<String>> entry : unresolvedMentionSlots.entrySet()) {
+      Slot<String> slot = entry.getValue();
+      KnowtatorAnnotation mention = annotations.get(slot.value);
+      if (mention != null) {
+        mentionSlots.put(entry.getKey(), new Slot<KnowtatorAnnotation>(slot.name, mention));
+      }
+    }
+    for (ClassMention classMention : classMentions) {
+      KnowtatorAnnotation annotation = annotations.get(classMention.id);
+      if (annotation == null) {
+        continue;
+      }
+      annotation.type = classMention.mentionClass;
+      for (String slotId : classMention.slotIds) {
+        Slot<String> stringSlot = stringSlots.get(slotId);
+        if (stringSlot != null) {
+          annotation.addStringSlot(stringSlot.name, stringSlot.value);
+        } else {
+          Slot<Boolean> booleanSlot = booleanSlots.get(slotId);
+          if (booleanSlot != null) {
+            annotation.addBooleanSlot(booleanSlot.name, booleanSlot.value);
+          } else {
+            Slot<KnowtatorAnnotation> mentionSlot = mentionSlots.get(slotId);
+            if (mentionSlot != null) {
+              annotation.addAnnotationSlot(mentionSlot.name, mentionSlot.value);
+            } else {
+              throw new RuntimeException("no slot for " + slotId);
+            }
+          }
+        }
+      }
+    }
+
+    return annotations.values();
+  }
+
+  private void readAnnotation(
+      XMLStreamReader reader,
+      KnowtatorXMLDiagnostics.FileProblems problems,
+      Map<String, KnowtatorAnnotation> annotations) throws XMLStreamException {
+    String annotatorName = null;
+    String mentionId = null;
+    boolean hasMention = false;
+    String spannedText = null;
+    boolean hasSpannedText = false;
+    List<int[]> spans = new ArrayList<int[]>();
+    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      String name = reader.getLocalName();
+      if ("annotator".equals(name) && annotatorName == null) {
+        annotatorName = reader.getElementText();
+      } else if ("mention".equals(name) && !hasMention) {
+        hasMention = true;
+        mentionId = getAttributeValue(reader, problems, "id");
+        skipElement(reader);
+      } else if ("spannedText".equals(name) && !hasSpannedText) {
+        hasSpannedText = true;
+        spannedText = reader.getElementText();
+      } else if ("span".equals(name)) {
+        String startStr = getAttributeValue(reader, problems, "start");
+        String endStr = startStr == null ? null : getAttributeValue(reader, problems, "end");
+        if (startStr != null && endStr != null) {
+          spans.add(new int[] { Integer.parseInt(startStr), Integer.parseInt(endStr) });
+        }
+        skipElement(reader);
+      } else {
+        skipElement(reader);
+      }
+    }
+
+    // same checks, in the same order, as the DOM-based parser
+    if (annotatorName == null) {
+      problems.missingElement("annotation", "annotator", reader.getLocation());
+    } else if (!this.annotatorNames.contains(annotatorName)) {
+      problems.ignoredAnnotator(annotatorName);
+    } else if (!hasMention) {
+      problems.missingElement("annotation", "mention", reader.getLocation());
+    } else if (mentionId != null) {
+      KnowtatorAnnotation annotation = new KnowtatorAnnotation();
+      annotation.id = mentionId;
+      annotations.put(mentionId, annotation);
+      if (!spans.isEmpty()) {
+        if (!hasSpannedText) {
+          problems.missingElement("annotation", "spannedText", reader.getLocation());
+        }
+        annotation.spannedText = spannedText;
+        for (int[] span : spans) {
+          annotation.addSpan(span[0], span[1]);
+        }
+      }
+    }
+  }
+
+  private static Option<IdAndSlot<String>> readSlotMention(
+      XMLStreamReader reader,
+      KnowtatorXMLDiagnostics.FileProblems problems,
+      String slotMentionValueElemName) throws XMLStreamException {
+    String slotMentionElemName = reader.getLocalName();
+    String slotId = getAttributeValue(reader, problems, "id");
+    String slotName = null;
+    boolean hasMentionSlot = false;
+    String slotValue = null;
+    boolean hasSlotMentionValue = false;
+    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      String name = reader.getLocalName();
+      if ("mentionSlot".equals(name) && !hasMentionSlot) {
+        hasMentionSlot = true;
+        slotName = getAttributeValue(reader, problems, "id");
+      } else if (slotMentionValueElemName.equals(name) && !hasSlotMentionValue) {
+        hasSlotMentionValue = true;
+        slotValue = getAttributeValue(reader, problems, "value");
+      }
+      skipElement(reader);
+    }
+    if (slotId != null && !hasMentionSlot) {
+      problems.missingElement(slotMentionElemName, "mentionSlot", reader.getLocation());
+    } else if (slotName != null && !hasSlotMentionValue) {
+      problems.missingElement(slotMentionElemName, slotMentionValueElemName, reader.getLocation());
+    }
+    IdAndSlot<String> result = null;
+    if (slotId != null && slotName != null && slotValue != null) {
+      result = new IdAndSlot<String>(slotId, new Slot<String>(slotName, slotValue));
+    }
+    return new Option<IdAndSlot<String>>(result);
+  }
+
+  private static Option<ClassMention> readClassMention(
+      XMLStreamReader reader,
+      KnowtatorXMLDiagnostics.FileProblems problems) throws XMLStreamException {
+    String id = getAttributeValue(reader, problems, "id");
+    ClassMention classMention = new ClassMention(id);
+    boolean hasMentionClass = false;
+    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      String name = reader.getLocalName();
+      if ("mentionClass".equals(name) && !hasMentionClass) {
+        hasMentionClass = true;
+        classMention.mentionClass = reader.getElementText();
+      } else if ("hasSlotMention".equals(name)) {
+        String slotId = getAttributeValue(reader, problems, "id");
+        if (slotId != null) {
+          classMention.slotIds.add(slotId);
+        }
+        skipElement(reader);
+      } else {
+        skipElement(reader);
+      }
+    }
+    return new Option<ClassMention>(id == null ? null : classMention);
+  }
+
+  private static String getAttributeValue(
+      XMLStreamReader reader,
+      KnowtatorXMLDiagnostics.FileProblems problems,
+      String attname) {
+    String value = reader.getAttributeValue(null, attname);
+    if (value == null) {
+      problems.missingAttribute(reader.getLocalName(), attname, reader.getLocation());
+    }
+    return value;
+  }
+
+  /**
+   * Advance the reader from a START_ELEMENT to its matching END_ELEMENT, ignoring all content.
+   */
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        ++depth;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        --depth;
+      }
+    }
+  }
+
+  private static Option<Element> getChild(
+      KnowtatorXMLDiagnostics.FileProblems problems,
+      final Element element,
+      final String cname) {
     final Element child = element.getChild(cname);
     if (child == null) {
-      String xml = this.xmlOutputter.outputString(element);
-      LOGGER.warning(String.format("no %s for %s", cname, xml));
+      problems.missingElement(element, cname);
     }
     return new Option<Element>(child);
   }
 
-  private Option<String> getAttributeValue(final Element element, final String attname) {
+  private static Option<String> getAttributeValue(
+      KnowtatorXMLDiagnostics.FileProblems problems,
+      final Element element,
+      final String attname) {
     final String value = element.getAttributeValue(attname);
     if (value == null) {
-      String xml = this.xmlOutputter.outputString(element);
-      LOGGER.warning(String.format("no %s for %s", attname, xml));
+      problems.missingAttribute(element, attname);
     }
     return new Option<String>(value);
   }
 
-  private Option<IdAndSlot<String>> parseSlotMention(
+  private static Option<IdAndSlot<String>> parseSlotMention(
+      KnowtatorXMLDiagnostics.FileProblems problems,
       Element slotMentionElem,
       String slotMentionValueElemName) {
     IdAndSlot<String> result = null;
-    for (String slotId : this.getAttributeValue(slotMentionElem, "id")) {
-      for (Element mentionSlotElem : this.getChild(slotMentionElem, "mentionSlot")) {
-        for (String slotName : this.getAttributeValue(mentionSlotElem, "id")) {
-          for (Element slotMentionValueElem : this.getChild(
+    for (String slotId : getAttributeValue(problems, slotMentionElem, "id")) {
+      for (Element mentionSlotElem : getChild(problems, slotMentionElem, "mentionSlot")) {
+        for (String slotName : getAttributeValue(problems, mentionSlotElem, "id")) {
+          for (Element slotMentionValueElem : getChild(
+              problems,
               slotMentionElem,
               slotMentionValueElemName)) {
-            for (String slotValue : this.getAttributeValue(slotMentionValueElem, "value")) {
+            for (String slotValue : getAttributeValue(problems, slotMentionValueElem, "value")) {
               result = new IdAndSlot<String>(slotId, new Slot<String>(slotName, slotValue));
             }
           }
@@ -232,4 +653,16 @@ public class KnowtatorXMLParser {
       this.slot = slot;
     }
   }
+
+  private static class ClassMention {
+    public String id;
+
+    public String mentionClass;
+
+    public List<String> slotIds = new ArrayList<String>();
+
+    public ClassMention(String id) {
+      this.id = id;
+    }
+  }
 }
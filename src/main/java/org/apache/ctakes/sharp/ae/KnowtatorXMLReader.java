@@ -6,18 +6,23 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Logger;
 
 import org.apache.ctakes.knowtator.KnowtatorAnnotation;
+import org.apache.ctakes.knowtator.KnowtatorAnnotationCache;
+import org.apache.ctakes.knowtator.KnowtatorXMLDiagnostics;
 import org.apache.ctakes.knowtator.KnowtatorXMLParser;
+import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.cas.FSArray;
 import org.apache.uima.jcas.cas.TOP;
 import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.resource.ResourceInitializationException;
 import org.cleartk.util.ViewURIUtil;
 import org.jdom2.JDOMException;
 import org.uimafit.component.JCasAnnotator_ImplBase;
@@ -39,11 +44,31 @@ import edu.mayo.bmi.uima.core.type.textsem.TimeMention;
 
 public abstract class KnowtatorXMLReader extends JCasAnnotator_ImplBase {
 
+  private static final Logger LOGGER = Logger.getLogger(KnowtatorXMLReader.class.getName());
+
   public static final String PARAM_KNOWTATOR_XML_DIRECTORY = "knowtatorXMLDirectory";
 
   @ConfigurationParameter(name = PARAM_KNOWTATOR_XML_DIRECTORY, mandatory = true)
   protected File knowtatorXMLDirectory;
 
+  public static final String PARAM_STREAMING_PARSER = "streamingParser";
+
+  /**
+   * If true, read the Knowtator XML with the single-pass StAX parser instead of building a JDOM
+   * tree (see {@link KnowtatorXMLParser.Mode})
+   */
+  @ConfigurationParameter(name = PARAM_STREAMING_PARSER, mandatory = false, defaultValue = "false")
+  protected boolean streamingParser;
+
+  public static final String PARAM_CACHE_DIRECTORY = "cacheDirectory";
+
+  /**
+   * If set, parsed Knowtator XML files are cached in this directory (see
+   * {@link KnowtatorAnnotationCache})
+   */
+  @ConfigurationParameter(name = PARAM_CACHE_DIRECTORY, mandatory = false)
+  protected File cacheDirectory;
+
   /**
    * Given the URI of the plain text file, determines the URI of the Knowtator XML file
    */
@@ -54,6 +79,51 @@ public abstract class KnowtatorXMLReader extends JCasAnnotator_ImplBase {
    */
   protected abstract String[] getAnnotatorNames();
 
+  private KnowtatorXMLParser parser;
+
+  /**
+   * The handler for each Knowtator annotation type (see {@link #registerHandler})
+   */
+  private Map<String, AnnotationHandler> handlers = new HashMap<String, AnnotationHandler>();
+
+  /**
+   * Reused for each annotation to track which of its slots have been consumed
+   */
+  private SlotConsumer slots = new SlotConsumer();
+
+  /**
+   * Register the handler that converts Knowtator annotations of the given type into CAS objects,
+   * replacing any handler previously registered for that type. Subclasses may call this after
+   * <code>super.initialize(...)</code> to add or override types.
+   */
+  protected void registerHandler(String type, AnnotationHandler handler) {
+    this.handlers.put(type, handler);
+  }
+
+  @Override
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    super.initialize(context);
+    this.registerDefaultHandlers();
+
+    // the parser is thread-safe and keeps its XML machinery between documents, so create it once
+    this.parser = new KnowtatorXMLParser(this.getAnnotatorNames());
+    if (this.streamingParser) {
+      this.parser.setMode(KnowtatorXMLParser.Mode.STREAMING);
+    }
+    if (this.cacheDirectory != null) {
+      this.parser.setCache(KnowtatorAnnotationCache.forDirectory(this.cacheDirectory));
+    }
+  }
+
+  @Override
+  public void collectionProcessComplete() throws AnalysisEngineProcessException {
+    super.collectionProcessComplete();
+    KnowtatorXMLDiagnostics diagnostics = this.parser.getDiagnostics();
+    if (!diagnostics.getFilesWithProblems().isEmpty()) {
+      LOGGER.info(diagnostics.toString());
+    }
+  }
+
   @Override
   public void process(JCas jCas) throws AnalysisEngineProcessException {
     // determine Knowtator XML file from URI of CAS
@@ -61,178 +131,166 @@ public abstract class KnowtatorXMLReader extends JCasAnnotator_ImplBase {
     URI knowtatorXML = this.getKnowtatorXML(uri);
 
     // parse the Knowtator XML file into annotation objects
-    KnowtatorXMLParser parser = new KnowtatorXMLParser(this.getAnnotatorNames());
     Collection<KnowtatorAnnotation> annotations;
     try {
-      annotations = parser.parse(knowtatorXML);
+      annotations = this.parser.parse(knowtatorXML);
     } catch (JDOMException e) {
       throw new AnalysisEngineProcessException(e);
     } catch (IOException e) {
       throw new AnalysisEngineProcessException(e);
     }
 
-    // the relation types
-    Set<String> entityRelationTypes = new HashSet<String>();
-    entityRelationTypes.add("location_of");
-    entityRelationTypes.add("degree_of");
-    Set<String> eventRelationTypes = new HashSet<String>();
-    eventRelationTypes.add("TLINK");
-    eventRelationTypes.add("ALINK");
-
     // create a CAS object for each annotation
-    Map<String, Annotation> idAnnotationMap = new HashMap<String, Annotation>();
-    Map<String, TOP> idTopMap = new HashMap<String, TOP>();
-    List<DelayedRelation> delayedRelations = new ArrayList<DelayedRelation>();
-    List<DelayedFeature<?>> delayedFeatures = new ArrayList<DelayedFeature<?>>();
+    Document document = new Document(jCas);
     for (KnowtatorAnnotation annotation : annotations) {
+      AnnotationHandler handler = this.handlers.get(annotation.type);
+      if (handler == null) {
+        throw new IllegalArgumentException("Unrecognized type: " + annotation.type);
+      }
+      this.slots.reset(annotation);
+      handler.handle(annotation, this.slots, document);
+
+      // make sure all slots have been consumed
+      this.slots.checkAllConsumed();
+    }
 
-      // copy the slots so we can remove them as we use them
-      Map<String, String> stringSlots = new HashMap<String, String>(annotation.stringSlots);
-      Map<String, Boolean> booleanSlots = new HashMap<String, Boolean>(annotation.booleanSlots);
-      Map<String, KnowtatorAnnotation> annotationSlots = new HashMap<String, KnowtatorAnnotation>(
-          annotation.annotationSlots);
-      KnowtatorAnnotation.Span coveringSpan = annotation.getCoveringSpan();
+    // add all annotations to the TOP map
+    document.idTopMap.putAll(document.idAnnotationMap);
 
-      if ("Anatomical_site".equals(annotation.type)) {
-        EntityMention entityMention = new EntityMention(jCas, coveringSpan.begin, coveringSpan.end);
-        addEntityMentionFeatures(
+    // all mentions should be added, so add features that required other annotations
+    for (DelayedFeature<?> delayedFeature : document.delayedFeatures) {
+      delayedFeature.setValueFrom(document.idAnnotationMap);
+    }
+
+    // all mentions should be added, so add relations between annotations
+    for (DelayedRelation delayedRelation : document.delayedRelations) {
+      delayedRelation.addToIndexes(jCas, document.idAnnotationMap);
+    }
+  }
+
+  private void registerDefaultHandlers() {
+    this.registerHandler("Anatomical_site", new AnnotationHandler() {
+      @Override
+      public void handle(KnowtatorAnnotation annotation, SlotConsumer slots, Document document) {
+        EntityMention entityMention = addEntityMention(
             annotation,
-            entityMention,
-            jCas,
             CONST.NE_TYPE_ID_ANATOMICAL_SITE,
-            stringSlots,
-            booleanSlots,
-            annotationSlots,
-            idAnnotationMap,
-            delayedFeatures);
-        KnowtatorAnnotation bodySide = annotationSlots.remove("body_side");
+            slots,
+            document);
+        KnowtatorAnnotation bodySide = slots.removeAnnotation("body_side");
         if (bodySide != null) {
-          delayedFeatures.add(new DelayedFeature<EntityMention>(entityMention, bodySide) {
+          document.delayedFeatures.add(new DelayedFeature<EntityMention>(entityMention, bodySide) {
             @Override
             protected void setValue(TOP valueAnnotation) {
               // TODO: this.annotation.setBodySide(...)
             }
           });
         }
-        KnowtatorAnnotation bodyLaterality = annotationSlots.remove("body_laterality");
+        KnowtatorAnnotation bodyLaterality = slots.removeAnnotation("body_laterality");
         if (bodyLaterality != null) {
-          delayedFeatures.add(new DelayedFeature<EntityMention>(entityMention, bodyLaterality) {
+          document.delayedFeatures.add(new DelayedFeature<EntityMention>(
+              entityMention,
+              bodyLaterality) {
             @Override
             protected void setValue(TOP valueAnnotation) {
               // TODO: this.annotation.setBodyLaterality(...)
             }
           });
         }
+      }
+    });
 
-      } else if ("Disease_Disorder".equals(annotation.type)) {
-        EntityMention entityMention = new EntityMention(jCas, coveringSpan.begin, coveringSpan.end);
-        addEntityMentionFeatures(
+    this.registerHandler("Disease_Disorder", new AnnotationHandler() {
+      @Override
+      public void handle(KnowtatorAnnotation annotation, SlotConsumer slots, Document document) {
+        EntityMention entityMention = addEntityMention(
             annotation,
-            entityMention,
-            jCas,
             CONST.NE_TYPE_ID_DISORDER,
-            stringSlots,
-            booleanSlots,
-            annotationSlots,
-            idAnnotationMap,
-            delayedFeatures);
-        KnowtatorAnnotation bodyLocation = annotationSlots.remove("body_location");
+            slots,
+            document);
+        KnowtatorAnnotation bodyLocation = slots.removeAnnotation("body_location");
         if (bodyLocation != null) {
-          delayedFeatures.add(new DelayedFeature<EntityMention>(entityMention, bodyLocation) {
+          document.delayedFeatures.add(new DelayedFeature<EntityMention>(
+              entityMention,
+              bodyLocation) {
             @Override
             protected void setValue(TOP valueAnnotation) {
               // TODO: this.annotation.setBodyLocation(...)
             }
           });
         }
-        KnowtatorAnnotation severity = annotationSlots.remove("severity");
+        KnowtatorAnnotation severity = slots.removeAnnotation("severity");
         if (severity != null) {
-          delayedFeatures.add(new DelayedFeature<EntityMention>(entityMention, severity) {
+          document.delayedFeatures.add(new DelayedFeature<EntityMention>(entityMention, severity) {
             @Override
             protected void setValue(TOP valueAnnotation) {
               // TODO: this.annotation.setSeverity(...)
             }
           });
         }
+      }
+    });
 
-      } else if ("Medications/Drugs".equals(annotation.type)) {
-        EntityMention entityMention = new EntityMention(jCas, coveringSpan.begin, coveringSpan.end);
-        addEntityMentionFeatures(
-            annotation,
-            entityMention,
-            jCas,
-            CONST.NE_TYPE_ID_DRUG,
-            stringSlots,
-            booleanSlots,
-            annotationSlots,
-            idAnnotationMap,
-            delayedFeatures);
-
-      } else if ("Procedure".equals(annotation.type)) {
-        EntityMention entityMention = new EntityMention(jCas, coveringSpan.begin, coveringSpan.end);
-        addEntityMentionFeatures(
-            annotation,
-            entityMention,
-            jCas,
-            CONST.NE_TYPE_ID_PROCEDURE,
-            stringSlots,
-            booleanSlots,
-            annotationSlots,
-            idAnnotationMap,
-            delayedFeatures);
-
-      } else if ("Sign_symptom".equals(annotation.type)) {
-        EntityMention entityMention = new EntityMention(jCas, coveringSpan.begin, coveringSpan.end);
-        addEntityMentionFeatures(
+    this.registerHandler("Medications/Drugs", new EntityMentionHandler(CONST.NE_TYPE_ID_DRUG));
+
+    this.registerHandler("Procedure", new EntityMentionHandler(CONST.NE_TYPE_ID_PROCEDURE));
+
+    this.registerHandler("Sign_symptom", new AnnotationHandler() {
+      @Override
+      public void handle(KnowtatorAnnotation annotation, SlotConsumer slots, Document document) {
+        EntityMention entityMention = addEntityMention(
             annotation,
-            entityMention,
-            jCas,
             CONST.NE_TYPE_ID_FINDING,
-            stringSlots,
-            booleanSlots,
-            annotationSlots,
-            idAnnotationMap,
-            delayedFeatures);
-        KnowtatorAnnotation bodyLocation = annotationSlots.remove("body_location");
+            slots,
+            document);
+        KnowtatorAnnotation bodyLocation = slots.removeAnnotation("body_location");
         if (bodyLocation != null) {
-          delayedFeatures.add(new DelayedFeature<EntityMention>(entityMention, bodyLocation) {
+          document.delayedFeatures.add(new DelayedFeature<EntityMention>(
+              entityMention,
+              bodyLocation) {
             @Override
             protected void setValue(TOP valueAnnotation) {
               // TODO: this.annotation.setBodyLocation(...)
             }
           });
         }
+      }
+    });
 
-      } else if ("EVENT".equals(annotation.type)) {
+    this.registerHandler("EVENT", new AnnotationHandler() {
+      @Override
+      public void handle(KnowtatorAnnotation annotation, SlotConsumer slots, Document document) {
+        JCas jCas = document.jCas;
+        KnowtatorAnnotation.Span coveringSpan = annotation.getCoveringSpan();
 
         // collect the event properties (setting defaults as necessary)
         EventProperties eventProperties = new EventProperties(jCas);
-        eventProperties.setCategory(stringSlots.remove("type"));
+        eventProperties.setCategory(slots.removeString("type"));
         if (eventProperties.getCategory() == null) {
           eventProperties.setCategory("N/A");
         }
-        eventProperties.setContextualModality(stringSlots.remove("contextualmoduality"));
+        eventProperties.setContextualModality(slots.removeString("contextualmoduality"));
         if (eventProperties.getContextualModality() == null) {
           eventProperties.setContextualModality("ACTUAL");
         }
-        eventProperties.setContextualAspect(stringSlots.remove("contextualaspect"));
+        eventProperties.setContextualAspect(slots.removeString("contextualaspect"));
         if (eventProperties.getContextualAspect() == null) {
           eventProperties.setContextualAspect("N/A");
         }
-        eventProperties.setDegree(stringSlots.remove("degree"));
+        eventProperties.setDegree(slots.removeString("degree"));
         if (eventProperties.getDegree() == null) {
           eventProperties.setDegree("N/A");
         }
-        eventProperties.setDocTimeRel(stringSlots.remove("DocTimeRel"));
+        eventProperties.setDocTimeRel(slots.removeString("DocTimeRel"));
         if (eventProperties.getDocTimeRel() == null) {
           // TODO: this should not be necessary - DocTimeRel should always be specified
           eventProperties.setDocTimeRel("OVERLAP");
         }
-        eventProperties.setPermanence(stringSlots.remove("permanence"));
+        eventProperties.setPermanence(slots.removeString("permanence"));
         if (eventProperties.getPermanence() == null) {
           eventProperties.setPermanence("UNDETERMINED");
         }
-        String polarityStr = stringSlots.remove("polarity");
+        String polarityStr = slots.removeString("polarity");
         int polarity;
         if (polarityStr == null || polarityStr.equals("POS")) {
           polarity = CONST.NE_POLARITY_NEGATION_ABSENT;
@@ -263,141 +321,294 @@ public abstract class KnowtatorXMLReader extends JCasAnnotator_ImplBase {
         eventProperties.addToIndexes();
         event.addToIndexes();
         eventMention.addToIndexes();
-        idAnnotationMap.put(annotation.id, eventMention);
+        document.idAnnotationMap.put(annotation.id, eventMention);
+      }
+    });
 
-      } else if ("DOCTIME".equals(annotation.type)) {
+    this.registerHandler("DOCTIME", new AnnotationHandler() {
+      @Override
+      public void handle(KnowtatorAnnotation annotation, SlotConsumer slots, Document document) {
         // TODO
+      }
+    });
 
-      } else if ("SECTIONTIME".equals(annotation.type)) {
+    this.registerHandler("SECTIONTIME", new AnnotationHandler() {
+      @Override
+      public void handle(KnowtatorAnnotation annotation, SlotConsumer slots, Document document) {
         // TODO
-
-      } else if ("TIMEX3".equals(annotation.type)) {
-        String timexClass = stringSlots.remove("class");
-        TimeMention timeMention = new TimeMention(jCas, coveringSpan.begin, coveringSpan.end);
+      }
+    });
+
+    this.registerHandler("TIMEX3", new AnnotationHandler() {
+      @Override
+      public void handle(KnowtatorAnnotation annotation, SlotConsumer slots, Document document) {
+        String timexClass = slots.removeString("class");
+        KnowtatorAnnotation.Span coveringSpan = annotation.getCoveringSpan();
+        TimeMention timeMention = new TimeMention(
+            document.jCas,
+            coveringSpan.begin,
+            coveringSpan.end);
         timeMention.addToIndexes();
-        idAnnotationMap.put(annotation.id, timeMention);
+        document.idAnnotationMap.put(annotation.id, timeMention);
         // TODO
+      }
+    });
 
-      } else if ("generic_class".equals(annotation.type)) {
+    this.registerHandler("generic_class", new AnnotationHandler() {
+      @Override
+      public void handle(KnowtatorAnnotation annotation, SlotConsumer slots, Document document) {
         // TODO: there's currently no Generic in the type system
-        boolean value = booleanSlots.remove("generic_normalization");
+        boolean value = slots.removeBoolean("generic_normalization");
+      }
+    });
 
-      } else if ("severity_class".equals(annotation.type)) {
+    this.registerHandler("severity_class", new AnnotationHandler() {
+      @Override
+      public void handle(KnowtatorAnnotation annotation, SlotConsumer slots, Document document) {
         // TODO: severity has a span, but it extends TOP
-        Severity severity = new Severity(jCas);
-        severity.setValue(stringSlots.remove("severity_normalization"));
+        Severity severity = new Severity(document.jCas);
+        severity.setValue(slots.removeString("severity_normalization"));
         severity.addToIndexes();
-        idTopMap.put(annotation.id, severity);
+        document.idTopMap.put(annotation.id, severity);
+      }
+    });
 
-      } else if ("conditional_class".equals(annotation.type)) {
+    this.registerHandler("conditional_class", new AnnotationHandler() {
+      @Override
+      public void handle(KnowtatorAnnotation annotation, SlotConsumer slots, Document document) {
         // TODO: there's currently no Generic in the type system
-        boolean value = booleanSlots.remove("conditional_normalization");
+        boolean value = slots.removeBoolean("conditional_normalization");
+      }
+    });
 
-      } else if ("course_class".equals(annotation.type)) {
+    this.registerHandler("course_class", new AnnotationHandler() {
+      @Override
+      public void handle(KnowtatorAnnotation annotation, SlotConsumer slots, Document document) {
         // TODO: course has a span, but it extends TOP
-        Course course = new Course(jCas);
-        course.setValue(stringSlots.remove("course_normalization"));
+        Course course = new Course(document.jCas);
+        course.setValue(slots.removeString("course_normalization"));
         course.addToIndexes();
-        idTopMap.put(annotation.id, course);
+        document.idTopMap.put(annotation.id, course);
+      }
+    });
 
-      } else if ("uncertainty_indicator_class".equals(annotation.type)) {
-        // TODO: there's currently no Uncertainty in the type system
-        String value = stringSlots.remove("uncertainty_indicator_normalization");
+    // TODO: there's currently no Uncertainty in the type system
+    this.registerHandler("uncertainty_indicator_class", new StringSlotHandler(
+        "uncertainty_indicator_normalization"));
 
-      } else if ("distal_or_proximal".equals(annotation.type)) {
-        // TODO: there's currently no Distal or Proximal in the type system
-        String value = stringSlots.remove("distal_or_proximal_normalization");
+    // TODO: there's currently no Distal or Proximal in the type system
+    this.registerHandler("distal_or_proximal", new StringSlotHandler(
+        "distal_or_proximal_normalization"));
 
-      } else if ("Person".equals(annotation.type)) {
-        // TODO: there's currently no Subject in the type system
-        String value = stringSlots.remove("subject_normalization_CU");
+    // TODO: there's currently no Subject in the type system
+    this.registerHandler("Person", new StringSlotHandler("subject_normalization_CU"));
 
-      } else if ("body_side_class".equals(annotation.type)) {
+    this.registerHandler("body_side_class", new AnnotationHandler() {
+      @Override
+      public void handle(KnowtatorAnnotation annotation, SlotConsumer slots, Document document) {
         // TODO: BodySide has a span, but it extends TOP
-        BodySide bodySide = new BodySide(jCas);
-        bodySide.setValue(stringSlots.remove("body_side_normalization"));
+        BodySide bodySide = new BodySide(document.jCas);
+        bodySide.setValue(slots.removeString("body_side_normalization"));
         bodySide.addToIndexes();
-        idTopMap.put(annotation.id, bodySide);
+        document.idTopMap.put(annotation.id, bodySide);
+      }
+    });
 
-      } else if ("negation_indicator_class".equals(annotation.type)) {
-        // TODO: there's currently no Negation in the type system
-        String value = stringSlots.remove("negation_indicator_normalization");
+    // TODO: there's currently no Negation in the type system
+    this.registerHandler("negation_indicator_class", new StringSlotHandler(
+        "negation_indicator_normalization"));
 
-      } else if (eventRelationTypes.contains(annotation.type)) {
-        // store the ALINK information for later, once all annotations are in the CAS
+    // store the TLINK/ALINK information for later, once all annotations are in the CAS
+    AnnotationHandler eventRelationHandler = new AnnotationHandler() {
+      @Override
+      public void handle(KnowtatorAnnotation annotation, SlotConsumer slots, Document document) {
         DelayedRelation relation = new DelayedRelation();
         relation.annotation = annotation;
-        relation.source = annotationSlots.remove("Event");
-        relation.target = annotationSlots.remove("related_to");
-        relation.type = stringSlots.remove("Relationtype");
-        delayedRelations.add(relation);
-
-      } else if (entityRelationTypes.contains(annotation.type)) {
-        // store the relation information for later, once all annotations are in the CAS
+        relation.source = slots.removeAnnotation("Event");
+        relation.target = slots.removeAnnotation("related_to");
+        relation.type = slots.removeString("Relationtype");
+        document.delayedRelations.add(relation);
+      }
+    };
+    this.registerHandler("TLINK", eventRelationHandler);
+    this.registerHandler("ALINK", eventRelationHandler);
+
+    // store the relation information for later, once all annotations are in the CAS
+    AnnotationHandler entityRelationHandler = new AnnotationHandler() {
+      @Override
+      public void handle(KnowtatorAnnotation annotation, SlotConsumer slots, Document document) {
         DelayedRelation relation = new DelayedRelation();
         relation.annotation = annotation;
-        relation.source = annotationSlots.remove("Argument_CU");
-        relation.target = annotationSlots.remove("Related_to_CU");
-        relation.uncertainty = annotationSlots.remove("uncertainty_indicator_CU");
-        delayedRelations.add(relation);
-
-      } else {
-        throw new IllegalArgumentException("Unrecognized type: " + annotation.type);
+        relation.source = slots.removeAnnotation("Argument_CU");
+        relation.target = slots.removeAnnotation("Related_to_CU");
+        relation.uncertainty = slots.removeAnnotation("uncertainty_indicator_CU");
+        document.delayedRelations.add(relation);
       }
+    };
+    this.registerHandler("location_of", entityRelationHandler);
+    this.registerHandler("degree_of", entityRelationHandler);
+  }
 
-      // make sure all slots have been consumed
-      Map<String, Set<String>> slotGroups = new HashMap<String, Set<String>>();
-      slotGroups.put("stringSlots", stringSlots.keySet());
-      slotGroups.put("booleanSlots", booleanSlots.keySet());
-      slotGroups.put("annotationSlots", annotationSlots.keySet());
-      for (Map.Entry<String, Set<String>> entry : slotGroups.entrySet()) {
-        Set<String> remainingSlots = entry.getValue();
-        if (!remainingSlots.isEmpty()) {
-          String format = "%s has unprocessed %s: %s";
-          String message = String.format(format, annotation.type, entry.getKey(), remainingSlots);
-          throw new UnsupportedOperationException(message);
-        }
-      }
+  /**
+   * Converts a Knowtator annotation of one type into CAS objects. Handlers consume the slots they
+   * understand from the {@link SlotConsumer}; any slot left unconsumed is an error.
+   */
+  protected static abstract class AnnotationHandler {
+    public abstract void handle(
+        KnowtatorAnnotation annotation,
+        SlotConsumer slots,
+        Document document);
+  }
+
+  /**
+   * Handles entity types that have no slots beyond the common entity mention slots.
+   */
+  protected static class EntityMentionHandler extends AnnotationHandler {
+    private int typeID;
+
+    public EntityMentionHandler(int typeID) {
+      this.typeID = typeID;
     }
 
-    // add all annotations to the TOP map
-    idTopMap.putAll(idAnnotationMap);
+    @Override
+    public void handle(KnowtatorAnnotation annotation, SlotConsumer slots, Document document) {
+      addEntityMention(annotation, this.typeID, slots, document);
+    }
+  }
 
-    // all mentions should be added, so add features that required other annotations
-    for (DelayedFeature<?> delayedFeature : delayedFeatures) {
-      delayedFeature.setValueFrom(idAnnotationMap);
+  /**
+   * Handles types that are not yet in the type system and only carry a single string slot.
+   */
+  private static class StringSlotHandler extends AnnotationHandler {
+    private String slotName;
+
+    public StringSlotHandler(String slotName) {
+      this.slotName = slotName;
     }
 
-    // all mentions should be added, so add relations between annotations
-    for (DelayedRelation delayedRelation : delayedRelations) {
-      delayedRelation.addToIndexes(jCas, idAnnotationMap);
+    @Override
+    public void handle(KnowtatorAnnotation annotation, SlotConsumer slots, Document document) {
+      String value = slots.removeString(this.slotName);
+    }
+  }
+
+  /**
+   * The CAS objects created so far for a document, and the work delayed until all of its
+   * annotations have been created.
+   */
+  protected static class Document {
+    public JCas jCas;
+
+    public Map<String, Annotation> idAnnotationMap = new HashMap<String, Annotation>();
+
+    public Map<String, TOP> idTopMap = new HashMap<String, TOP>();
+
+    public List<DelayedRelation> delayedRelations = new ArrayList<DelayedRelation>();
+
+    public List<DelayedFeature<?>> delayedFeatures = new ArrayList<DelayedFeature<?>>();
+
+    public Document(JCas jCas) {
+      this.jCas = jCas;
+    }
+  }
+
+  /**
+   * Gives handlers "remove" access to the slots of an annotation without copying the slot maps: it
+   * only remembers which slot names have been consumed, in lists that are reused for every
+   * annotation.
+   */
+  protected static class SlotConsumer {
+    private KnowtatorAnnotation annotation;
+
+    private List<String> consumedStringSlots = new ArrayList<String>();
+
+    private List<String> consumedBooleanSlots = new ArrayList<String>();
+
+    private List<String> consumedAnnotationSlots = new ArrayList<String>();
+
+    void reset(KnowtatorAnnotation annotation) {
+      this.annotation = annotation;
+      this.consumedStringSlots.clear();
+      this.consumedBooleanSlots.clear();
+      this.consumedAnnotationSlots.clear();
+    }
+
+    /**
+     * Removes and returns the string slot with the given name (<code>null</code> if there is no
+     * such slot, or it has already been removed).
+     */
+    public String removeString(String name) {
+      return remove(this.annotation.getStringSlots(), this.consumedStringSlots, name);
+    }
+
+    /**
+     * Removes and returns the boolean slot with the given name (<code>null</code> if there is no
+     * such slot, or it has already been removed).
+     */
+    public Boolean removeBoolean(String name) {
+      return remove(this.annotation.getBooleanSlots(), this.consumedBooleanSlots, name);
+    }
+
+    /**
+     * Removes and returns the annotation slot with the given name (<code>null</code> if there is no
+     * such slot, or it has already been removed).
+     */
+    public KnowtatorAnnotation removeAnnotation(String name) {
+      return remove(this.annotation.getAnnotationSlots(), this.consumedAnnotationSlots, name);
+    }
+
+    private static <T> T remove(Map<String, T> slots, List<String> consumed, String name) {
+      if (slots.isEmpty() || consumed.contains(name)) {
+        return null;
+      }
+      if (!slots.containsKey(name)) {
+        return null;
+      }
+      consumed.add(name);
+      return slots.get(name);
+    }
+
+    void checkAllConsumed() {
+      check("stringSlots", this.annotation.getStringSlots(), this.consumedStringSlots);
+      check("booleanSlots", this.annotation.getBooleanSlots(), this.consumedBooleanSlots);
+      check("annotationSlots", this.annotation.getAnnotationSlots(), this.consumedAnnotationSlots);
+    }
+
+    private void check(String group, Map<String, ?> slots, List<String> consumed) {
+      if (consumed.size() < slots.size()) {
+        Set<String> remainingSlots = new LinkedHashSet<String>(slots.keySet());
+        remainingSlots.removeAll(consumed);
+        String format = "%s has unprocessed %s: %s";
+        String message = String.format(format, this.annotation.type, group, remainingSlots);
+        throw new UnsupportedOperationException(message);
+      }
     }
   }
 
-  private static void addEntityMentionFeatures(
+  protected static EntityMention addEntityMention(
       KnowtatorAnnotation annotation,
-      EntityMention entityMention,
-      JCas jCas,
       int typeID,
-      Map<String, String> stringSlots,
-      Map<String, Boolean> booleanSlots,
-      Map<String, KnowtatorAnnotation> annotationSlots,
-      Map<String, Annotation> idAnnotationMap,
-      List<DelayedFeature<?>> delayedFeatures) {
+      SlotConsumer slots,
+      Document document) {
+    JCas jCas = document.jCas;
+    KnowtatorAnnotation.Span coveringSpan = annotation.getCoveringSpan();
+    EntityMention entityMention = new EntityMention(jCas, coveringSpan.begin, coveringSpan.end);
     entityMention.setTypeID(typeID);
     entityMention.setConfidence(1.0f);
     entityMention.setDiscoveryTechnique(CONST.NE_DISCOVERY_TECH_GOLD_ANNOTATION);
 
     // convert negation to an integer
-    Boolean negation = booleanSlots.remove("Negation");
+    Boolean negation = slots.removeBoolean("Negation");
     entityMention.setPolarity(negation == null
         ? CONST.NE_POLARITY_NEGATION_ABSENT
         : negation == true ? CONST.NE_POLARITY_NEGATION_PRESENT : CONST.NE_POLARITY_NEGATION_ABSENT);
 
     // negation must be delayed until the Negation annotations are present
-    KnowtatorAnnotation negationIndicator = annotationSlots.remove("negation_indicator_CU");
+    KnowtatorAnnotation negationIndicator = slots.removeAnnotation("negation_indicator_CU");
     if (negationIndicator != null) {
-      delayedFeatures.add(new DelayedFeature<EntityMention>(entityMention, negationIndicator) {
+      document.delayedFeatures.add(new DelayedFeature<EntityMention>(
+          entityMention,
+          negationIndicator) {
         @Override
         protected void setValue(TOP valueAnnotation) {
           // TODO: this.annotation.setPolarity(...)
@@ -406,9 +617,9 @@ public abstract class KnowtatorXMLReader extends JCasAnnotator_ImplBase {
     }
 
     // conditional must be delayed until the Conditional annotations are present
-    KnowtatorAnnotation conditional = annotationSlots.remove("conditional_CU");
+    KnowtatorAnnotation conditional = slots.removeAnnotation("conditional_CU");
     if (conditional != null) {
-      delayedFeatures.add(new DelayedFeature<EntityMention>(entityMention, conditional) {
+      document.delayedFeatures.add(new DelayedFeature<EntityMention>(entityMention, conditional) {
         @Override
         protected void setValue(TOP valueAnnotation) {
           // TODO: this.annotation.setConditional(...)
@@ -417,9 +628,9 @@ public abstract class KnowtatorXMLReader extends JCasAnnotator_ImplBase {
     }
 
     // subject must be delayed until the Subject annotations are present
-    KnowtatorAnnotation subject = annotationSlots.remove("subject_CU");
+    KnowtatorAnnotation subject = slots.removeAnnotation("subject_CU");
     if (subject != null) {
-      delayedFeatures.add(new DelayedFeature<EntityMention>(entityMention, subject) {
+      document.delayedFeatures.add(new DelayedFeature<EntityMention>(entityMention, subject) {
         @Override
         protected void setValue(TOP valueAnnotation) {
           // TODO: this.annotation.setSubject(...)
@@ -428,7 +639,7 @@ public abstract class KnowtatorXMLReader extends JCasAnnotator_ImplBase {
     }
 
     // convert status as necessary
-    String status = stringSlots.remove("Status");
+    String status = slots.removeString("Status");
     if (status != null) {
       if ("HistoryOf".equals(status)) {
         // TODO
@@ -442,9 +653,9 @@ public abstract class KnowtatorXMLReader extends JCasAnnotator_ImplBase {
     }
 
     // convert code to ontology concept or CUI
-    String code = stringSlots.remove("AssociateCode");
+    String code = slots.removeString("AssociateCode");
     if (code == null) {
-      code = stringSlots.remove("associatedCode");
+      code = slots.removeString("associatedCode");
     }
     OntologyConcept ontologyConcept;
     if (entityMention.getTypeID() == CONST.NE_TYPE_ID_DRUG) {
@@ -461,10 +672,11 @@ public abstract class KnowtatorXMLReader extends JCasAnnotator_ImplBase {
 
     // add entity mention to CAS
     entityMention.addToIndexes();
-    idAnnotationMap.put(annotation.id, entityMention);
+    document.idAnnotationMap.put(annotation.id, entityMention);
+    return entityMention;
   }
 
-  private static class DelayedRelation {
+  protected static class DelayedRelation {
     public KnowtatorAnnotation annotation;
 
     public KnowtatorAnnotation source;
@@ -516,7 +728,7 @@ public abstract class KnowtatorXMLReader extends JCasAnnotator_ImplBase {
     }
   }
 
-  private static abstract class DelayedFeature<ANNOTATION_TYPE extends TOP> {
+  protected static abstract class DelayedFeature<ANNOTATION_TYPE extends TOP> {
     protected ANNOTATION_TYPE annotation;
 
     private String featureValueID;
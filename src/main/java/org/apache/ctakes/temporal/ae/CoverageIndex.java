@@ -0,0 +1,388 @@
+package org.apache.ctakes.temporal.ae;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.feature.extractor.CleartkExtractor;
+import org.cleartk.classifier.feature.extractor.CleartkExtractor.Bounds;
+import org.cleartk.classifier.feature.extractor.CleartkExtractorException;
+import org.cleartk.classifier.feature.extractor.simple.SimpleFeatureExtractor;
+import org.uimafit.util.JCasUtil;
+
+import edu.mayo.bmi.uima.core.type.textspan.Sentence;
+
+/**
+ * Answers the coverage lookups of the annotators - the tokens, entities or events in each sentence,
+ * and the tokens before, after or within an annotation - from sorted arrays, instead of seeking
+ * through the CAS annotation index for every lookup as {@link JCasUtil#selectCovered},
+ * {@link JCasUtil#selectPreceding} and {@link JCasUtil#selectFollowing} do.
+ *
+ * An annotator opens an index for the CAS at the start of its process method ({@link #open}) and
+ * closes it at the end ({@link #close}), and while it is open, the annotator's feature extractors
+ * fetch it with {@link #get(JCas)} (the {@link IndexedPreceding}, {@link IndexedFollowing} and
+ * {@link IndexedCovered} contexts fall back to JCasUtil when no index is open). Since nothing is
+ * kept from one process call to the next, changes that any other annotator makes to the CAS are
+ * always seen. Within a process call, the arrays for a type are built when the type is first looked
+ * up, in one pass over its annotation index, and the annotations of each sentence in one merge pass
+ * over those arrays and the sentences; they are rebuilt when the number of annotations of the type
+ * changes, e.g. as the annotator adds events. An annotator must not change the annotations of a type
+ * without changing their number while it looks the type up.
+ *
+ * The lookups return the same annotations as the JCasUtil methods, in the same order, for focus
+ * annotations that are not empty.
+ */
+public class CoverageIndex {
+
+  /**
+   * The index that is open on this thread. An annotator processes a CAS on one thread.
+   */
+  private static final ThreadLocal<CoverageIndex> CURRENT = new ThreadLocal<CoverageIndex>();
+
+  /**
+   * Open a new index for the given CAS, for this thread, until it is closed.
+   */
+  public static CoverageIndex open(JCas jCas) {
+    CoverageIndex index = new CoverageIndex(jCas);
+    CURRENT.set(index);
+    return index;
+  }
+
+  /**
+   * Get the index that is open for the given CAS on this thread.
+   *
+   * @return The index, or <code>null</code> if none is open for the CAS.
+   */
+  public static CoverageIndex get(JCas jCas) {
+    CoverageIndex index = CURRENT.get();
+    return index != null && index.jCas == jCas ? index : null;
+  }
+
+  private JCas jCas;
+
+  private Coverage<Sentence> sentences;
+
+  private Map<Sentence, Integer> sentenceIndexes;
+
+  private Map<Class<?>, Coverage<?>> coverages;
+
+  private CoverageIndex(JCas jCas) {
+    this.jCas = jCas;
+    this.coverages = new HashMap<Class<?>, Coverage<?>>();
+  }
+
+  /**
+   * Stop using the index, so that later lookups see any changes to the CAS.
+   */
+  public void close() {
+    if (CURRENT.get() == this) {
+      CURRENT.remove();
+    }
+  }
+
+  /**
+   * The sentences of the document, in index order.
+   */
+  public List<Sentence> getSentences() {
+    Coverage<Sentence> coverage = this.getCoverage(Sentence.class);
+    if (coverage != this.sentences) {
+      this.sentences = coverage;
+      this.sentenceIndexes = new HashMap<Sentence, Integer>();
+      for (int i = 0; i < coverage.annotations.size(); ++i) {
+        this.sentenceIndexes.put(coverage.annotations.get(i), i);
+      }
+    }
+    return coverage.annotations;
+  }
+
+  /**
+   * The annotations of the given type that the sentence covers, like
+   * {@link JCasUtil#selectCovered(Class, org.apache.uima.cas.text.AnnotationFS)}.
+   */
+  public <T extends Annotation> List<T> getCovered(Class<T> type, Sentence sentence) {
+    List<Sentence> sentenceList = this.getSentences();
+    Coverage<T> coverage = this.getCoverage(type);
+    if (coverage.sentences != sentenceList) {
+      coverage.coverSentences(sentenceList);
+    }
+    Integer sentenceIndex = this.sentenceIndexes.get(sentence);
+    if (sentenceIndex == null) {
+      return this.selectCovered(type, sentence);
+    }
+    return coverage.bySentence.get(sentenceIndex);
+  }
+
+  /**
+   * The annotations of the given type that the focus annotation covers, like
+   * {@link JCasUtil#selectCovered(JCas, Class, org.apache.uima.cas.text.AnnotationFS)}.
+   */
+  public <T extends Annotation> List<T> selectCovered(Class<T> type, Annotation focus) {
+    Coverage<T> coverage = this.getCoverage(type);
+    List<T> covered = new ArrayList<T>();
+    coverage.addCovered(focus, coverage.firstBeginningAt(focus.getBegin()), covered);
+    return covered;
+  }
+
+  /**
+   * The given number of annotations of the given type that precede the focus annotation, in index
+   * order, like {@link JCasUtil#selectPreceding(JCas, Class, org.apache.uima.cas.text.AnnotationFS,
+   * int)}.
+   */
+  public <T extends Annotation> List<T> selectPreceding(
+      Class<T> type,
+      Annotation focus,
+      int count) {
+    Coverage<T> coverage = this.getCoverage(type);
+    int index = coverage.firstNotBefore(focus);
+    // a CAS index iterator moved past the last annotation ends up on the first one, so JCasUtil
+    // selects the annotations before the first one that ends before the focus from there
+    if (index == coverage.size) {
+      index = 0;
+    }
+    while (index >= 0 && coverage.ends[index] > focus.getBegin()) {
+      --index;
+    }
+    int begin = Math.max(index + 1 - count, 0);
+    return new ArrayList<T>(coverage.annotations.subList(begin, index + 1));
+  }
+
+  /**
+   * The given number of annotations of the given type that follow the focus annotation, in index
+   * order, like {@link JCasUtil#selectFollowing(JCas, Class, org.apache.uima.cas.text.AnnotationFS,
+   * int)}.
+   */
+  public <T extends Annotation> List<T> selectFollowing(
+      Class<T> type,
+      Annotation focus,
+      int count) {
+    Coverage<T> coverage = this.getCoverage(type);
+    int index = coverage.firstNotBefore(focus);
+    while (index < coverage.size && coverage.begins[index] < focus.getEnd()) {
+      ++index;
+    }
+    int end = Math.min(index + count, coverage.size);
+    return new ArrayList<T>(coverage.annotations.subList(index, end));
+  }
+
+  private <T extends Annotation> Coverage<T> getCoverage(Class<T> type) {
+    int size = this.jCas.getAnnotationIndex(JCasUtil.getType(this.jCas, type)).size();
+    @SuppressWarnings("unchecked")
+    Coverage<T> coverage = (Coverage<T>) this.coverages.get(type);
+    if (coverage == null || coverage.size != size) {
+      coverage = new Coverage<T>(new ArrayList<T>(JCasUtil.select(this.jCas, type)));
+      this.coverages.put(type, coverage);
+    }
+    return coverage;
+  }
+
+  /**
+   * The annotations of one type in index order, i.e. by increasing begin and then decreasing end,
+   * with their offsets, and (once computed) the annotations covered by each of the given sentences.
+   */
+  private static class Coverage<T extends Annotation> {
+
+    public List<T> annotations;
+
+    public int size;
+
+    public int[] begins;
+
+    public int[] ends;
+
+    public List<Sentence> sentences;
+
+    public List<List<T>> bySentence;
+
+    public Coverage(List<T> annotations) {
+      this.annotations = Collections.unmodifiableList(annotations);
+      this.size = annotations.size();
+      this.begins = new int[this.size];
+      this.ends = new int[this.size];
+      for (int i = 0; i < this.size; ++i) {
+        this.begins[i] = annotations.get(i).getBegin();
+        this.ends[i] = annotations.get(i).getEnd();
+      }
+    }
+
+    /**
+     * Collect the annotations of each sentence, moving the start of the search forward with the
+     * sentences, so that the pass is linear in the number of annotations when sentences do not
+     * overlap.
+     */
+    public void coverSentences(List<Sentence> sentences) {
+      this.sentences = sentences;
+      this.bySentence = new ArrayList<List<T>>(sentences.size());
+      int first = 0;
+      for (Sentence sentence : sentences) {
+        while (first < this.size && this.begins[first] < sentence.getBegin()) {
+          ++first;
+        }
+        List<T> covered = new ArrayList<T>();
+        this.addCovered(sentence, first, covered);
+        this.bySentence.add(Collections.unmodifiableList(covered));
+      }
+    }
+
+    /**
+     * Add the annotations from the given index on that the focus covers, stopping at the first one
+     * that begins after the focus ends.
+     */
+    public void addCovered(Annotation focus, int first, List<T> covered) {
+      for (int i = first; i < this.size && this.begins[i] <= focus.getEnd(); ++i) {
+        if (this.ends[i] <= focus.getEnd()) {
+          T annotation = this.annotations.get(i);
+          if (!annotation.equals(focus)) {
+            covered.add(annotation);
+          }
+        }
+      }
+    }
+
+    /**
+     * The index of the first annotation that begins at or after the given offset.
+     */
+    public int firstBeginningAt(int begin) {
+      int low = 0;
+      int high = this.size;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (this.begins[middle] < begin) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * The index of the first annotation that is not before the focus in index order, where a CAS
+     * index iterator moved to the focus would be.
+     */
+    public int firstNotBefore(Annotation focus) {
+      int low = 0;
+      int high = this.size;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        boolean before = this.begins[middle] < focus.getBegin()
+            || (this.begins[middle] == focus.getBegin() && this.ends[middle] > focus.getEnd());
+        if (before) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      return low;
+    }
+  }
+
+  /**
+   * A {@link CleartkExtractor.Preceding} context that selects the preceding annotations from the
+   * open coverage index. It produces the same features, with the same names.
+   */
+  public static class IndexedPreceding extends CleartkExtractor.Preceding {
+
+    private String name;
+
+    public IndexedPreceding(int end) {
+      this(0, end);
+    }
+
+    public IndexedPreceding(int begin, int end) {
+      super(begin, end);
+      this.name = Feature.createName("Preceding", String.valueOf(begin), String.valueOf(end));
+    }
+
+    @Override
+    public String getName() {
+      return this.name;
+    }
+
+    @Override
+    protected <T extends Annotation> List<T> select(
+        JCas jCas,
+        Annotation focusAnnotation,
+        Class<T> annotationClass,
+        int count) {
+      CoverageIndex index = CoverageIndex.get(jCas);
+      if (index == null) {
+        return super.select(jCas, focusAnnotation, annotationClass, count);
+      }
+      return index.selectPreceding(annotationClass, focusAnnotation, count);
+    }
+  }
+
+  /**
+   * A {@link CleartkExtractor.Following} context that selects the following annotations from the
+   * open coverage index. It produces the same features, with the same names.
+   */
+  public static class IndexedFollowing extends CleartkExtractor.Following {
+
+    private String name;
+
+    public IndexedFollowing(int end) {
+      this(0, end);
+    }
+
+    public IndexedFollowing(int begin, int end) {
+      super(begin, end);
+      this.name = Feature.createName("Following", String.valueOf(begin), String.valueOf(end));
+    }
+
+    @Override
+    public String getName() {
+      return this.name;
+    }
+
+    @Override
+    protected <T extends Annotation> List<T> select(
+        JCas jCas,
+        Annotation focusAnnotation,
+        Class<T> annotationClass,
+        int count) {
+      CoverageIndex index = CoverageIndex.get(jCas);
+      if (index == null) {
+        return super.select(jCas, focusAnnotation, annotationClass, count);
+      }
+      return index.selectFollowing(annotationClass, focusAnnotation, count);
+    }
+  }
+
+  /**
+   * A {@link CleartkExtractor.Covered} context that selects the covered annotations from the open
+   * coverage index. It produces features with the same names and values.
+   */
+  public static class IndexedCovered implements CleartkExtractor.Context {
+
+    @Override
+    public String getName() {
+      return "Covered";
+    }
+
+    @Override
+    public <T extends Annotation> List<Feature> extract(
+        JCas jCas,
+        Annotation focusAnnotation,
+        Bounds bounds,
+        Class<T> annotationClass,
+        SimpleFeatureExtractor extractor) throws CleartkExtractorException {
+      List<Feature> features = new ArrayList<Feature>();
+      CoverageIndex index = CoverageIndex.get(jCas);
+      List<T> covered = index == null
+          ? JCasUtil.selectCovered(jCas, annotationClass, focusAnnotation)
+          : index.selectCovered(annotationClass, focusAnnotation);
+      for (int i = 0; i < covered.size(); ++i) {
+        for (Feature feature : extractor.extract(jCas, covered.get(i))) {
+          String name = Feature.createName(this.getName(), String.valueOf(i), feature.getName());
+          features.add(new Feature(name, feature.getValue()));
+        }
+      }
+      return features;
+    }
+  }
+}
@@ -1,8 +1,13 @@
 package org.apache.ctakes.temporal.ae;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.ctakes.temporal.ae.CoverageIndex.IndexedCovered;
+import org.apache.ctakes.temporal.ae.CoverageIndex.IndexedFollowing;
+import org.apache.ctakes.temporal.ae.CoverageIndex.IndexedPreceding;
+import org.apache.ctakes.temporal.classifier.BatchClassifier;
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
@@ -13,9 +18,6 @@ import org.cleartk.classifier.DataWriter;
 import org.cleartk.classifier.Feature;
 import org.cleartk.classifier.Instance;
 import org.cleartk.classifier.feature.extractor.CleartkExtractor;
-import org.cleartk.classifier.feature.extractor.CleartkExtractor.Covered;
-import org.cleartk.classifier.feature.extractor.CleartkExtractor.Following;
-import org.cleartk.classifier.feature.extractor.CleartkExtractor.Preceding;
 import org.cleartk.classifier.feature.extractor.simple.CombinedExtractor;
 import org.cleartk.classifier.feature.extractor.simple.CoveredTextExtractor;
 import org.cleartk.classifier.feature.extractor.simple.TypePathExtractor;
@@ -29,6 +31,10 @@ import edu.mayo.bmi.uima.core.type.textsem.EventMention;
 
 public class DocTimeRelAnnotator extends CleartkAnnotator<String> {
 
+  /**
+   * The data writer class selects the classifier, e.g. a LIBSVM data writer, or
+   * {@link org.apache.ctakes.temporal.classifier.LinearStringOutcomeDataWriter} for a linear model.
+   */
   public static AnalysisEngineDescription createDataWriterDescription(
       Class<? extends DataWriter<String>> dataWriterClass,
       File outputDirectory) throws ResourceInitializationException {
@@ -42,6 +48,10 @@ public class DocTimeRelAnnotator extends CleartkAnnotator<String> {
         outputDirectory);
   }
 
+  /**
+   * The manifest of the packaged model names the classifier to load, whichever data writer the
+   * model was trained with.
+   */
   public static AnalysisEngineDescription createAnnotatorDescription(File modelDirectory)
       throws ResourceInitializationException {
     return AnalysisEngineFactory.createPrimitiveDescription(
@@ -63,13 +73,39 @@ public class DocTimeRelAnnotator extends CleartkAnnotator<String> {
     this.contextExtractor = new CleartkExtractor(
         BaseToken.class,
         baseExtractor,
-        new Preceding(3),
-        new Covered(),
-        new Following(3));
+        new IndexedPreceding(3),
+        new IndexedCovered(),
+        new IndexedFollowing(3));
   }
 
   @Override
   public void process(JCas jCas) throws AnalysisEngineProcessException {
+    CoverageIndex coverageIndex = CoverageIndex.open(jCas);
+    try {
+      this.classify(jCas);
+    } finally {
+      coverageIndex.close();
+    }
+  }
+
+  private void classify(JCas jCas) throws AnalysisEngineProcessException {
+    // the events are independent, so a batch classifier can classify all of them in one call
+    if (!this.isTraining() && this.classifier instanceof BatchClassifier) {
+      List<EventMention> eventMentions = new ArrayList<EventMention>(JCasUtil.select(
+          jCas,
+          EventMention.class));
+      List<List<Feature>> instanceFeatures = new ArrayList<List<Feature>>(eventMentions.size());
+      for (EventMention eventMention : eventMentions) {
+        instanceFeatures.add(this.contextExtractor.extract(jCas, eventMention));
+      }
+      BatchClassifier<String> batchClassifier = (BatchClassifier<String>) this.classifier;
+      List<String> outcomes = batchClassifier.classifyAll(instanceFeatures);
+      for (int i = 0; i < eventMentions.size(); ++i) {
+        eventMentions.get(i).getEvent().getProperties().setDocTimeRel(outcomes.get(i));
+      }
+      return;
+    }
+
     for (EventMention eventMention : JCasUtil.select(jCas, EventMention.class)) {
       List<Feature> features = this.contextExtractor.extract(jCas, eventMention);
       if (this.isTraining()) {
@@ -7,6 +7,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.ctakes.temporal.ae.CoverageIndex.IndexedFollowing;
+import org.apache.ctakes.temporal.ae.CoverageIndex.IndexedPreceding;
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
@@ -18,8 +20,6 @@ import org.cleartk.classifier.Feature;
 import org.cleartk.classifier.Instance;
 import org.cleartk.classifier.chunking.BIOChunking;
 import org.cleartk.classifier.feature.extractor.CleartkExtractor;
-import org.cleartk.classifier.feature.extractor.CleartkExtractor.Following;
-import org.cleartk.classifier.feature.extractor.CleartkExtractor.Preceding;
 import org.cleartk.classifier.feature.extractor.simple.CharacterCategoryPatternExtractor;
 import org.cleartk.classifier.feature.extractor.simple.CharacterCategoryPatternExtractor.PatternType;
 import org.cleartk.classifier.feature.extractor.simple.CombinedExtractor;
@@ -29,11 +29,6 @@ import org.cleartk.classifier.feature.extractor.simple.TypePathExtractor;
 import org.cleartk.classifier.jar.DefaultDataWriterFactory;
 import org.cleartk.classifier.jar.JarClassifierFactory;
 import org.uimafit.factory.AnalysisEngineFactory;
-import org.uimafit.util.JCasUtil;
-
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
 
 import edu.mayo.bmi.uima.core.type.constants.CONST;
 import edu.mayo.bmi.uima.core.type.syntax.BaseToken;
@@ -43,6 +38,10 @@ import edu.mayo.bmi.uima.core.type.textspan.Sentence;
 
 public class EventAnnotator extends CleartkAnnotator<String> {
 
+  /**
+   * The data writer class selects the classifier, e.g. a LIBSVM data writer, or
+   * {@link org.apache.ctakes.temporal.classifier.LinearStringOutcomeDataWriter} for a linear model.
+   */
   public static AnalysisEngineDescription createDataWriterDescription(
       Class<? extends DataWriter<String>> dataWriterClass,
       File outputDirectory) throws ResourceInitializationException {
@@ -56,6 +55,10 @@ public class EventAnnotator extends CleartkAnnotator<String> {
         outputDirectory);
   }
 
+  /**
+   * The manifest of the packaged model names the classifier to load, whichever data writer the
+   * model was trained with.
+   */
   public static AnalysisEngineDescription createAnnotatorDescription(File modelDirectory)
       throws ResourceInitializationException {
     return AnalysisEngineFactory.createPrimitiveDescription(
@@ -66,23 +69,99 @@ public class EventAnnotator extends CleartkAnnotator<String> {
         new File(modelDirectory, "model.jar"));
   }
 
+  /**
+   * The entity types whose BIO tags around each token are features
+   */
+  private static final int[] ENTITY_TYPE_IDS = new int[] {
+      CONST.NE_TYPE_ID_ANATOMICAL_SITE,
+      CONST.NE_TYPE_ID_DISORDER,
+      CONST.NE_TYPE_ID_DRUG,
+      CONST.NE_TYPE_ID_FINDING,
+      CONST.NE_TYPE_ID_PROCEDURE,
+      CONST.NE_TYPE_ID_UNKNOWN };
+
+  private static final int ENTITY_TAG_WINDOW = 2;
+
+  private static final int N_PREVIOUS_CLASSIFICATIONS = 2;
+
+  /**
+   * The feature names, built once rather than for every token: EntityTag_[typeID]_[offset] by type
+   * index and offset into the window, and PreviousOutcome_[i] by i
+   */
+  private static final String[][] ENTITY_TAG_FEATURE_NAMES;
+
+  private static final String[] PREVIOUS_OUTCOME_FEATURE_NAMES;
+
+  /**
+   * The entity tags, as stored in {@link #entityTags}
+   */
+  private static final byte OUTSIDE = 0;
+
+  private static final byte BEGIN = 1;
+
+  private static final byte INSIDE = 2;
+
+  /**
+   * The entity tag feature values, by type index and tag: the O, B-[typeID] and I-[typeID]
+   * outcomes of a BIOChunking on the typeID feature
+   */
+  private static final String[][] ENTITY_TAG_VALUES;
+
+  static {
+    ENTITY_TAG_FEATURE_NAMES = new String[ENTITY_TYPE_IDS.length][2 * ENTITY_TAG_WINDOW];
+    for (int i = 0; i < ENTITY_TYPE_IDS.length; ++i) {
+      for (int offset = 0; offset < 2 * ENTITY_TAG_WINDOW; ++offset) {
+        ENTITY_TAG_FEATURE_NAMES[i][offset] = String.format(
+            "EntityTag_%d_%d",
+            ENTITY_TYPE_IDS[i],
+            offset);
+      }
+    }
+    ENTITY_TAG_VALUES = new String[ENTITY_TYPE_IDS.length][];
+    for (int i = 0; i < ENTITY_TYPE_IDS.length; ++i) {
+      ENTITY_TAG_VALUES[i] = new String[] {
+          "O",
+          "B-" + ENTITY_TYPE_IDS[i],
+          "I-" + ENTITY_TYPE_IDS[i] };
+    }
+    PREVIOUS_OUTCOME_FEATURE_NAMES = new String[N_PREVIOUS_CLASSIFICATIONS + 1];
+    for (int i = 1; i <= N_PREVIOUS_CLASSIFICATIONS; ++i) {
+      PREVIOUS_OUTCOME_FEATURE_NAMES[i] = "PreviousOutcome_" + i;
+    }
+  }
+
   protected List<SimpleFeatureExtractor> tokenFeatureExtractors;
 
   protected List<CleartkExtractor> contextFeatureExtractors;
 
-  private BIOChunking<BaseToken, EntityMention> entityChunking;
-
   private BIOChunking<BaseToken, EventMention> eventChunking;
 
+  /**
+   * Per-sentence buffers, reused across sentences: the entity tag of each token for each type (at
+   * [token index * number of types + type index]), and (during prediction) the outcomes and the
+   * features of the current token
+   */
+  private byte[] entityTags;
+
+  private List<String> predictedOutcomes;
+
+  private List<Feature> predictionFeatures;
+
+  /**
+   * The largest number of features seen for a token, to size each token's feature list
+   */
+  private int maxFeatures;
+
+  /**
+   * One copy of each outcome string, so that stored instances share them
+   */
+  private Map<String, String> internedValues;
+
   @Override
   public void initialize(UimaContext context) throws ResourceInitializationException {
     super.initialize(context);
 
     // define chunkings
-    this.entityChunking = new BIOChunking<BaseToken, EntityMention>(
-        BaseToken.class,
-        EntityMention.class,
-        "typeID");
     this.eventChunking = new BIOChunking<BaseToken, EventMention>(
         BaseToken.class,
         EventMention.class);
@@ -102,50 +181,61 @@ public class EventAnnotator extends CleartkAnnotator<String> {
     this.contextFeatureExtractors.add(new CleartkExtractor(
         BaseToken.class,
         subExtractor,
-        new Preceding(3),
-        new Following(3)));
+        new IndexedPreceding(3),
+        new IndexedFollowing(3)));
+
+    this.entityTags = new byte[0];
+    this.predictedOutcomes = new ArrayList<String>();
+    this.predictionFeatures = new ArrayList<Feature>();
+    this.maxFeatures = 0;
+    this.internedValues = new HashMap<String, String>();
   }
 
   @Override
   public void process(JCas jCas) throws AnalysisEngineProcessException {
+    CoverageIndex coverageIndex = CoverageIndex.open(jCas);
+    try {
+      this.process(jCas, coverageIndex);
+    } finally {
+      coverageIndex.close();
+    }
+  }
+
+  private void process(JCas jCas, CoverageIndex coverageIndex)
+      throws AnalysisEngineProcessException {
     // classify tokens within each sentence
-    for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
-      List<BaseToken> tokens = JCasUtil.selectCovered(jCas, BaseToken.class, sentence);
+    for (Sentence sentence : coverageIndex.getSentences()) {
+      List<BaseToken> tokens = coverageIndex.getCovered(BaseToken.class, sentence);
 
       // during training, the list of all outcomes for the tokens
       List<String> outcomes;
       if (this.isTraining()) {
-        List<EventMention> events = JCasUtil.selectCovered(jCas, EventMention.class, sentence);
+        List<EventMention> events = coverageIndex.getCovered(EventMention.class, sentence);
         outcomes = this.eventChunking.createOutcomes(jCas, tokens, events);
       }
       // during prediction, the list of outcomes predicted so far
       else {
-        outcomes = new ArrayList<String>();
+        outcomes = this.predictedOutcomes;
+        outcomes.clear();
       }
 
       // get BIO entity tags for each entity type
-      int[] entityTypeIDs = new int[] {
-          CONST.NE_TYPE_ID_ANATOMICAL_SITE,
-          CONST.NE_TYPE_ID_DISORDER,
-          CONST.NE_TYPE_ID_DRUG,
-          CONST.NE_TYPE_ID_FINDING,
-          CONST.NE_TYPE_ID_PROCEDURE,
-          CONST.NE_TYPE_ID_UNKNOWN };
-      List<EntityMention> entities = JCasUtil.selectCovered(jCas, EntityMention.class, sentence);
-      Map<Integer, List<String>> entityTagsByType = new HashMap<Integer, List<String>>();
-      for (int typeID : entityTypeIDs) {
-        Predicate<EntityMention> hasTypeID = hasEntityType(typeID);
-        List<EntityMention> subEntities = Lists.newArrayList(Iterables.filter(entities, hasTypeID));
-        entityTagsByType.put(typeID, this.entityChunking.createOutcomes(jCas, tokens, subEntities));
-      }
+      List<EntityMention> entities = coverageIndex.getCovered(EntityMention.class, sentence);
+      this.entityTags = tagEntities(tokens, entities, this.entityTags);
 
       // extract features for all tokens
       int tokenIndex = -1;
-      int window = 2;
       for (BaseToken token : tokens) {
         ++tokenIndex;
 
-        List<Feature> features = new ArrayList<Feature>();
+        // training instances keep their features, so only prediction can reuse the list
+        List<Feature> features;
+        if (this.isTraining()) {
+          features = new ArrayList<Feature>(this.maxFeatures);
+        } else {
+          features = this.predictionFeatures;
+          features.clear();
+        }
         // features from token attributes
         for (SimpleFeatureExtractor extractor : this.tokenFeatureExtractors) {
           features.addAll(extractor.extract(jCas, token));
@@ -155,22 +245,24 @@ public class EventAnnotator extends CleartkAnnotator<String> {
           features.addAll(extractor.extractWithin(jCas, token, sentence));
         }
         // features from surrounding entities
-        for (int typeID : entityTypeIDs) {
-          List<String> tokenEntityTags = entityTagsByType.get(typeID);
-          int begin = Math.max(tokenIndex - window, 0);
-          int end = Math.min(tokenIndex + window, tokenEntityTags.size());
+        int begin = Math.max(tokenIndex - ENTITY_TAG_WINDOW, 0);
+        int end = Math.min(tokenIndex + ENTITY_TAG_WINDOW, tokens.size());
+        for (int typeIndex = 0; typeIndex < ENTITY_TYPE_IDS.length; ++typeIndex) {
+          String[] names = ENTITY_TAG_FEATURE_NAMES[typeIndex];
+          String[] values = ENTITY_TAG_VALUES[typeIndex];
           for (int i = begin; i < end; ++i) {
-            String name = String.format("EntityTag_%d_%d", typeID, i - begin);
-            features.add(new Feature(name, tokenEntityTags.get(i)));
+            byte tag = this.entityTags[i * ENTITY_TYPE_IDS.length + typeIndex];
+            features.add(new Feature(names[i - begin], values[tag]));
           }
         }
         // features from previous classifications
-        int nPreviousClassifications = 2;
-        for (int i = nPreviousClassifications; i > 0; --i) {
+        for (int i = N_PREVIOUS_CLASSIFICATIONS; i > 0; --i) {
           int index = tokenIndex - i;
-          String previousOutcome = index < 0 ? "O" : outcomes.get(index);
-          features.add(new Feature("PreviousOutcome_" + i, previousOutcome));
+          String previousOutcome = index < 0 ? "O" : this.intern(outcomes.get(index));
+          features.add(new Feature(PREVIOUS_OUTCOME_FEATURE_NAMES[i], previousOutcome));
         }
+        this.maxFeatures = Math.max(this.maxFeatures, features.size());
+
         // if training, write to data file
         if (this.isTraining()) {
           String outcome = outcomes.get(tokenIndex);
@@ -190,11 +282,87 @@ public class EventAnnotator extends CleartkAnnotator<String> {
     }
   }
 
-  private static Predicate<EntityMention> hasEntityType(final int typeID) {
-    return new Predicate<EntityMention>() {
-      public boolean apply(EntityMention mention) {
-        return mention.getTypeID() == typeID;
+  /**
+   * Tag the tokens for all entity types in one sweep over the tokens and the entities, both in
+   * index order. A token is tagged for each entity of a type that covers it, B if it starts at the
+   * entity's start and I otherwise, with the later entity in index order winning when two entities
+   * of a type cover the same token, as in a BIOChunking on the typeID feature.
+   *
+   * @param entityTags
+   *          The buffer to fill, as stored in {@link #entityTags}.
+   * @return The buffer, or a larger one if it was too small for the tokens.
+   */
+  static byte[] tagEntities(
+      List<BaseToken> tokens,
+      List<EntityMention> entities,
+      byte[] entityTags) {
+    int nTags = tokens.size() * ENTITY_TYPE_IDS.length;
+    if (entityTags.length < nTags) {
+      entityTags = new byte[Math.max(nTags, 2 * entityTags.length)];
+    }
+    Arrays.fill(entityTags, 0, nTags, OUTSIDE);
+    int firstTokenIndex = 0;
+    for (EntityMention entity : entities) {
+      int typeIndex = getEntityTypeIndex(entity.getTypeID());
+      if (typeIndex < 0) {
+        continue;
+      }
+      int entityBegin = entity.getBegin();
+      int entityEnd = entity.getEnd();
+      // entities are sorted by begin, so tokens before this entity precede all later ones too
+      while (firstTokenIndex < tokens.size()
+          && tokens.get(firstTokenIndex).getBegin() < entityBegin) {
+        ++firstTokenIndex;
+      }
+      for (int i = firstTokenIndex; i < tokens.size(); ++i) {
+        BaseToken token = tokens.get(i);
+        if (token.getBegin() > entityEnd) {
+          break;
+        }
+        if (token.getEnd() <= entityEnd) {
+          byte tag = token.getBegin() == entityBegin ? BEGIN : INSIDE;
+          entityTags[i * ENTITY_TYPE_IDS.length + typeIndex] = tag;
+        }
+      }
+    }
+    return entityTags;
+  }
+
+  /**
+   * The entity tag feature values of the tokens, by type index and then token index, i.e. what
+   * {@link #tagEntities} computes, as the outcomes of a BIOChunking on the typeID feature.
+   */
+  static List<List<String>> getEntityTagValues(
+      List<BaseToken> tokens,
+      List<EntityMention> entities) {
+    byte[] entityTags = tagEntities(tokens, entities, new byte[0]);
+    List<List<String>> values = new ArrayList<List<String>>();
+    for (int typeIndex = 0; typeIndex < ENTITY_TYPE_IDS.length; ++typeIndex) {
+      List<String> typeValues = new ArrayList<String>();
+      for (int i = 0; i < tokens.size(); ++i) {
+        byte tag = entityTags[i * ENTITY_TYPE_IDS.length + typeIndex];
+        typeValues.add(ENTITY_TAG_VALUES[typeIndex][tag]);
+      }
+      values.add(typeValues);
+    }
+    return values;
+  }
+
+  private static int getEntityTypeIndex(int typeID) {
+    for (int i = 0; i < ENTITY_TYPE_IDS.length; ++i) {
+      if (ENTITY_TYPE_IDS[i] == typeID) {
+        return i;
       }
-    };
+    }
+    return -1;
+  }
+
+  private String intern(String value) {
+    String interned = this.internedValues.get(value);
+    if (interned == null) {
+      interned = value;
+      this.internedValues.put(value, value);
+    }
+    return interned;
   }
 }
@@ -12,6 +12,13 @@ import org.uimafit.factory.AnalysisEngineFactory;
 
 public class THYMEKnowtatorXMLReader extends KnowtatorXMLReader {
 
+  /**
+   * The names of the annotators whose annotations form the THYME gold standard
+   */
+  public static final String[] ANNOTATOR_NAMES = new String[] {
+      "consensus set annotator team",
+      "consensus set_rel annotator team" };
+
   public static AnalysisEngineDescription getDescription(File knowtatorXMLDirectory)
       throws ResourceInitializationException {
     return AnalysisEngineFactory.createPrimitiveDescription(
@@ -20,8 +27,30 @@ public class THYMEKnowtatorXMLReader extends KnowtatorXMLReader {
         knowtatorXMLDirectory);
   }
 
+  /**
+   * Like {@link #getDescription(File)}, but caches the parsed Knowtator XML in the given directory.
+   */
+  public static AnalysisEngineDescription getDescription(
+      File knowtatorXMLDirectory,
+      File cacheDirectory) throws ResourceInitializationException {
+    return AnalysisEngineFactory.createPrimitiveDescription(
+        THYMEKnowtatorXMLReader.class,
+        KnowtatorXMLReader.PARAM_KNOWTATOR_XML_DIRECTORY,
+        knowtatorXMLDirectory,
+        KnowtatorXMLReader.PARAM_CACHE_DIRECTORY,
+        cacheDirectory);
+  }
+
   @Override
   protected URI getKnowtatorXML(URI uri) {
+    return getKnowtatorXML(this.knowtatorXMLDirectory, uri);
+  }
+
+  /**
+   * Given the Knowtator XML directory and the URI of a plain text file (in a doc<N> directory),
+   * determines the URI of the Knowtator XML file (in the corresponding Set<NN> directory).
+   */
+  public static URI getKnowtatorXML(File knowtatorXMLDirectory, URI uri) {
     File file = new File(uri.getPath());
     String subDir = file.getParentFile().getName();
     Matcher matcher = Pattern.compile("^doc(\\d+)$").matcher(subDir);
@@ -30,12 +59,12 @@ public class THYMEKnowtatorXMLReader extends KnowtatorXMLReader {
     }
     subDir = String.format("Set%02d", Integer.parseInt(matcher.group(1)));
     String fileName = file.getName() + ".knowtator.xml";
-    return new File(new File(this.knowtatorXMLDirectory, subDir), fileName).toURI();
+    return new File(new File(knowtatorXMLDirectory, subDir), fileName).toURI();
   }
 
   @Override
   protected String[] getAnnotatorNames() {
-    return new String[] { "consensus set annotator team", "consensus set_rel annotator team" };
+    return ANNOTATOR_NAMES.clone();
   }
 
 }
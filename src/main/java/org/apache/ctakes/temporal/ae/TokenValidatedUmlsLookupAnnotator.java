@@ -0,0 +1,82 @@
+package org.apache.ctakes.temporal.ae;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.ctakes.temporal.resource.UmlsLicense;
+import org.apache.uima.UimaContext;
+import org.apache.uima.resource.ResourceInitializationException;
+
+import edu.mayo.bmi.uima.lookup.ae.DictionaryLookupAnnotator;
+import edu.mayo.bmi.uima.lookup.ae.UmlsDictionaryLookupAnnotator;
+
+/**
+ * The same dictionary lookup as {@link UmlsDictionaryLookupAnnotator}, with the same parameters and
+ * resources, but the UMLS credentials are checked through {@link UmlsLicense}, so a valid token in
+ * {@link #PARAM_TOKEN_FILE} replaces the call to the UTS web service (which
+ * UmlsDictionaryLookupAnnotator makes every time it is initialized).
+ */
+public class TokenValidatedUmlsLookupAnnotator extends DictionaryLookupAnnotator {
+
+  public static final String PARAM_ADDRESS = "UMLSAddr";
+
+  public static final String PARAM_VENDOR = "UMLSVendor";
+
+  public static final String PARAM_USER = "UMLSUser";
+
+  public static final String PARAM_PASSWORD = "UMLSPW";
+
+  /**
+   * The file where a successful validation is recorded, or none to always validate.
+   */
+  public static final String PARAM_TOKEN_FILE = "UMLSTokenFile";
+
+  /**
+   * The {@link UmlsLicense.Validator} class, by default {@link UmlsLicense.RemoteValidator}.
+   */
+  public static final String PARAM_VALIDATOR_CLASS_NAME = "UMLSValidatorClassName";
+
+  @Override
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    String address = (String) context.getConfigParameterValue(PARAM_ADDRESS);
+    String vendor = (String) context.getConfigParameterValue(PARAM_VENDOR);
+    String user = (String) context.getConfigParameterValue(PARAM_USER);
+    String password = (String) context.getConfigParameterValue(PARAM_PASSWORD);
+    String tokenPath = (String) context.getConfigParameterValue(PARAM_TOKEN_FILE);
+    String validatorClassName = (String) context.getConfigParameterValue(PARAM_VALIDATOR_CLASS_NAME);
+    if (validatorClassName == null) {
+      validatorClassName = UmlsLicense.RemoteValidator.class.getName();
+    }
+    if (address == null) {
+      address = UmlsLicense.UTS_ADDRESS;
+    }
+
+    // check the license before loading the dictionaries
+    boolean valid;
+    try {
+      UmlsLicense.Validator validator = Class.forName(validatorClassName).asSubclass(
+          UmlsLicense.Validator.class).newInstance();
+      valid = UmlsLicense.isValid(
+          validator,
+          address,
+          vendor,
+          user,
+          password,
+          tokenPath == null ? null : new File(tokenPath));
+    } catch (ClassNotFoundException e) {
+      throw new ResourceInitializationException(e);
+    } catch (InstantiationException e) {
+      throw new ResourceInitializationException(e);
+    } catch (IllegalAccessException e) {
+      throw new ResourceInitializationException(e);
+    } catch (IOException e) {
+      throw new ResourceInitializationException(e);
+    }
+    if (!valid) {
+      throw new ResourceInitializationException(new IllegalArgumentException(
+          "Invalid UMLS license for user " + user
+              + " (set the umls.user and umls.password system properties)"));
+    }
+    super.initialize(context);
+  }
+}
@@ -0,0 +1,24 @@
+package org.apache.ctakes.temporal.classifier;
+
+import java.util.List;
+
+import org.cleartk.classifier.CleartkProcessingException;
+import org.cleartk.classifier.Classifier;
+import org.cleartk.classifier.Feature;
+
+/**
+ * A classifier that can also classify many independent instances in one call, e.g. all the events
+ * of a document, sharing the encoding and model work between them.
+ */
+public interface BatchClassifier<OUTCOME_TYPE> extends Classifier<OUTCOME_TYPE> {
+
+  /**
+   * Classify each of the instances, giving the same outcomes as {@link #classify(List)} would.
+   * 
+   * @param instanceFeatures
+   *          The features of each instance.
+   * @return The outcome of each instance, in the same order.
+   */
+  public List<OUTCOME_TYPE> classifyAll(List<List<Feature>> instanceFeatures)
+      throws CleartkProcessingException;
+}
@@ -0,0 +1,260 @@
+package org.apache.ctakes.temporal.classifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+
+import org.cleartk.classifier.CleartkProcessingException;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.encoder.features.FeaturesEncoder;
+import org.cleartk.classifier.encoder.outcome.OutcomeEncoder;
+import org.cleartk.classifier.libsvm.LIBSVMStringOutcomeClassifier;
+import org.cleartk.classifier.util.featurevector.FeatureVector;
+
+/**
+ * A {@link LIBSVMStringOutcomeClassifier} that classifies a batch of instances in one pass over the
+ * model.
+ *
+ * LIBSVM classifies an instance by computing the kernel between it and every support vector, each
+ * a merge of two sparse vectors. This classifier instead indexes the support vectors by feature
+ * once, when the model is loaded, encodes the whole batch into one sparse matrix, and gets the dot
+ * products of each row with all support vectors by walking only the postings of the row's
+ * features. The kernel values and the one-against-one votes are then computed as in LIBSVM's
+ * svm_predict, so the outcomes are the same (up to floating point rounding in the kernel, which
+ * is exact for the 0/1 valued features of the annotators).
+ *
+ * Models that the batch path does not support (precomputed kernels, and regression or one-class
+ * models) are classified one instance at a time.
+ */
+public class BatchLIBSVMStringOutcomeClassifier extends LIBSVMStringOutcomeClassifier implements
+    BatchClassifier<String> {
+
+  private boolean batchSupported;
+
+  /**
+   * The support vectors by feature index: the postings of feature i are at
+   * [featureStarts[i], featureStarts[i + 1]) in postingVectors and postingValues
+   */
+  private int[] featureStarts;
+
+  private int[] postingVectors;
+
+  private double[] postingValues;
+
+  /**
+   * The squared norm of each support vector, for the RBF kernel
+   */
+  private double[] vectorSquares;
+
+  /**
+   * The index of the first support vector of each class
+   */
+  private int[] classStarts;
+
+  public BatchLIBSVMStringOutcomeClassifier(
+      FeaturesEncoder<FeatureVector> featuresEncoder,
+      OutcomeEncoder<String, Integer> outcomeEncoder,
+      svm_model model) {
+    super(featuresEncoder, outcomeEncoder, model);
+    int svmType = model.param.svm_type;
+    int kernelType = model.param.kernel_type;
+    this.batchSupported = (svmType == svm_parameter.C_SVC || svmType == svm_parameter.NU_SVC)
+        && kernelType != svm_parameter.PRECOMPUTED;
+    if (this.batchSupported) {
+      this.indexSupportVectors();
+    }
+  }
+
+  @Override
+  public List<String> classifyAll(List<List<Feature>> instanceFeatures)
+      throws CleartkProcessingException {
+    List<String> outcomes = new ArrayList<String>(instanceFeatures.size());
+    if (!this.batchSupported) {
+      for (List<Feature> features : instanceFeatures) {
+        outcomes.add(this.classify(features));
+      }
+      return outcomes;
+    }
+
+    // encode all instances into one sparse matrix, one row per instance
+    int[] rowStarts = new int[instanceFeatures.size() + 1];
+    int[] columns = new int[16];
+    double[] values = new double[16];
+    int nEntries = 0;
+    for (int row = 0; row < instanceFeatures.size(); ++row) {
+      FeatureVector vector = this.featuresEncoder.encodeAll(instanceFeatures.get(row));
+      if (vector instanceof HashedFeatureVector) {
+        // read the primitive arrays directly instead of through Entry objects
+        HashedFeatureVector hashed = (HashedFeatureVector) vector;
+        int size = hashed.size();
+        if (nEntries + size > columns.length) {
+          int capacity = Math.max(2 * columns.length, nEntries + size);
+          columns = Arrays.copyOf(columns, capacity);
+          values = Arrays.copyOf(values, capacity);
+        }
+        for (int i = 0; i < size; ++i) {
+          columns[nEntries] = hashed.indexAt(i);
+          values[nEntries] = hashed.valueAt(i);
+          ++nEntries;
+        }
+      } else {
+        for (FeatureVector.Entry entry : vector) {
+          if (nEntries == columns.length) {
+            columns = Arrays.copyOf(columns, 2 * nEntries);
+            values = Arrays.copyOf(values, 2 * nEntries);
+          }
+          columns[nEntries] = entry.index;
+          values[nEntries] = entry.value;
+          ++nEntries;
+        }
+      }
+      rowStarts[row + 1] = nEntries;
+    }
+
+    // classify each row against all support vectors at once
+    double[] products = new double[this.model.l];
+    double[] kernelValues = new double[this.model.l];
+    int[] votes = new int[this.model.nr_class];
+    int nFeatures = this.featureStarts.length - 1;
+    for (int row = 0; row < instanceFeatures.size(); ++row) {
+      Arrays.fill(products, 0.0);
+      double square = 0.0;
+      for (int entry = rowStarts[row]; entry < rowStarts[row + 1]; ++entry) {
+        int column = columns[entry];
+        double value = values[entry];
+        square += value * value;
+        if (column >= 0 && column < nFeatures) {
+          int end = this.featureStarts[column + 1];
+          for (int posting = this.featureStarts[column]; posting < end; ++posting) {
+            products[this.postingVectors[posting]] += value * this.postingValues[posting];
+          }
+        }
+      }
+      for (int vector = 0; vector < kernelValues.length; ++vector) {
+        kernelValues[vector] = this.kernel(products[vector], square, this.vectorSquares[vector]);
+      }
+      int label = this.vote(kernelValues, votes);
+      outcomes.add(this.outcomeEncoder.decode(this.decodePrediction(label)));
+    }
+    return outcomes;
+  }
+
+  private void indexSupportVectors() {
+    svm_node[][] vectors = this.model.SV;
+    int nFeatures = 0;
+    int nPostings = 0;
+    for (svm_node[] vector : vectors) {
+      for (svm_node node : vector) {
+        nFeatures = Math.max(nFeatures, node.index + 1);
+        ++nPostings;
+      }
+    }
+    this.featureStarts = new int[nFeatures + 1];
+    for (svm_node[] vector : vectors) {
+      for (svm_node node : vector) {
+        if (node.index >= 0) {
+          ++this.featureStarts[node.index + 1];
+        }
+      }
+    }
+    for (int i = 0; i < nFeatures; ++i) {
+      this.featureStarts[i + 1] += this.featureStarts[i];
+    }
+    this.postingVectors = new int[nPostings];
+    this.postingValues = new double[nPostings];
+    this.vectorSquares = new double[vectors.length];
+    int[] next = Arrays.copyOf(this.featureStarts, nFeatures);
+    for (int vector = 0; vector < vectors.length; ++vector) {
+      for (svm_node node : vectors[vector]) {
+        this.vectorSquares[vector] += node.value * node.value;
+        if (node.index >= 0) {
+          int posting = next[node.index]++;
+          this.postingVectors[posting] = vector;
+          this.postingValues[posting] = node.value;
+        }
+      }
+    }
+    this.classStarts = new int[this.model.nr_class];
+    for (int i = 1; i < this.model.nr_class; ++i) {
+      this.classStarts[i] = this.classStarts[i - 1] + this.model.nSV[i - 1];
+    }
+  }
+
+  /**
+   * The kernel between an instance and a support vector, from their dot product and squared norms,
+   * as LIBSVM's Kernel.k_function computes it.
+   */
+  private double kernel(double product, double square, double vectorSquare) {
+    svm_parameter param = this.model.param;
+    switch (param.kernel_type) {
+      case svm_parameter.LINEAR:
+        return product;
+      case svm_parameter.POLY:
+        return power(param.gamma * product + param.coef0, param.degree);
+      case svm_parameter.RBF:
+        double distance = Math.max(square + vectorSquare - 2 * product, 0.0);
+        return Math.exp(-param.gamma * distance);
+      case svm_parameter.SIGMOID:
+        return Math.tanh(param.gamma * product + param.coef0);
+      default:
+        throw new IllegalStateException("Unsupported kernel type " + param.kernel_type);
+    }
+  }
+
+  /**
+   * The label that wins the one-against-one votes, as in LIBSVM's svm_predict_values.
+   */
+  private int vote(double[] kernelValues, int[] votes) {
+    int nClasses = this.model.nr_class;
+    Arrays.fill(votes, 0);
+    int pair = 0;
+    for (int i = 0; i < nClasses; ++i) {
+      for (int j = i + 1; j < nClasses; ++j) {
+        double sum = 0;
+        int si = this.classStarts[i];
+        int sj = this.classStarts[j];
+        double[] coef1 = this.model.sv_coef[j - 1];
+        double[] coef2 = this.model.sv_coef[i];
+        for (int k = 0; k < this.model.nSV[i]; ++k) {
+          sum += coef1[si + k] * kernelValues[si + k];
+        }
+        for (int k = 0; k < this.model.nSV[j]; ++k) {
+          sum += coef2[sj + k] * kernelValues[sj + k];
+        }
+        sum -= this.model.rho[pair];
+        if (sum > 0) {
+          ++votes[i];
+        } else {
+          ++votes[j];
+        }
+        ++pair;
+      }
+    }
+    int winner = 0;
+    for (int i = 1; i < nClasses; ++i) {
+      if (votes[i] > votes[winner]) {
+        winner = i;
+      }
+    }
+    return this.model.label[winner];
+  }
+
+  /**
+   * LIBSVM's powi.
+   */
+  private static double power(double base, int times) {
+    double tmp = base;
+    double result = 1.0;
+    for (int t = times; t > 0; t /= 2) {
+      if (t % 2 == 1) {
+        result *= tmp;
+      }
+      tmp = tmp * tmp;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,34 @@
+package org.apache.ctakes.temporal.classifier;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.cleartk.classifier.libsvm.LIBSVMStringOutcomeClassifierBuilder;
+
+/**
+ * Packages LIBSVM models exactly as {@link LIBSVMStringOutcomeClassifierBuilder} does, but loads
+ * them as {@link BatchLIBSVMStringOutcomeClassifier}s.
+ *
+ * When the features are encoded with a {@link HashingFeaturesEncoder}, the number of bits and the
+ * seed of the hash are also recorded in the manifest of the model, for readers of the model that
+ * do not deserialize its encoders.
+ */
+public class BatchLIBSVMStringOutcomeClassifierBuilder extends
+    LIBSVMStringOutcomeClassifierBuilder {
+
+  @Override
+  public void saveToTrainingDirectory(File dir) throws IOException {
+    if (this.featuresEncoder instanceof HashingFeaturesEncoder) {
+      ((HashingFeaturesEncoder) this.featuresEncoder).recordIn(this.manifest);
+    }
+    super.saveToTrainingDirectory(dir);
+  }
+
+  @Override
+  protected BatchLIBSVMStringOutcomeClassifier newClassifier() {
+    return new BatchLIBSVMStringOutcomeClassifier(
+        this.featuresEncoder,
+        this.outcomeEncoder,
+        this.model);
+  }
+}
@@ -0,0 +1,24 @@
+package org.apache.ctakes.temporal.classifier;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.cleartk.classifier.libsvm.LIBSVMStringOutcomeClassifierBuilder;
+import org.cleartk.classifier.libsvm.LIBSVMStringOutcomeDataWriter;
+
+/**
+ * Writes the same training data as {@link LIBSVMStringOutcomeDataWriter}, but records
+ * {@link BatchLIBSVMStringOutcomeClassifierBuilder} in the model's manifest, so that the packaged
+ * model loads as a {@link BatchLIBSVMStringOutcomeClassifier}.
+ */
+public class BatchLIBSVMStringOutcomeDataWriter extends LIBSVMStringOutcomeDataWriter {
+
+  public BatchLIBSVMStringOutcomeDataWriter(File outputDirectory) throws IOException {
+    super(outputDirectory);
+  }
+
+  @Override
+  protected LIBSVMStringOutcomeClassifierBuilder newClassifierBuilder() {
+    return new BatchLIBSVMStringOutcomeClassifierBuilder();
+  }
+}
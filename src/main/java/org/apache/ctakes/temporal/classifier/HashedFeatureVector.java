@@ -0,0 +1,112 @@
+package org.apache.ctakes.temporal.classifier;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.cleartk.classifier.util.featurevector.FeatureVector;
+import org.cleartk.classifier.util.featurevector.InvalidFeatureVectorValueException;
+
+/**
+ * A sparse feature vector stored as parallel primitive arrays of indices (in increasing order) and
+ * values, as produced by the {@link HashingFeaturesEncoder}.
+ */
+public class HashedFeatureVector extends FeatureVector {
+
+  private int[] indices;
+
+  private float[] values;
+
+  private int size;
+
+  public HashedFeatureVector() {
+    this(new int[8], new float[8], 0);
+  }
+
+  /**
+   * Wrap the given arrays, whose first size indices must be increasing.
+   */
+  HashedFeatureVector(int[] indices, float[] values, int size) {
+    this.indices = indices;
+    this.values = values;
+    this.size = size;
+  }
+
+  /**
+   * The number of non-zero entries.
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * The index of the i-th non-zero entry.
+   */
+  public int indexAt(int i) {
+    return this.indices[i];
+  }
+
+  /**
+   * The value of the i-th non-zero entry.
+   */
+  public float valueAt(int i) {
+    return this.values[i];
+  }
+
+  @Override
+  public double get(int index) {
+    int position = Arrays.binarySearch(this.indices, 0, this.size, index);
+    return position < 0 ? 0.0 : this.values[position];
+  }
+
+  @Override
+  public void set(int index, double value) throws InvalidFeatureVectorValueException {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      throw new InvalidFeatureVectorValueException(index, value);
+    }
+    int position = Arrays.binarySearch(this.indices, 0, this.size, index);
+    if (position >= 0) {
+      this.values[position] = (float) value;
+      return;
+    }
+    position = -position - 1;
+    if (this.size == this.indices.length) {
+      int capacity = Math.max(8, 2 * this.size);
+      this.indices = Arrays.copyOf(this.indices, capacity);
+      this.values = Arrays.copyOf(this.values, capacity);
+    }
+    System.arraycopy(this.indices, position, this.indices, position + 1, this.size - position);
+    System.arraycopy(this.values, position, this.values, position + 1, this.size - position);
+    this.indices[position] = index;
+    this.values[position] = (float) value;
+    ++this.size;
+  }
+
+  @Override
+  public Iterator<Entry> iterator() {
+    return new Iterator<Entry>() {
+
+      private int position = 0;
+
+      @Override
+      public boolean hasNext() {
+        return this.position < size;
+      }
+
+      @Override
+      public Entry next() {
+        if (this.position >= size) {
+          throw new NoSuchElementException();
+        }
+        Entry entry = new Entry(indices[this.position], values[this.position]);
+        ++this.position;
+        return entry;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+}
@@ -0,0 +1,292 @@
+package org.apache.ctakes.temporal.classifier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.logging.Logger;
+
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.encoder.CleartkEncoderException;
+import org.cleartk.classifier.encoder.features.FeaturesEncoder;
+import org.cleartk.classifier.util.featurevector.FeatureVector;
+
+/**
+ * Encodes features by hashing them into a fixed number of indices, instead of looking up the
+ * feature name and value in a map of all features seen in training, as the default cleartk
+ * encoders do after building a string of the two.
+ *
+ * A feature with a string (or other non-numeric) value is hashed from its name and value (the name
+ * hash seeds the value hash, so no string is built) and gets the value 1. A feature with a numeric
+ * value is hashed from its name and keeps the value. A true boolean feature is hashed from its name
+ * and gets the value 1, a false one is dropped. Features that hash to the same index are summed.
+ * The hash is MurmurHash3 (x86, 32 bit) of the UTF-16 code units, as in Guava's
+ * <code>Hashing.murmur3_32(seed).hashString</code>.
+ *
+ * The encoder is serialized with the model, so that it encodes features at prediction time with
+ * the same number of bits and seed as in training. While encoding training data it also counts the
+ * distinct features and the indices they use, and {@link #finalizeFeatureSet(File)} logs these
+ * collision statistics and writes them to {@value #STATISTICS_FILE_NAME} in the training directory.
+ */
+public class HashingFeaturesEncoder implements FeaturesEncoder<FeatureVector> {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Logger LOGGER = Logger.getLogger(HashingFeaturesEncoder.class.getName());
+
+  public static final String STATISTICS_FILE_NAME = "feature-hashing.properties";
+
+  public static final Attributes.Name BITS_ATTRIBUTE = new Attributes.Name("Feature-Hashing-Bits");
+
+  public static final Attributes.Name SEED_ATTRIBUTE = new Attributes.Name("Feature-Hashing-Seed");
+
+  /**
+   * The seed of the second hash that tells apart features that share an index.
+   */
+  private static final int FINGERPRINT_SEED = 0x5bd1e995;
+
+  private int bits;
+
+  private int seed;
+
+  private int mask;
+
+  private transient Statistics statistics;
+
+  /**
+   * @param bits
+   *          The features are hashed into the indices 1 to 2<sup>bits</sup>.
+   * @param seed
+   *          The seed of the hash.
+   */
+  public HashingFeaturesEncoder(int bits, int seed) {
+    if (bits < 1 || bits > 30) {
+      throw new IllegalArgumentException("bits must be between 1 and 30, not " + bits);
+    }
+    this.bits = bits;
+    this.seed = seed;
+    this.mask = (1 << bits) - 1;
+    this.statistics = new Statistics(bits);
+  }
+
+  public int getBits() {
+    return this.bits;
+  }
+
+  public int getSeed() {
+    return this.seed;
+  }
+
+  /**
+   * Record the number of bits and the seed in the manifest of a model, for readers of the model
+   * that do not deserialize its encoders.
+   */
+  public void recordIn(Manifest manifest) {
+    Attributes attributes = manifest.getMainAttributes();
+    attributes.put(BITS_ATTRIBUTE, String.valueOf(this.bits));
+    attributes.put(SEED_ATTRIBUTE, String.valueOf(this.seed));
+  }
+
+  /**
+   * Create an encoder with the number of bits and the seed recorded in the manifest of a model by
+   * {@link #recordIn(Manifest)}.
+   *
+   * @return The encoder, or <code>null</code> if the model's features are not hashed.
+   */
+  public static HashingFeaturesEncoder fromManifest(Manifest manifest) {
+    Attributes attributes = manifest.getMainAttributes();
+    String bits = attributes.getValue(BITS_ATTRIBUTE);
+    String seed = attributes.getValue(SEED_ATTRIBUTE);
+    if (bits == null || seed == null) {
+      return null;
+    }
+    return new HashingFeaturesEncoder(Integer.parseInt(bits), Integer.parseInt(seed));
+  }
+
+  @Override
+  public HashedFeatureVector encodeAll(Iterable<Feature> features) throws CleartkEncoderException {
+    int[] indices = new int[16];
+    float[] values = new float[16];
+    int size = 0;
+    for (Feature feature : features) {
+      Object value = feature.getValue();
+      CharSequence name = feature.getName() == null ? "" : feature.getName();
+      int hash = hash(name, this.seed);
+      CharSequence text = null;
+      float weight = 1.0f;
+      if (value instanceof Number) {
+        weight = ((Number) value).floatValue();
+        if (Float.isNaN(weight) || Float.isInfinite(weight)) {
+          throw CleartkEncoderException.invalidFeatureVectorValue((hash & this.mask) + 1, weight);
+        }
+      } else if (value instanceof Boolean) {
+        if (!((Boolean) value).booleanValue()) {
+          continue;
+        }
+      } else {
+        text = value instanceof CharSequence ? (CharSequence) value : String.valueOf(value);
+        hash = hash(text, hash);
+      }
+      int index = (hash & this.mask) + 1;
+      if (size == indices.length) {
+        indices = Arrays.copyOf(indices, 2 * size);
+        values = Arrays.copyOf(values, 2 * size);
+      }
+      indices[size] = index;
+      values[size] = weight;
+      ++size;
+      if (this.statistics != null) {
+        int fingerprint = hash(name, FINGERPRINT_SEED);
+        if (text != null) {
+          fingerprint = hash(text, fingerprint);
+        }
+        this.statistics.add(index, ((long) hash << 32) | (fingerprint & 0xffffffffL));
+      }
+    }
+
+    // sort by index (feature lists are short, so by insertion) and sum the values of equal indices
+    for (int i = 1; i < size; ++i) {
+      int index = indices[i];
+      float value = values[i];
+      int j = i - 1;
+      for (; j >= 0 && indices[j] > index; --j) {
+        indices[j + 1] = indices[j];
+        values[j + 1] = values[j];
+      }
+      indices[j + 1] = index;
+      values[j + 1] = value;
+    }
+    int merged = 0;
+    for (int i = 0; i < size; ++i) {
+      if (merged > 0 && indices[merged - 1] == indices[i]) {
+        values[merged - 1] += values[i];
+      } else {
+        indices[merged] = indices[i];
+        values[merged] = values[i];
+        ++merged;
+      }
+    }
+    return new HashedFeatureVector(indices, values, merged);
+  }
+
+  /**
+   * Log the collision statistics of the training data and write them to the output directory.
+   * Statistics are only collected by the encoder that encoded the training data, not by one loaded
+   * with a model.
+   */
+  @Override
+  public void finalizeFeatureSet(File outputDirectory) throws IOException {
+    if (this.statistics == null) {
+      return;
+    }
+    Statistics stats = this.statistics;
+    this.statistics = null;
+    long collisions = stats.features - stats.indices;
+    LOGGER.info(String.format(
+        "Hashed %d distinct features into %d of %d indices (%d bits, %d features share an index)",
+        stats.features,
+        stats.indices,
+        1L << this.bits,
+        this.bits,
+        collisions));
+    Properties properties = new Properties();
+    properties.setProperty("bits", String.valueOf(this.bits));
+    properties.setProperty("seed", String.valueOf(this.seed));
+    properties.setProperty("features", String.valueOf(stats.features));
+    properties.setProperty("indices", String.valueOf(stats.indices));
+    properties.setProperty("collisions", String.valueOf(collisions));
+    OutputStream output = new FileOutputStream(new File(outputDirectory, STATISTICS_FILE_NAME));
+    try {
+      properties.store(output, "Feature hashing statistics of the training data");
+    } finally {
+      output.close();
+    }
+  }
+
+  /**
+   * MurmurHash3 (x86, 32 bit) of the UTF-16 code units of the characters.
+   */
+  public static int hash(CharSequence chars, int seed) {
+    int h1 = seed;
+    int length = chars.length();
+    for (int i = 1; i < length; i += 2) {
+      int k1 = chars.charAt(i - 1) | (chars.charAt(i) << 16);
+      h1 = mixH1(h1, mixK1(k1));
+    }
+    if ((length & 1) == 1) {
+      h1 ^= mixK1(chars.charAt(length - 1));
+    }
+    h1 ^= 2 * length;
+    h1 ^= h1 >>> 16;
+    h1 *= 0x85ebca6b;
+    h1 ^= h1 >>> 13;
+    h1 *= 0xc2b2ae35;
+    h1 ^= h1 >>> 16;
+    return h1;
+  }
+
+  private static int mixK1(int k1) {
+    return Integer.rotateLeft(k1 * 0xcc9e2d51, 15) * 0x1b873593;
+  }
+
+  private static int mixH1(int h1, int k1) {
+    return Integer.rotateLeft(h1 ^ k1, 13) * 5 + 0xe6546b64;
+  }
+
+  /**
+   * The number of distinct features (by a 64 bit fingerprint) and of distinct indices seen.
+   */
+  private static class Statistics {
+
+    public long features;
+
+    public long indices;
+
+    private BitSet usedIndices;
+
+    private long[] fingerprints;
+
+    public Statistics(int bits) {
+      this.usedIndices = new BitSet(1 << bits);
+      this.fingerprints = new long[1024];
+    }
+
+    public void add(int index, long fingerprint) {
+      if (!this.usedIndices.get(index)) {
+        this.usedIndices.set(index);
+        ++this.indices;
+      }
+      // an open addressing set of fingerprints, with 0 marking an empty slot
+      long key = fingerprint == 0 ? 1 : fingerprint;
+      if (this.insert(this.fingerprints, key)) {
+        ++this.features;
+        if (2 * this.features > this.fingerprints.length) {
+          long[] resized = new long[2 * this.fingerprints.length];
+          for (long old : this.fingerprints) {
+            if (old != 0) {
+              this.insert(resized, old);
+            }
+          }
+          this.fingerprints = resized;
+        }
+      }
+    }
+
+    private boolean insert(long[] table, long key) {
+      int slot = (int) (key ^ (key >>> 32)) & (table.length - 1);
+      while (table[slot] != 0) {
+        if (table[slot] == key) {
+          return false;
+        }
+        slot = (slot + 1) & (table.length - 1);
+      }
+      table[slot] = key;
+      return true;
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package org.apache.ctakes.temporal.classifier;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes LIBSVM training data like {@link BatchLIBSVMStringOutcomeDataWriter}, but encodes the
+ * features with a {@link HashingFeaturesEncoder}, which is packaged with the model and so also
+ * encodes the features at prediction time.
+ */
+public class HashingLIBSVMStringOutcomeDataWriter extends BatchLIBSVMStringOutcomeDataWriter {
+
+  /**
+   * The default number of bits of the feature indices, i.e. about a million indices, several times
+   * the number of distinct features in the THYME training data.
+   */
+  public static final int DEFAULT_BITS = 20;
+
+  public static final int DEFAULT_SEED = 0;
+
+  public HashingLIBSVMStringOutcomeDataWriter(File outputDirectory) throws IOException {
+    this(outputDirectory, DEFAULT_BITS, DEFAULT_SEED);
+  }
+
+  public HashingLIBSVMStringOutcomeDataWriter(File outputDirectory, int bits, int seed)
+      throws IOException {
+    super(outputDirectory);
+    this.setFeaturesEncoder(new HashingFeaturesEncoder(bits, seed));
+  }
+}
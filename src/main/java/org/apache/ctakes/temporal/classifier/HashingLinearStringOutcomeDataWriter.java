@@ -0,0 +1,24 @@
+package org.apache.ctakes.temporal.classifier;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes training data like {@link LinearStringOutcomeDataWriter}, but encodes the features with a
+ * {@link HashingFeaturesEncoder} (see {@link HashingLIBSVMStringOutcomeDataWriter}).
+ */
+public class HashingLinearStringOutcomeDataWriter extends LinearStringOutcomeDataWriter {
+
+  public HashingLinearStringOutcomeDataWriter(File outputDirectory) throws IOException {
+    this(
+        outputDirectory,
+        HashingLIBSVMStringOutcomeDataWriter.DEFAULT_BITS,
+        HashingLIBSVMStringOutcomeDataWriter.DEFAULT_SEED);
+  }
+
+  public HashingLinearStringOutcomeDataWriter(File outputDirectory, int bits, int seed)
+      throws IOException {
+    super(outputDirectory);
+    this.setFeaturesEncoder(new HashingFeaturesEncoder(bits, seed));
+  }
+}
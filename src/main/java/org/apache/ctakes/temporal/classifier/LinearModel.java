@@ -0,0 +1,355 @@
+package org.apache.ctakes.temporal.classifier;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import org.cleartk.classifier.util.featurevector.FeatureVector;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A multi-class linear model: one weight vector and bias per class, trained one class against the
+ * rest, and predicting the class with the highest score.
+ *
+ * Each class is trained as an L2-regularized L2-loss support vector machine (LIBLINEAR's default
+ * solver, -s 1) by dual coordinate descent (Hsieh et al., 2008), with a bias feature of value 1.
+ * The weights are stored by feature, i.e. the weights of all classes for feature i are at
+ * [i * nClasses, (i + 1) * nClasses), so that scoring a sparse instance reads one short run of
+ * floats per feature.
+ */
+public class LinearModel {
+
+  private static final Logger LOGGER = Logger.getLogger(LinearModel.class.getName());
+
+  private static final int MAGIC = 0x4C494E31; // "LIN1"
+
+  /**
+   * The encoded outcome of each class, in increasing order.
+   */
+  private int[] labels;
+
+  private int nFeatures;
+
+  private float[] weights;
+
+  private float[] biases;
+
+  private LinearModel(int[] labels, int nFeatures, float[] weights, float[] biases) {
+    this.labels = labels;
+    this.nFeatures = nFeatures;
+    this.weights = weights;
+    this.biases = biases;
+  }
+
+  public int getNumberOfClasses() {
+    return this.labels.length;
+  }
+
+  /**
+   * The encoded outcome of the given class.
+   */
+  public int getLabel(int classIndex) {
+    return this.labels[classIndex];
+  }
+
+  /**
+   * Compute the score of each class for the given instance. Features that were not seen in
+   * training are ignored.
+   */
+  public void score(FeatureVector vector, double[] scores) {
+    int nClasses = this.labels.length;
+    for (int c = 0; c < nClasses; ++c) {
+      scores[c] = this.biases[c];
+    }
+    if (vector instanceof HashedFeatureVector) {
+      // read the primitive arrays directly instead of through Entry objects
+      HashedFeatureVector hashed = (HashedFeatureVector) vector;
+      for (int i = 0; i < hashed.size(); ++i) {
+        this.addFeature(hashed.indexAt(i), hashed.valueAt(i), scores);
+      }
+    } else {
+      for (FeatureVector.Entry entry : vector) {
+        this.addFeature(entry.index, (float) entry.value, scores);
+      }
+    }
+  }
+
+  private void addFeature(int index, float value, double[] scores) {
+    if (index >= 0 && index < this.nFeatures) {
+      int nClasses = scores.length;
+      int offset = index * nClasses;
+      for (int c = 0; c < nClasses; ++c) {
+        scores[c] += value * this.weights[offset + c];
+      }
+    }
+  }
+
+  /**
+   * The class with the highest of the given scores (the first one, if several are highest).
+   */
+  public static int argMax(double[] scores) {
+    int best = 0;
+    for (int c = 1; c < scores.length; ++c) {
+      if (scores[c] > scores[best]) {
+        best = c;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Train a model on the given training data file, in which each line is an encoded outcome
+   * followed by index:value pairs, as written by {@link LinearStringOutcomeDataWriter}.
+   *
+   * @param cost
+   *          The cost of misclassifying a training instance, like LIBLINEAR's -c.
+   * @param epsilon
+   *          The tolerance of the stopping criterion, like LIBLINEAR's -e.
+   * @param maxIterations
+   *          The maximum number of passes over the training data per class.
+   */
+  public static LinearModel train(
+      File trainingDataFile,
+      double cost,
+      double epsilon,
+      int maxIterations) throws IOException {
+    Instances instances = Instances.read(trainingDataFile);
+    if (instances.size == 0) {
+      throw new IOException("No training instances in " + trainingDataFile);
+    }
+    int nFeatures = instances.maxIndex + 1;
+    int[] labels = instances.getLabels();
+    int nClasses = labels.length;
+    float[] weights = new float[nFeatures * nClasses];
+    float[] biases = new float[nClasses];
+
+    // with only two classes, the second class's weights are the negated first's
+    int nTrained = nClasses == 2 ? 1 : nClasses;
+    double[] w = new double[nFeatures + 1];
+    for (int c = 0; c < nTrained; ++c) {
+      int iterations = trainOneAgainstRest(instances, labels[c], cost, epsilon, maxIterations, w);
+      LOGGER.fine(String.format("Trained class %d in %d iterations", labels[c], iterations));
+      for (int f = 0; f < nFeatures; ++f) {
+        weights[f * nClasses + c] = (float) w[f];
+      }
+      biases[c] = (float) w[nFeatures];
+      if (nClasses == 2) {
+        for (int f = 0; f < nFeatures; ++f) {
+          weights[f * nClasses + 1] = (float) -w[f];
+        }
+        biases[1] = (float) -w[nFeatures];
+      }
+    }
+    return new LinearModel(labels, nFeatures, weights, biases);
+  }
+
+  /**
+   * Dual coordinate descent for the L2-loss SVM that separates the given label from the rest. The
+   * weights (with the bias last) are written to w.
+   *
+   * @return The number of iterations.
+   */
+  private static int trainOneAgainstRest(
+      Instances instances,
+      int label,
+      double cost,
+      double epsilon,
+      int maxIterations,
+      double[] w) {
+    int l = instances.size;
+    int bias = w.length - 1;
+    double diagonal = 0.5 / cost;
+    Arrays.fill(w, 0.0);
+    double[] alpha = new double[l];
+    double[] qd = new double[l];
+    byte[] y = new byte[l];
+    int[] order = new int[l];
+    for (int i = 0; i < l; ++i) {
+      y[i] = (byte) (instances.labels[i] == label ? 1 : -1);
+      qd[i] = diagonal + 1.0; // the bias feature
+      for (int j = instances.rowStarts[i]; j < instances.rowStarts[i + 1]; ++j) {
+        qd[i] += instances.values[j] * instances.values[j];
+      }
+      order[i] = i;
+    }
+    Random random = new Random(0);
+    int iteration = 0;
+    boolean converged = false;
+    while (!converged && iteration < maxIterations) {
+      ++iteration;
+      for (int i = l - 1; i > 0; --i) {
+        int j = random.nextInt(i + 1);
+        int swap = order[i];
+        order[i] = order[j];
+        order[j] = swap;
+      }
+      double maxGradient = Double.NEGATIVE_INFINITY;
+      double minGradient = Double.POSITIVE_INFINITY;
+      for (int s = 0; s < l; ++s) {
+        int i = order[s];
+        int start = instances.rowStarts[i];
+        int end = instances.rowStarts[i + 1];
+        double product = w[bias];
+        for (int j = start; j < end; ++j) {
+          product += w[instances.columns[j]] * instances.values[j];
+        }
+        double gradient = y[i] * product - 1 + diagonal * alpha[i];
+        // projected onto alpha >= 0
+        double projected = alpha[i] == 0 ? Math.min(gradient, 0) : gradient;
+        maxGradient = Math.max(maxGradient, projected);
+        minGradient = Math.min(minGradient, projected);
+        if (projected != 0) {
+          double old = alpha[i];
+          alpha[i] = Math.max(old - gradient / qd[i], 0);
+          double delta = (alpha[i] - old) * y[i];
+          for (int j = start; j < end; ++j) {
+            w[instances.columns[j]] += delta * instances.values[j];
+          }
+          w[bias] += delta;
+        }
+      }
+      converged = maxGradient - minGradient <= epsilon;
+    }
+    if (!converged) {
+      LOGGER.warning("Reached the maximum of " + maxIterations + " iterations for class " + label);
+    }
+    return iteration;
+  }
+
+  public void write(OutputStream outputStream) throws IOException {
+    DataOutputStream output = new DataOutputStream(outputStream);
+    output.writeInt(MAGIC);
+    output.writeInt(this.labels.length);
+    for (int label : this.labels) {
+      output.writeInt(label);
+    }
+    output.writeInt(this.nFeatures);
+    for (float weight : this.weights) {
+      output.writeFloat(weight);
+    }
+    for (float bias : this.biases) {
+      output.writeFloat(bias);
+    }
+    output.flush();
+  }
+
+  /**
+   * Read a model written by {@link #write(OutputStream)}, leaving the stream open.
+   */
+  public static LinearModel read(InputStream inputStream) throws IOException {
+    DataInputStream input = new DataInputStream(inputStream);
+    if (input.readInt() != MAGIC) {
+      throw new IOException("Not a linear model");
+    }
+    int[] labels = new int[input.readInt()];
+    for (int c = 0; c < labels.length; ++c) {
+      labels[c] = input.readInt();
+    }
+    int nFeatures = input.readInt();
+    float[] weights = new float[nFeatures * labels.length];
+    for (int i = 0; i < weights.length; ++i) {
+      weights[i] = input.readFloat();
+    }
+    float[] biases = new float[labels.length];
+    for (int c = 0; c < biases.length; ++c) {
+      biases[c] = input.readFloat();
+    }
+    return new LinearModel(labels, nFeatures, weights, biases);
+  }
+
+  /**
+   * Training instances as a sparse matrix, one row per instance.
+   */
+  private static class Instances {
+
+    public int size;
+
+    public int[] labels = new int[1024];
+
+    public int[] rowStarts = new int[1025];
+
+    public int[] columns = new int[8192];
+
+    public float[] values = new float[8192];
+
+    public int maxIndex = 0;
+
+    public static Instances read(File file) throws IOException {
+      Instances instances = new Instances();
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          new FileInputStream(file),
+          Charsets.UTF_8));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String[] fields = line.trim().split("\\s+");
+          if (fields[0].length() > 0) {
+            instances.add(fields);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+      return instances;
+    }
+
+    /**
+     * Add an instance from its encoded outcome and index:value fields.
+     */
+    private void add(String[] fields) throws IOException {
+      if (this.size == this.labels.length) {
+        this.labels = Arrays.copyOf(this.labels, 2 * this.size);
+        this.rowStarts = Arrays.copyOf(this.rowStarts, 2 * this.size + 1);
+      }
+      int nEntries = this.rowStarts[this.size];
+      if (nEntries + fields.length > this.columns.length) {
+        int capacity = Math.max(2 * this.columns.length, nEntries + fields.length);
+        this.columns = Arrays.copyOf(this.columns, capacity);
+        this.values = Arrays.copyOf(this.values, capacity);
+      }
+      try {
+        this.labels[this.size] = Integer.parseInt(fields[0]);
+        for (int i = 1; i < fields.length; ++i) {
+          int colon = fields[i].indexOf(':');
+          int index = Integer.parseInt(fields[i].substring(0, colon));
+          if (index < 0) {
+            throw new IllegalArgumentException("negative index " + index);
+          }
+          this.columns[nEntries] = index;
+          this.values[nEntries] = Float.parseFloat(fields[i].substring(colon + 1));
+          this.maxIndex = Math.max(this.maxIndex, index);
+          ++nEntries;
+        }
+      } catch (RuntimeException e) {
+        throw new IOException("Invalid training instance: " + Arrays.toString(fields), e);
+      }
+      ++this.size;
+      this.rowStarts[this.size] = nEntries;
+    }
+
+    public int[] getLabels() {
+      SortedSet<Integer> labelSet = new TreeSet<Integer>();
+      for (int i = 0; i < this.size; ++i) {
+        labelSet.add(this.labels[i]);
+      }
+      int[] result = new int[labelSet.size()];
+      int c = 0;
+      for (Integer label : labelSet) {
+        result[c++] = label;
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package org.apache.ctakes.temporal.classifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.cleartk.classifier.CleartkProcessingException;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.ScoredOutcome;
+import org.cleartk.classifier.encoder.features.FeaturesEncoder;
+import org.cleartk.classifier.encoder.outcome.OutcomeEncoder;
+import org.cleartk.classifier.jar.Classifier_ImplBase;
+import org.cleartk.classifier.util.featurevector.FeatureVector;
+
+/**
+ * Classifies instances with a {@link LinearModel}: the outcome is the class whose weights have the
+ * highest dot product with the instance's features.
+ */
+public class LinearStringOutcomeClassifier extends
+    Classifier_ImplBase<FeatureVector, String, Integer> implements BatchClassifier<String> {
+
+  private LinearModel model;
+
+  public LinearStringOutcomeClassifier(
+      FeaturesEncoder<FeatureVector> featuresEncoder,
+      OutcomeEncoder<String, Integer> outcomeEncoder,
+      LinearModel model) {
+    super(featuresEncoder, outcomeEncoder);
+    this.model = model;
+  }
+
+  @Override
+  public String classify(List<Feature> features) throws CleartkProcessingException {
+    double[] scores = new double[this.model.getNumberOfClasses()];
+    this.model.score(this.featuresEncoder.encodeAll(features), scores);
+    return this.decode(LinearModel.argMax(scores));
+  }
+
+  @Override
+  public List<String> classifyAll(List<List<Feature>> instanceFeatures)
+      throws CleartkProcessingException {
+    List<String> outcomes = new ArrayList<String>(instanceFeatures.size());
+    double[] scores = new double[this.model.getNumberOfClasses()];
+    for (List<Feature> features : instanceFeatures) {
+      this.model.score(this.featuresEncoder.encodeAll(features), scores);
+      outcomes.add(this.decode(LinearModel.argMax(scores)));
+    }
+    return outcomes;
+  }
+
+  /**
+   * The outcomes in order of decreasing score, where the scores are the dot products of the
+   * classes' weights with the features (not probabilities).
+   */
+  @Override
+  public List<ScoredOutcome<String>> score(List<Feature> features, int maxResults)
+      throws CleartkProcessingException {
+    double[] scores = new double[this.model.getNumberOfClasses()];
+    this.model.score(this.featuresEncoder.encodeAll(features), scores);
+    List<ScoredOutcome<String>> results = new ArrayList<ScoredOutcome<String>>();
+    for (int c = 0; c < scores.length; ++c) {
+      results.add(new ScoredOutcome<String>(this.decode(c), scores[c]));
+    }
+    Collections.sort(results, new Comparator<ScoredOutcome<String>>() {
+      @Override
+      public int compare(ScoredOutcome<String> outcome1, ScoredOutcome<String> outcome2) {
+        return Double.compare(outcome2.getScore(), outcome1.getScore());
+      }
+    });
+    return results.subList(0, Math.min(maxResults, results.size()));
+  }
+
+  private String decode(int classIndex) throws CleartkProcessingException {
+    return this.outcomeEncoder.decode(this.model.getLabel(classIndex));
+  }
+}
@@ -0,0 +1,98 @@
+package org.apache.ctakes.temporal.classifier;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import org.cleartk.classifier.jar.ClassifierBuilder_ImplBase;
+import org.cleartk.classifier.jar.JarStreams;
+import org.cleartk.classifier.util.featurevector.FeatureVector;
+
+/**
+ * Trains, packages and loads {@link LinearModel}s for {@link LinearStringOutcomeClassifier}s.
+ *
+ * The training arguments are LIBLINEAR's: -c (the cost, by default 1), -e (the stopping
+ * tolerance, by default 0.1), and in addition -i (the maximum number of iterations per class, by
+ * default 1000).
+ */
+public class LinearStringOutcomeClassifierBuilder extends
+    ClassifierBuilder_ImplBase<LinearStringOutcomeClassifier, FeatureVector, String, Integer> {
+
+  private static final String TRAINING_DATA_NAME = "training-data.linear";
+
+  private static final String MODEL_NAME = "model.linear";
+
+  private LinearModel model;
+
+  @Override
+  public File getTrainingDataFile(File dir) {
+    return new File(dir, TRAINING_DATA_NAME);
+  }
+
+  public File getModelFile(File dir) {
+    return new File(dir, MODEL_NAME);
+  }
+
+  @Override
+  public void saveToTrainingDirectory(File dir) throws IOException {
+    if (this.featuresEncoder instanceof HashingFeaturesEncoder) {
+      ((HashingFeaturesEncoder) this.featuresEncoder).recordIn(this.manifest);
+    }
+    super.saveToTrainingDirectory(dir);
+  }
+
+  @Override
+  public void trainClassifier(File dir, String... args) throws Exception {
+    double cost = 1.0;
+    double epsilon = 0.1;
+    int maxIterations = 1000;
+    for (int i = 0; i < args.length; i += 2) {
+      if (i + 1 == args.length) {
+        throw new IllegalArgumentException("Missing value for " + args[i]);
+      }
+      if (args[i].equals("-c")) {
+        cost = Double.parseDouble(args[i + 1]);
+      } else if (args[i].equals("-e")) {
+        epsilon = Double.parseDouble(args[i + 1]);
+      } else if (args[i].equals("-i")) {
+        maxIterations = Integer.parseInt(args[i + 1]);
+      } else {
+        throw new IllegalArgumentException("Unknown argument " + args[i]);
+      }
+    }
+    LinearModel model = LinearModel.train(
+        this.getTrainingDataFile(dir),
+        cost,
+        epsilon,
+        maxIterations);
+    OutputStream output = new BufferedOutputStream(new FileOutputStream(this.getModelFile(dir)));
+    try {
+      model.write(output);
+    } finally {
+      output.close();
+    }
+  }
+
+  @Override
+  protected void packageClassifier(File dir, JarOutputStream modelStream) throws IOException {
+    super.packageClassifier(dir, modelStream);
+    JarStreams.putNextJarEntry(modelStream, MODEL_NAME, this.getModelFile(dir));
+  }
+
+  @Override
+  protected void unpackageClassifier(JarInputStream modelStream) throws IOException {
+    super.unpackageClassifier(modelStream);
+    JarStreams.getNextJarEntry(modelStream, MODEL_NAME);
+    this.model = LinearModel.read(new BufferedInputStream(modelStream));
+  }
+
+  @Override
+  protected LinearStringOutcomeClassifier newClassifier() {
+    return new LinearStringOutcomeClassifier(this.featuresEncoder, this.outcomeEncoder, this.model);
+  }
+}
@@ -0,0 +1,52 @@
+package org.apache.ctakes.temporal.classifier;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.cleartk.classifier.CleartkProcessingException;
+import org.cleartk.classifier.encoder.CleartkEncoderException;
+import org.cleartk.classifier.encoder.features.BooleanEncoder;
+import org.cleartk.classifier.encoder.features.FeatureVectorFeaturesEncoder;
+import org.cleartk.classifier.encoder.features.NumberEncoder;
+import org.cleartk.classifier.encoder.features.StringEncoder;
+import org.cleartk.classifier.encoder.outcome.StringToIntegerOutcomeEncoder;
+import org.cleartk.classifier.jar.DataWriter_ImplBase;
+import org.cleartk.classifier.util.featurevector.FeatureVector;
+
+/**
+ * Writes training data for a {@link LinearStringOutcomeClassifier}, encoding the features and
+ * outcomes the same way as cleartk's LIBSVM data writers, one "outcome index:value ..." line per
+ * instance.
+ */
+public class LinearStringOutcomeDataWriter extends
+    DataWriter_ImplBase<LinearStringOutcomeClassifierBuilder, FeatureVector, String, Integer> {
+
+  public LinearStringOutcomeDataWriter(File outputDirectory) throws IOException {
+    super(outputDirectory);
+    FeatureVectorFeaturesEncoder featuresEncoder = new FeatureVectorFeaturesEncoder();
+    featuresEncoder.addEncoder(new NumberEncoder());
+    featuresEncoder.addEncoder(new BooleanEncoder());
+    featuresEncoder.addEncoder(new StringEncoder());
+    this.setFeaturesEncoder(featuresEncoder);
+    this.setOutcomeEncoder(new StringToIntegerOutcomeEncoder());
+  }
+
+  @Override
+  protected void writeEncoded(FeatureVector features, Integer outcome)
+      throws CleartkProcessingException {
+    StringBuilder line = new StringBuilder();
+    line.append(outcome);
+    for (FeatureVector.Entry entry : features) {
+      if (Double.isNaN(entry.value) || Double.isInfinite(entry.value)) {
+        throw CleartkEncoderException.invalidFeatureVectorValue(entry.index, entry.value);
+      }
+      line.append(' ').append(entry.index).append(':').append((float) entry.value);
+    }
+    this.trainingDataWriter.println(line);
+  }
+
+  @Override
+  protected LinearStringOutcomeClassifierBuilder newClassifierBuilder() {
+    return new LinearStringOutcomeClassifierBuilder();
+  }
+}
@@ -2,13 +2,13 @@ package org.apache.ctakes.temporal.eval;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.logging.FileHandler;
 import java.util.logging.Formatter;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
@@ -22,30 +22,68 @@ import org.apache.uima.resource.ResourceInitializationException;
 import org.cleartk.eval.AnnotationStatistics;
 import org.cleartk.util.ViewURIUtil;
 import org.uimafit.factory.AggregateBuilder;
-import org.uimafit.pipeline.JCasIterable;
-import org.uimafit.pipeline.SimplePipeline;
-
-import com.google.common.base.Function;
-import com.google.common.collect.Ordering;
 
 public abstract class EvaluationOfAnnotationSpans_ImplBase extends
     Evaluation_ImplBase<AnnotationStatistics<String>> {
 
   private final Logger logger = Logger.getLogger(this.getClass().getName());
 
+  private File logFile;
+
+  private static final Formatter MESSAGE_FORMATTER = new Formatter() {
+    @Override
+    public String format(LogRecord record) {
+      return record.getMessage() + '\n';
+    }
+  };
+
+  /**
+   * Log to the given file at the given level. At {@link Level#FINE} or below, every dropped and
+   * added annotation is written as a JSON error record (see {@link SpanDiff#getErrorRecords}), one
+   * per line.
+   */
   public void setLogging(Level level, File outputFile) throws IOException {
     if (!outputFile.getParentFile().exists()) {
       outputFile.getParentFile().mkdirs();
     }
     this.logger.setLevel(level);
     FileHandler handler = new FileHandler(outputFile.getPath());
-    handler.setFormatter(new Formatter() {
-      @Override
-      public String format(LogRecord record) {
-        return record.getMessage() + '\n';
-      }
-    });
+    handler.setFormatter(MESSAGE_FORMATTER);
     this.logger.addHandler(handler);
+    this.logFile = outputFile;
+  }
+
+  /**
+   * The logger for the fold whose models are in the given directory. When folds run in parallel,
+   * each fold logs to a file of the same name in its own directory, so that the messages of
+   * different folds are not interleaved. Pass the logger to {@link #closeFoldLogger} when the fold
+   * is done.
+   */
+  private Logger openFoldLogger(File directory) throws IOException {
+    if (this.getFoldThreads() <= 1 || this.logFile == null) {
+      return this.logger;
+    }
+    // a new logger for each fold, so that no other fold (or later run) writes to its file
+    Logger foldLogger = Logger.getAnonymousLogger();
+    foldLogger.setUseParentHandlers(false);
+    foldLogger.setLevel(this.logger.getLevel());
+    File foldLogFile = new File(directory, this.logFile.getName());
+    FileHandler handler = new FileHandler(foldLogFile.getPath());
+    handler.setFormatter(MESSAGE_FORMATTER);
+    foldLogger.addHandler(handler);
+    return foldLogger;
+  }
+
+  /**
+   * Close the file of a logger from {@link #openFoldLogger}, unless it is the evaluation's logger.
+   */
+  private void closeFoldLogger(Logger foldLogger) {
+    if (foldLogger != this.logger) {
+      for (Handler handler : foldLogger.getHandlers()) {
+        foldLogger.removeHandler(handler);
+        handler.close();
+      }
+    }
   }
 
   public EvaluationOfAnnotationSpans_ImplBase(
@@ -64,10 +102,13 @@ public abstract class EvaluationOfAnnotationSpans_ImplBase extends
 
   @Override
   protected void train(CollectionReader collectionReader, File directory) throws Exception {
-    AggregateBuilder aggregateBuilder = new AggregateBuilder();
-    aggregateBuilder.add(this.getPreprocessorTrainDescription());
-    aggregateBuilder.add(this.getDataWriterDescription(directory));
-    SimplePipeline.runPipeline(collectionReader, aggregateBuilder.createAggregate());
+    this.writeTrainingData(collectionReader, this.getDataWriterDescription(directory));
+    this.trainAndPackage(directory);
+  }
+
+  @Override
+  protected void train(List<Integer> patientSets, File directory) throws Exception {
+    this.writeTrainingData(patientSets, this.getDataWriterDescription(directory));
     this.trainAndPackage(directory);
   }
 
@@ -81,59 +122,71 @@ public abstract class EvaluationOfAnnotationSpans_ImplBase extends
   @Override
   protected AnnotationStatistics<String> test(CollectionReader collectionReader, File directory)
       throws Exception {
-    AggregateBuilder aggregateBuilder = new AggregateBuilder();
-    aggregateBuilder.add(this.getPreprocessorTestDescription());
-    aggregateBuilder.add(this.getAnnotatorDescription(directory));
-
-    AnnotationStatistics<String> stats = new AnnotationStatistics<String>();
-    Ordering<Annotation> bySpans = Ordering.<Integer> natural().lexicographical().onResultOf(
-        new Function<Annotation, List<Integer>>() {
-          @Override
-          public List<Integer> apply(Annotation annotation) {
-            return Arrays.asList(annotation.getBegin(), annotation.getEnd());
-          }
-        });
-    for (JCas jCas : new JCasIterable(collectionReader, aggregateBuilder.createAggregate())) {
-      JCas goldView = jCas.getView(GOLD_VIEW_NAME);
-      JCas systemView = jCas.getView(CAS.NAME_DEFAULT_SOFA);
-      Collection<? extends Annotation> goldAnnotations = this.getGoldAnnotations(goldView);
-      Collection<? extends Annotation> systemAnnotations = this.getSystemAnnotations(systemView);
-      stats.add(goldAnnotations, systemAnnotations);
-
-      Set<Annotation> goldSet = new TreeSet<Annotation>(bySpans);
-      goldSet.addAll(goldAnnotations);
-      Set<Annotation> systemSet = new TreeSet<Annotation>(bySpans);
-      systemSet.addAll(systemAnnotations);
-
-      Set<Annotation> goldOnly = new TreeSet<Annotation>(bySpans);
-      goldOnly.addAll(goldSet);
-      goldOnly.removeAll(systemSet);
-
-      Set<Annotation> systemOnly = new TreeSet<Annotation>(bySpans);
-      systemOnly.addAll(systemSet);
-      systemOnly.removeAll(goldSet);
-
-      String text = jCas.getDocumentText().replaceAll("[\r\n]", " ");
-      if (!goldOnly.isEmpty() || !systemOnly.isEmpty()) {
-        this.logger.fine("Errors in : " + ViewURIUtil.getURI(jCas).toString());
-        Set<Annotation> errors = new TreeSet<Annotation>(bySpans);
-        errors.addAll(goldOnly);
-        errors.addAll(systemOnly);
-        for (Annotation annotation : errors) {
-          int begin = annotation.getBegin();
-          int end = annotation.getEnd();
-          int windowBegin = Math.max(0, begin - 50);
-          int windowEnd = Math.min(text.length(), end + 50);
-          String label = goldOnly.contains(annotation) ? "DROPPED:" : "ADDED:  ";
-          this.logger.fine(String.format(
-              "%s  ...%s[!%s!]%s...",
-              label,
-              text.substring(windowBegin, begin),
-              text.substring(begin, end),
-              text.substring(end, windowEnd)));
-        }
+    final Logger logger = this.openFoldLogger(directory);
+    try {
+      final boolean logErrors = logger.isLoggable(Level.FINE);
+      AggregateBuilder aggregateBuilder = new AggregateBuilder();
+      this.instrument(aggregateBuilder, "test");
+      aggregateBuilder.add(this.getPreprocessorTestDescription());
+      aggregateBuilder.add(this.getAnnotatorDescription(directory));
+
+      final AnnotationStatistics<String> stats = new AnnotationStatistics<String>();
+      ParallelDocumentProcessor.process(
+          collectionReader,
+          aggregateBuilder.createAggregateDescription(),
+          this.getTestThreads(),
+          new ParallelDocumentProcessor.DocumentEvaluator<DocumentResult>() {
+            @Override
+            public DocumentResult evaluate(JCas jCas) throws Exception {
+              return evaluateDocument(jCas, logErrors);
+            }
+          },
+          new ParallelDocumentProcessor.ResultCollector<DocumentResult>() {
+            @Override
+            public void collect(DocumentResult result) {
+              stats.addAll(result.stats);
+              for (String message : result.errorMessages) {
+                logger.fine(message);
+              }
+            }
+          });
+      return stats;
+    } finally {
+      this.closeFoldLogger(logger);
+    }
+  }
+
+  /**
+   * The statistics and error records for a single document
+   */
+  private static class DocumentResult {
+    public AnnotationStatistics<String> stats = new AnnotationStatistics<String>();
+
+    public List<String> errorMessages = new ArrayList<String>();
+  }
+
+  /**
+   * Compare the system annotations of one document to the gold annotations. May be called from
+   * several threads at once (on different documents).
+   */
+  private DocumentResult evaluateDocument(JCas jCas, boolean logErrors) throws Exception {
+    DocumentResult result = new DocumentResult();
+    JCas goldView = jCas.getView(GOLD_VIEW_NAME);
+    JCas systemView = jCas.getView(CAS.NAME_DEFAULT_SOFA);
+    Collection<? extends Annotation> goldAnnotations = this.getGoldAnnotations(goldView);
+    Collection<? extends Annotation> systemAnnotations = this.getSystemAnnotations(systemView);
+    result.stats.add(goldAnnotations, systemAnnotations);
+
+    // record each dropped and added annotation (only if someone is listening)
+    if (logErrors) {
+      SpanDiff diff = new SpanDiff(goldAnnotations, systemAnnotations);
+      if (diff.hasErrors()) {
+        result.errorMessages.addAll(diff.getErrorRecords(
+            ViewURIUtil.getURI(jCas).toString(),
+            jCas.getDocumentText(),
+            50));
       }
     }
-    return stats;
+    return result;
   }
 }
@@ -9,20 +9,18 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.ctakes.temporal.ae.DocTimeRelAnnotator;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.Feature;
 import org.apache.uima.collection.CollectionReader;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.cas.TOP;
-import org.cleartk.classifier.jar.JarClassifierBuilder;
-import org.cleartk.classifier.libsvm.LIBSVMStringOutcomeDataWriter;
+import org.apache.uima.resource.ResourceInitializationException;
 import org.cleartk.eval.AnnotationStatistics;
 import org.uimafit.component.JCasAnnotator_ImplBase;
 import org.uimafit.factory.AggregateBuilder;
 import org.uimafit.factory.AnalysisEngineFactory;
-import org.uimafit.pipeline.JCasIterable;
-import org.uimafit.pipeline.SimplePipeline;
 import org.uimafit.util.JCasUtil;
 
 import com.google.common.base.Function;
@@ -45,6 +43,22 @@ public class EvaluationOfEventProperties extends
         options.getRawTextDirectory(),
         options.getKnowtatorXMLDirectory(),
         options.getPatients().getList());
+    if (options.isGoldCasCorpusDirectory()) {
+      evaluation.setGoldCasCorpusDirectory(options.getGoldCasCorpusDirectory());
+    }
+    if (options.isFoldThreads()) {
+      evaluation.setFoldThreads(options.getFoldThreads());
+    }
+    if (options.isTestThreads()) {
+      evaluation.setTestThreads(options.getTestThreads());
+    }
+    evaluation.setInstrumented(options.isInstrument());
+    evaluation.setUmlsSnapshotLookup(options.isUmlsSnapshot());
+    evaluation.setMemoryMappedIndexes(options.isMmapIndexes());
+    if (options.isUmlsTokenFile()) {
+      evaluation.setUmlsTokenFile(options.getUmlsTokenFile());
+    }
+    evaluation.setFeatureHashing(options.isFeatureHashing());
     List<Map<String, AnnotationStatistics<String>>> foldStats = evaluation.crossValidation(4);
     Map<String, AnnotationStatistics<String>> overallStats = new HashMap<String, AnnotationStatistics<String>>();
     for (String name : PROPERTY_NAMES) {
@@ -67,6 +81,18 @@ public class EvaluationOfEventProperties extends
       System.err.println("Overall");
       System.err.println(overallStats.get(name));
     }
+    if (options.isCompareLinear()) {
+      evaluation.setClassifierType(ClassifierType.LINEAR);
+      List<Map<String, AnnotationStatistics<String>>> linearFoldStats;
+      linearFoldStats = evaluation.crossValidation(4);
+      for (String name : PROPERTY_NAMES) {
+        AnnotationStatistics<String> linearStats = new AnnotationStatistics<String>();
+        for (Map<String, AnnotationStatistics<String>> propertyStats : linearFoldStats) {
+          linearStats.addAll(propertyStats.get(name));
+        }
+        printClassifierComparison(name, overallStats.get(name), linearStats);
+      }
+    }
   }
 
   public EvaluationOfEventProperties(
@@ -91,13 +117,21 @@ public class EvaluationOfEventProperties extends
 
   @Override
   protected void train(CollectionReader collectionReader, File directory) throws Exception {
-    AggregateBuilder aggregateBuilder = new AggregateBuilder();
-    aggregateBuilder.add(this.getPreprocessorTrainDescription());
-    aggregateBuilder.add(DocTimeRelAnnotator.createDataWriterDescription(
-        LIBSVMStringOutcomeDataWriter.class,
-        directory));
-    SimplePipeline.runPipeline(collectionReader, aggregateBuilder.createAggregate());
-    JarClassifierBuilder.trainAndPackage(directory, "-c", "1000");
+    this.writeTrainingData(collectionReader, this.getDataWriterDescription(directory));
+    this.trainAndPackageModel(this.getModelDirectory(directory), "-c", "1000");
+  }
+
+  @Override
+  protected void train(List<Integer> patientSets, File directory) throws Exception {
+    this.writeTrainingData(patientSets, this.getDataWriterDescription(directory));
+    this.trainAndPackageModel(this.getModelDirectory(directory), "-c", "1000");
+  }
+
+  private AnalysisEngineDescription getDataWriterDescription(File directory)
+      throws ResourceInitializationException {
+    return DocTimeRelAnnotator.createDataWriterDescription(
+        this.getDataWriterClass(),
+        this.getModelDirectory(directory));
   }
 
   @Override
@@ -105,32 +139,53 @@ public class EvaluationOfEventProperties extends
       CollectionReader collectionReader,
       File directory) throws Exception {
     AggregateBuilder aggregateBuilder = new AggregateBuilder();
+    this.instrument(aggregateBuilder, "test");
     aggregateBuilder.add(this.getPreprocessorTestDescription());
     aggregateBuilder.add(AnalysisEngineFactory.createPrimitiveDescription(ClearEventProperties.class));
-    aggregateBuilder.add(DocTimeRelAnnotator.createAnnotatorDescription(directory));
+    aggregateBuilder.add(DocTimeRelAnnotator.createAnnotatorDescription(
+        this.getModelDirectory(directory)));
 
-    Function<EventMention, ?> eventMentionToSpan = AnnotationStatistics.annotationToSpan();
-    Map<String, Function<EventMention, String>> propertyGetters;
+    final Function<EventMention, ?> eventMentionToSpan = AnnotationStatistics.annotationToSpan();
+    final Map<String, Function<EventMention, String>> propertyGetters;
     propertyGetters = new HashMap<String, Function<EventMention, String>>();
     for (String name : PROPERTY_NAMES) {
       propertyGetters.put(name, getPropertyGetter(name));
     }
 
-    Map<String, AnnotationStatistics<String>> statsMap = new HashMap<String, AnnotationStatistics<String>>();
+    final Map<String, AnnotationStatistics<String>> statsMap = new HashMap<String, AnnotationStatistics<String>>();
     statsMap.put(DOC_TIME_REL, new AnnotationStatistics<String>());
-    for (JCas jCas : new JCasIterable(collectionReader, aggregateBuilder.createAggregate())) {
-      JCas goldView = jCas.getView(GOLD_VIEW_NAME);
-      JCas systemView = jCas.getView(CAS.NAME_DEFAULT_SOFA);
-      Collection<EventMention> goldEvents = JCasUtil.select(goldView, EventMention.class);
-      Collection<EventMention> systemEvents = JCasUtil.select(systemView, EventMention.class);
-      for (String name : PROPERTY_NAMES) {
-        statsMap.get(name).add(
-            goldEvents,
-            systemEvents,
-            eventMentionToSpan,
-            propertyGetters.get(name));
-      }
-    }
+    ParallelDocumentProcessor.process(
+        collectionReader,
+        aggregateBuilder.createAggregateDescription(),
+        this.getTestThreads(),
+        new ParallelDocumentProcessor.DocumentEvaluator<Map<String, AnnotationStatistics<String>>>() {
+          @Override
+          public Map<String, AnnotationStatistics<String>> evaluate(JCas jCas) throws Exception {
+            JCas goldView = jCas.getView(GOLD_VIEW_NAME);
+            JCas systemView = jCas.getView(CAS.NAME_DEFAULT_SOFA);
+            Collection<EventMention> goldEvents = JCasUtil.select(goldView, EventMention.class);
+            Collection<EventMention> systemEvents = JCasUtil.select(systemView, EventMention.class);
+            Map<String, AnnotationStatistics<String>> documentStatsMap = new HashMap<String, AnnotationStatistics<String>>();
+            for (String name : PROPERTY_NAMES) {
+              AnnotationStatistics<String> documentStats = new AnnotationStatistics<String>();
+              documentStats.add(
+                  goldEvents,
+                  systemEvents,
+                  eventMentionToSpan,
+                  propertyGetters.get(name));
+              documentStatsMap.put(name, documentStats);
+            }
+            return documentStatsMap;
+          }
+        },
+        new ParallelDocumentProcessor.ResultCollector<Map<String, AnnotationStatistics<String>>>() {
+          @Override
+          public void collect(Map<String, AnnotationStatistics<String>> documentStatsMap) {
+            for (String name : PROPERTY_NAMES) {
+              statsMap.get(name).addAll(documentStatsMap.get(name));
+            }
+          }
+        });
     return statsMap;
   }
 
@@ -12,8 +12,6 @@ import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.cas.TOP;
 import org.apache.uima.jcas.tcas.Annotation;
 import org.apache.uima.resource.ResourceInitializationException;
-import org.cleartk.classifier.jar.JarClassifierBuilder;
-import org.cleartk.classifier.libsvm.LIBSVMStringOutcomeDataWriter;
 import org.cleartk.eval.AnnotationStatistics;
 import org.uimafit.util.JCasUtil;
 
@@ -31,13 +29,36 @@ public class EvaluationOfEventSpans extends EvaluationOfAnnotationSpans_ImplBase
         options.getRawTextDirectory(),
         options.getKnowtatorXMLDirectory(),
         options.getPatients().getList());
-    evaluation.setLogging(Level.FINE, new File("target/eval/event-errors.log"));
+    if (options.isGoldCasCorpusDirectory()) {
+      evaluation.setGoldCasCorpusDirectory(options.getGoldCasCorpusDirectory());
+    }
+    if (options.isFoldThreads()) {
+      evaluation.setFoldThreads(options.getFoldThreads());
+    }
+    if (options.isTestThreads()) {
+      evaluation.setTestThreads(options.getTestThreads());
+    }
+    evaluation.setInstrumented(options.isInstrument());
+    evaluation.setUmlsSnapshotLookup(options.isUmlsSnapshot());
+    evaluation.setMemoryMappedIndexes(options.isMmapIndexes());
+    if (options.isUmlsTokenFile()) {
+      evaluation.setUmlsTokenFile(options.getUmlsTokenFile());
+    }
+    evaluation.setFeatureHashing(options.isFeatureHashing());
+    evaluation.setLogging(Level.FINE, new File("target/eval/event-errors.jsonl"));
     List<AnnotationStatistics<String>> foldStats = evaluation.crossValidation(4);
     for (AnnotationStatistics<String> stats : foldStats) {
       System.err.println(stats);
     }
     System.err.println("OVERALL");
-    System.err.println(AnnotationStatistics.addAll(foldStats));
+    AnnotationStatistics<String> overallStats = AnnotationStatistics.addAll(foldStats);
+    System.err.println(overallStats);
+    if (options.isCompareLinear()) {
+      evaluation.setClassifierType(ClassifierType.LINEAR);
+      AnnotationStatistics<String> linearStats;
+      linearStats = AnnotationStatistics.addAll(evaluation.crossValidation(4));
+      printClassifierComparison("Event spans", overallStats, linearStats);
+    }
   }
 
   public EvaluationOfEventSpans(
@@ -54,13 +75,13 @@ public class EvaluationOfEventSpans extends EvaluationOfAnnotationSpans_ImplBase
   protected AnalysisEngineDescription getDataWriterDescription(File directory)
       throws ResourceInitializationException {
     return EventAnnotator.createDataWriterDescription(
-        LIBSVMStringOutcomeDataWriter.class,
-        directory);
+        this.getDataWriterClass(),
+        this.getModelDirectory(directory));
   }
 
   @Override
   protected void trainAndPackage(File directory) throws Exception {
-    JarClassifierBuilder.trainAndPackage(directory, "-c", "10000");
+    this.trainAndPackageModel(this.getModelDirectory(directory), "-c", "10000");
   }
 
   @Override
@@ -73,7 +94,7 @@ public class EvaluationOfEventSpans extends EvaluationOfAnnotationSpans_ImplBase
   @Override
   protected AnalysisEngineDescription getAnnotatorDescription(File directory)
       throws ResourceInitializationException {
-    return EventAnnotator.createAnnotatorDescription(directory);
+    return EventAnnotator.createAnnotatorDescription(this.getModelDirectory(directory));
   }
 
   @Override
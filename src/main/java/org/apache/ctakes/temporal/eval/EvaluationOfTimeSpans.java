@@ -36,7 +36,22 @@ public class EvaluationOfTimeSpans extends EvaluationOfAnnotationSpans_ImplBase
         options.getRawTextDirectory(),
         options.getKnowtatorXMLDirectory(),
         options.getPatients().getList());
-    evaluation.setLogging(Level.FINE, new File("target/eval/time-errors.log"));
+    if (options.isGoldCasCorpusDirectory()) {
+      evaluation.setGoldCasCorpusDirectory(options.getGoldCasCorpusDirectory());
+    }
+    if (options.isFoldThreads()) {
+      evaluation.setFoldThreads(options.getFoldThreads());
+    }
+    if (options.isTestThreads()) {
+      evaluation.setTestThreads(options.getTestThreads());
+    }
+    evaluation.setInstrumented(options.isInstrument());
+    evaluation.setUmlsSnapshotLookup(options.isUmlsSnapshot());
+    evaluation.setMemoryMappedIndexes(options.isMmapIndexes());
+    if (options.isUmlsTokenFile()) {
+      evaluation.setUmlsTokenFile(options.getUmlsTokenFile());
+    }
+    evaluation.setLogging(Level.FINE, new File("target/eval/time-errors.jsonl"));
     List<AnnotationStatistics<String>> foldStats = evaluation.crossValidation(4);
     for (AnnotationStatistics<String> stats : foldStats) {
       System.err.println(stats);
@@ -1,26 +1,63 @@
 package org.apache.ctakes.temporal.eval;
 
 import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
 
+import org.apache.ctakes.knowtator.KnowtatorAnnotationCache;
+import org.apache.ctakes.knowtator.KnowtatorXMLParser;
 import org.apache.ctakes.temporal.ae.THYMEKnowtatorXMLReader;
+import org.apache.ctakes.temporal.ae.TokenValidatedUmlsLookupAnnotator;
+import org.apache.ctakes.temporal.classifier.BatchLIBSVMStringOutcomeClassifier;
+import org.apache.ctakes.temporal.classifier.BatchLIBSVMStringOutcomeDataWriter;
+import org.apache.ctakes.temporal.classifier.HashingFeaturesEncoder;
+import org.apache.ctakes.temporal.classifier.HashingLIBSVMStringOutcomeDataWriter;
+import org.apache.ctakes.temporal.classifier.HashingLinearStringOutcomeDataWriter;
+import org.apache.ctakes.temporal.classifier.LinearModel;
+import org.apache.ctakes.temporal.classifier.LinearStringOutcomeClassifierBuilder;
+import org.apache.ctakes.temporal.classifier.LinearStringOutcomeDataWriter;
+import org.apache.ctakes.temporal.resource.DictionarySnapshot;
+import org.apache.ctakes.temporal.resource.SharedJdbcConnectionResourceImpl;
+import org.apache.ctakes.temporal.resource.SharedLuceneIndexReaderResourceImpl;
+import org.apache.ctakes.temporal.resource.SharedMaxentModelResourceImpl;
+import org.apache.ctakes.temporal.resource.SharedResourceRegistry;
+import org.apache.ctakes.temporal.resource.UmlsLicense;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.collection.CollectionReader;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.cas.TOP;
-import org.cleartk.util.ae.UriToDocumentTextAnnotator;
-import org.cleartk.util.cr.UriCollectionReader;
+import org.apache.uima.resource.ExternalResourceDescription;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.ConfigurationParameterSettings;
+import org.cleartk.classifier.DataWriter;
+import org.cleartk.classifier.jar.DefaultDataWriterFactory;
+import org.cleartk.classifier.jar.JarClassifierBuilder;
+import org.cleartk.eval.AnnotationStatistics;
 import org.uimafit.component.JCasAnnotator_ImplBase;
 import org.uimafit.component.ViewCreatorAnnotator;
 import org.uimafit.component.ViewTextCopierAnnotator;
 import org.uimafit.factory.AggregateBuilder;
 import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.ConfigurationParameterFactory;
 import org.uimafit.factory.ExternalResourceFactory;
+import org.uimafit.pipeline.SimplePipeline;
 import org.uimafit.util.JCasUtil;
 
 import com.google.common.collect.Lists;
@@ -35,9 +72,6 @@ import edu.mayo.bmi.uima.core.ae.SentenceDetector;
 import edu.mayo.bmi.uima.core.ae.SimpleSegmentAnnotator;
 import edu.mayo.bmi.uima.core.ae.TokenizerAnnotatorPTB;
 import edu.mayo.bmi.uima.core.resource.FileResourceImpl;
-import edu.mayo.bmi.uima.core.resource.JdbcConnectionResourceImpl;
-import edu.mayo.bmi.uima.core.resource.LuceneIndexReaderResourceImpl;
-import edu.mayo.bmi.uima.core.resource.SuffixMaxentModelResourceImpl;
 import edu.mayo.bmi.uima.core.type.syntax.Chunk;
 import edu.mayo.bmi.uima.core.type.textsem.EntityMention;
 import edu.mayo.bmi.uima.core.type.textspan.LookupWindowAnnotation;
@@ -51,7 +85,11 @@ public abstract class Evaluation_ImplBase<STATISTICS_TYPE> extends
     PART_OF_SPEECH_TAGS, UMLS_NAMED_ENTITIES
   };
 
-  protected final String GOLD_VIEW_NAME = "GoldView";
+  public enum ClassifierType {
+    LIBSVM, LINEAR
+  };
+
+  protected final String GOLD_VIEW_NAME = GoldCasCorpus.GOLD_VIEW_NAME;
 
   static interface Options {
 
@@ -63,8 +101,45 @@ public abstract class Evaluation_ImplBase<STATISTICS_TYPE> extends
 
     @Option(longName = "patients")
     public CommandLine.IntegerRanges getPatients();
+
+    @Option(longName = "corpus")
+    public File getGoldCasCorpusDirectory();
+
+    public boolean isGoldCasCorpusDirectory();
+
+    @Option(longName = "fold-threads")
+    public int getFoldThreads();
+
+    public boolean isFoldThreads();
+
+    @Option(longName = "test-threads")
+    public int getTestThreads();
+
+    public boolean isTestThreads();
+
+    @Option(longName = "instrument")
+    public boolean isInstrument();
+
+    @Option(longName = "umls-snapshot")
+    public boolean isUmlsSnapshot();
+
+    @Option(longName = "mmap-indexes")
+    public boolean isMmapIndexes();
+
+    @Option(longName = "umls-token")
+    public File getUmlsTokenFile();
+
+    public boolean isUmlsTokenFile();
+
+    @Option(longName = "feature-hashing")
+    public boolean isFeatureHashing();
+
+    @Option(longName = "compare-linear")
+    public boolean isCompareLinear();
   }
 
+  private static final Logger LOGGER = Logger.getLogger(Evaluation_ImplBase.class.getName());
+
   protected File rawTextDirectory;
 
   protected File knowtatorXMLDirectory;
@@ -73,6 +148,24 @@ public abstract class Evaluation_ImplBase<STATISTICS_TYPE> extends
 
   private Set<AnnotatorType> annotatorFlags;
 
+  private GoldCasCorpus goldCasCorpus;
+
+  private int foldThreads = 1;
+
+  private int testThreads = 1;
+
+  private boolean instrumented = false;
+
+  private boolean umlsSnapshotLookup = false;
+
+  private boolean memoryMappedIndexes = false;
+
+  private File umlsTokenFile;
+
+  private boolean featureHashing = false;
+
+  private ClassifierType classifierType = ClassifierType.LIBSVM;
+
   public Evaluation_ImplBase(
       File baseDirectory,
       File rawTextDirectory,
@@ -86,12 +179,472 @@ public abstract class Evaluation_ImplBase<STATISTICS_TYPE> extends
     this.annotatorFlags = annotatorFlags;
   }
 
+  /**
+   * Read documents from a {@link GoldCasCorpus} in the given directory (converting any missing or
+   * stale documents first) instead of reading the raw text and Knowtator XML in every fold. Pass
+   * <code>null</code> to go back to reading the raw text and Knowtator XML.
+   */
+  public void setGoldCasCorpusDirectory(File directory) {
+    this.goldCasCorpus = directory == null
+        ? null
+        : new GoldCasCorpus(directory, this.knowtatorXMLDirectory);
+  }
+
+  public int getFoldThreads() {
+    return this.foldThreads;
+  }
+
+  /**
+   * Run up to this many cross-validation folds at the same time (by default, 1, i.e. one after
+   * another). Each fold still trains and tests in its own fold_N directory with its own pipelines,
+   * and the results are returned in fold order, so they are the same as when the folds are run one
+   * after another. Each fold loads its own copy of the models, so memory use grows with the number
+   * of threads.
+   */
+  public void setFoldThreads(int foldThreads) {
+    this.foldThreads = foldThreads;
+  }
+
+  public int getTestThreads() {
+    return this.testThreads;
+  }
+
+  /**
+   * Process the documents of each test phase on this many threads (by default, 1), each with its own
+   * copy of the testing pipeline (see {@link ParallelDocumentProcessor}). Documents are still
+   * evaluated and logged in order, so the results are the same as with a single thread.
+   */
+  public void setTestThreads(int testThreads) {
+    this.testThreads = testThreads;
+  }
+
+  public boolean isInstrumented() {
+    return this.instrumented;
+  }
+
+  /**
+   * Measure each annotator of the training and testing pipelines (see
+   * {@link PipelineInstrumentation}), and write a summary table for each fold to
+   * fold_N/pipeline-timing.txt. Since instrumented pipelines are configured differently, they do
+   * not use preprocessing cached by uninstrumented runs, so the preprocessing annotators are
+   * measured too.
+   */
+  public void setInstrumented(boolean instrumented) {
+    this.instrumented = instrumented;
+  }
+
+  public boolean isUmlsSnapshotLookup() {
+    return this.umlsSnapshotLookup;
+  }
+
+  /**
+   * Look up UMLS named entities in a Lucene index snapshot of the UMLS dictionary (see
+   * {@link DictionarySnapshot}), like the RxNorm and Orange Book dictionaries, instead of querying
+   * the HSQLDB database for each lookup window. The snapshot is written to
+   * {@link #getUmlsSnapshotDirectory()} the first time it is needed, and again whenever the
+   * database changes. It is memory-mapped if {@link #setMemoryMappedIndexes(boolean)} is on.
+   */
+  public void setUmlsSnapshotLookup(boolean umlsSnapshotLookup) {
+    this.umlsSnapshotLookup = umlsSnapshotLookup;
+  }
+
+  /**
+   * The directory where the snapshot of the UMLS dictionary is written, if snapshot lookup is on.
+   */
+  protected File getUmlsSnapshotDirectory() {
+    return new File(this.baseDirectory, "umls2011ab-snapshot");
+  }
+
+  public boolean isMemoryMappedIndexes() {
+    return this.memoryMappedIndexes;
+  }
+
+  /**
+   * Map the RxNorm and Orange Book Lucene indexes into memory (see
+   * {@link SharedLuceneIndexReaderResourceImpl}) instead of copying them onto the heap.
+   */
+  public void setMemoryMappedIndexes(boolean memoryMappedIndexes) {
+    this.memoryMappedIndexes = memoryMappedIndexes;
+  }
+
+  public File getUmlsTokenFile() {
+    return this.umlsTokenFile;
+  }
+
+  /**
+   * Record a successful validation of the UMLS credentials in the given file (see
+   * {@link UmlsLicense}), so that later pipelines, including those of later runs, skip the UTS web
+   * service call until the token expires. Pass <code>null</code> (the default) to validate every time
+   * the UMLS lookup is initialized.
+   */
+  public void setUmlsTokenFile(File umlsTokenFile) {
+    this.umlsTokenFile = umlsTokenFile;
+  }
+
+  public boolean isFeatureHashing() {
+    return this.featureHashing;
+  }
+
+  /**
+   * Train the classifiers with features hashed into a fixed number of indices (see
+   * {@link HashingFeaturesEncoder}) instead of features numbered through a map of their names and
+   * values (see {@link #getDataWriterClass()}).
+   */
+  public void setFeatureHashing(boolean featureHashing) {
+    this.featureHashing = featureHashing;
+  }
+
+  public ClassifierType getClassifierType() {
+    return this.classifierType;
+  }
+
+  /**
+   * Train LIBSVM models (the default), or linear models that are much faster at prediction time
+   * (see {@link LinearModel}). Linear models are kept in a linear subdirectory of each fold
+   * directory (see {@link #getModelDirectory(File)}), so that both can be trained and compared.
+   */
+  public void setClassifierType(ClassifierType classifierType) {
+    this.classifierType = classifierType;
+  }
+
+  /**
+   * The directory for the model of the fold with the given directory and the current classifier
+   * type.
+   */
+  protected File getModelDirectory(File foldDirectory) {
+    return this.classifierType == ClassifierType.LINEAR
+        ? new File(foldDirectory, "linear")
+        : foldDirectory;
+  }
+
+  /**
+   * The data writer for string outcomes for the current classifier type and feature encoding. The
+   * LIBSVM models load as {@link BatchLIBSVMStringOutcomeClassifier}s.
+   */
+  protected Class<? extends DataWriter<String>> getDataWriterClass() {
+    if (this.classifierType == ClassifierType.LINEAR) {
+      return this.featureHashing
+          ? HashingLinearStringOutcomeDataWriter.class
+          : LinearStringOutcomeDataWriter.class;
+    }
+    return this.featureHashing
+        ? HashingLIBSVMStringOutcomeDataWriter.class
+        : BatchLIBSVMStringOutcomeDataWriter.class;
+  }
+
+  /**
+   * Train and package the model written to the given directory, with the given LIBSVM arguments
+   * for LIBSVM models, and their linear counterparts (see {@link #getLinearArguments}) for linear
+   * models.
+   */
+  protected void trainAndPackageModel(File modelDirectory, String... libsvmArguments)
+      throws Exception {
+    if (this.classifierType == ClassifierType.LINEAR) {
+      JarClassifierBuilder.trainAndPackage(modelDirectory, getLinearArguments(libsvmArguments));
+    } else {
+      JarClassifierBuilder.trainAndPackage(modelDirectory, libsvmArguments);
+    }
+  }
+
+  /**
+   * The {@link LinearStringOutcomeClassifierBuilder} arguments for the given LIBSVM arguments. The
+   * cost -c is the same parameter of the SVM objective in both. The other LIBSVM arguments choose
+   * kernels and solvers that the linear models do not have, so they are rejected rather than
+   * silently dropped.
+   */
+  static String[] getLinearArguments(String... libsvmArguments) {
+    List<String> linearArguments = new ArrayList<String>();
+    for (int i = 0; i < libsvmArguments.length; i += 2) {
+      String name = libsvmArguments[i];
+      if (!name.equals("-c")) {
+        throw new IllegalArgumentException(String.format(
+            "LIBSVM argument %s has no linear model counterpart",
+            name));
+      }
+      if (i + 1 == libsvmArguments.length) {
+        throw new IllegalArgumentException("Missing value for " + name);
+      }
+      linearArguments.add(name);
+      linearArguments.add(libsvmArguments[i + 1]);
+    }
+    return linearArguments.toArray(new String[linearArguments.size()]);
+  }
+
+  /**
+   * Print the overall statistics of the LIBSVM baseline and of the linear models side by side.
+   */
+  protected static void printClassifierComparison(
+      String name,
+      AnnotationStatistics<String> libsvmStats,
+      AnnotationStatistics<String> linearStats) {
+    System.err.println("====================");
+    System.err.println(name + ": linear models vs. LIBSVM baseline");
+    System.err.println(String.format("%-8s %8s %8s %8s", "", "P", "R", "F1"));
+    System.err.println(String.format(
+        "%-8s %8.4f %8.4f %8.4f",
+        "LIBSVM",
+        libsvmStats.precision(),
+        libsvmStats.recall(),
+        libsvmStats.f1()));
+    System.err.println(String.format(
+        "%-8s %8.4f %8.4f %8.4f",
+        "linear",
+        linearStats.precision(),
+        linearStats.recall(),
+        linearStats.f1()));
+    System.err.println(String.format("F1 difference: %+.4f", linearStats.f1() - libsvmStats.f1()));
+  }
+
+  /**
+   * If instrumentation is on, instrument the delegates of the given aggregate, naming them after the
+   * given pipeline in the summary.
+   */
+  protected void instrument(AggregateBuilder aggregateBuilder, String pipelineName)
+      throws ResourceInitializationException {
+    if (this.instrumented) {
+      aggregateBuilder.setFlowControllerDescription(PipelineInstrumentation.getFlowControllerDescription(pipelineName));
+    }
+  }
+
   public List<STATISTICS_TYPE> crossValidation(int nFolds) throws Exception {
+    if (this.goldCasCorpus != null) {
+      this.goldCasCorpus.update(this.getTextFiles(this.patientSets), this.getKnowtatorCache());
+    } else {
+      this.warmKnowtatorCache(this.patientSets);
+    }
     return this.crossValidation(this.patientSets, nFolds);
   }
 
+  /**
+   * Same folds and fold directories as the ClearTK implementation, but the folds run on up to
+   * {@link #getFoldThreads()} threads, and the time taken by each fold is logged.
+   */
+  @Override
+  public List<STATISTICS_TYPE> crossValidation(List<Integer> items, int nFolds) throws Exception {
+    if (items.size() < nFolds) {
+      String message = "Cannot have %d folds with only %d items";
+      throw new IllegalArgumentException(String.format(message, nFolds, items.size()));
+    }
+    List<Callable<STATISTICS_TYPE>> folds = new ArrayList<Callable<STATISTICS_TYPE>>();
+    for (int i = 0; i < nFolds; ++i) {
+      File directory = new File(this.baseDirectory, "fold_" + i);
+      directory.mkdirs();
+      folds.add(new Fold(
+          directory,
+          this.selectFoldTrainItems(items, nFolds, i),
+          this.selectFoldTestItems(items, nFolds, i)));
+    }
+
+    List<STATISTICS_TYPE> results = new ArrayList<STATISTICS_TYPE>();
+    if (this.foldThreads <= 1) {
+      for (Callable<STATISTICS_TYPE> fold : folds) {
+        results.add(fold.call());
+      }
+    } else {
+      ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.foldThreads, nFolds));
+      try {
+        for (Future<STATISTICS_TYPE> future : executor.invokeAll(folds)) {
+          try {
+            results.add(future.get());
+          } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+              throw (Exception) cause;
+            } else if (cause instanceof Error) {
+              throw (Error) cause;
+            }
+            throw e;
+          }
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+    return results;
+  }
+
+  private class Fold implements Callable<STATISTICS_TYPE> {
+
+    private File directory;
+
+    private List<Integer> trainItems;
+
+    private List<Integer> testItems;
+
+    public Fold(File directory, List<Integer> trainItems, List<Integer> testItems) {
+      this.directory = directory;
+      this.trainItems = trainItems;
+      this.testItems = testItems;
+    }
+
+    @Override
+    public STATISTICS_TYPE call() throws Exception {
+      PipelineInstrumentation instrumentation = null;
+      if (instrumented) {
+        instrumentation = new PipelineInstrumentation(this.directory.getName());
+        PipelineInstrumentation.setCurrent(instrumentation);
+      }
+      try {
+        long start = System.nanoTime();
+        train(this.trainItems, this.directory);
+        long trained = System.nanoTime();
+        STATISTICS_TYPE stats = test(getCollectionReader(this.testItems), this.directory);
+        long tested = System.nanoTime();
+        LOGGER.info(String.format(
+            "%s: trained in %.1fs, tested in %.1fs, total %.1fs",
+            this.directory.getName(),
+            (trained - start) / 1e9,
+            (tested - trained) / 1e9,
+            (tested - start) / 1e9));
+        if (instrumentation != null) {
+          File summaryFile = new File(this.directory, "pipeline-timing.txt");
+          instrumentation.writeSummary(summaryFile);
+          LOGGER.info(String.format(
+              "%s: pipeline timing written to %s",
+              this.directory.getName(),
+              summaryFile));
+        }
+        return stats;
+      } finally {
+        PipelineInstrumentation.setCurrent(null);
+      }
+    }
+  }
+
+  /**
+   * Train a model on the given patient sets and write it to the given directory. By default, this
+   * trains on a reader over the patient sets; subclasses that write their training data with
+   * {@link #writeTrainingData} can skip reading documents whose training instances are cached.
+   */
+  protected void train(List<Integer> patientSets, File directory) throws Exception {
+    this.train(this.getCollectionReader(patientSets), directory);
+  }
+
+  /**
+   * Write the training data of the documents of the given reader by running the training
+   * preprocessor and then the given annotator (in training mode) over them.
+   */
+  protected void writeTrainingData(
+      CollectionReader collectionReader,
+      AnalysisEngineDescription dataWriterDescription) throws Exception {
+    this.runTrainingPipeline(
+        collectionReader,
+        this.getPreprocessorTrainDescription(),
+        dataWriterDescription);
+  }
+
+  /**
+   * Write the training data of the given patient sets, like
+   * {@link #writeTrainingData(CollectionReader, AnalysisEngineDescription)} over a reader of their
+   * documents.
+   *
+   * With an instance cache directory (see {@link #getInstanceCacheDirectory()}), the instances that
+   * the annotator writes for each document are cached (see {@link InstanceCache}). Only the patient
+   * sets with documents missing from the cache are processed, and the training data is then written
+   * from the cached instances, in the same order as the annotator would have written them.
+   */
+  protected void writeTrainingData(
+      List<Integer> patientSets,
+      AnalysisEngineDescription dataWriterDescription) throws Exception {
+    File cacheDirectory = this.getInstanceCacheDirectory();
+    if (cacheDirectory == null || !InstanceCache.isCacheable(dataWriterDescription)) {
+      this.writeTrainingData(this.getCollectionReader(patientSets), dataWriterDescription);
+      return;
+    }
+
+    // find the entries of all documents, in reader order, and the patient sets missing any
+    AnalysisEngineDescription preprocessor = this.getPreprocessorTrainDescription();
+    InstanceCache cache = new InstanceCache(cacheDirectory, preprocessor, dataWriterDescription);
+    List<File> entryFiles = new ArrayList<File>();
+    Map<URI, File> missingEntryFiles = new LinkedHashMap<URI, File>();
+    List<Integer> missingPatientSets = new ArrayList<Integer>();
+    for (Integer patientSet : patientSets) {
+      for (File textFile : this.getTextFiles(Collections.singletonList(patientSet))) {
+        URI uri = textFile.toURI();
+        File entryFile = cache.getEntryFile(uri, this.getSourceFiles(textFile));
+        entryFiles.add(entryFile);
+        if (!entryFile.exists()) {
+          missingEntryFiles.put(uri, entryFile);
+          if (!missingPatientSets.contains(patientSet)) {
+            missingPatientSets.add(patientSet);
+          }
+        }
+      }
+    }
+
+    // fill in the missing entries
+    if (!missingPatientSets.isEmpty()) {
+      this.runTrainingPipeline(
+          this.getCollectionReader(missingPatientSets),
+          preprocessor,
+          cache.getRecordingDescription(),
+          cache.getEntryWriterDescription(missingEntryFiles));
+    }
+    cache.write(entryFiles, this.getOutputDirectory(dataWriterDescription));
+  }
+
+  private void runTrainingPipeline(
+      CollectionReader collectionReader,
+      AnalysisEngineDescription... descriptions) throws Exception {
+    AggregateBuilder aggregateBuilder = new AggregateBuilder();
+    this.instrument(aggregateBuilder, "train");
+    for (AnalysisEngineDescription description : descriptions) {
+      aggregateBuilder.add(description);
+    }
+    SimplePipeline.runPipeline(collectionReader, aggregateBuilder.createAggregate());
+  }
+
+  /**
+   * The directory that a data writer description writes to
+   */
+  private File getOutputDirectory(AnalysisEngineDescription dataWriterDescription) {
+    ConfigurationParameterSettings settings;
+    settings = dataWriterDescription.getAnalysisEngineMetaData().getConfigurationParameterSettings();
+    Object directory = settings.getParameterValue(DefaultDataWriterFactory.PARAM_OUTPUT_DIRECTORY);
+    return new File(directory.toString());
+  }
+
+  /**
+   * The files that a document is read from: its text, its Knowtator XML and, when reading from a
+   * {@link GoldCasCorpus}, its CAS.
+   */
+  private List<File> getSourceFiles(File textFile) {
+    List<File> files = new ArrayList<File>();
+    files.add(textFile);
+    if (this.knowtatorXMLDirectory != null) {
+      files.add(new File(THYMEKnowtatorXMLReader.getKnowtatorXML(
+          this.knowtatorXMLDirectory,
+          textFile.toURI())));
+    }
+    if (this.goldCasCorpus != null) {
+      files.add(this.goldCasCorpus.getCasFile(textFile));
+    }
+    return files;
+  }
+
+  /**
+   * The directory where the training instances of each document are cached (see
+   * {@link InstanceCache}), so that each document's features are only extracted once across all
+   * folds and runs. Return <code>null</code> to extract them in every fold.
+   */
+  protected File getInstanceCacheDirectory() {
+    return new File(this.baseDirectory, "instance-cache");
+  }
+
   @Override
   protected CollectionReader getCollectionReader(List<Integer> patientSets) throws Exception {
+    if (this.goldCasCorpus != null) {
+      List<File> textFiles = this.getTextFiles(patientSets);
+      return GoldCasCorpus.Reader.getCollectionReader(this.goldCasCorpus.getCasFiles(textFiles));
+    }
+    return PrefetchingReader.getCollectionReader(
+        this.rawTextDirectory,
+        patientSets,
+        this.knowtatorXMLDirectory,
+        this.getKnowtatorCacheDirectory());
+  }
+
+  protected List<File> getTextFiles(List<Integer> patientSets) {
     List<File> files = new ArrayList<File>();
     for (Integer set : patientSets) {
       File setTextDirectory = new File(this.rawTextDirectory, "doc" + set);
@@ -99,7 +652,39 @@ public abstract class Evaluation_ImplBase<STATISTICS_TYPE> extends
         files.add(file);
       }
     }
-    return UriCollectionReader.getCollectionReaderFromFiles(files);
+    return files;
+  }
+
+  /**
+   * Parse the Knowtator XML of all the given patient sets in parallel, so that every fold's
+   * Knowtator reader finds its documents already in the cache.
+   */
+  protected void warmKnowtatorCache(List<Integer> patientSets) throws Exception {
+    List<URI> knowtatorXMLs = new ArrayList<URI>();
+    for (File file : this.getTextFiles(patientSets)) {
+      knowtatorXMLs.add(THYMEKnowtatorXMLReader.getKnowtatorXML(
+          this.knowtatorXMLDirectory,
+          file.toURI()));
+    }
+    KnowtatorXMLParser parser = new KnowtatorXMLParser(THYMEKnowtatorXMLReader.ANNOTATOR_NAMES);
+    parser.setMode(KnowtatorXMLParser.Mode.STREAMING);
+    parser.setCache(this.getKnowtatorCache());
+    parser.parseAll(knowtatorXMLs);
+  }
+
+  /**
+   * The directory where parsed Knowtator XML is cached, so that each file is only parsed once
+   * across all folds and runs.
+   */
+  protected File getKnowtatorCacheDirectory() {
+    return new File(this.baseDirectory, "knowtator-cache");
+  }
+
+  /**
+   * The cache of parsed Knowtator XML, e.g. for inspecting its hit and miss counts.
+   */
+  public KnowtatorAnnotationCache getKnowtatorCache() {
+    return KnowtatorAnnotationCache.forDirectory(this.getKnowtatorCacheDirectory());
   }
 
   protected AnalysisEngineDescription getPreprocessorTrainDescription() throws Exception {
@@ -121,10 +706,50 @@ public abstract class Evaluation_ImplBase<STATISTICS_TYPE> extends
   private AnalysisEngineDescription getPreprocessorDescription(PipelineType pipelineType)
       throws Exception {
     AggregateBuilder aggregateBuilder = new AggregateBuilder();
-    aggregateBuilder.add(UriToDocumentTextAnnotator.getDescription());
+    this.instrument(aggregateBuilder, pipelineType.name().toLowerCase() + " preprocessor");
+    if (this.goldCasCorpus != null) {
+      // the text and gold annotations were loaded by the reader
+      this.addGoldCasCorpusAnnotators(aggregateBuilder, pipelineType);
+    } else {
+      this.addTextAndGoldAnnotators(aggregateBuilder, pipelineType);
+    }
+    AggregateBuilder preprocessingBuilder = new AggregateBuilder();
+    this.instrument(preprocessingBuilder, "preprocessing");
+    List<URL> resources = new ArrayList<URL>();
+    this.addPreprocessingAnnotators(preprocessingBuilder, resources);
+    AnalysisEngineDescription preprocessing = preprocessingBuilder.createAggregateDescription();
+    File cacheDirectory = this.getPreprocessingCacheDirectory();
+    if (cacheDirectory != null) {
+      preprocessing = PreprocessingCache.getDescription(preprocessing, cacheDirectory, resources);
+    }
+    aggregateBuilder.add(preprocessing);
+    return aggregateBuilder.createAggregateDescription();
+  }
+
+  private void addGoldCasCorpusAnnotators(
+      AggregateBuilder aggregateBuilder,
+      PipelineType pipelineType) throws Exception {
     switch (pipelineType) {
       case TRAIN:
-        aggregateBuilder.add(THYMEKnowtatorXMLReader.getDescription(this.knowtatorXMLDirectory));
+        // the gold annotations are already in the default view
+        break;
+      case TEST:
+        // the gold annotations are already in the gold view, so clear out the default view
+        aggregateBuilder.add(AnalysisEngineFactory.createPrimitiveDescription(GoldCasCorpus.DefaultViewGoldRemover.class));
+        this.addGoldAtTestTimeCopiers(aggregateBuilder);
+        break;
+    }
+  }
+
+  private void addTextAndGoldAnnotators(
+      AggregateBuilder aggregateBuilder,
+      PipelineType pipelineType) throws Exception {
+    // the text was loaded by the reader
+    switch (pipelineType) {
+      case TRAIN:
+        aggregateBuilder.add(THYMEKnowtatorXMLReader.getDescription(
+            this.knowtatorXMLDirectory,
+            this.getKnowtatorCacheDirectory()));
         break;
       case TEST:
         aggregateBuilder.add(AnalysisEngineFactory.createPrimitiveDescription(
@@ -138,26 +763,53 @@ public abstract class Evaluation_ImplBase<STATISTICS_TYPE> extends
             ViewTextCopierAnnotator.PARAM_DESTINATION_VIEW_NAME,
             GOLD_VIEW_NAME));
         aggregateBuilder.add(
-            THYMEKnowtatorXMLReader.getDescription(this.knowtatorXMLDirectory),
+            THYMEKnowtatorXMLReader.getDescription(
+                this.knowtatorXMLDirectory,
+                this.getKnowtatorCacheDirectory()),
             CAS.NAME_DEFAULT_SOFA,
             GOLD_VIEW_NAME);
-        for (Class<? extends TOP> annotationClass : this.getAnnotationClassesThatShouldBeGoldAtTestTime()) {
-          aggregateBuilder.add(AnnotationCopier.getDescription(
-              GOLD_VIEW_NAME,
-              CAS.NAME_DEFAULT_SOFA,
-              annotationClass));
-        }
+        this.addGoldAtTestTimeCopiers(aggregateBuilder);
         break;
     }
+  }
+
+  private void addGoldAtTestTimeCopiers(AggregateBuilder aggregateBuilder) throws Exception {
+    for (Class<? extends TOP> annotationClass : this.getAnnotationClassesThatShouldBeGoldAtTestTime()) {
+      aggregateBuilder.add(AnnotationCopier.getDescription(
+          GOLD_VIEW_NAME,
+          CAS.NAME_DEFAULT_SOFA,
+          annotationClass));
+    }
+  }
+
+  /**
+   * The directory where the output of the preprocessing annotators is cached (see
+   * {@link PreprocessingCache}), so that each document is only preprocessed once for training and
+   * once for testing across all folds and runs. Return <code>null</code> to preprocess every
+   * document in every fold.
+   */
+  protected File getPreprocessingCacheDirectory() {
+    return new File(this.baseDirectory, "preprocessing-cache");
+  }
+
+  /**
+   * Add the (fold-independent) preprocessing annotators, and the models and other resources they
+   * load. The external resources are loaded once per JVM (see {@link SharedResourceRegistry}), and
+   * shared by the pipelines of all folds, phases and threads.
+   */
+  private void addPreprocessingAnnotators(AggregateBuilder aggregateBuilder, List<URL> resources)
+      throws Exception {
     // identify segments
     aggregateBuilder.add(AnalysisEngineFactory.createPrimitiveDescription(SimpleSegmentAnnotator.class));
     // identify sentences
+    URL sentenceModel = SentenceDetector.class.getResource("/sentdetect/sdmed.mod");
+    resources.add(sentenceModel);
     aggregateBuilder.add(AnalysisEngineFactory.createPrimitiveDescription(
         SentenceDetector.class,
         "MaxentModel",
         ExternalResourceFactory.createExternalResourceDescription(
-            SuffixMaxentModelResourceImpl.class,
-            SentenceDetector.class.getResource("/sentdetect/sdmed.mod"))));
+            SharedMaxentModelResourceImpl.class,
+            sentenceModel)));
     // identify tokens
     aggregateBuilder.add(AnalysisEngineFactory.createPrimitiveDescription(TokenizerAnnotatorPTB.class));
     // merge some tokens
@@ -165,6 +817,8 @@ public abstract class Evaluation_ImplBase<STATISTICS_TYPE> extends
 
     // identify part-of-speech tags if requested
     if (this.annotatorFlags.contains(AnnotatorType.PART_OF_SPEECH_TAGS)) {
+      addModelResource(resources, "models/mayo-pos.zip");
+      addModelResource(resources, "models/tag.dictionary.txt");
       aggregateBuilder.add(AnalysisEngineFactory.createPrimitiveDescription(
           POSTagger.class,
           POSTagger.POS_MODEL_FILE_PARAM,
@@ -180,10 +834,12 @@ public abstract class Evaluation_ImplBase<STATISTICS_TYPE> extends
       // remove gold mentions if they're there (we'll add cTAKES mentions later instead)
       aggregateBuilder.add(AnalysisEngineFactory.createPrimitiveDescription(EntityMentionRemover.class));
       // identify chunks
+      URL chunkerModel = Chunker.class.getResource("/models/chunk-model.claims-1.5.zip");
+      resources.add(chunkerModel);
       aggregateBuilder.add(AnalysisEngineFactory.createPrimitiveDescription(
           Chunker.class,
           "ChunkerModelFile",
-          new File(Chunker.class.getResource("/models/chunk-model.claims-1.5.zip").toURI()),
+          new File(chunkerModel.toURI()),
           "ChunkCreatorClass",
           DefaultChunkCreator.class));
       // adjust NP in NP NP to span both
@@ -216,46 +872,103 @@ public abstract class Evaluation_ImplBase<STATISTICS_TYPE> extends
           "DeleteAction",
           new String[] { "selector=B" }));
       // add UMLS on top of lookup windows
-      aggregateBuilder.add(AnalysisEngineFactory.createPrimitiveDescription(
-          UmlsDictionaryLookupAnnotator.class,
+      for (String path : Arrays.asList(
+          "/lookup/LookupDesc_Db.xml",
+          "/lookup/umls2011ab",
+          "/lookup/rxnorm_index",
+          "/lookup/OrangeBook")) {
+        resources.add(getUMLSFile(path).toURI().toURL());
+      }
+      File umlsDirectory = getUMLSFile("/lookup/umls2011ab");
+      String umlsURL = "jdbc:hsqldb:file:" + umlsDirectory + "/umls";
+      File lookupDescriptor = getUMLSFile("/lookup/LookupDesc_Db.xml");
+      List<Object> lookupParameters = new ArrayList<Object>();
+      lookupParameters.addAll(Arrays.<Object> asList(
           "UMLSAddr",
-          "https://uts-ws.nlm.nih.gov/restful/isValidUMLSUser",
+          UmlsLicense.UTS_ADDRESS,
           "UMLSVendor",
           "NLM-6515182895",
           "UMLSUser",
-          System.getProperty("umls.user"),
+          System.getProperty(UmlsCredentials.USER_PROPERTY),
           "UMLSPW",
-          System.getProperty("umls.password"),
-          "LookupDescriptor",
-          ExternalResourceFactory.createExternalResourceDescription(
-              FileResourceImpl.class,
-              getUMLSFile("/lookup/LookupDesc_Db.xml")),
+          System.getProperty(UmlsCredentials.PASSWORD_PROPERTY),
           "DbConnection",
           ExternalResourceFactory.createExternalResourceDescription(
-              JdbcConnectionResourceImpl.class,
+              SharedJdbcConnectionResourceImpl.class,
               "",
               "DriverClassName",
               "org.hsqldb.jdbcDriver",
               "URL",
-              "jdbc:hsqldb:file:" + getUMLSFile("/lookup/umls2011ab") + "/umls"),
+              umlsURL),
           "RxnormIndexReader",
-          ExternalResourceFactory.createExternalResourceDescription(
-              LuceneIndexReaderResourceImpl.class,
-              "",
-              "UseMemoryIndex",
-              true,
-              "IndexDirectory",
-              getUMLSFile("/lookup/rxnorm_index")),
+          this.createLookupIndexDescription(getUMLSFile("/lookup/rxnorm_index")),
           "OrangeBookIndexReader",
-          ExternalResourceFactory.createExternalResourceDescription(
-              LuceneIndexReaderResourceImpl.class,
-              "",
-              "UseMemoryIndex",
-              true,
-              "IndexDirectory",
-              getUMLSFile("/lookup/OrangeBook"))));
+          this.createLookupIndexDescription(getUMLSFile("/lookup/OrangeBook"))));
+      if (this.umlsSnapshotLookup) {
+        // look up the database dictionaries in their snapshot indexes; anything else in the
+        // descriptor that queries the database still uses DbConnection
+        File snapshotDirectory = this.getUmlsSnapshotDirectory();
+        List<String> dictionaryIds = DictionarySnapshot.update(
+            "org.hsqldb.jdbcDriver",
+            umlsURL,
+            umlsDirectory,
+            lookupDescriptor,
+            snapshotDirectory);
+        for (String dictionaryId : dictionaryIds) {
+          lookupParameters.add(DictionarySnapshot.getResourceKey(dictionaryId));
+          lookupParameters.add(this.createLookupIndexDescription(DictionarySnapshot.getIndexDirectory(
+              snapshotDirectory,
+              dictionaryId)));
+        }
+        lookupDescriptor = DictionarySnapshot.getLookupDescriptor(snapshotDirectory);
+      }
+      lookupParameters.add("LookupDescriptor");
+      lookupParameters.add(ExternalResourceFactory.createExternalResourceDescription(
+          FileResourceImpl.class,
+          lookupDescriptor));
+      AnalysisEngineDescription lookup = AnalysisEngineFactory.createPrimitiveDescription(
+          this.umlsTokenFile == null
+              ? UmlsDictionaryLookupAnnotator.class
+              : TokenValidatedUmlsLookupAnnotator.class,
+          lookupParameters.toArray());
+      if (this.umlsTokenFile != null) {
+        ConfigurationParameterFactory.addConfigurationParameter(
+            lookup,
+            TokenValidatedUmlsLookupAnnotator.PARAM_TOKEN_FILE,
+            this.umlsTokenFile.getAbsolutePath());
+      }
+      aggregateBuilder.add(lookup);
     }
-    return aggregateBuilder.createAggregateDescription();
+  }
+
+  /**
+   * Add a model that an annotator will look up by relative path, if it can be found on the
+   * classpath or in the working directory.
+   */
+  private static void addModelResource(List<URL> resources, String path)
+      throws MalformedURLException {
+    URL url = Evaluation_ImplBase.class.getClassLoader().getResource(path);
+    if (url == null && new File(path).exists()) {
+      url = new File(path).toURI().toURL();
+    }
+    if (url != null) {
+      resources.add(url);
+    }
+  }
+
+  /**
+   * Describe a Lucene index for the dictionary lookup, loaded (or memory-mapped) once per JVM.
+   */
+  private ExternalResourceDescription createLookupIndexDescription(File indexDirectory) {
+    return ExternalResourceFactory.createExternalResourceDescription(
+        SharedLuceneIndexReaderResourceImpl.class,
+        "",
+        "UseMemoryIndex",
+        !this.memoryMappedIndexes,
+        SharedLuceneIndexReaderResourceImpl.PARAM_USE_MEMORY_MAPPED_INDEX,
+        this.memoryMappedIndexes,
+        SharedLuceneIndexReaderResourceImpl.PARAM_INDEX_DIRECTORY,
+        indexDirectory);
   }
 
   private static File getUMLSFile(String path) throws URISyntaxException {
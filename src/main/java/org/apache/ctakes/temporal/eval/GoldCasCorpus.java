@@ -0,0 +1,398 @@
+package org.apache.ctakes.temporal.eval;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.ctakes.knowtator.KnowtatorAnnotationCache;
+import org.apache.ctakes.knowtator.KnowtatorXMLParser;
+import org.apache.ctakes.temporal.ae.THYMEKnowtatorXMLReader;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.impl.Serialization;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.TOP;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Progress;
+import org.apache.uima.util.ProgressImpl;
+import org.cleartk.util.ViewURIUtil;
+import org.cleartk.util.ae.UriToDocumentTextAnnotator;
+import org.cleartk.util.cr.UriCollectionReader;
+import org.uimafit.component.CasCollectionReader_ImplBase;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.component.ViewCreatorAnnotator;
+import org.uimafit.component.ViewTextCopierAnnotator;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.AggregateBuilder;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.CollectionReaderFactory;
+import org.uimafit.pipeline.SimplePipeline;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.lexicalscope.jewel.cli.CliFactory;
+import com.lexicalscope.jewel.cli.Option;
+
+/**
+ * A directory of CASes that already contain the document text and the gold annotations from the
+ * Knowtator XML, so that the raw text only has to be read, and the XML only has to be converted,
+ * once rather than for every fold and pipeline.
+ *
+ * Each CAS holds the gold annotations twice: in the default view, as the training pipelines expect
+ * them, and in the gold view, as the testing pipelines expect them. Testing pipelines remove the
+ * default view's copy with {@link DefaultViewGoldRemover}.
+ *
+ * CASes are stored in UIMA's binary serialization, compressed with GZIP. The binary serialization
+ * is only valid for the type system it was written with, so each file records a hash of the type
+ * system, and files written with a different type system are rejected.
+ */
+public class GoldCasCorpus {
+
+  public static final String GOLD_VIEW_NAME = "GoldView";
+
+  public static final String FILE_SUFFIX = ".cas.gz";
+
+  private static final int MAGIC = 0x47434153; // "GCAS"
+
+  private static final int VERSION = 1;
+
+  interface Options {
+
+    @Option(longName = "text")
+    public File getRawTextDirectory();
+
+    @Option(longName = "xml")
+    public File getKnowtatorXMLDirectory();
+
+    @Option(longName = "patients")
+    public CommandLine.IntegerRanges getPatients();
+
+    @Option(longName = "corpus")
+    public File getGoldCasCorpusDirectory();
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = CliFactory.parseArguments(Options.class, args);
+    List<File> textFiles = new ArrayList<File>();
+    for (Integer set : options.getPatients().getList()) {
+      File setTextDirectory = new File(options.getRawTextDirectory(), "doc" + set);
+      for (File file : setTextDirectory.listFiles()) {
+        textFiles.add(file);
+      }
+    }
+    GoldCasCorpus corpus = new GoldCasCorpus(
+        options.getGoldCasCorpusDirectory(),
+        options.getKnowtatorXMLDirectory());
+    int nConverted = corpus.update(textFiles, null);
+    System.err.printf(
+        "%d of %d documents converted into %s\n",
+        nConverted,
+        textFiles.size(),
+        options.getGoldCasCorpusDirectory());
+  }
+
+  private File directory;
+
+  private File knowtatorXMLDirectory;
+
+  public GoldCasCorpus(File directory, File knowtatorXMLDirectory) {
+    this.directory = directory;
+    this.knowtatorXMLDirectory = knowtatorXMLDirectory;
+  }
+
+  public File getDirectory() {
+    return this.directory;
+  }
+
+  /**
+   * The file where the CAS for the given raw text file is stored: <code>doc1/ID001.txt</code> is
+   * stored as <code>doc1/ID001.txt.cas.gz</code> under the corpus directory.
+   */
+  public File getCasFile(File textFile) {
+    return getCasFile(this.directory, textFile);
+  }
+
+  private static File getCasFile(File corpusDirectory, File textFile) {
+    File setDirectory = new File(corpusDirectory, textFile.getParentFile().getName());
+    return new File(setDirectory, textFile.getName() + FILE_SUFFIX);
+  }
+
+  public List<File> getCasFiles(List<File> textFiles) {
+    List<File> casFiles = new ArrayList<File>();
+    for (File textFile : textFiles) {
+      casFiles.add(this.getCasFile(textFile));
+    }
+    return casFiles;
+  }
+
+  /**
+   * A CAS is stale if it is missing, or older than its raw text or its Knowtator XML.
+   */
+  public boolean isStale(File textFile) {
+    File casFile = this.getCasFile(textFile);
+    if (!casFile.exists()) {
+      return true;
+    }
+    File knowtatorXML = new File(THYMEKnowtatorXMLReader.getKnowtatorXML(
+        this.knowtatorXMLDirectory,
+        textFile.toURI()));
+    long modified = casFile.lastModified();
+    return modified < textFile.lastModified() || modified < knowtatorXML.lastModified();
+  }
+
+  /**
+   * Convert the raw text and Knowtator XML of all stale documents (see {@link #isStale(File)}) into
+   * CASes.
+   *
+   * @param textFiles
+   *          The raw text files of the documents.
+   * @param knowtatorCache
+   *          The cache for the Knowtator XML parser, or <code>null</code> for none.
+   * @return The number of documents converted.
+   */
+  public int update(List<File> textFiles, KnowtatorAnnotationCache knowtatorCache)
+      throws Exception {
+    List<File> staleFiles = new ArrayList<File>();
+    for (File textFile : textFiles) {
+      if (this.isStale(textFile)) {
+        staleFiles.add(textFile);
+      }
+    }
+    if (staleFiles.isEmpty()) {
+      return 0;
+    }
+
+    // parse all the Knowtator XML in parallel before the (serial) pipeline needs it
+    File cacheDirectory = null;
+    if (knowtatorCache != null) {
+      List<URI> knowtatorXMLs = new ArrayList<URI>();
+      for (File textFile : staleFiles) {
+        knowtatorXMLs.add(THYMEKnowtatorXMLReader.getKnowtatorXML(
+            this.knowtatorXMLDirectory,
+            textFile.toURI()));
+      }
+      KnowtatorXMLParser parser = new KnowtatorXMLParser(THYMEKnowtatorXMLReader.ANNOTATOR_NAMES);
+      parser.setMode(KnowtatorXMLParser.Mode.STREAMING);
+      parser.setCache(knowtatorCache);
+      parser.parseAll(knowtatorXMLs);
+      cacheDirectory = knowtatorCache.getDirectory();
+    }
+
+    AggregateBuilder aggregateBuilder = new AggregateBuilder();
+    aggregateBuilder.add(UriToDocumentTextAnnotator.getDescription());
+    // gold annotations in the default view, as for training
+    aggregateBuilder.add(this.getKnowtatorXMLReaderDescription(cacheDirectory));
+    // gold annotations in the gold view, as for testing
+    aggregateBuilder.add(AnalysisEngineFactory.createPrimitiveDescription(
+        ViewCreatorAnnotator.class,
+        ViewCreatorAnnotator.PARAM_VIEW_NAME,
+        GOLD_VIEW_NAME));
+    aggregateBuilder.add(AnalysisEngineFactory.createPrimitiveDescription(
+        ViewTextCopierAnnotator.class,
+        ViewTextCopierAnnotator.PARAM_SOURCE_VIEW_NAME,
+        CAS.NAME_DEFAULT_SOFA,
+        ViewTextCopierAnnotator.PARAM_DESTINATION_VIEW_NAME,
+        GOLD_VIEW_NAME));
+    aggregateBuilder.add(
+        this.getKnowtatorXMLReaderDescription(cacheDirectory),
+        CAS.NAME_DEFAULT_SOFA,
+        GOLD_VIEW_NAME);
+    aggregateBuilder.add(Writer.getDescription(this.directory));
+    SimplePipeline.runPipeline(
+        UriCollectionReader.getCollectionReaderFromFiles(staleFiles),
+        aggregateBuilder.createAggregate());
+    return staleFiles.size();
+  }
+
+  private AnalysisEngineDescription getKnowtatorXMLReaderDescription(File cacheDirectory)
+      throws ResourceInitializationException {
+    return cacheDirectory == null
+        ? THYMEKnowtatorXMLReader.getDescription(this.knowtatorXMLDirectory)
+        : THYMEKnowtatorXMLReader.getDescription(this.knowtatorXMLDirectory, cacheDirectory);
+  }
+
+  /**
+   * Write a CAS (with all its views) to a file.
+   */
+  public static void write(CAS cas, File file) throws IOException {
+    File parent = file.getParentFile();
+    if (!parent.exists() && !parent.mkdirs() && !parent.exists()) {
+      throw new IOException("Unable to create directory " + parent);
+    }
+    File tempFile = File.createTempFile(file.getName(), ".tmp", parent);
+    try {
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+          new GZIPOutputStream(new FileOutputStream(tempFile))));
+      try {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeUTF(getTypeSystemHash(cas.getTypeSystem()));
+        Serialization.serializeCAS(cas, output);
+      } finally {
+        output.close();
+      }
+      if (!tempFile.renameTo(file)) {
+        file.delete();
+        if (!tempFile.renameTo(file)) {
+          throw new IOException(String.format("Unable to rename %s to %s", tempFile, file));
+        }
+      }
+    } finally {
+      tempFile.delete();
+    }
+  }
+
+  /**
+   * Read a CAS (with all its views) from a file, replacing the current contents of the CAS.
+   */
+  public static void read(CAS cas, File file) throws IOException {
+    DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+        new FileInputStream(file))));
+    try {
+      if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+        throw new IOException("Not a serialized CAS file: " + file);
+      }
+      String typeSystemHash = input.readUTF();
+      if (!typeSystemHash.equals(getTypeSystemHash(cas.getTypeSystem()))) {
+        throw new IOException(String.format(
+            "%s was written with a different type system; delete it to rebuild the corpus",
+            file));
+      }
+      Serialization.deserializeCAS(cas, input);
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * A hash of the names of all types and features, which determine the layout of the binary
+   * serialization.
+   */
+  private static String getTypeSystemHash(TypeSystem typeSystem) {
+    List<String> names = new ArrayList<String>();
+    Iterator<Type> types = typeSystem.getTypeIterator();
+    while (types.hasNext()) {
+      Type type = types.next();
+      names.add(type.getName());
+      for (Feature feature : type.getFeatures()) {
+        names.add(type.getName() + ":" + feature.getShortName() + ":" + feature.getRange().getName());
+      }
+    }
+    Hasher hasher = Hashing.sha1().newHasher();
+    for (String name : Ordering.natural().sortedCopy(names)) {
+      hasher.putString(name, Charsets.UTF_8);
+      hasher.putByte((byte) '\n');
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Writes each CAS into the corpus directory, at the file given by {@link #getCasFile(File)} for
+   * the CAS's URI.
+   */
+  public static class Writer extends JCasAnnotator_ImplBase {
+
+    public static AnalysisEngineDescription getDescription(File corpusDirectory)
+        throws ResourceInitializationException {
+      return AnalysisEngineFactory.createPrimitiveDescription(
+          Writer.class,
+          PARAM_CORPUS_DIRECTORY,
+          corpusDirectory);
+    }
+
+    public static final String PARAM_CORPUS_DIRECTORY = "CorpusDirectory";
+
+    @ConfigurationParameter(name = PARAM_CORPUS_DIRECTORY, mandatory = true)
+    private File corpusDirectory;
+
+    @Override
+    public void process(JCas jCas) throws AnalysisEngineProcessException {
+      File textFile = new File(ViewURIUtil.getURI(jCas));
+      File casFile = getCasFile(this.corpusDirectory, textFile);
+      try {
+        write(jCas.getCas(), casFile);
+      } catch (IOException e) {
+        throw new AnalysisEngineProcessException(e);
+      }
+    }
+  }
+
+  /**
+   * Reads CASes written by {@link Writer}.
+   */
+  public static class Reader extends CasCollectionReader_ImplBase {
+
+    public static CollectionReader getCollectionReader(List<File> casFiles)
+        throws ResourceInitializationException {
+      return CollectionReaderFactory.createCollectionReader(
+          Reader.class,
+          PARAM_FILES,
+          casFiles.toArray(new File[casFiles.size()]));
+    }
+
+    public static final String PARAM_FILES = "Files";
+
+    @ConfigurationParameter(name = PARAM_FILES, mandatory = true)
+    private File[] files;
+
+    private int index;
+
+    @Override
+    public boolean hasNext() throws IOException, CollectionException {
+      return this.index < this.files.length;
+    }
+
+    @Override
+    public void getNext(CAS cas) throws IOException, CollectionException {
+      read(cas, this.files[this.index]);
+      ++this.index;
+    }
+
+    @Override
+    public Progress[] getProgress() {
+      return new Progress[] { new ProgressImpl(this.index, this.files.length, Progress.ENTITIES) };
+    }
+  }
+
+  /**
+   * Removes the gold annotations from the default view (leaving the document annotation), so that
+   * testing pipelines see only the text there, as if the gold annotations had only been added to the
+   * gold view.
+   */
+  public static class DefaultViewGoldRemover extends JCasAnnotator_ImplBase {
+
+    @Override
+    public void process(JCas jCas) throws AnalysisEngineProcessException {
+      FeatureStructure documentAnnotation = jCas.getDocumentAnnotationFs();
+      Type topType = jCas.getCasType(TOP.type);
+      FSIterator<FeatureStructure> iterator = jCas.getFSIndexRepository().getAllIndexedFS(topType);
+      for (FeatureStructure fs : Lists.newArrayList(iterator)) {
+        if (!fs.equals(documentAnnotation)) {
+          jCas.removeFsFromIndexes(fs);
+        }
+      }
+    }
+  }
+}
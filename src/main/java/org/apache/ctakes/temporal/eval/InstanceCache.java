@@ -0,0 +1,516 @@
+package org.apache.ctakes.temporal.eval;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.ResourceSpecifier;
+import org.apache.uima.resource.metadata.ConfigurationParameterSettings;
+import org.apache.uima.util.InvalidXMLException;
+import org.cleartk.classifier.CleartkProcessingException;
+import org.cleartk.classifier.DataWriter;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.Instance;
+import org.cleartk.classifier.jar.DefaultDataWriterFactory;
+import org.cleartk.util.ViewURIUtil;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.xml.sax.SAXException;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Caches the training instances that a ClearTK annotator writes for each document, so that the
+ * training data of a fold can be assembled from the cached instances of its documents instead of
+ * running the preprocessing and feature extraction again for every fold.
+ *
+ * Like the {@link PreprocessingCache}, entries are grouped in a directory per configuration, named
+ * by a hash of the preprocessing and annotator descriptors (with the annotator's data writer and
+ * output directory left out, since they do not change the instances, and the UMLS credentials left
+ * out, see {@link UmlsCredentials}), of the cache's {@link #VERSION}, and of the size and
+ * modification time of the jars and class directories that the annotators' classes (and their
+ * superclasses) are loaded from. So changing the feature extraction code, or upgrading e.g.
+ * ClearTK, starts a new, empty group. Within a group, each document's instances are stored in a
+ * file named by a hash of the document URI and of the size and modification time of its source
+ * files (e.g. its text and Knowtator XML), so a changed document gets a new entry.
+ *
+ * The instances are filled in by running the preprocessing, then {@link #getRecordingDescription}
+ * (the annotator with a data writer that records the instances of each document) and then
+ * {@link #getEntryWriterDescription} (which stores them) over the documents. {@link #write} copies
+ * the cached instances of a fold's documents, in order, into the annotator's real data writer.
+ */
+public class InstanceCache {
+
+  private static final Logger LOGGER = Logger.getLogger(InstanceCache.class.getName());
+
+  private static final String ENTRY_SUFFIX = ".instances";
+
+  private static final int MAGIC = 0x494E5331; // "INS1"
+
+  /**
+   * Change this when the instances written for the same code and descriptors change, e.g. when the
+   * entry format changes.
+   */
+  private static final int VERSION = 1;
+
+  /**
+   * Whether instances of the given data writer description can be cached, i.e. whether it is a
+   * ClearTK annotator that creates its data writer with the {@link DefaultDataWriterFactory}.
+   */
+  public static boolean isCacheable(AnalysisEngineDescription dataWriterDescription) {
+    return dataWriterDescription.isPrimitive()
+        && getParameterValue(
+            dataWriterDescription,
+            DefaultDataWriterFactory.PARAM_DATA_WRITER_CLASS_NAME) != null;
+  }
+
+  private File entryDirectory;
+
+  private AnalysisEngineDescription recordingDescription;
+
+  private String dataWriterClassName;
+
+  /**
+   * @param cacheDirectory
+   *          The directory where instances are cached.
+   * @param preprocessorDescription
+   *          The pipeline that prepares the documents for the annotator.
+   * @param dataWriterDescription
+   *          The annotator, in training mode (see {@link #isCacheable}).
+   */
+  public InstanceCache(
+      File cacheDirectory,
+      AnalysisEngineDescription preprocessorDescription,
+      AnalysisEngineDescription dataWriterDescription) throws ResourceInitializationException {
+    this.dataWriterClassName = getParameterValue(
+        dataWriterDescription,
+        DefaultDataWriterFactory.PARAM_DATA_WRITER_CLASS_NAME).toString();
+
+    // the same annotator, but writing to the recorder (in a directory that is the same in all folds)
+    this.recordingDescription = (AnalysisEngineDescription) dataWriterDescription.clone();
+    ConfigurationParameterSettings settings;
+    settings = this.recordingDescription.getAnalysisEngineMetaData().getConfigurationParameterSettings();
+    settings.setParameterValue(
+        DefaultDataWriterFactory.PARAM_DATA_WRITER_CLASS_NAME,
+        RecordingDataWriter.class.getName());
+    settings.setParameterValue(
+        DefaultDataWriterFactory.PARAM_OUTPUT_DIRECTORY,
+        cacheDirectory.getPath());
+
+    try {
+      Hasher hasher = Hashing.sha1().newHasher();
+      hasher.putInt(VERSION);
+      StringWriter descriptorXML = new StringWriter();
+      UmlsCredentials.withoutCredentials(preprocessorDescription).toXML(descriptorXML);
+      UmlsCredentials.withoutCredentials(this.recordingDescription).toXML(descriptorXML);
+      hasher.putString(descriptorXML.toString(), Charsets.UTF_8);
+      Map<String, URL> codeLocations = new TreeMap<String, URL>();
+      addCodeLocations(codeLocations, InstanceCache.class);
+      addCodeLocations(codeLocations, preprocessorDescription);
+      addCodeLocations(codeLocations, this.recordingDescription);
+      for (Map.Entry<String, URL> codeLocation : codeLocations.entrySet()) {
+        hasher.putString(codeLocation.getKey(), Charsets.UTF_8);
+        PreprocessingCache.putFingerprint(hasher, codeLocation.getValue());
+      }
+      this.entryDirectory = new File(cacheDirectory, hasher.hash().toString());
+    } catch (IOException e) {
+      throw new ResourceInitializationException(e);
+    } catch (SAXException e) {
+      throw new ResourceInitializationException(e);
+    }
+  }
+
+  /**
+   * Add the jars and class directories of the annotators of the description (and of its delegates).
+   */
+  private static void addCodeLocations(
+      Map<String, URL> codeLocations,
+      AnalysisEngineDescription description) throws ResourceInitializationException {
+    if (description.isPrimitive()) {
+      String className = description.getAnnotatorImplementationName();
+      try {
+        addCodeLocations(codeLocations, Class.forName(className));
+      } catch (ClassNotFoundException e) {
+        throw new ResourceInitializationException(e);
+      }
+    } else {
+      try {
+        for (ResourceSpecifier delegate : description.getDelegateAnalysisEngineSpecifiers().values()) {
+          if (delegate instanceof AnalysisEngineDescription) {
+            addCodeLocations(codeLocations, (AnalysisEngineDescription) delegate);
+          }
+        }
+      } catch (InvalidXMLException e) {
+        throw new ResourceInitializationException(e);
+      }
+    }
+  }
+
+  /**
+   * Add the jars and class directories of the class and its superclasses, except for those of the
+   * JDK, which have no code source.
+   */
+  private static void addCodeLocations(Map<String, URL> codeLocations, Class<?> cls) {
+    for (; cls != null; cls = cls.getSuperclass()) {
+      CodeSource codeSource = cls.getProtectionDomain().getCodeSource();
+      if (codeSource != null && codeSource.getLocation() != null) {
+        URL location = codeSource.getLocation();
+        codeLocations.put(location.toString(), location);
+      }
+    }
+  }
+
+  /**
+   * The file holding the cached instances of the document with the given URI.
+   *
+   * @param sourceFiles
+   *          The files the document is read from; if any of these change, the entry is no longer
+   *          used.
+   */
+  public File getEntryFile(URI documentURI, List<File> sourceFiles) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putString(documentURI.toString(), Charsets.UTF_8);
+    for (File file : sourceFiles) {
+      hasher.putLong(file.length());
+      hasher.putLong(file.lastModified());
+    }
+    return new File(this.entryDirectory, hasher.hash().toString() + ENTRY_SUFFIX);
+  }
+
+  /**
+   * The annotator, recording the instances of each document for the entry writer.
+   */
+  public AnalysisEngineDescription getRecordingDescription() {
+    return this.recordingDescription;
+  }
+
+  /**
+   * Stores the instances recorded for each document whose URI is in the given map in the
+   * corresponding entry file (see {@link #getEntryFile}). The instances of other documents are
+   * dropped.
+   */
+  public AnalysisEngineDescription getEntryWriterDescription(Map<URI, File> entryFiles)
+      throws ResourceInitializationException {
+    List<String> uris = new ArrayList<String>();
+    List<String> paths = new ArrayList<String>();
+    for (Map.Entry<URI, File> entry : entryFiles.entrySet()) {
+      uris.add(entry.getKey().toString());
+      paths.add(entry.getValue().getPath());
+    }
+    return AnalysisEngineFactory.createPrimitiveDescription(
+        EntryWriter.class,
+        EntryWriter.PARAM_DOCUMENT_URIS,
+        uris.toArray(new String[uris.size()]),
+        EntryWriter.PARAM_ENTRY_FILES,
+        paths.toArray(new String[paths.size()]));
+  }
+
+  /**
+   * Write the instances of the given entry files, in order, to the given directory with the
+   * annotator's data writer, and finish the data writer, as the annotator would have done.
+   */
+  public void write(List<File> entryFiles, File outputDirectory) throws IOException {
+    DataWriter<String> dataWriter = this.createDataWriter(outputDirectory);
+    int nInstances = 0;
+    try {
+      for (File entryFile : entryFiles) {
+        for (Instance<String> instance : readEntry(entryFile)) {
+          dataWriter.write(instance);
+          ++nInstances;
+        }
+      }
+      dataWriter.finish();
+    } catch (CleartkProcessingException e) {
+      throw new IOException(e);
+    }
+    LOGGER.info(String.format(
+        "%d cached instances of %d documents written to %s",
+        nInstances,
+        entryFiles.size(),
+        outputDirectory));
+  }
+
+  @SuppressWarnings("unchecked")
+  private DataWriter<String> createDataWriter(File outputDirectory) throws IOException {
+    try {
+      Class<? extends DataWriter> dataWriterClass = Class.forName(this.dataWriterClassName).asSubclass(
+          DataWriter.class);
+      return dataWriterClass.getConstructor(File.class).newInstance(outputDirectory);
+    } catch (Exception e) {
+      throw new IOException("Unable to create " + this.dataWriterClassName, e);
+    }
+  }
+
+  private static Object getParameterValue(AnalysisEngineDescription description, String name) {
+    Object value = description.getAnalysisEngineMetaData().getConfigurationParameterSettings().getParameterValue(
+        name);
+    return value instanceof Class<?> ? ((Class<?>) value).getName() : value;
+  }
+
+  /**
+   * Write instances in a compact binary form. Feature names and string values are written once per
+   * file, and then referred to by their index.
+   */
+  static void writeEntry(List<Instance<String>> instances, File file) throws IOException {
+    File directory = file.getAbsoluteFile().getParentFile();
+    if (!directory.exists() && !directory.mkdirs() && !directory.exists()) {
+      throw new IOException("Unable to create directory " + directory);
+    }
+    // write and rename, since other folds may be writing the same entry
+    File tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+    try {
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+          tempFile)));
+      try {
+        Map<String, Integer> strings = new HashMap<String, Integer>();
+        output.writeInt(MAGIC);
+        output.writeInt(instances.size());
+        for (Instance<String> instance : instances) {
+          writeString(output, strings, instance.getOutcome());
+          List<Feature> features = instance.getFeatures();
+          output.writeInt(features.size());
+          for (Feature feature : features) {
+            writeString(output, strings, feature.getName());
+            writeValue(output, strings, feature.getValue());
+          }
+        }
+      } finally {
+        output.close();
+      }
+      if (!tempFile.renameTo(file) && !file.exists()) {
+        throw new IOException(String.format("Unable to rename %s to %s", tempFile, file));
+      }
+    } finally {
+      tempFile.delete();
+    }
+  }
+
+  static List<Instance<String>> readEntry(File file) throws IOException {
+    DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (input.readInt() != MAGIC) {
+        throw new IOException("Not an instance cache entry: " + file);
+      }
+      List<String> strings = new ArrayList<String>();
+      int nInstances = input.readInt();
+      List<Instance<String>> instances = new ArrayList<Instance<String>>(nInstances);
+      for (int i = 0; i < nInstances; ++i) {
+        String outcome = readString(input, strings);
+        int nFeatures = input.readInt();
+        List<Feature> features = new ArrayList<Feature>(nFeatures);
+        for (int j = 0; j < nFeatures; ++j) {
+          String name = readString(input, strings);
+          features.add(new Feature(name, readValue(input, strings)));
+        }
+        instances.add(new Instance<String>(outcome, features));
+      }
+      return instances;
+    } catch (EOFException e) {
+      throw new IOException("Truncated instance cache entry: " + file, e);
+    } finally {
+      input.close();
+    }
+  }
+
+  private static final byte NULL = 0;
+
+  private static final byte STRING = 1;
+
+  private static final byte INTEGER = 2;
+
+  private static final byte LONG = 3;
+
+  private static final byte DOUBLE = 4;
+
+  private static final byte FLOAT = 5;
+
+  private static final byte BOOLEAN = 6;
+
+  private static void writeValue(DataOutputStream output, Map<String, Integer> strings, Object value)
+      throws IOException {
+    if (value == null) {
+      output.writeByte(NULL);
+    } else if (value instanceof String) {
+      output.writeByte(STRING);
+      writeString(output, strings, (String) value);
+    } else if (value instanceof Integer) {
+      output.writeByte(INTEGER);
+      output.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      output.writeByte(LONG);
+      output.writeLong((Long) value);
+    } else if (value instanceof Double) {
+      output.writeByte(DOUBLE);
+      output.writeDouble((Double) value);
+    } else if (value instanceof Float) {
+      output.writeByte(FLOAT);
+      output.writeFloat((Float) value);
+    } else if (value instanceof Boolean) {
+      output.writeByte(BOOLEAN);
+      output.writeBoolean((Boolean) value);
+    } else {
+      throw new IOException("Unable to cache feature value of " + value.getClass());
+    }
+  }
+
+  private static Object readValue(DataInputStream input, List<String> strings) throws IOException {
+    byte type = input.readByte();
+    switch (type) {
+      case NULL:
+        return null;
+      case STRING:
+        return readString(input, strings);
+      case INTEGER:
+        return input.readInt();
+      case LONG:
+        return input.readLong();
+      case DOUBLE:
+        return input.readDouble();
+      case FLOAT:
+        return input.readFloat();
+      case BOOLEAN:
+        return input.readBoolean();
+      default:
+        throw new IOException("Unknown feature value type " + type);
+    }
+  }
+
+  /**
+   * Strings are written as their index among the strings written so far (-1 for null), followed,
+   * for a new string, by its UTF-8 bytes.
+   */
+  private static void writeString(DataOutputStream output, Map<String, Integer> strings, String string)
+      throws IOException {
+    if (string == null) {
+      output.writeInt(-1);
+      return;
+    }
+    Integer index = strings.get(string);
+    if (index != null) {
+      output.writeInt(index);
+    } else {
+      output.writeInt(strings.size());
+      strings.put(string, strings.size());
+      byte[] bytes = string.getBytes(Charsets.UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+  }
+
+  private static String readString(DataInputStream input, List<String> strings) throws IOException {
+    int index = input.readInt();
+    if (index < 0) {
+      return null;
+    }
+    if (index < strings.size()) {
+      return strings.get(index);
+    }
+    if (index > strings.size()) {
+      throw new IOException("Invalid string index " + index);
+    }
+    byte[] bytes = new byte[input.readInt()];
+    input.readFully(bytes);
+    String string = new String(bytes, Charsets.UTF_8);
+    strings.add(string);
+    return string;
+  }
+
+  /**
+   * The instances recorded on each thread since the last document was stored. The annotator and the
+   * {@link EntryWriter} after it process each document on the same thread.
+   */
+  private static final ThreadLocal<List<Instance<String>>> RECORDED = new ThreadLocal<List<Instance<String>>>() {
+    @Override
+    protected List<Instance<String>> initialValue() {
+      return new ArrayList<Instance<String>>();
+    }
+  };
+
+  /**
+   * Records the instances written by the annotator, for the {@link EntryWriter} to store.
+   */
+  public static class RecordingDataWriter implements DataWriter<String> {
+
+    /**
+     * @param outputDirectory
+     *          Ignored, but required by the {@link DefaultDataWriterFactory}.
+     */
+    public RecordingDataWriter(File outputDirectory) {
+    }
+
+    @Override
+    public void write(Instance<String> instance) throws CleartkProcessingException {
+      RECORDED.get().add(instance);
+    }
+
+    @Override
+    public void finish() throws CleartkProcessingException {
+    }
+  }
+
+  /**
+   * Stores the instances recorded for each document in its entry file.
+   */
+  public static class EntryWriter extends JCasAnnotator_ImplBase {
+
+    public static final String PARAM_DOCUMENT_URIS = "DocumentURIs";
+
+    @ConfigurationParameter(name = PARAM_DOCUMENT_URIS, mandatory = true)
+    private String[] documentURIs;
+
+    public static final String PARAM_ENTRY_FILES = "EntryFiles";
+
+    @ConfigurationParameter(name = PARAM_ENTRY_FILES, mandatory = true)
+    private String[] entryFiles;
+
+    private Map<String, File> entryFileMap;
+
+    @Override
+    public void initialize(UimaContext context) throws ResourceInitializationException {
+      super.initialize(context);
+      this.entryFileMap = new HashMap<String, File>();
+      for (int i = 0; i < this.documentURIs.length; ++i) {
+        this.entryFileMap.put(this.documentURIs[i], new File(this.entryFiles[i]));
+      }
+    }
+
+    @Override
+    public void process(JCas jCas) throws AnalysisEngineProcessException {
+      List<Instance<String>> instances = RECORDED.get();
+      try {
+        File entryFile = this.entryFileMap.get(ViewURIUtil.getURI(jCas).toString());
+        if (entryFile != null) {
+          writeEntry(instances, entryFile);
+        }
+      } catch (IOException e) {
+        throw new AnalysisEngineProcessException(e);
+      } finally {
+        instances.clear();
+      }
+    }
+  }
+}
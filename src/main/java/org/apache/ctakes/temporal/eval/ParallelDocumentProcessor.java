@@ -0,0 +1,166 @@
+package org.apache.ctakes.temporal.eval;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.ResourceMetaData;
+import org.apache.uima.util.CasCreationUtils;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.pipeline.JCasIterable;
+
+/**
+ * Runs the documents of a collection reader through several replicas of an analysis engine at the
+ * same time.
+ *
+ * The reader is only used by the calling thread, and is closed once all documents are done. Each
+ * document is read into a free CAS from a small
+ * pool, then processed and evaluated on a worker thread by whichever engine replica is free. The
+ * evaluations are handed back to the calling thread in document order, so anything the collector
+ * does (adding up statistics, logging errors) happens in the same order as in a single-threaded
+ * run.
+ */
+public class ParallelDocumentProcessor {
+
+  /**
+   * Evaluates one processed document. Called concurrently from worker threads (each with its own
+   * CAS), so implementations should only read shared state.
+   */
+  public static interface DocumentEvaluator<RESULT> {
+    public RESULT evaluate(JCas jCas) throws Exception;
+  }
+
+  /**
+   * Receives the evaluation of each document, in document order, on the calling thread.
+   */
+  public static interface ResultCollector<RESULT> {
+    public void collect(RESULT result) throws Exception;
+  }
+
+  /**
+   * Process all documents from the reader with the described engine, using the given number of
+   * threads (and engine replicas). With a single thread, this is equivalent to iterating over a
+   * {@link JCasIterable}. The reader is closed when this returns.
+   */
+  public static <RESULT> void process(
+      CollectionReader reader,
+      AnalysisEngineDescription description,
+      int nThreads,
+      final DocumentEvaluator<RESULT> evaluator,
+      ResultCollector<RESULT> collector) throws Exception {
+    try {
+      if (nThreads <= 1) {
+        AnalysisEngine engine = AnalysisEngineFactory.createAggregate(description);
+        try {
+          for (JCas jCas : new JCasIterable(reader, engine)) {
+            collector.collect(evaluator.evaluate(jCas));
+          }
+        } finally {
+          engine.destroy();
+        }
+      } else {
+        processInParallel(reader, description, nThreads, evaluator, collector);
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static <RESULT> void processInParallel(
+      CollectionReader reader,
+      AnalysisEngineDescription description,
+      int nThreads,
+      final DocumentEvaluator<RESULT> evaluator,
+      ResultCollector<RESULT> collector) throws Exception {
+    // create the engine replicas, and a pool of CASes that limits the documents in flight
+    final BlockingQueue<AnalysisEngine> engines = new LinkedBlockingQueue<AnalysisEngine>();
+    List<AnalysisEngine> allEngines = new ArrayList<AnalysisEngine>();
+    ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+    try {
+      for (int i = 0; i < nThreads; ++i) {
+        AnalysisEngine engine = AnalysisEngineFactory.createAggregate(description);
+        allEngines.add(engine);
+        engines.add(engine);
+      }
+      List<ResourceMetaData> metaData = new ArrayList<ResourceMetaData>();
+      metaData.add(reader.getMetaData());
+      metaData.add(allEngines.get(0).getMetaData());
+      final BlockingQueue<JCas> cases = new LinkedBlockingQueue<JCas>();
+      for (int i = 0; i < 2 * nThreads; ++i) {
+        cases.add(CasCreationUtils.createCas(metaData).getJCas());
+      }
+
+      // read documents on this thread, and process and evaluate them on the workers
+      LinkedList<Future<RESULT>> pending = new LinkedList<Future<RESULT>>();
+      while (reader.hasNext()) {
+        // if all CASes are in use, wait for the oldest document to finish (which frees its CAS)
+        while (cases.isEmpty()) {
+          collector.collect(get(pending.removeFirst()));
+        }
+        final JCas jCas = cases.remove();
+        reader.getNext(jCas.getCas());
+        pending.addLast(executor.submit(new Callable<RESULT>() {
+          @Override
+          public RESULT call() throws Exception {
+            AnalysisEngine engine = engines.take();
+            try {
+              engine.process(jCas);
+              return evaluator.evaluate(jCas);
+            } finally {
+              engines.put(engine);
+              jCas.reset();
+              cases.put(jCas);
+            }
+          }
+        }));
+
+        // collect any documents that are done, in order
+        while (!pending.isEmpty() && pending.getFirst().isDone()) {
+          collector.collect(get(pending.removeFirst()));
+        }
+      }
+      while (!pending.isEmpty()) {
+        collector.collect(get(pending.removeFirst()));
+      }
+      for (AnalysisEngine engine : allEngines) {
+        engine.collectionProcessComplete();
+      }
+    } finally {
+      // wait for the workers before destroying the engines they may still be using
+      executor.shutdownNow();
+      try {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      } finally {
+        for (AnalysisEngine engine : allEngines) {
+          engine.destroy();
+        }
+      }
+    }
+  }
+
+  private static <RESULT> RESULT get(Future<RESULT> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+}
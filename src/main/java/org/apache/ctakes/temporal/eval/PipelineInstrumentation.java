@@ -0,0 +1,301 @@
+package org.apache.ctakes.temporal.eval;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.analysis_engine.metadata.FixedFlow;
+import org.apache.uima.analysis_engine.metadata.FlowConstraints;
+import org.apache.uima.flow.FinalStep;
+import org.apache.uima.flow.Flow;
+import org.apache.uima.flow.FlowControllerContext;
+import org.apache.uima.flow.FlowControllerDescription;
+import org.apache.uima.flow.JCasFlow_ImplBase;
+import org.apache.uima.flow.SimpleStep;
+import org.apache.uima.flow.Step;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.cleartk.util.ViewURIUtil;
+import org.uimafit.component.JCasFlowController_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.FlowControllerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Records, for each delegate of the instrumented aggregates, the time taken per document (summarized
+ * as the 50th, 95th and 99th percentiles), the number of documents and characters processed, and
+ * the bytes allocated by the processing thread (where the JVM can measure this).
+ *
+ * An aggregate is instrumented by giving it the flow controller from
+ * {@link #getFlowControllerDescription(String)}, which runs the delegates in the same fixed order
+ * as the default flow controller, and measures each delegate between handing the CAS to it and
+ * getting it back. Measurements go to the instrumentation made current (with
+ * {@link #setCurrent(PipelineInstrumentation)}) on the thread that creates the processing threads,
+ * e.g. one instrumentation per cross-validation fold. With no current instrumentation, nothing is
+ * recorded.
+ *
+ * Each measurement is also logged at {@link Level#FINER}, one record per document and delegate.
+ */
+public class PipelineInstrumentation {
+
+  private static final Logger LOGGER = Logger.getLogger(PipelineInstrumentation.class.getName());
+
+  private static final InheritableThreadLocal<PipelineInstrumentation> CURRENT = new InheritableThreadLocal<PipelineInstrumentation>();
+
+  /**
+   * The instrumentation that measurements on this thread are recorded in, or <code>null</code>.
+   */
+  public static PipelineInstrumentation getCurrent() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Record measurements on this thread, and on any threads it creates from now on, in the given
+   * instrumentation (<code>null</code> to stop recording).
+   */
+  public static void setCurrent(PipelineInstrumentation instrumentation) {
+    CURRENT.set(instrumentation);
+  }
+
+  /**
+   * Create a flow controller that instruments the delegates of an aggregate. The pipeline name
+   * prefixes the delegate names in the summary, so it should not change between runs (e.g. it
+   * should not include the fold), or the output of cached pipelines would no longer be found.
+   */
+  public static FlowControllerDescription getFlowControllerDescription(String pipelineName)
+      throws ResourceInitializationException {
+    return FlowControllerFactory.createFlowControllerDescription(
+        InstrumentingFlowController.class,
+        InstrumentingFlowController.PARAM_PIPELINE_NAME,
+        pipelineName);
+  }
+
+  private String name;
+
+  private Map<String, Stage> stages = new LinkedHashMap<String, Stage>();
+
+  public PipelineInstrumentation(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Record one document processed by one stage.
+   *
+   * @param stage
+   *          The pipeline and delegate name.
+   * @param nanos
+   *          The time taken.
+   * @param characters
+   *          The length of the document text.
+   * @param allocatedBytes
+   *          The bytes allocated by the processing thread, or -1 if unknown.
+   */
+  public synchronized void record(String stage, long nanos, int characters, long allocatedBytes) {
+    Stage stats = this.stages.get(stage);
+    if (stats == null) {
+      stats = new Stage();
+      this.stages.put(stage, stats);
+    }
+    stats.add(nanos, characters, allocatedBytes);
+  }
+
+  /**
+   * A table of the measurements, with one row per stage, in the order the stages first ran.
+   */
+  public synchronized String getSummary() {
+    int width = "stage".length();
+    for (String stage : this.stages.keySet()) {
+      width = Math.max(width, stage.length());
+    }
+    String headerFormat = "%-" + width + "s %8s %10s %10s %9s %9s %9s %11s%n";
+    String rowFormat = "%-" + width + "s %8d %10d %10.2f %9.2f %9.2f %9.2f %11s%n";
+    StringBuilder builder = new StringBuilder();
+    builder.append(String.format(
+        headerFormat,
+        "stage",
+        "docs",
+        "chars",
+        "total s",
+        "p50 ms",
+        "p95 ms",
+        "p99 ms",
+        "alloc MB"));
+    for (Map.Entry<String, Stage> entry : this.stages.entrySet()) {
+      Stage stats = entry.getValue();
+      long[] sorted = Arrays.copyOf(stats.nanos, stats.documents);
+      Arrays.sort(sorted);
+      builder.append(String.format(
+          rowFormat,
+          entry.getKey(),
+          stats.documents,
+          stats.characters,
+          stats.totalNanos / 1e9,
+          percentile(sorted, 50) / 1e6,
+          percentile(sorted, 95) / 1e6,
+          percentile(sorted, 99) / 1e6,
+          stats.allocatedBytes < 0
+              ? "n/a"
+              : String.format("%.1f", stats.allocatedBytes / (1024.0 * 1024.0))));
+    }
+    return builder.toString();
+  }
+
+  public void writeSummary(File file) throws IOException {
+    Files.write(this.getSummary(), file, Charsets.UTF_8);
+  }
+
+  /**
+   * The nearest-rank percentile of sorted values
+   */
+  private static long percentile(long[] sorted, int percent) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+    return sorted[Math.max(rank, 1) - 1];
+  }
+
+  private static class Stage {
+
+    public int documents;
+
+    public long characters;
+
+    public long totalNanos;
+
+    public long allocatedBytes;
+
+    public long[] nanos = new long[16];
+
+    public void add(long nanos, int characters, long allocatedBytes) {
+      if (this.documents == this.nanos.length) {
+        this.nanos = Arrays.copyOf(this.nanos, 2 * this.documents);
+      }
+      this.nanos[this.documents] = nanos;
+      ++this.documents;
+      this.characters += characters;
+      this.totalNanos += nanos;
+      // once any measurement is unknown, so is the total
+      if (allocatedBytes < 0 || this.allocatedBytes < 0) {
+        this.allocatedBytes = -1;
+      } else {
+        this.allocatedBytes += allocatedBytes;
+      }
+    }
+  }
+
+  /**
+   * Runs the delegates in the aggregate's fixed flow order, timing each one.
+   */
+  public static class InstrumentingFlowController extends JCasFlowController_ImplBase {
+
+    public static final String PARAM_PIPELINE_NAME = "PipelineName";
+
+    @ConfigurationParameter(name = PARAM_PIPELINE_NAME, mandatory = true)
+    private String pipelineName;
+
+    private String[] keys;
+
+    private String[] stages;
+
+    @Override
+    public void initialize(FlowControllerContext context) throws ResourceInitializationException {
+      super.initialize(context);
+      FlowConstraints flowConstraints = context.getAggregateMetadata().getFlowConstraints();
+      if (!(flowConstraints instanceof FixedFlow)) {
+        throw new ResourceInitializationException(new IllegalArgumentException(
+            "Only fixed flows can be instrumented, found " + flowConstraints));
+      }
+      this.keys = ((FixedFlow) flowConstraints).getFixedFlow();
+      this.stages = new String[this.keys.length];
+      for (int i = 0; i < this.keys.length; ++i) {
+        // e.g. "edu.mayo.bmi.uima.core.ae.SentenceDetector-1" => "SentenceDetector-1"
+        String key = this.keys[i];
+        this.stages[i] = this.pipelineName + "/" + key.substring(key.lastIndexOf('.') + 1);
+      }
+    }
+
+    @Override
+    public Flow computeFlow(JCas jCas) throws AnalysisEngineProcessException {
+      return new InstrumentedFlow(getCurrent());
+    }
+
+    private class InstrumentedFlow extends JCasFlow_ImplBase {
+
+      private PipelineInstrumentation instrumentation;
+
+      private int index = 0;
+
+      private long startNanos;
+
+      private long startAllocatedBytes;
+
+      public InstrumentedFlow(PipelineInstrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+      }
+
+      @Override
+      public Step next() throws AnalysisEngineProcessException {
+        if (this.instrumentation != null && this.index > 0) {
+          this.record(stages[this.index - 1]);
+        }
+        if (this.index == keys.length) {
+          return new FinalStep();
+        }
+        if (this.instrumentation != null) {
+          this.startAllocatedBytes = getAllocatedBytes();
+          this.startNanos = System.nanoTime();
+        }
+        return new SimpleStep(keys[this.index++]);
+      }
+
+      private void record(String stage) throws AnalysisEngineProcessException {
+        long nanos = System.nanoTime() - this.startNanos;
+        long allocatedBytes = getAllocatedBytes();
+        if (allocatedBytes >= 0) {
+          allocatedBytes -= this.startAllocatedBytes;
+        }
+        String text = this.getJCas().getDocumentText();
+        int characters = text == null ? 0 : text.length();
+        this.instrumentation.record(stage, nanos, characters, allocatedBytes);
+        if (LOGGER.isLoggable(Level.FINER)) {
+          LOGGER.finer(String.format(
+              "%s %s %s: %.3f ms, %d characters, %d bytes allocated",
+              this.instrumentation.getName(),
+              stage,
+              ViewURIUtil.getURI(this.getJCas()),
+              nanos / 1e6,
+              characters,
+              allocatedBytes));
+        }
+      }
+    }
+  }
+
+  /**
+   * The bytes allocated so far by the current thread, or -1 if the JVM cannot measure this.
+   */
+  private static long getAllocatedBytes() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+      if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+        return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+}
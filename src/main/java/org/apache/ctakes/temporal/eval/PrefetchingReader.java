@@ -0,0 +1,351 @@
+package org.apache.ctakes.temporal.eval;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.ctakes.knowtator.KnowtatorAnnotationCache;
+import org.apache.ctakes.knowtator.KnowtatorXMLParser;
+import org.apache.ctakes.temporal.ae.THYMEKnowtatorXMLReader;
+import org.apache.uima.UimaContext;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Progress;
+import org.apache.uima.util.ProgressImpl;
+import org.cleartk.util.ViewURIUtil;
+import org.uimafit.component.JCasCollectionReader_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.CollectionReaderFactory;
+
+import com.google.common.io.Files;
+
+/**
+ * Reads the plain text files of the THYME patient sets (the doc&lt;N&gt; directories), setting the
+ * document text and URI, so no {@link org.cleartk.util.ae.UriToDocumentTextAnnotator} is needed.
+ *
+ * The directories are listed one at a time, as they are reached, and a background thread reads the
+ * files ahead of the pipeline into a bounded queue, so that disk latency (e.g. on a network-mounted
+ * corpus) is spent while the previous documents are being annotated. If a Knowtator XML directory
+ * is given, the background thread also reads ahead each document's Knowtator XML: it is parsed into
+ * the Knowtator cache if one is given (so the Knowtator reader only has to load the cache entry),
+ * and otherwise read once, so the Knowtator reader finds it in the operating system's file cache.
+ *
+ * If the background thread fails, the documents it read before the failure are returned, and then
+ * {@link #hasNext()} and {@link #getNext(JCas)} throw the failure.
+ *
+ * The average queue depth and the time the pipeline waited for the background thread are logged
+ * after the last document, and are available from the getters. A queue that is usually empty,
+ * with a large stall time, means reading is the bottleneck.
+ */
+public class PrefetchingReader extends JCasCollectionReader_ImplBase {
+
+  private static final Logger LOGGER = Logger.getLogger(PrefetchingReader.class.getName());
+
+  /**
+   * @param rawTextDirectory
+   *          The directory containing the doc&lt;N&gt; directories.
+   * @param patientSets
+   *          The patient sets to read, in order.
+   * @param knowtatorXMLDirectory
+   *          The directory containing the Set&lt;NN&gt; directories of Knowtator XML to read ahead,
+   *          or <code>null</code> to only read the text.
+   * @param knowtatorCacheDirectory
+   *          The directory of the Knowtator cache used by the Knowtator reader, or
+   *          <code>null</code> if it does not use one.
+   */
+  public static CollectionReader getCollectionReader(
+      File rawTextDirectory,
+      List<Integer> patientSets,
+      File knowtatorXMLDirectory,
+      File knowtatorCacheDirectory) throws ResourceInitializationException {
+    List<Object> parameters = new ArrayList<Object>();
+    parameters.add(PARAM_RAW_TEXT_DIRECTORY);
+    parameters.add(rawTextDirectory);
+    parameters.add(PARAM_PATIENT_SETS);
+    parameters.add(patientSets.toArray(new Integer[patientSets.size()]));
+    if (knowtatorXMLDirectory != null) {
+      parameters.add(PARAM_KNOWTATOR_XML_DIRECTORY);
+      parameters.add(knowtatorXMLDirectory);
+    }
+    if (knowtatorCacheDirectory != null) {
+      parameters.add(PARAM_KNOWTATOR_CACHE_DIRECTORY);
+      parameters.add(knowtatorCacheDirectory);
+    }
+    return CollectionReaderFactory.createCollectionReader(
+        PrefetchingReader.class,
+        parameters.toArray());
+  }
+
+  public static final String PARAM_RAW_TEXT_DIRECTORY = "RawTextDirectory";
+
+  @ConfigurationParameter(name = PARAM_RAW_TEXT_DIRECTORY, mandatory = true)
+  private File rawTextDirectory;
+
+  public static final String PARAM_PATIENT_SETS = "PatientSets";
+
+  @ConfigurationParameter(name = PARAM_PATIENT_SETS, mandatory = true)
+  private Integer[] patientSets;
+
+  public static final String PARAM_KNOWTATOR_XML_DIRECTORY = "KnowtatorXMLDirectory";
+
+  @ConfigurationParameter(name = PARAM_KNOWTATOR_XML_DIRECTORY, mandatory = false)
+  private File knowtatorXMLDirectory;
+
+  public static final String PARAM_KNOWTATOR_CACHE_DIRECTORY = "KnowtatorCacheDirectory";
+
+  @ConfigurationParameter(name = PARAM_KNOWTATOR_CACHE_DIRECTORY, mandatory = false)
+  private File knowtatorCacheDirectory;
+
+  public static final String PARAM_QUEUE_SIZE = "QueueSize";
+
+  /**
+   * The maximum number of documents read ahead of the pipeline
+   */
+  @ConfigurationParameter(name = PARAM_QUEUE_SIZE, mandatory = false, defaultValue = "16")
+  private int queueSize;
+
+  /**
+   * Marks the end of the documents in the queue
+   */
+  private static final Document END = new Document(null, null);
+
+  private BlockingQueue<Document> queue;
+
+  private Thread prefetcher;
+
+  /**
+   * What stopped the background thread before it read all the documents, if anything
+   */
+  private volatile Throwable failure;
+
+  private Document next;
+
+  private int documentCount;
+
+  private int requestCount;
+
+  private long queueDepthSum;
+
+  private int stallCount;
+
+  private long stallNanos;
+
+  private AtomicLong prefetcherStallNanos;
+
+  @Override
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    super.initialize(context);
+    this.queue = new ArrayBlockingQueue<Document>(this.queueSize);
+    this.next = null;
+    this.documentCount = 0;
+    this.requestCount = 0;
+    this.queueDepthSum = 0;
+    this.stallCount = 0;
+    this.stallNanos = 0;
+    this.prefetcherStallNanos = new AtomicLong();
+    this.failure = null;
+    this.prefetcher = new Thread(new Prefetcher(), "prefetch " + this.rawTextDirectory);
+    this.prefetcher.setDaemon(true);
+    this.prefetcher.start();
+  }
+
+  @Override
+  public boolean hasNext() throws IOException, CollectionException {
+    if (this.next == null) {
+      // the queue depth seen by the pipeline, i.e. how far ahead the prefetcher is
+      ++this.requestCount;
+      this.queueDepthSum += this.queue.size();
+      this.next = this.queue.poll();
+      if (this.next == null) {
+        long start = System.nanoTime();
+        try {
+          this.next = this.queue.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new CollectionException(e);
+        }
+        this.stallNanos += System.nanoTime() - start;
+        ++this.stallCount;
+      }
+      if (this.next == END) {
+        LOGGER.info(String.format(
+            "%d documents read from %s: average queue depth %.1f of %d, "
+                + "pipeline waited %d times for %.1fs, prefetcher waited %.1fs",
+            this.documentCount,
+            this.rawTextDirectory,
+            this.getAverageQueueDepth(),
+            this.queueSize,
+            this.stallCount,
+            this.stallNanos / 1e9,
+            this.getPrefetcherStallNanos() / 1e9));
+      }
+    }
+    if (this.next == END && this.failure != null) {
+      throw new CollectionException(this.failure);
+    }
+    return this.next != END;
+  }
+
+  @Override
+  public void getNext(JCas jCas) throws IOException, CollectionException {
+    if (!this.hasNext()) {
+      throw new CollectionException(new IllegalStateException("No more documents"));
+    }
+    Document document = this.next;
+    this.next = null;
+    ViewURIUtil.setURI(jCas, document.file.toURI());
+    jCas.setDocumentText(document.text);
+    ++this.documentCount;
+  }
+
+  @Override
+  public Progress[] getProgress() {
+    return new Progress[] { new ProgressImpl(this.documentCount, -1, Progress.ENTITIES) };
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.prefetcher.interrupt();
+    super.close();
+  }
+
+  /**
+   * Read the text of a document. Called on the background thread.
+   */
+  protected String readText(File file) throws IOException {
+    // same encoding as UriToDocumentTextAnnotator
+    return Files.toString(file, Charset.defaultCharset());
+  }
+
+  /**
+   * The number of documents returned so far.
+   */
+  public int getDocumentCount() {
+    return this.documentCount;
+  }
+
+  /**
+   * The average number of documents that were waiting in the queue when the pipeline asked for the
+   * next one.
+   */
+  public double getAverageQueueDepth() {
+    return this.requestCount == 0 ? 0.0 : (double) this.queueDepthSum / this.requestCount;
+  }
+
+  /**
+   * The number of times the pipeline found the queue empty and had to wait.
+   */
+  public int getStallCount() {
+    return this.stallCount;
+  }
+
+  /**
+   * The total time, in nanoseconds, the pipeline spent waiting for documents to be read.
+   */
+  public long getStallNanos() {
+    return this.stallNanos;
+  }
+
+  /**
+   * The total time, in nanoseconds, the background thread spent waiting for room in a full queue,
+   * i.e. how far reading was ahead of the pipeline.
+   */
+  public long getPrefetcherStallNanos() {
+    return this.prefetcherStallNanos.get();
+  }
+
+  private static class Document {
+
+    public File file;
+
+    public String text;
+
+    public Document(File file, String text) {
+      this.file = file;
+      this.text = text;
+    }
+  }
+
+  private class Prefetcher implements Runnable {
+
+    private KnowtatorXMLParser parser;
+
+    public Prefetcher() {
+      if (knowtatorXMLDirectory != null && knowtatorCacheDirectory != null) {
+        this.parser = new KnowtatorXMLParser(THYMEKnowtatorXMLReader.ANNOTATOR_NAMES);
+        this.parser.setMode(KnowtatorXMLParser.Mode.STREAMING);
+        this.parser.setCache(KnowtatorAnnotationCache.forDirectory(knowtatorCacheDirectory));
+      }
+    }
+
+    @Override
+    public void run() {
+      boolean closed = false;
+      try {
+        for (Integer set : patientSets) {
+          File setTextDirectory = new File(rawTextDirectory, "doc" + set);
+          File[] files = setTextDirectory.listFiles();
+          if (files == null) {
+            throw new IOException("Unable to list " + setTextDirectory);
+          }
+          for (File file : files) {
+            String text = readText(file);
+            if (knowtatorXMLDirectory != null) {
+              this.readAheadKnowtatorXML(file);
+            }
+            this.put(new Document(file, text));
+          }
+        }
+      } catch (InterruptedException e) {
+        // the reader was closed
+        closed = true;
+      } catch (Throwable t) {
+        // anything else is reported by the reader after the documents already read
+        failure = t;
+      } finally {
+        // the pipeline waits for the end, so it is always queued unless nobody is reading
+        if (!closed) {
+          try {
+            this.put(END);
+          } catch (InterruptedException e) {
+            // the reader was closed
+          }
+        }
+      }
+    }
+
+    private void readAheadKnowtatorXML(File file) {
+      URI knowtatorXML = THYMEKnowtatorXMLReader.getKnowtatorXML(
+          knowtatorXMLDirectory,
+          file.toURI());
+      // any problem with the file is left for the Knowtator reader to report
+      try {
+        if (this.parser != null) {
+          this.parser.parse(knowtatorXML);
+        } else {
+          Files.toByteArray(new File(knowtatorXML));
+        }
+      } catch (Exception e) {
+        LOGGER.log(Level.FINE, "Unable to read ahead " + knowtatorXML, e);
+      }
+    }
+
+    private void put(Document document) throws InterruptedException {
+      if (!queue.offer(document)) {
+        long start = System.nanoTime();
+        queue.put(document);
+        prefetcherStallNanos.addAndGet(System.nanoTime() - start);
+      }
+    }
+  }
+}
@@ -0,0 +1,262 @@
+package org.apache.ctakes.temporal.eval;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import org.apache.ctakes.temporal.resource.DatabaseFiles;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.impl.Serialization;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.xml.sax.SAXException;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Wraps a deterministic analysis engine (e.g. the cTAKES preprocessing stack) and caches the CAS it
+ * produces for each input CAS, so that documents seen in an earlier fold or run are loaded from disk
+ * rather than processed again.
+ *
+ * Entries are grouped in a directory per configuration, named by a hash of the wrapped engine's
+ * descriptor and of the size and modification time of its model resources, so changing either
+ * starts a new, empty group. Database files (see {@link DatabaseFiles}) are the exception: the files
+ * that HSQLDB rewrites whenever it opens a database are left out, and the data files are hashed by
+ * content, so opening the UMLS database does not start a new group. Within a group, entries are
+ * named by a hash of the serialized input CAS, so a changed document (or the same document with
+ * different gold annotations, as in training and testing) gets a new entry. The wrapped engine is
+ * only created when an entry is missing, so when every document is cached, no models are loaded at
+ * all.
+ *
+ * The descriptor written to (and hashed into the name of) a group leaves out the UMLS credentials
+ * (see {@link UmlsCredentials}). The engine is created from the full description given to
+ * {@link #getDescription}, or, if that was given in another JVM, from the written descriptor with
+ * the credentials restored from the system properties.
+ */
+public class PreprocessingCache extends JCasAnnotator_ImplBase {
+
+  private static final Logger LOGGER = Logger.getLogger(PreprocessingCache.class.getName());
+
+  private static final String DESCRIPTOR_FILE_NAME = "descriptor.xml";
+
+  /**
+   * The full descriptors, with credentials, of the groups created in this JVM, by entry directory
+   */
+  private static final ConcurrentMap<File, String> DESCRIPTORS = new ConcurrentHashMap<File, String>();
+
+  /**
+   * Create a description that runs the given engine through a cache in the given directory.
+   *
+   * @param description
+   *          The engine whose output should be cached.
+   * @param cacheDirectory
+   *          The directory where CASes are cached.
+   * @param resources
+   *          The models and other resources the engine loads; if any of these change, the cache
+   *          entries for the old versions are no longer used.
+   */
+  public static AnalysisEngineDescription getDescription(
+      AnalysisEngineDescription description,
+      File cacheDirectory,
+      List<URL> resources) throws ResourceInitializationException {
+    try {
+      StringWriter fullDescriptorXML = new StringWriter();
+      description.toXML(fullDescriptorXML);
+      StringWriter descriptorXML = new StringWriter();
+      UmlsCredentials.withoutCredentials(description).toXML(descriptorXML);
+      Hasher hasher = Hashing.sha1().newHasher();
+      hasher.putString(descriptorXML.toString(), Charsets.UTF_8);
+      for (URL resource : resources) {
+        hasher.putString(resource.toString(), Charsets.UTF_8);
+        putFingerprint(hasher, resource);
+      }
+      File entryDirectory = new File(cacheDirectory, hasher.hash().toString());
+      File descriptorFile = new File(entryDirectory, DESCRIPTOR_FILE_NAME);
+      if (!descriptorFile.exists()) {
+        if (!entryDirectory.exists() && !entryDirectory.mkdirs() && !entryDirectory.exists()) {
+          throw new IOException("Unable to create directory " + entryDirectory);
+        }
+        // write and rename, since other folds may be writing the same descriptor
+        File tempFile = File.createTempFile(DESCRIPTOR_FILE_NAME, ".tmp", entryDirectory);
+        try {
+          OutputStream output = new FileOutputStream(tempFile);
+          try {
+            output.write(descriptorXML.toString().getBytes(Charsets.UTF_8));
+          } finally {
+            output.close();
+          }
+          if (!tempFile.renameTo(descriptorFile) && !descriptorFile.exists()) {
+            throw new IOException(String.format("Unable to rename %s to %s", tempFile, descriptorFile));
+          }
+        } finally {
+          tempFile.delete();
+        }
+      }
+      DESCRIPTORS.put(entryDirectory.getAbsoluteFile(), fullDescriptorXML.toString());
+      return AnalysisEngineFactory.createPrimitiveDescription(
+          PreprocessingCache.class,
+          PARAM_ENTRY_DIRECTORY,
+          entryDirectory);
+    } catch (IOException e) {
+      throw new ResourceInitializationException(e);
+    } catch (SAXException e) {
+      throw new ResourceInitializationException(e);
+    }
+  }
+
+  /**
+   * Adds the size and modification time of a resource (or of every file under it, for a directory),
+   * except for database files, see {@link DatabaseFiles}
+   */
+  static void putFingerprint(Hasher hasher, URL resource) throws IOException {
+    if ("file".equals(resource.getProtocol())) {
+      try {
+        putFingerprint(hasher, new File(resource.toURI()));
+      } catch (URISyntaxException e) {
+        throw new IOException(e);
+      }
+    } else {
+      URLConnection connection = resource.openConnection();
+      hasher.putLong(connection.getContentLength());
+      hasher.putLong(connection.getLastModified());
+    }
+  }
+
+  private static void putFingerprint(Hasher hasher, File file) throws IOException {
+    if (file.isDirectory()) {
+      File[] children = file.listFiles();
+      Arrays.sort(children);
+      for (File child : children) {
+        if (!DatabaseFiles.isWorkingFile(child)) {
+          hasher.putString(child.getName(), Charsets.UTF_8);
+          putFingerprint(hasher, child);
+        }
+      }
+    } else if (DatabaseFiles.isDataFile(file)) {
+      hasher.putLong(file.length());
+      hasher.putBytes(DatabaseFiles.getContentHash(file).asBytes());
+    } else {
+      hasher.putLong(file.length());
+      hasher.putLong(file.lastModified());
+    }
+  }
+
+  public static final String PARAM_ENTRY_DIRECTORY = "EntryDirectory";
+
+  /**
+   * The directory holding the cached CASes for one configuration, and that configuration's
+   * descriptor
+   */
+  @ConfigurationParameter(name = PARAM_ENTRY_DIRECTORY, mandatory = true)
+  private File entryDirectory;
+
+  private AnalysisEngine engine;
+
+  private int hits;
+
+  private int misses;
+
+  @Override
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    super.initialize(context);
+    this.hits = 0;
+    this.misses = 0;
+  }
+
+  @Override
+  public void process(JCas jCas) throws AnalysisEngineProcessException {
+    try {
+      // identify the entry by the input CAS
+      ByteArrayOutputStream input = new ByteArrayOutputStream();
+      Serialization.serializeCAS(jCas.getCas(), input);
+      String name = Hashing.sha1().hashBytes(input.toByteArray()).toString();
+      File entryFile = new File(this.entryDirectory, name + GoldCasCorpus.FILE_SUFFIX);
+
+      // replay the cached output if there is any
+      if (entryFile.exists()) {
+        try {
+          GoldCasCorpus.read(jCas.getCas(), entryFile);
+          ++this.hits;
+          return;
+        } catch (IOException e) {
+          LOGGER.warning(String.format("Ignoring unreadable cache entry %s: %s", entryFile, e));
+          // the failed read may have left a partial CAS, so restore the input
+          Serialization.deserializeCAS(
+              jCas.getCas(),
+              new ByteArrayInputStream(input.toByteArray()));
+        }
+      }
+
+      // otherwise, run the engine and cache its output
+      ++this.misses;
+      this.getEngine().process(jCas);
+      GoldCasCorpus.write(jCas.getCas(), entryFile);
+    } catch (IOException e) {
+      throw new AnalysisEngineProcessException(e);
+    } catch (ResourceInitializationException e) {
+      throw new AnalysisEngineProcessException(e);
+    }
+  }
+
+  private AnalysisEngine getEngine() throws ResourceInitializationException {
+    if (this.engine == null) {
+      String descriptorXML = DESCRIPTORS.get(this.entryDirectory.getAbsoluteFile());
+      if (descriptorXML == null) {
+        File descriptorFile = new File(this.entryDirectory, DESCRIPTOR_FILE_NAME);
+        try {
+          descriptorXML = Files.toString(descriptorFile, Charsets.UTF_8);
+        } catch (IOException e) {
+          throw new ResourceInitializationException(e);
+        }
+      }
+      // parse a new description for each engine, since producing an engine may modify it
+      this.engine = UIMAFramework.produceAnalysisEngine(
+          UmlsCredentials.parseWithCredentials(descriptorXML));
+    }
+    return this.engine;
+  }
+
+  @Override
+  public void collectionProcessComplete() throws AnalysisEngineProcessException {
+    super.collectionProcessComplete();
+    if (this.engine != null) {
+      this.engine.collectionProcessComplete();
+    }
+    LOGGER.info(String.format(
+        "%d documents read from %s, %d processed",
+        this.hits,
+        this.entryDirectory,
+        this.misses));
+  }
+
+  @Override
+  public void destroy() {
+    if (this.engine != null) {
+      this.engine.destroy();
+      this.engine = null;
+    }
+    super.destroy();
+  }
+}
@@ -14,8 +14,6 @@ import org.apache.uima.collection.CollectionReader;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.tcas.Annotation;
 import org.cleartk.util.ViewURIUtil;
-import org.cleartk.util.ae.UriToDocumentTextAnnotator;
-import org.cleartk.util.cr.UriCollectionReader;
 import org.uimafit.factory.AggregateBuilder;
 import org.uimafit.pipeline.JCasIterable;
 import org.uimafit.util.JCasUtil;
@@ -50,17 +48,13 @@ public class PrintRelations {
     File knowtatorXMLDirectory = options.getKnowtatorXMLDirectory();
     List<Integer> patientSets = options.getPatients().getList();
 
-    // collect the files for all the patients
-    List<File> files = new ArrayList<File>();
-    for (Integer set : patientSets) {
-      File subDir = new File(rawTextDirectory, "doc" + set);
-      files.addAll(Arrays.asList(subDir.listFiles()));
-    }
-
-    // construct reader and Knowtator XML parser
-    CollectionReader reader = UriCollectionReader.getCollectionReaderFromFiles(files);
+    // construct reader (for all the patients) and Knowtator XML parser
+    CollectionReader reader = PrefetchingReader.getCollectionReader(
+        rawTextDirectory,
+        patientSets,
+        knowtatorXMLDirectory,
+        null);
     AggregateBuilder aggregateBuilder = new AggregateBuilder();
-    aggregateBuilder.add(UriToDocumentTextAnnotator.getDescription());
     aggregateBuilder.add(THYMEKnowtatorXMLReader.getDescription(knowtatorXMLDirectory));
 
     // walk through each document in the collection
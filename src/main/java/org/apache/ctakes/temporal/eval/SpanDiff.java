@@ -0,0 +1,189 @@
+package org.apache.ctakes.temporal.eval;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.uima.jcas.tcas.Annotation;
+
+/**
+ * Aligns gold and system annotations by their spans, dividing them into matched (a span in both),
+ * dropped (a gold span with no system annotation) and added (a system span with no gold
+ * annotation).
+ *
+ * Both sides are put in (begin, end) order, which is usually just a check since the annotation index
+ * is already sorted by begin, and then aligned in a single linear merge. Comparisons only look at
+ * the offsets, so nothing is allocated per comparison. As with sets of spans, several annotations
+ * with the same span count once: only the first is kept.
+ */
+public class SpanDiff {
+
+  /**
+   * Orders annotations by begin, then end, without allocating.
+   */
+  public static final Comparator<Annotation> BY_SPAN = new Comparator<Annotation>() {
+    @Override
+    public int compare(Annotation a, Annotation b) {
+      return compareSpans(a, b);
+    }
+  };
+
+  /**
+   * The gold annotations whose spans were also found by the system, in span order
+   */
+  public List<Annotation> matched = new ArrayList<Annotation>();
+
+  /**
+   * The gold annotations whose spans were not found by the system, in span order
+   */
+  public List<Annotation> dropped = new ArrayList<Annotation>();
+
+  /**
+   * The system annotations whose spans are not in the gold standard, in span order
+   */
+  public List<Annotation> added = new ArrayList<Annotation>();
+
+  public SpanDiff(
+      Collection<? extends Annotation> goldAnnotations,
+      Collection<? extends Annotation> systemAnnotations) {
+    List<Annotation> gold = sortedBySpan(goldAnnotations);
+    List<Annotation> system = sortedBySpan(systemAnnotations);
+    int goldIndex = 0;
+    int systemIndex = 0;
+    while (goldIndex < gold.size() && systemIndex < system.size()) {
+      Annotation goldAnnotation = gold.get(goldIndex);
+      Annotation systemAnnotation = system.get(systemIndex);
+      int comparison = compareSpans(goldAnnotation, systemAnnotation);
+      if (comparison < 0) {
+        this.dropped.add(goldAnnotation);
+        goldIndex = nextSpan(gold, goldIndex);
+      } else if (comparison > 0) {
+        this.added.add(systemAnnotation);
+        systemIndex = nextSpan(system, systemIndex);
+      } else {
+        this.matched.add(goldAnnotation);
+        goldIndex = nextSpan(gold, goldIndex);
+        systemIndex = nextSpan(system, systemIndex);
+      }
+    }
+    while (goldIndex < gold.size()) {
+      this.dropped.add(gold.get(goldIndex));
+      goldIndex = nextSpan(gold, goldIndex);
+    }
+    while (systemIndex < system.size()) {
+      this.added.add(system.get(systemIndex));
+      systemIndex = nextSpan(system, systemIndex);
+    }
+  }
+
+  public boolean hasErrors() {
+    return !this.dropped.isEmpty() || !this.added.isEmpty();
+  }
+
+  /**
+   * Describe each dropped and added annotation as a JSON object (one per line, in span order) giving
+   * the document, the offsets, the label ("DROPPED" or "ADDED"), the annotated text, and up to
+   * <code>windowSize</code> characters of context on each side.
+   */
+  public List<String> getErrorRecords(String documentURI, String text, int windowSize) {
+    List<String> records = new ArrayList<String>();
+    int droppedIndex = 0;
+    int addedIndex = 0;
+    while (droppedIndex < this.dropped.size() || addedIndex < this.added.size()) {
+      boolean isDropped = addedIndex == this.added.size()
+          || (droppedIndex < this.dropped.size() && compareSpans(
+              this.dropped.get(droppedIndex),
+              this.added.get(addedIndex)) < 0);
+      Annotation annotation = isDropped
+          ? this.dropped.get(droppedIndex++)
+          : this.added.get(addedIndex++);
+      int begin = annotation.getBegin();
+      int end = annotation.getEnd();
+      StringBuilder builder = new StringBuilder();
+      builder.append("{\"document\":");
+      appendJSONString(builder, documentURI);
+      builder.append(",\"begin\":").append(begin);
+      builder.append(",\"end\":").append(end);
+      builder.append(",\"label\":");
+      appendJSONString(builder, isDropped ? "DROPPED" : "ADDED");
+      builder.append(",\"text\":");
+      appendJSONString(builder, text.substring(begin, end));
+      builder.append(",\"left\":");
+      appendJSONString(builder, text.substring(Math.max(0, begin - windowSize), begin));
+      builder.append(",\"right\":");
+      appendJSONString(builder, text.substring(end, Math.min(text.length(), end + windowSize)));
+      builder.append('}');
+      records.add(builder.toString());
+    }
+    return records;
+  }
+
+  private static int compareSpans(Annotation a, Annotation b) {
+    if (a.getBegin() != b.getBegin()) {
+      return a.getBegin() < b.getBegin() ? -1 : 1;
+    }
+    if (a.getEnd() != b.getEnd()) {
+      return a.getEnd() < b.getEnd() ? -1 : 1;
+    }
+    return 0;
+  }
+
+  /**
+   * Copy the annotations, sorting them only if they are not already in span order
+   */
+  private static List<Annotation> sortedBySpan(Collection<? extends Annotation> annotations) {
+    List<Annotation> list = new ArrayList<Annotation>(annotations);
+    for (int i = 1; i < list.size(); ++i) {
+      if (compareSpans(list.get(i - 1), list.get(i)) > 0) {
+        Collections.sort(list, BY_SPAN);
+        break;
+      }
+    }
+    return list;
+  }
+
+  /**
+   * The index of the next annotation with a different span
+   */
+  private static int nextSpan(List<Annotation> annotations, int index) {
+    Annotation annotation = annotations.get(index);
+    ++index;
+    while (index < annotations.size() && compareSpans(annotation, annotations.get(index)) == 0) {
+      ++index;
+    }
+    return index;
+  }
+
+  private static void appendJSONString(StringBuilder builder, String string) {
+    builder.append('"');
+    for (int i = 0; i < string.length(); ++i) {
+      char c = string.charAt(i);
+      switch (c) {
+        case '"':
+          builder.append("\\\"");
+          break;
+        case '\\':
+          builder.append("\\\\");
+          break;
+        case '\n':
+          builder.append("\\n");
+          break;
+        case '\r':
+          builder.append("\\r");
+          break;
+        case '\t':
+          builder.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            builder.append(String.format("\\u%04x", (int) c));
+          } else {
+            builder.append(c);
+          }
+      }
+    }
+    builder.append('"');
+  }
+}
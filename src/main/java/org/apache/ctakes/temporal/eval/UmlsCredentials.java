@@ -0,0 +1,126 @@
+package org.apache.ctakes.temporal.eval;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.apache.ctakes.temporal.ae.TokenValidatedUmlsLookupAnnotator;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.metadata.AnalysisEngineMetaData;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.ResourceSpecifier;
+import org.apache.uima.resource.metadata.ConfigurationParameterSettings;
+import org.apache.uima.util.InvalidXMLException;
+import org.apache.uima.util.XMLInputSource;
+import org.xml.sax.SAXException;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Keeps the UMLS credentials that the dictionary lookup annotators take as parameters out of the
+ * descriptors that the caches write to disk and hash into their keys.
+ *
+ * The credentials come from the {@value #USER_PROPERTY} and {@value #PASSWORD_PROPERTY} system
+ * properties, so a descriptor written without them can have them restored from there.
+ */
+public class UmlsCredentials {
+
+  public static final String USER_PROPERTY = "umls.user";
+
+  public static final String PASSWORD_PROPERTY = "umls.password";
+
+  /**
+   * The parameters that are removed: the credentials, and the token file that records their
+   * validation (which does not change the annotator's output either)
+   */
+  private static final String[] PARAMETERS = {
+      TokenValidatedUmlsLookupAnnotator.PARAM_USER,
+      TokenValidatedUmlsLookupAnnotator.PARAM_PASSWORD,
+      TokenValidatedUmlsLookupAnnotator.PARAM_TOKEN_FILE };
+
+  /**
+   * The parameters that are restored, and the system properties they are restored from
+   */
+  private static final String[][] RESTORED_PARAMETERS = {
+      { TokenValidatedUmlsLookupAnnotator.PARAM_USER, USER_PROPERTY },
+      { TokenValidatedUmlsLookupAnnotator.PARAM_PASSWORD, PASSWORD_PROPERTY } };
+
+  /**
+   * A copy of the description (and of all its delegates) without the UMLS credentials.
+   */
+  public static AnalysisEngineDescription withoutCredentials(AnalysisEngineDescription description)
+      throws ResourceInitializationException {
+    // clone() shares the delegates, so copy through XML instead
+    StringWriter descriptorXML = new StringWriter();
+    try {
+      description.toXML(descriptorXML);
+    } catch (IOException e) {
+      throw new ResourceInitializationException(e);
+    } catch (SAXException e) {
+      throw new ResourceInitializationException(e);
+    }
+    AnalysisEngineDescription copy = parse(descriptorXML.toString());
+    setCredentials(copy, false);
+    return copy;
+  }
+
+  /**
+   * Parse a description, e.g. one written without credentials, and restore the credentials of its
+   * annotators from the system properties.
+   */
+  public static AnalysisEngineDescription parseWithCredentials(String descriptorXML)
+      throws ResourceInitializationException {
+    AnalysisEngineDescription description = parse(descriptorXML);
+    setCredentials(description, true);
+    return description;
+  }
+
+  private static AnalysisEngineDescription parse(String descriptorXML)
+      throws ResourceInitializationException {
+    try {
+      return UIMAFramework.getXMLParser().parseAnalysisEngineDescription(new XMLInputSource(
+          new ByteArrayInputStream(descriptorXML.getBytes(Charsets.UTF_8)),
+          null));
+    } catch (InvalidXMLException e) {
+      throw new ResourceInitializationException(e);
+    }
+  }
+
+  /**
+   * Remove the credential parameter values of the description and its delegates, or restore those
+   * that the annotators declare from the system properties.
+   */
+  private static void setCredentials(AnalysisEngineDescription description, boolean restore)
+      throws ResourceInitializationException {
+    if (description.isPrimitive()) {
+      AnalysisEngineMetaData metaData = description.getAnalysisEngineMetaData();
+      ConfigurationParameterSettings settings = metaData.getConfigurationParameterSettings();
+      if (restore) {
+        for (String[] parameter : RESTORED_PARAMETERS) {
+          String value = System.getProperty(parameter[1]);
+          boolean declared = metaData.getConfigurationParameterDeclarations().getConfigurationParameter(
+              null,
+              parameter[0]) != null;
+          if (declared && value != null) {
+            settings.setParameterValue(parameter[0], value);
+          }
+        }
+      } else {
+        for (String parameter : PARAMETERS) {
+          settings.setParameterValue(parameter, null);
+        }
+      }
+    } else {
+      try {
+        for (ResourceSpecifier delegate : description.getDelegateAnalysisEngineSpecifiers().values()) {
+          if (delegate instanceof AnalysisEngineDescription) {
+            setCredentials((AnalysisEngineDescription) delegate, restore);
+          }
+        }
+      } catch (InvalidXMLException e) {
+        throw new ResourceInitializationException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package org.apache.ctakes.temporal.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Tells the files of an HSQLDB file database (e.g. the cTAKES UMLS dictionary,
+ * <code>umls.script</code> and its neighbours) that hold its data from those that HSQLDB rewrites
+ * whenever the database is opened, even if nothing in it changes.
+ *
+ * A database named <code>name</code> keeps its data in <code>name.script</code> (and, for cached
+ * tables, <code>name.data</code>). <code>name.properties</code>, <code>name.log</code>,
+ * <code>name.lck</code>, <code>name.backup</code> and <code>name.tmp</code> are rewritten or
+ * created on every open, so they must not decide whether anything derived from the database is
+ * stale. Note that HSQLDB also rewrites <code>name.script</code>, with the same content, when it
+ * recovers from a JVM that exited without shutting the database down, so the data files should be
+ * compared by content rather than by modification time.
+ */
+public class DatabaseFiles {
+
+  private static final String SCRIPT_SUFFIX = ".script";
+
+  private static final String DATA_SUFFIX = ".data";
+
+  private static final String[] WORKING_FILE_SUFFIXES = {
+      ".properties",
+      ".log",
+      ".lck",
+      ".backup",
+      ".tmp" };
+
+  /**
+   * The content hashes of data files, by path, size and modification time, so that each is only
+   * read once per JVM
+   */
+  private static final ConcurrentMap<String, HashCode> CONTENT_HASHES = new ConcurrentHashMap<String, HashCode>();
+
+  /**
+   * Whether the file is one that HSQLDB rewrites whenever it opens the database in the same
+   * directory.
+   */
+  public static boolean isWorkingFile(File file) {
+    for (String suffix : WORKING_FILE_SUFFIXES) {
+      if (isDatabaseFile(file, suffix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Whether the file holds the data of a database.
+   */
+  public static boolean isDataFile(File file) {
+    return file.getName().endsWith(SCRIPT_SUFFIX) || isDatabaseFile(file, DATA_SUFFIX);
+  }
+
+  /**
+   * The SHA-1 hash of the content of a (data) file.
+   */
+  public static HashCode getContentHash(File file) throws IOException {
+    String key = String.format("%s %d %d", file.getAbsolutePath(), file.length(), file.lastModified());
+    HashCode hash = CONTENT_HASHES.get(key);
+    if (hash == null) {
+      hash = Files.hash(file, Hashing.sha1());
+      CONTENT_HASHES.put(key, hash);
+    }
+    return hash;
+  }
+
+  /**
+   * Whether the file has the given suffix and there is a database script with the same name next to
+   * it.
+   */
+  private static boolean isDatabaseFile(File file, String suffix) {
+    String name = file.getName();
+    if (!name.endsWith(suffix)) {
+      return false;
+    }
+    String databaseName = name.substring(0, name.length() - suffix.length());
+    return new File(file.getParentFile(), databaseName + SCRIPT_SUFFIX).isFile();
+  }
+}
@@ -0,0 +1,304 @@
+package org.apache.ctakes.temporal.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.lucene.analysis.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.FSDirectory;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * A copy of the database dictionaries of a cTAKES lookup descriptor (e.g. the UMLS dictionary of
+ * LookupDesc_Db.xml, in an HSQLDB database) as Lucene indexes, so that the lookup annotators look
+ * them up through their Lucene dictionary, like the RxNorm and Orange Book dictionaries, instead of
+ * with an SQL query for every token of every lookup window.
+ *
+ * For each dictionary with a <code>jdbcImpl</code>, {@link #update} writes an index with a document
+ * per row of its table, holding the dictionary's lookup field, indexed as a single term so that it
+ * matches exactly what the SQL equality would, and its meta fields. Rows with no value in the
+ * lookup field are left out, since SQL equality never matches them. It also writes a copy of the
+ * lookup descriptor (see {@link #getLookupDescriptor}) where those dictionaries have a
+ * <code>luceneImpl</code> and the external resource key {@link #getResourceKey}. Everything else in
+ * the descriptor, e.g. a lookup consumer that maps concepts through the database, is unchanged.
+ *
+ * The indexes are opened like any other lookup index, e.g. through
+ * {@link SharedLuceneIndexReaderResourceImpl}, so that each is loaded (or memory-mapped) once per
+ * JVM.
+ */
+public class DictionarySnapshot {
+
+  private static final Logger LOGGER = Logger.getLogger(DictionarySnapshot.class.getName());
+
+  private static final int VERSION = 2;
+
+  private static final String DESCRIPTOR_FILE_NAME = "LookupDesc.xml";
+
+  private static final String FINGERPRINT_FILE_NAME = "fingerprint.txt";
+
+  /**
+   * The lookup descriptor that uses the snapshot's indexes.
+   */
+  public static File getLookupDescriptor(File snapshotDirectory) {
+    return new File(snapshotDirectory, DESCRIPTOR_FILE_NAME);
+  }
+
+  /**
+   * The index of the dictionary with the given id.
+   */
+  public static File getIndexDirectory(File snapshotDirectory, String dictionaryId) {
+    return new File(snapshotDirectory, dictionaryId);
+  }
+
+  /**
+   * The key of the external resource (a LuceneIndexReaderResource on
+   * {@link #getIndexDirectory(File, String)}) that the lookup descriptor of the snapshot gives the
+   * dictionary with the given id.
+   */
+  public static String getResourceKey(String dictionaryId) {
+    return "DictionarySnapshot_" + dictionaryId;
+  }
+
+  /**
+   * (Re)write the snapshot if it is missing, or if the lookup descriptor or the data files of the
+   * database (see {@link DatabaseFiles}) have changed since it was written. The files that the
+   * database rewrites whenever it is opened are not compared, so opening the database does not make
+   * the snapshot stale.
+   *
+   * @param driverClassName
+   *          The JDBC driver, e.g. "org.hsqldb.jdbcDriver".
+   * @param url
+   *          The JDBC URL of the database, e.g. "jdbc:hsqldb:file:.../umls".
+   * @param databaseDirectory
+   *          The directory holding the database files.
+   * @param lookupDescriptor
+   *          The lookup descriptor whose database dictionaries are copied.
+   * @param snapshotDirectory
+   *          The directory to write the indexes and the new lookup descriptor to.
+   * @return The ids of the dictionaries in the snapshot.
+   */
+  public static synchronized List<String> update(
+      String driverClassName,
+      String url,
+      File databaseDirectory,
+      File lookupDescriptor,
+      File snapshotDirectory) throws IOException {
+    org.w3c.dom.Document descriptor = parse(lookupDescriptor);
+    List<Element> dictionaries = getDatabaseDictionaries(descriptor);
+    List<String> dictionaryIds = new ArrayList<String>();
+    for (Element dictionary : dictionaries) {
+      dictionaryIds.add(dictionary.getAttribute("id"));
+    }
+
+    File fingerprintFile = new File(snapshotDirectory, FINGERPRINT_FILE_NAME);
+    String fingerprint = getFingerprint(databaseDirectory, lookupDescriptor);
+    if (fingerprintFile.exists()
+        && Files.toString(fingerprintFile, Charsets.UTF_8).equals(fingerprint)) {
+      return dictionaryIds;
+    }
+
+    // the fingerprint is written last, so a partly written snapshot is rewritten next time
+    LOGGER.info(String.format("Writing snapshot of %s to %s", url, snapshotDirectory));
+    if (!snapshotDirectory.exists()) {
+      snapshotDirectory.mkdirs();
+    }
+    fingerprintFile.delete();
+    try {
+      Class.forName(driverClassName);
+      Connection connection = DriverManager.getConnection(url, "sa", "");
+      try {
+        for (Element dictionary : dictionaries) {
+          File indexDirectory = getIndexDirectory(snapshotDirectory, dictionary.getAttribute("id"));
+          writeIndex(connection, dictionary, indexDirectory);
+        }
+      } finally {
+        connection.close();
+      }
+    } catch (ClassNotFoundException e) {
+      throw new IOException(e);
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+    for (Element dictionary : dictionaries) {
+      dictionary.setAttribute("externalResourceKey", getResourceKey(dictionary.getAttribute("id")));
+      Element jdbcImpl = getImplementation(dictionary);
+      jdbcImpl.getParentNode().replaceChild(descriptor.createElement("luceneImpl"), jdbcImpl);
+    }
+    write(descriptor, getLookupDescriptor(snapshotDirectory));
+    Files.write(fingerprint, fingerprintFile, Charsets.UTF_8);
+    return dictionaryIds;
+  }
+
+  /**
+   * Describe the lookup descriptor and the data files of the database by their content.
+   */
+  private static String getFingerprint(File databaseDirectory, File lookupDescriptor)
+      throws IOException {
+    StringBuilder fingerprint = new StringBuilder();
+    fingerprint.append(String.format("version %d\n", VERSION));
+    fingerprint.append(String.format(
+        "%s %s\n",
+        lookupDescriptor.getName(),
+        Files.hash(lookupDescriptor, Hashing.sha1())));
+    File[] files = databaseDirectory.listFiles();
+    if (files == null) {
+      throw new IOException("No database in " + databaseDirectory);
+    }
+    Arrays.sort(files);
+    for (File file : files) {
+      if (DatabaseFiles.isDataFile(file)) {
+        fingerprint.append(String.format(
+            "%s %d %s\n",
+            file.getName(),
+            file.length(),
+            DatabaseFiles.getContentHash(file)));
+      }
+    }
+    return fingerprint.toString();
+  }
+
+  /**
+   * The dictionaries of the lookup descriptor that are looked up in a database.
+   */
+  private static List<Element> getDatabaseDictionaries(org.w3c.dom.Document descriptor) {
+    List<Element> dictionaries = new ArrayList<Element>();
+    NodeList nodes = descriptor.getElementsByTagName("dictionary");
+    for (int i = 0; i < nodes.getLength(); ++i) {
+      Element dictionary = (Element) nodes.item(i);
+      Element implementation = getImplementation(dictionary);
+      if (implementation != null && implementation.getTagName().equals("jdbcImpl")) {
+        dictionaries.add(dictionary);
+      }
+    }
+    return dictionaries;
+  }
+
+  /**
+   * The element in the <code>implementation</code> of the dictionary, e.g. <code>jdbcImpl</code>.
+   */
+  private static Element getImplementation(Element dictionary) {
+    NodeList implementations = dictionary.getElementsByTagName("implementation");
+    if (implementations.getLength() == 0) {
+      return null;
+    }
+    Node node = implementations.item(0).getFirstChild();
+    for (; node != null; node = node.getNextSibling()) {
+      if (node.getNodeType() == Node.ELEMENT_NODE) {
+        return (Element) node;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The fieldName attributes of the dictionary's elements with the given name.
+   */
+  private static Set<String> getFieldNames(Element dictionary, String tagName) {
+    Set<String> fieldNames = new LinkedHashSet<String>();
+    NodeList nodes = dictionary.getElementsByTagName(tagName);
+    for (int i = 0; i < nodes.getLength(); ++i) {
+      fieldNames.add(((Element) nodes.item(i)).getAttribute("fieldName"));
+    }
+    return fieldNames;
+  }
+
+  /**
+   * Write the table of a database dictionary to an index, with the lookup field indexed and the
+   * lookup and meta fields stored.
+   */
+  private static void writeIndex(Connection connection, Element dictionary, File indexDirectory)
+      throws SQLException, IOException {
+    String tableName = getImplementation(dictionary).getAttribute("tableName");
+    String lookupFieldName = getFieldNames(dictionary, "lookupField").iterator().next();
+    Set<String> metaFieldNames = getFieldNames(dictionary, "metaField");
+    metaFieldNames.remove(lookupFieldName);
+
+    IndexWriter writer = new IndexWriter(
+        FSDirectory.open(indexDirectory),
+        new KeywordAnalyzer(),
+        true,
+        IndexWriter.MaxFieldLength.UNLIMITED);
+    try {
+      Statement statement = connection.createStatement();
+      try {
+        // the table name is given as the JDBC dictionary gives it, i.e. unquoted
+        ResultSet rows = statement.executeQuery("SELECT * FROM " + tableName);
+        try {
+          while (rows.next()) {
+            String lookupValue = rows.getString(lookupFieldName);
+            if (lookupValue == null) {
+              continue;
+            }
+            Document document = new Document();
+            document.add(new Field(
+                lookupFieldName,
+                lookupValue,
+                Field.Store.YES,
+                Field.Index.NOT_ANALYZED));
+            for (String metaFieldName : metaFieldNames) {
+              String metaValue = rows.getString(metaFieldName);
+              if (metaValue != null) {
+                document.add(new Field(metaFieldName, metaValue, Field.Store.YES, Field.Index.NO));
+              }
+            }
+            writer.addDocument(document);
+          }
+        } finally {
+          rows.close();
+        }
+      } finally {
+        statement.close();
+      }
+      writer.optimize();
+    } finally {
+      writer.close();
+    }
+  }
+
+  private static org.w3c.dom.Document parse(File file) throws IOException {
+    try {
+      return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+    } catch (ParserConfigurationException e) {
+      throw new IOException(e);
+    } catch (SAXException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static void write(org.w3c.dom.Document document, File file) throws IOException {
+    try {
+      TransformerFactory.newInstance().newTransformer().transform(
+          new DOMSource(document),
+          new StreamResult(file));
+    } catch (TransformerException e) {
+      throw new IOException(e);
+    }
+  }
+}
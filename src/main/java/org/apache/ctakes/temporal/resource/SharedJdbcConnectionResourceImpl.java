@@ -0,0 +1,65 @@
+package org.apache.ctakes.temporal.resource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import org.apache.uima.resource.DataResource;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.SharedResourceObject;
+import org.apache.uima.resource.metadata.ConfigurationParameterSettings;
+
+import edu.mayo.bmi.uima.core.resource.JdbcConnectionResource;
+import edu.mayo.bmi.uima.core.resource.JdbcConnectionResourceImpl;
+
+/**
+ * A {@link JdbcConnectionResourceImpl}, with the same parameters, whose database is opened once per
+ * JVM (see {@link SharedResourceRegistry}) and used by all annotators that look up the same
+ * database.
+ *
+ * The lookup annotators prepare statements on their connection and then use them for every
+ * document, and the statements and result sets of one HSQLDB connection must not be used by several
+ * threads at once. So while the shared resource keeps the database open, each instance of this
+ * resource (i.e. each aggregate, which is only ever used by one thread at a time) opens a
+ * connection of its own to it.
+ */
+public class SharedJdbcConnectionResourceImpl implements JdbcConnectionResource,
+    SharedResourceObject {
+
+  public static final String PARAM_DRIVER_CLASS_NAME = "DriverClassName";
+
+  public static final String PARAM_URL = "URL";
+
+  public static final String PARAM_USERNAME = "Username";
+
+  public static final String PARAM_PASSWORD = "Password";
+
+  private Connection connection;
+
+  @Override
+  public void load(DataResource data) throws ResourceInitializationException {
+    // the shared connection keeps the database open, so the connections below do not reload it
+    SharedResourceRegistry.getResource(JdbcConnectionResourceImpl.class, data);
+
+    ConfigurationParameterSettings settings = data.getMetaData().getConfigurationParameterSettings();
+    String driverClassName = (String) settings.getParameterValue(PARAM_DRIVER_CLASS_NAME);
+    String url = (String) settings.getParameterValue(PARAM_URL);
+    String username = (String) settings.getParameterValue(PARAM_USERNAME);
+    String password = (String) settings.getParameterValue(PARAM_PASSWORD);
+    try {
+      Class.forName(driverClassName);
+      this.connection = username == null
+          ? DriverManager.getConnection(url)
+          : DriverManager.getConnection(url, username, password);
+    } catch (ClassNotFoundException e) {
+      throw new ResourceInitializationException(e);
+    } catch (SQLException e) {
+      throw new ResourceInitializationException(e);
+    }
+  }
+
+  @Override
+  public Connection getConnection() {
+    return this.connection;
+  }
+}
@@ -0,0 +1,80 @@
+package org.apache.ctakes.temporal.resource;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.uima.resource.DataResource;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.SharedResourceObject;
+import org.apache.uima.resource.metadata.ConfigurationParameterSettings;
+
+import edu.mayo.bmi.uima.core.resource.LuceneIndexReaderResource;
+import edu.mayo.bmi.uima.core.resource.LuceneIndexReaderResourceImpl;
+
+/**
+ * A {@link LuceneIndexReaderResourceImpl}, with the same parameters, whose index is opened once per
+ * JVM (see {@link SharedResourceRegistry}) and searched by all annotators that use the same index.
+ *
+ * With {@link #PARAM_USE_MEMORY_MAPPED_INDEX} set to true (and UseMemoryIndex set to false), the
+ * index files are mapped into memory instead of being copied onto the heap, so the operating system
+ * pages them in as needed and shares them with other processes.
+ */
+public class SharedLuceneIndexReaderResourceImpl implements LuceneIndexReaderResource,
+    SharedResourceObject {
+
+  public static final String PARAM_USE_MEMORY_MAPPED_INDEX = "UseMemoryMappedIndex";
+
+  public static final String PARAM_INDEX_DIRECTORY = "IndexDirectory";
+
+  private LuceneIndexReaderResource resource;
+
+  @Override
+  public void load(DataResource data) throws ResourceInitializationException {
+    ConfigurationParameterSettings settings = data.getMetaData().getConfigurationParameterSettings();
+    Object useMemoryMappedIndex = settings.getParameterValue(PARAM_USE_MEMORY_MAPPED_INDEX);
+    if (Boolean.TRUE.equals(useMemoryMappedIndex)) {
+      this.resource = SharedResourceRegistry.getResource(MemoryMappedIndexReaderResource.class, data);
+    } else {
+      this.resource = SharedResourceRegistry.getResource(LuceneIndexReaderResourceImpl.class, data);
+    }
+  }
+
+  @Override
+  public IndexReader getIndexReader() {
+    return this.resource.getIndexReader();
+  }
+
+  /**
+   * Opens the index in {@link SharedLuceneIndexReaderResourceImpl#PARAM_INDEX_DIRECTORY} read-only
+   * from a {@link MMapDirectory}.
+   */
+  public static class MemoryMappedIndexReaderResource implements LuceneIndexReaderResource,
+      SharedResourceObject {
+
+    private IndexReader indexReader;
+
+    @Override
+    public void load(DataResource data) throws ResourceInitializationException {
+      ConfigurationParameterSettings settings = data.getMetaData().getConfigurationParameterSettings();
+      Object indexDirectory = settings.getParameterValue(PARAM_INDEX_DIRECTORY);
+      if (indexDirectory == null) {
+        throw new ResourceInitializationException(new IllegalArgumentException(
+            "Missing parameter " + PARAM_INDEX_DIRECTORY));
+      }
+      try {
+        this.indexReader = IndexReader.open(
+            new MMapDirectory(new File(indexDirectory.toString())),
+            true);
+      } catch (IOException e) {
+        throw new ResourceInitializationException(e);
+      }
+    }
+
+    @Override
+    public IndexReader getIndexReader() {
+      return this.indexReader;
+    }
+  }
+}
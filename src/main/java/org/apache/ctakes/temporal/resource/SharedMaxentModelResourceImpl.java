@@ -0,0 +1,29 @@
+package org.apache.ctakes.temporal.resource;
+
+import opennlp.maxent.MaxentModel;
+
+import org.apache.uima.resource.DataResource;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.SharedResourceObject;
+
+import edu.mayo.bmi.uima.core.resource.MaxentModelResource;
+import edu.mayo.bmi.uima.core.resource.SuffixMaxentModelResourceImpl;
+
+/**
+ * A {@link SuffixMaxentModelResourceImpl}, with the same model URL, whose model is read once per
+ * JVM (see {@link SharedResourceRegistry}) and used by all annotators that evaluate it.
+ */
+public class SharedMaxentModelResourceImpl implements MaxentModelResource, SharedResourceObject {
+
+  private MaxentModelResource resource;
+
+  @Override
+  public void load(DataResource data) throws ResourceInitializationException {
+    this.resource = SharedResourceRegistry.getResource(SuffixMaxentModelResourceImpl.class, data);
+  }
+
+  @Override
+  public MaxentModel getModel() {
+    return this.resource.getModel();
+  }
+}
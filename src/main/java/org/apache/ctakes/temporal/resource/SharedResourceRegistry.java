@@ -0,0 +1,105 @@
+package org.apache.ctakes.temporal.resource;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.apache.uima.resource.DataResource;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.SharedResourceObject;
+import org.apache.uima.resource.metadata.ConfigurationParameterSettings;
+import org.apache.uima.resource.metadata.NameValuePair;
+import org.apache.uima.resource.metadata.ResourceMetaData;
+
+/**
+ * Loads each external resource once per JVM instead of once per aggregate. UIMA creates a new
+ * resource manager, and so new resource objects, every time an aggregate is instantiated, e.g. for
+ * every fold, phase and thread of an evaluation. The Shared*ResourceImpl classes in this package
+ * instead ask the registry for the resource, which loads it the first time it is requested for a
+ * given implementation class, URI and parameter settings, and returns the same object after that.
+ *
+ * Shared resources are never unloaded, and they are used by many annotators and threads at once,
+ * so only resources that are read-only after loading should be shared.
+ */
+public class SharedResourceRegistry {
+
+  private static final Logger LOGGER = Logger.getLogger(SharedResourceRegistry.class.getName());
+
+  private static final Map<String, Entry> ENTRIES = new HashMap<String, Entry>();
+
+  /**
+   * Get the resource that the given implementation class loads from the given data, loading it if
+   * no resource has been loaded from the same data yet.
+   */
+  public static <T extends SharedResourceObject> T getResource(
+      Class<T> implementationClass,
+      DataResource data) throws ResourceInitializationException {
+    String key = getKey(implementationClass, data);
+    Entry entry;
+    synchronized (ENTRIES) {
+      entry = ENTRIES.get(key);
+      if (entry == null) {
+        entry = new Entry();
+        ENTRIES.put(key, entry);
+      }
+    }
+    // load outside of the registry lock, so that different resources can load at the same time
+    synchronized (entry) {
+      if (entry.resource == null) {
+        LOGGER.info("Loading shared resource " + key);
+        T resource;
+        try {
+          resource = implementationClass.newInstance();
+        } catch (InstantiationException e) {
+          throw new ResourceInitializationException(e);
+        } catch (IllegalAccessException e) {
+          throw new ResourceInitializationException(e);
+        }
+        resource.load(data);
+        entry.resource = resource;
+      }
+      return implementationClass.cast(entry.resource);
+    }
+  }
+
+  /**
+   * The number of resources loaded so far.
+   */
+  public static int size() {
+    synchronized (ENTRIES) {
+      return ENTRIES.size();
+    }
+  }
+
+  /**
+   * The implementation class, the URI, and the parameter settings (in name order).
+   */
+  private static String getKey(Class<?> implementationClass, DataResource data) {
+    StringBuilder builder = new StringBuilder(implementationClass.getName());
+    builder.append('(').append(data.getUri());
+    ResourceMetaData metaData = data.getMetaData();
+    ConfigurationParameterSettings settings = metaData == null
+        ? null
+        : metaData.getConfigurationParameterSettings();
+    if (settings != null) {
+      NameValuePair[] pairs = settings.getParameterSettings().clone();
+      Arrays.sort(pairs, new Comparator<NameValuePair>() {
+        @Override
+        public int compare(NameValuePair pair1, NameValuePair pair2) {
+          return pair1.getName().compareTo(pair2.getName());
+        }
+      });
+      for (NameValuePair pair : pairs) {
+        builder.append(", ").append(pair.getName()).append('=');
+        builder.append(Arrays.deepToString(new Object[] { pair.getValue() }));
+      }
+    }
+    return builder.append(')').toString();
+  }
+
+  private static class Entry {
+    public SharedResourceObject resource;
+  }
+}
@@ -0,0 +1,210 @@
+package org.apache.ctakes.temporal.resource;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLEncoder;
+import java.security.GeneralSecurityException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Validates UMLS credentials, and records a successful validation in a local token file so that
+ * later pipelines (in this or later runs, until the token expires) can skip the validation, and so
+ * do not need the network.
+ *
+ * The token holds the vendor, user, validator and expiry time, signed with an HMAC keyed by the
+ * password, so it cannot be edited to extend it, and it is no longer accepted once any of the
+ * credentials change.
+ */
+public class UmlsLicense {
+
+  private static final Logger LOGGER = Logger.getLogger(UmlsLicense.class.getName());
+
+  /**
+   * The UTS web service that cTAKES validates UMLS credentials with.
+   */
+  public static final String UTS_ADDRESS = "https://uts-ws.nlm.nih.gov/restful/isValidUMLSUser";
+
+  /**
+   * How long a token is accepted after the remote validation that created it.
+   */
+  public static final long TOKEN_LIFETIME_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+  private static final String SIGNATURE_ALGORITHM = "HmacSHA256";
+
+  /**
+   * Checks UMLS credentials.
+   */
+  public static interface Validator {
+    public boolean isValid(String address, String vendor, String user, String password)
+        throws IOException;
+  }
+
+  /**
+   * Posts the credentials to the validation service at the given address (normally
+   * {@link UmlsLicense#UTS_ADDRESS}), the same way the cTAKES UMLS lookup annotator does.
+   */
+  public static class RemoteValidator implements Validator {
+
+    private static final int TIMEOUT_MILLIS = 30000;
+
+    @Override
+    public boolean isValid(String address, String vendor, String user, String password)
+        throws IOException {
+      String data = String.format(
+          "licenseCode=%s&user=%s&password=%s",
+          URLEncoder.encode(vendor, "UTF-8"),
+          URLEncoder.encode(user, "UTF-8"),
+          URLEncoder.encode(password, "UTF-8"));
+      URLConnection connection = new URL(address).openConnection();
+      connection.setConnectTimeout(TIMEOUT_MILLIS);
+      connection.setReadTimeout(TIMEOUT_MILLIS);
+      connection.setDoOutput(true);
+      Writer writer = new OutputStreamWriter(connection.getOutputStream(), Charsets.UTF_8);
+      try {
+        writer.write(data);
+      } finally {
+        writer.close();
+      }
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          connection.getInputStream(),
+          Charsets.UTF_8));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.contains("<Result>true</Result>")) {
+            return true;
+          }
+        }
+        return false;
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * Check the credentials, using the token file if it holds an unexpired token for them, and
+   * otherwise asking the validator and, if it accepts them, writing a new token.
+   *
+   * @param tokenFile
+   *          The token file, or <code>null</code> to always ask the validator.
+   */
+  public static synchronized boolean isValid(
+      Validator validator,
+      String address,
+      String vendor,
+      String user,
+      String password,
+      File tokenFile) throws IOException {
+    if (user == null || password == null || vendor == null) {
+      return false;
+    }
+    String validatorName = validator.getClass().getName();
+    // an empty password cannot key the signature, so it never gets a token
+    boolean useToken = tokenFile != null && password.length() > 0;
+    if (useToken && tokenFile.exists()) {
+      if (isTokenValid(tokenFile, validatorName, vendor, user, password)) {
+        return true;
+      }
+      LOGGER.info("Ignoring expired or non-matching UMLS token " + tokenFile);
+    }
+    if (!validator.isValid(address, vendor, user, password)) {
+      return false;
+    }
+    if (useToken) {
+      writeToken(tokenFile, validatorName, vendor, user, password);
+    }
+    return true;
+  }
+
+  private static boolean isTokenValid(
+      File tokenFile,
+      String validatorName,
+      String vendor,
+      String user,
+      String password) throws IOException {
+    Properties token = new Properties();
+    InputStream input = new FileInputStream(tokenFile);
+    try {
+      token.load(input);
+    } finally {
+      input.close();
+    }
+    String expires = token.getProperty("expires");
+    String signature = token.getProperty("signature");
+    if (expires == null || signature == null) {
+      return false;
+    }
+    long expiresMillis;
+    try {
+      expiresMillis = Long.parseLong(expires);
+    } catch (NumberFormatException e) {
+      return false;
+    }
+    return expiresMillis > System.currentTimeMillis()
+        && signature.equals(sign(validatorName, vendor, user, expires, password));
+  }
+
+  private static void writeToken(
+      File tokenFile,
+      String validatorName,
+      String vendor,
+      String user,
+      String password) throws IOException {
+    String expires = String.valueOf(System.currentTimeMillis() + TOKEN_LIFETIME_MILLIS);
+    Properties token = new Properties();
+    token.setProperty("validator", validatorName);
+    token.setProperty("vendor", vendor);
+    token.setProperty("user", user);
+    token.setProperty("expires", expires);
+    token.setProperty("signature", sign(validatorName, vendor, user, expires, password));
+    File directory = tokenFile.getAbsoluteFile().getParentFile();
+    if (!directory.exists()) {
+      directory.mkdirs();
+    }
+    OutputStream output = new FileOutputStream(tokenFile);
+    try {
+      token.store(output, "UMLS license validation");
+    } finally {
+      output.close();
+    }
+    LOGGER.info("Wrote UMLS token " + tokenFile);
+  }
+
+  private static String sign(
+      String validatorName,
+      String vendor,
+      String user,
+      String expires,
+      String password) throws IOException {
+    String message = validatorName + '\n' + vendor + '\n' + user + '\n' + expires;
+    try {
+      Mac mac = Mac.getInstance(SIGNATURE_ALGORITHM);
+      mac.init(new SecretKeySpec(password.getBytes(Charsets.UTF_8), SIGNATURE_ALGORITHM));
+      StringBuilder builder = new StringBuilder();
+      for (byte b : mac.doFinal(message.getBytes(Charsets.UTF_8))) {
+        builder.append(String.format("%02x", b));
+      }
+      return builder.toString();
+    } catch (GeneralSecurityException e) {
+      throw new IOException(e);
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package org.apache.ctakes.knowtator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+public class KnowtatorAnnotationCacheTest {
+
+  private static final String[] ANNOTATOR_NAMES = {
+      "consensus set annotator team",
+      "consensus set_rel annotator team" };
+
+  private File directory;
+
+  @Before
+  public void setUp() {
+    this.directory = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    for (File file : this.directory.listFiles()) {
+      file.delete();
+    }
+    this.directory.delete();
+  }
+
+  @Test
+  public void testCorruptEntryIsParsedAgain() throws Exception {
+    URI uri = KnowtatorAnnotationCacheTest.class.getResource("sample.knowtator.xml").toURI();
+    KnowtatorAnnotationCache cache = KnowtatorAnnotationCache.forDirectory(this.directory);
+    KnowtatorXMLParser parser = new KnowtatorXMLParser(ANNOTATOR_NAMES);
+    parser.setCache(cache);
+    HashSet<KnowtatorAnnotation> parsed = new HashSet<KnowtatorAnnotation>(parser.parse(uri));
+    assertEquals(0, cache.getHits());
+    assertEquals(1, cache.getMisses());
+
+    // point the first annotation's id at a string that does not exist
+    File[] entryFiles = this.directory.listFiles();
+    assertEquals(1, entryFiles.length);
+    RandomAccessFile entry = new RandomAccessFile(entryFiles[0], "rw");
+    try {
+      byte[] bytes = new byte[(int) entry.length()];
+      entry.readFully(bytes);
+      entry.seek(getFirstAnnotationOffset(ByteBuffer.wrap(bytes)));
+      entry.writeInt(Integer.MAX_VALUE);
+    } finally {
+      entry.close();
+    }
+
+    // the entry is dropped, the XML parsed again, and a new entry written
+    assertEquals(parsed, new HashSet<KnowtatorAnnotation>(parser.parse(uri)));
+    assertEquals(0, cache.getHits());
+    assertEquals(2, cache.getMisses());
+    assertEquals(parsed, new HashSet<KnowtatorAnnotation>(parser.parse(uri)));
+    assertEquals(1, cache.getHits());
+  }
+
+  @Test
+  public void testTouchedFileIsHashedOnce() throws Exception {
+    File knowtatorXML = new File(this.directory, "sample.knowtator.xml");
+    Files.copy(
+        new File(KnowtatorAnnotationCacheTest.class.getResource("sample.knowtator.xml").toURI()),
+        knowtatorXML);
+    KnowtatorAnnotationCache cache = KnowtatorAnnotationCache.forDirectory(this.directory);
+    KnowtatorXMLParser parser = new KnowtatorXMLParser(ANNOTATOR_NAMES);
+    parser.setCache(cache);
+    HashSet<KnowtatorAnnotation> parsed = new HashSet<KnowtatorAnnotation>(
+        parser.parse(knowtatorXML.toURI()));
+
+    // the same content with a new modification time is still a hit
+    long lastModified = knowtatorXML.lastModified() - 60000;
+    knowtatorXML.setLastModified(lastModified);
+    lastModified = knowtatorXML.lastModified();
+    assertEquals(parsed, new HashSet<KnowtatorAnnotation>(parser.parse(knowtatorXML.toURI())));
+    assertEquals(1, cache.getHits());
+
+    // and the entry now records the new modification time
+    File entryFile = null;
+    for (File file : this.directory.listFiles()) {
+      if (file.getName().endsWith(".kac")) {
+        entryFile = file;
+      }
+    }
+    RandomAccessFile entry = new RandomAccessFile(entryFile, "r");
+    try {
+      entry.seek(16);
+      assertEquals(lastModified, entry.readLong());
+    } finally {
+      entry.close();
+    }
+  }
+
+  /**
+   * Skip the header and string table of an entry, as written by KnowtatorAnnotationCache.
+   */
+  private static int getFirstAnnotationOffset(ByteBuffer buffer) {
+    buffer.getInt(); // magic
+    buffer.getInt(); // version
+    buffer.getLong(); // length
+    buffer.getLong(); // last modified
+    int hashLength = buffer.get() & 0xff;
+    buffer.position(buffer.position() + hashLength);
+    skipString(buffer); // path
+    skipString(buffer); // annotator names
+    for (int i = buffer.getInt(); i > 0; --i) {
+      skipString(buffer);
+    }
+    buffer.getInt(); // number of results
+    buffer.getInt(); // number of annotations
+    return buffer.position();
+  }
+
+  private static void skipString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    buffer.position(buffer.position() + length);
+  }
+}
@@ -0,0 +1,75 @@
+package org.apache.ctakes.knowtator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class KnowtatorXMLParserTest {
+
+  private static final String[] ANNOTATOR_NAMES = {
+      "consensus set annotator team",
+      "consensus set_rel annotator team" };
+
+  @Test
+  public void testStreamingMatchesDOM() throws Exception {
+    List<KnowtatorAnnotation> dom = parse(KnowtatorXMLParser.Mode.DOM);
+    List<KnowtatorAnnotation> streaming = parse(KnowtatorXMLParser.Mode.STREAMING);
+    assertEquals(dom, streaming);
+
+    // make sure the comparison covered spans, attributes, complex slots and discontinuous spans
+    Map<String, KnowtatorAnnotation> byId = new HashMap<String, KnowtatorAnnotation>();
+    for (KnowtatorAnnotation annotation : streaming) {
+      byId.put(annotation.id, annotation);
+    }
+    assertEquals(4, byId.size());
+    assertFalse(byId.containsKey("sample_Instance_5"));
+
+    KnowtatorAnnotation surgery = byId.get("sample_Instance_1");
+    assertEquals("EVENT", surgery.type);
+    assertEquals("surgery", surgery.spannedText);
+    assertEquals(Arrays.asList(new KnowtatorAnnotation.Span(10, 17)), surgery.getSpans());
+    assertEquals("BEFORE", surgery.getStringSlots().get("DocTimeRel"));
+    assertEquals("N/A", surgery.getStringSlots().get("Type"));
+    assertEquals(Boolean.TRUE, surgery.getBooleanSlots().get("Permanent"));
+
+    KnowtatorAnnotation cancer = byId.get("sample_Instance_2");
+    assertEquals(
+        Arrays.asList(new KnowtatorAnnotation.Span(30, 35), new KnowtatorAnnotation.Span(41, 47)),
+        cancer.getSpans());
+    assertEquals(Boolean.FALSE, cancer.getBooleanSlots().get("Permanent"));
+
+    KnowtatorAnnotation tlink = byId.get("sample_Instance_4");
+    assertEquals("TLINK", tlink.type);
+    assertEquals(0, tlink.getSpanCount());
+    assertEquals("BEFORE", tlink.getStringSlots().get("Relationtype"));
+    assertSame(surgery, tlink.getAnnotationSlots().get("Event"));
+    assertSame(byId.get("sample_Instance_3"), tlink.getAnnotationSlots().get("Related_to"));
+  }
+
+  private static List<KnowtatorAnnotation> parse(KnowtatorXMLParser.Mode mode) throws Exception {
+    URI uri = KnowtatorXMLParserTest.class.getResource("sample.knowtator.xml").toURI();
+    KnowtatorXMLParser parser = new KnowtatorXMLParser(ANNOTATOR_NAMES);
+    parser.setMode(mode);
+    Collection<KnowtatorAnnotation> annotations = parser.parse(uri);
+    List<KnowtatorAnnotation> sorted = new ArrayList<KnowtatorAnnotation>(annotations);
+    Collections.sort(sorted, new Comparator<KnowtatorAnnotation>() {
+      @Override
+      public int compare(KnowtatorAnnotation a, KnowtatorAnnotation b) {
+        return a.id.compareTo(b.id);
+      }
+    });
+    return sorted;
+  }
+}
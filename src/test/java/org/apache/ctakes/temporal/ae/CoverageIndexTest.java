@@ -0,0 +1,165 @@
+package org.apache.ctakes.temporal.ae;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.ctakes.temporal.ae.CoverageIndex.IndexedCovered;
+import org.apache.ctakes.temporal.ae.CoverageIndex.IndexedFollowing;
+import org.apache.ctakes.temporal.ae.CoverageIndex.IndexedPreceding;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.resource.metadata.impl.TypeSystemDescription_impl;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.feature.extractor.CleartkExtractor;
+import org.cleartk.classifier.feature.extractor.CleartkExtractor.Covered;
+import org.cleartk.classifier.feature.extractor.CleartkExtractor.Following;
+import org.cleartk.classifier.feature.extractor.CleartkExtractor.Preceding;
+import org.cleartk.classifier.feature.extractor.simple.CoveredTextExtractor;
+import org.junit.Before;
+import org.junit.Test;
+import org.uimafit.factory.JCasFactory;
+import org.uimafit.util.JCasUtil;
+
+public class CoverageIndexTest {
+
+  private static final String TEXT = "The patient was admitted on Monday and discharged on Friday.";
+
+  private JCas jCas;
+
+  private Random random;
+
+  @Before
+  public void setUp() throws Exception {
+    this.jCas = JCasFactory.createJCas(new TypeSystemDescription_impl());
+    this.jCas.setDocumentText(TEXT);
+    this.random = new Random(42);
+    for (int i = 0; i < 150; ++i) {
+      this.addRandomAnnotation();
+    }
+    // annotations with the same offsets
+    List<Annotation> annotations = new ArrayList<Annotation>(JCasUtil.select(
+        this.jCas,
+        Annotation.class));
+    for (Annotation annotation : annotations.subList(0, 10)) {
+      new Annotation(this.jCas, annotation.getBegin(), annotation.getEnd()).addToIndexes();
+    }
+  }
+
+  @Test
+  public void testLookupsMatchJCasUtil() throws Exception {
+    CoverageIndex index = CoverageIndex.open(this.jCas);
+    try {
+      assertSame(index, CoverageIndex.get(this.jCas));
+      this.assertLookupsMatch(index);
+    } finally {
+      index.close();
+    }
+    assertNull(CoverageIndex.get(this.jCas));
+  }
+
+  @Test
+  public void testContextsMatchCleartk() throws Exception {
+    CleartkExtractor indexed = new CleartkExtractor(
+        Annotation.class,
+        new CoveredTextExtractor(),
+        new IndexedPreceding(3),
+        new IndexedCovered(),
+        new IndexedFollowing(3));
+    CleartkExtractor unindexed = new CleartkExtractor(
+        Annotation.class,
+        new CoveredTextExtractor(),
+        new Preceding(3),
+        new Covered(),
+        new Following(3));
+    List<Annotation> foci = this.getFoci();
+
+    // with an open index, and falling back to JCasUtil without one
+    CoverageIndex index = CoverageIndex.open(this.jCas);
+    try {
+      for (Annotation focus : foci) {
+        List<Feature> expected = unindexed.extract(this.jCas, focus);
+        assertEquals(expected, indexed.extract(this.jCas, focus));
+      }
+    } finally {
+      index.close();
+    }
+    for (Annotation focus : foci) {
+      assertEquals(unindexed.extract(this.jCas, focus), indexed.extract(this.jCas, focus));
+    }
+  }
+
+  @Test
+  public void testChangesAreSeen() throws Exception {
+    CoverageIndex index = CoverageIndex.open(this.jCas);
+    try {
+      this.assertLookupsMatch(index);
+    } finally {
+      index.close();
+    }
+
+    // another annotator replaces an annotation, without changing the number of annotations
+    List<Annotation> annotations = new ArrayList<Annotation>(JCasUtil.select(
+        this.jCas,
+        Annotation.class));
+    annotations.get(20).removeFromIndexes();
+    new Annotation(this.jCas, 5, TEXT.length()).addToIndexes();
+    index = CoverageIndex.open(this.jCas);
+    try {
+      this.assertLookupsMatch(index);
+
+      // the annotator itself adds annotations while it looks them up
+      for (int i = 0; i < 10; ++i) {
+        this.addRandomAnnotation();
+        this.assertLookupsMatch(index);
+      }
+    } finally {
+      index.close();
+    }
+  }
+
+  private void assertLookupsMatch(CoverageIndex index) {
+    for (Annotation focus : this.getFoci()) {
+      String message = String.format("%d-%d", focus.getBegin(), focus.getEnd());
+      assertEquals(
+          message,
+          JCasUtil.selectCovered(this.jCas, Annotation.class, focus),
+          index.selectCovered(Annotation.class, focus));
+      for (int count = 0; count < 5; ++count) {
+        assertEquals(
+            message,
+            JCasUtil.selectPreceding(this.jCas, Annotation.class, focus, count),
+            index.selectPreceding(Annotation.class, focus, count));
+        assertEquals(
+            message,
+            JCasUtil.selectFollowing(this.jCas, Annotation.class, focus, count),
+            index.selectFollowing(Annotation.class, focus, count));
+      }
+    }
+  }
+
+  /**
+   * The annotations in the CAS, and some that are not in its indexes.
+   */
+  private List<Annotation> getFoci() {
+    List<Annotation> foci = new ArrayList<Annotation>(JCasUtil.select(this.jCas, Annotation.class));
+    for (int i = 0; i < 30; ++i) {
+      foci.add(this.createRandomAnnotation());
+    }
+    return foci;
+  }
+
+  private void addRandomAnnotation() {
+    this.createRandomAnnotation().addToIndexes();
+  }
+
+  private Annotation createRandomAnnotation() {
+    int begin = this.random.nextInt(TEXT.length());
+    int end = begin + 1 + this.random.nextInt(Math.min(TEXT.length() - begin, 12));
+    return new Annotation(this.jCas, begin, end);
+  }
+}
@@ -0,0 +1,141 @@
+package org.apache.ctakes.temporal.ae;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.uima.jcas.JCas;
+import org.cleartk.classifier.chunking.BIOChunking;
+import org.junit.Before;
+import org.junit.Test;
+import org.uimafit.factory.JCasFactory;
+import org.uimafit.util.JCasUtil;
+
+import edu.mayo.bmi.uima.core.type.constants.CONST;
+import edu.mayo.bmi.uima.core.type.syntax.BaseToken;
+import edu.mayo.bmi.uima.core.type.textsem.EntityMention;
+
+public class EventAnnotatorTest {
+
+  /**
+   * The entity types that {@link EventAnnotator} tags, in its order
+   */
+  private static final int[] TYPE_IDS = new int[] {
+      CONST.NE_TYPE_ID_ANATOMICAL_SITE,
+      CONST.NE_TYPE_ID_DISORDER,
+      CONST.NE_TYPE_ID_DRUG,
+      CONST.NE_TYPE_ID_FINDING,
+      CONST.NE_TYPE_ID_PROCEDURE,
+      CONST.NE_TYPE_ID_UNKNOWN };
+
+  private static final String TEXT = "mild chest pain radiating to the left arm after aspirin dose";
+
+  private JCas jCas;
+
+  @Before
+  public void setUp() throws Exception {
+    this.jCas = JCasFactory.createJCas();
+    this.jCas.setDocumentText(TEXT);
+    int begin = 0;
+    for (String word : TEXT.split(" ")) {
+      new BaseToken(this.jCas, begin, begin + word.length()).addToIndexes();
+      begin += word.length() + 1;
+    }
+  }
+
+  @Test
+  public void testMultiTokenEntities() throws Exception {
+    // "chest pain", "left arm", "aspirin dose"
+    this.addEntity(5, 15, CONST.NE_TYPE_ID_FINDING);
+    this.addEntity(33, 41, CONST.NE_TYPE_ID_ANATOMICAL_SITE);
+    this.addEntity(48, 60, CONST.NE_TYPE_ID_DRUG);
+    this.assertTagsMatchChunking();
+  }
+
+  @Test
+  public void testOverlappingEntities() throws Exception {
+    // "mild chest pain" and "chest pain radiating", "pain" within both
+    this.addEntity(0, 15, CONST.NE_TYPE_ID_DISORDER);
+    this.addEntity(5, 25, CONST.NE_TYPE_ID_DISORDER);
+    this.addEntity(11, 15, CONST.NE_TYPE_ID_DISORDER);
+    // "the left arm" and "left arm after", and the same span twice
+    this.addEntity(29, 41, CONST.NE_TYPE_ID_FINDING);
+    this.addEntity(33, 47, CONST.NE_TYPE_ID_FINDING);
+    this.addEntity(33, 47, CONST.NE_TYPE_ID_FINDING);
+    // overlapping entities of different types
+    this.addEntity(5, 15, CONST.NE_TYPE_ID_FINDING);
+    this.addEntity(11, 15, CONST.NE_TYPE_ID_PROCEDURE);
+    this.assertTagsMatchChunking();
+  }
+
+  @Test
+  public void testAdjacentEntities() throws Exception {
+    // "chest" "pain", "left" "arm", "aspirin" "dose" of the same type
+    this.addEntity(5, 10, CONST.NE_TYPE_ID_ANATOMICAL_SITE);
+    this.addEntity(11, 15, CONST.NE_TYPE_ID_ANATOMICAL_SITE);
+    this.addEntity(33, 37, CONST.NE_TYPE_ID_DRUG);
+    this.addEntity(38, 41, CONST.NE_TYPE_ID_DRUG);
+    this.addEntity(48, 55, CONST.NE_TYPE_ID_UNKNOWN);
+    this.addEntity(56, 60, CONST.NE_TYPE_ID_UNKNOWN);
+    this.assertTagsMatchChunking();
+  }
+
+  @Test
+  public void testPartialAndIgnoredEntities() throws Exception {
+    // starting or ending within a token
+    this.addEntity(7, 15, CONST.NE_TYPE_ID_DISORDER);
+    this.addEntity(5, 13, CONST.NE_TYPE_ID_FINDING);
+    this.addEntity(17, 18, CONST.NE_TYPE_ID_DRUG);
+    // a type that is not tagged
+    this.addEntity(29, 41, 99);
+    this.assertTagsMatchChunking();
+  }
+
+  @Test
+  public void testRandomEntities() throws Exception {
+    Random random = new Random(42);
+    List<BaseToken> tokens = new ArrayList<BaseToken>(JCasUtil.select(this.jCas, BaseToken.class));
+    for (int i = 0; i < 40; ++i) {
+      int first = random.nextInt(tokens.size());
+      int last = Math.min(first + random.nextInt(4), tokens.size() - 1);
+      int typeID = TYPE_IDS[random.nextInt(TYPE_IDS.length)];
+      this.addEntity(tokens.get(first).getBegin(), tokens.get(last).getEnd(), typeID);
+    }
+    this.assertTagsMatchChunking();
+  }
+
+  private void addEntity(int begin, int end, int typeID) {
+    EntityMention entity = new EntityMention(this.jCas, begin, end);
+    entity.setTypeID(typeID);
+    entity.addToIndexes();
+  }
+
+  /**
+   * Compare the tags of each type with those of the BIOChunking that EventAnnotator used to run for
+   * each type.
+   */
+  private void assertTagsMatchChunking() throws Exception {
+    List<BaseToken> tokens = new ArrayList<BaseToken>(JCasUtil.select(this.jCas, BaseToken.class));
+    List<EntityMention> entities = new ArrayList<EntityMention>(JCasUtil.select(
+        this.jCas,
+        EntityMention.class));
+    BIOChunking<BaseToken, EntityMention> chunking = new BIOChunking<BaseToken, EntityMention>(
+        BaseToken.class,
+        EntityMention.class,
+        "typeID");
+    List<List<String>> values = EventAnnotator.getEntityTagValues(tokens, entities);
+    assertEquals(TYPE_IDS.length, values.size());
+    for (int typeIndex = 0; typeIndex < TYPE_IDS.length; ++typeIndex) {
+      List<EntityMention> typeEntities = new ArrayList<EntityMention>();
+      for (EntityMention entity : entities) {
+        if (entity.getTypeID() == TYPE_IDS[typeIndex]) {
+          typeEntities.add(entity);
+        }
+      }
+      List<String> expected = chunking.createOutcomes(this.jCas, tokens, typeEntities);
+      assertEquals("typeID " + TYPE_IDS[typeIndex], expected, values.get(typeIndex));
+    }
+  }
+}
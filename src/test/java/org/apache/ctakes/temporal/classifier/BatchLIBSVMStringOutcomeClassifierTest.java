@@ -0,0 +1,125 @@
+package org.apache.ctakes.temporal.classifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.cleartk.classifier.DataWriter;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.Instance;
+import org.cleartk.classifier.jar.JarClassifierBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+public class BatchLIBSVMStringOutcomeClassifierTest {
+
+  private static final String[] OUTCOMES = { "EVENT", "TIME", "O" };
+
+  private File directory;
+
+  @Before
+  public void setUp() {
+    this.directory = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() {
+    delete(this.directory);
+  }
+
+  @Test
+  public void testLinearKernel() throws Exception {
+    this.assertBatchMatchesSingle(false, "-t", "0");
+  }
+
+  @Test
+  public void testPolynomialKernel() throws Exception {
+    this.assertBatchMatchesSingle(false, "-t", "1", "-d", "2", "-g", "0.5", "-c", "10");
+  }
+
+  @Test
+  public void testRbfKernel() throws Exception {
+    this.assertBatchMatchesSingle(false, "-t", "2", "-g", "0.5", "-c", "10");
+  }
+
+  @Test
+  public void testSigmoidKernel() throws Exception {
+    this.assertBatchMatchesSingle(false, "-t", "3", "-g", "0.1");
+  }
+
+  @Test
+  public void testHashedFeatures() throws Exception {
+    this.assertBatchMatchesSingle(true, "-t", "2", "-g", "0.5", "-c", "10");
+  }
+
+  /**
+   * Train and package a small model, and check that classifying a batch of instances, some with
+   * features that were never seen in training, gives the outcome that each gets on its own.
+   */
+  private void assertBatchMatchesSingle(boolean hashed, String... trainingArguments)
+      throws Exception {
+    Random random = new Random(42);
+    DataWriter<String> dataWriter = hashed
+        ? new HashingLIBSVMStringOutcomeDataWriter(this.directory, 16, 0)
+        : new BatchLIBSVMStringOutcomeDataWriter(this.directory);
+    for (int i = 0; i < 300; ++i) {
+      String outcome = OUTCOMES[random.nextInt(OUTCOMES.length)];
+      dataWriter.write(new Instance<String>(outcome, createFeatures(random, outcome, 20)));
+    }
+    dataWriter.finish();
+    JarClassifierBuilder.trainAndPackage(this.directory, trainingArguments);
+    JarClassifierBuilder<?> builder = JarClassifierBuilder.fromTrainingDirectory(this.directory);
+    Object classifier = builder.loadClassifierFromTrainingDirectory(this.directory);
+    assertTrue(classifier instanceof BatchLIBSVMStringOutcomeClassifier);
+    BatchLIBSVMStringOutcomeClassifier batchClassifier;
+    batchClassifier = (BatchLIBSVMStringOutcomeClassifier) classifier;
+
+    List<List<Feature>> instanceFeatures = new ArrayList<List<Feature>>();
+    for (int i = 0; i < 200; ++i) {
+      String outcome = OUTCOMES[random.nextInt(OUTCOMES.length)];
+      instanceFeatures.add(createFeatures(random, outcome, 25));
+    }
+    instanceFeatures.add(new ArrayList<Feature>());
+    List<String> expected = new ArrayList<String>();
+    for (List<Feature> features : instanceFeatures) {
+      expected.add(batchClassifier.classify(features));
+    }
+    List<String> outcomes = batchClassifier.classifyAll(instanceFeatures);
+    assertEquals(expected, outcomes);
+    // the model must tell the outcomes apart for the comparison to mean anything
+    assertTrue(new HashSet<String>(outcomes).size() > 1);
+  }
+
+  /**
+   * Words drawn mostly from the outcome's own vocabulary, and a numeric feature, with words from
+   * the larger vocabularies only seen when classifying.
+   */
+  private static List<Feature> createFeatures(Random random, String outcome, int nWords) {
+    List<Feature> features = new ArrayList<Feature>();
+    int nFeatures = 2 + random.nextInt(5);
+    for (int i = 0; i < nFeatures; ++i) {
+      String vocabulary = random.nextInt(4) == 0 ? "shared" : outcome;
+      features.add(new Feature("word", vocabulary + random.nextInt(nWords)));
+    }
+    features.add(new Feature("length", 0.5 * random.nextInt(8)));
+    return features;
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
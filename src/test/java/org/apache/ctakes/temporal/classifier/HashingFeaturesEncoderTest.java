@@ -0,0 +1,170 @@
+package org.apache.ctakes.temporal.classifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.Instance;
+import org.cleartk.classifier.jar.JarClassifierBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+public class HashingFeaturesEncoderTest {
+
+  private File directory;
+
+  @Before
+  public void setUp() {
+    this.directory = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() {
+    delete(this.directory);
+  }
+
+  @Test
+  public void testHashMatchesGuava() {
+    Random random = new Random(42);
+    List<String> texts = new ArrayList<String>(Arrays.asList(
+        "",
+        "a",
+        "ab",
+        "abc",
+        "abcd",
+        "EntityTag_2_0",
+        "B-2",
+        "\u00e9t\u00e9",
+        "\ud83d\ude00 surrogates"));
+    for (int i = 0; i < 1000; ++i) {
+      char[] chars = new char[random.nextInt(40)];
+      for (int j = 0; j < chars.length; ++j) {
+        chars[j] = (char) random.nextInt(Character.MAX_VALUE + 1);
+      }
+      texts.add(new String(chars));
+    }
+    int[] seeds = { 0, 1, -1, 0x5bd1e995, random.nextInt() };
+    for (String text : texts) {
+      for (int seed : seeds) {
+        int expected = Hashing.murmur3_32(seed).hashString(text).asInt();
+        assertEquals(text, expected, HashingFeaturesEncoder.hash(text, seed));
+        assertEquals(text, expected, HashingFeaturesEncoder.hash(new StringBuilder(text), seed));
+      }
+    }
+  }
+
+  @Test
+  public void testEncodeAll() throws Exception {
+    HashingFeaturesEncoder encoder = new HashingFeaturesEncoder(4, 0);
+    List<Feature> features = new ArrayList<Feature>();
+    for (int i = 0; i < 40; ++i) {
+      features.add(new Feature("word", "w" + i));
+    }
+    features.add(new Feature("length", 2.5));
+    features.add(new Feature("capitalized", true));
+    features.add(new Feature("plural", false));
+    HashedFeatureVector vector = encoder.encodeAll(features);
+
+    // indices are increasing and within 1 to 2^bits, and the values of colliding features summed
+    float sum = 0.0f;
+    for (int i = 0; i < vector.size(); ++i) {
+      assertTrue(vector.indexAt(i) >= 1 && vector.indexAt(i) <= 16);
+      assertTrue(i == 0 || vector.indexAt(i - 1) < vector.indexAt(i));
+      sum += vector.valueAt(i);
+    }
+    assertEquals(40 + 2.5 + 1, sum, 1e-6);
+    int lengthIndex = (HashingFeaturesEncoder.hash("length", 0) & 15) + 1;
+    assertTrue(vector.get(lengthIndex) >= 2.5);
+  }
+
+  @Test
+  public void testManifestRoundTrip() throws Exception {
+    HashingFeaturesEncoder encoder = new HashingFeaturesEncoder(12, 7);
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
+    assertNull(HashingFeaturesEncoder.fromManifest(manifest));
+    encoder.recordIn(manifest);
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    manifest.write(output);
+    Manifest read = new Manifest(new ByteArrayInputStream(output.toByteArray()));
+    assertEquals("12", read.getMainAttributes().get(HashingFeaturesEncoder.BITS_ATTRIBUTE));
+    assertEquals("7", read.getMainAttributes().get(HashingFeaturesEncoder.SEED_ATTRIBUTE));
+    assertEncodersMatch(encoder, HashingFeaturesEncoder.fromManifest(read));
+  }
+
+  @Test
+  public void testPackagedModelRecordsHashing() throws Exception {
+    HashingLIBSVMStringOutcomeDataWriter dataWriter = new HashingLIBSVMStringOutcomeDataWriter(
+        this.directory,
+        12,
+        7);
+    for (int i = 0; i < 20; ++i) {
+      String outcome = i % 2 == 0 ? "EVENT" : "O";
+      List<Feature> features = Arrays.asList(
+          new Feature("word", outcome + i % 5),
+          new Feature("length", i % 3));
+      dataWriter.write(new Instance<String>(outcome, features));
+    }
+    dataWriter.finish();
+    JarClassifierBuilder.trainAndPackage(this.directory);
+
+    JarClassifierBuilder<?> builder = JarClassifierBuilder.fromTrainingDirectory(this.directory);
+    JarInputStream input = new JarInputStream(new FileInputStream(
+        builder.getModelJarFile(this.directory)));
+    Manifest manifest;
+    try {
+      manifest = input.getManifest();
+    } finally {
+      input.close();
+    }
+    HashingFeaturesEncoder encoder = HashingFeaturesEncoder.fromManifest(manifest);
+    assertEquals(12, encoder.getBits());
+    assertEquals(7, encoder.getSeed());
+    assertEncodersMatch(new HashingFeaturesEncoder(12, 7), encoder);
+  }
+
+  private static void assertEncodersMatch(
+      HashingFeaturesEncoder expected,
+      HashingFeaturesEncoder actual) throws Exception {
+    assertEquals(expected.getBits(), actual.getBits());
+    assertEquals(expected.getSeed(), actual.getSeed());
+    List<Feature> features = Arrays.asList(
+        new Feature("word", "pain"),
+        new Feature("pos", "NN"),
+        new Feature("length", 4));
+    HashedFeatureVector expectedVector = expected.encodeAll(features);
+    HashedFeatureVector actualVector = actual.encodeAll(features);
+    assertEquals(expectedVector.size(), actualVector.size());
+    for (int i = 0; i < expectedVector.size(); ++i) {
+      assertEquals(expectedVector.indexAt(i), actualVector.indexAt(i));
+      assertEquals(expectedVector.valueAt(i), actualVector.valueAt(i), 0.0f);
+    }
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
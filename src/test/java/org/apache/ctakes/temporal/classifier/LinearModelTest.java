@@ -0,0 +1,191 @@
+package org.apache.ctakes.temporal.classifier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.cleartk.classifier.util.featurevector.FeatureVector;
+import org.cleartk.classifier.util.featurevector.SparseFeatureVector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class LinearModelTest {
+
+  private File directory;
+
+  @Before
+  public void setUp() {
+    this.directory = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() {
+    delete(this.directory);
+  }
+
+  @Test
+  public void testSeparableClasses() throws Exception {
+    // each class has its own features 1-3, 4-6 and 7-9, with a shared noise feature 10
+    Random random = new Random(42);
+    List<String> lines = new ArrayList<String>();
+    List<FeatureVector> vectors = new ArrayList<FeatureVector>();
+    List<Integer> labels = new ArrayList<Integer>();
+    for (int i = 0; i < 150; ++i) {
+      int label = 1 + i % 3;
+      int index = 3 * (label - 1) + 1 + random.nextInt(3);
+      int noise = random.nextInt(2);
+      lines.add(String.format("%d %d:1 10:%d", label, index, noise));
+      vectors.add(createVector(index, 1.0, 10, noise));
+      labels.add(label);
+    }
+    LinearModel model = this.train(lines, 1.0);
+    assertEquals(3, model.getNumberOfClasses());
+    assertArrayEquals(new int[] { 1, 2, 3 }, getLabels(model));
+
+    // one against the rest: the class whose weights score highest is the instance's own
+    double[] scores = new double[3];
+    for (int i = 0; i < vectors.size(); ++i) {
+      model.score(vectors.get(i), scores);
+      assertEquals(labels.get(i).intValue(), model.getLabel(LinearModel.argMax(scores)));
+    }
+  }
+
+  @Test
+  public void testTwoClasses() throws Exception {
+    List<String> lines = new ArrayList<String>();
+    for (int i = 0; i < 20; ++i) {
+      lines.add(i % 2 == 0 ? "4 1:1.0 3:0.5" : "7 2:1.0 3:0.5");
+    }
+    LinearModel model = this.train(lines, 1.0);
+    assertArrayEquals(new int[] { 4, 7 }, getLabels(model));
+
+    // the second class scores the negation of the first
+    double[] scores = new double[2];
+    model.score(createVector(1, 1.0, 3, 0.5), scores);
+    assertEquals(-scores[0], scores[1], 1e-6);
+    assertEquals(4, model.getLabel(LinearModel.argMax(scores)));
+    model.score(createVector(2, 1.0, 3, 0.5), scores);
+    assertEquals(7, model.getLabel(LinearModel.argMax(scores)));
+  }
+
+  @Test
+  public void testUnseenFeaturesAreIgnored() throws Exception {
+    List<String> lines = new ArrayList<String>();
+    for (int i = 0; i < 20; ++i) {
+      lines.add(i % 3 + " " + (i % 3 + 1) + ":1.0");
+    }
+    LinearModel model = this.train(lines, 1.0);
+    double[] scores = new double[3];
+    double[] unseenScores = new double[3];
+    model.score(createVector(2, 1.0), scores);
+    model.score(createVector(2, 1.0, 1000, 5.0), unseenScores);
+    assertArrayEquals(scores, unseenScores, 0.0);
+  }
+
+  @Test
+  public void testArgMaxPrefersFirst() {
+    assertEquals(1, LinearModel.argMax(new double[] { -1.0, 2.0, 2.0, 0.5 }));
+    assertEquals(0, LinearModel.argMax(new double[] { 0.0, 0.0 }));
+  }
+
+  @Test
+  public void testCostLimitsWeights() throws Exception {
+    // a contradicting instance is fitted harder with a higher cost
+    List<String> lines = new ArrayList<String>();
+    for (int i = 0; i < 20; ++i) {
+      lines.add(i % 2 == 0 ? "1 1:1.0" : "2 2:1.0");
+    }
+    lines.add("2 1:1.0");
+    double[] lowScores = new double[2];
+    double[] highScores = new double[2];
+    this.train(lines, 0.01).score(createVector(1, 1.0), lowScores);
+    this.train(lines, 10.0).score(createVector(1, 1.0), highScores);
+    assertTrue(Math.abs(lowScores[0]) < Math.abs(highScores[0]));
+  }
+
+  @Test
+  public void testWriteAndRead() throws Exception {
+    Random random = new Random(42);
+    List<String> lines = new ArrayList<String>();
+    for (int i = 0; i < 100; ++i) {
+      lines.add(String.format(
+          "%d %d:1 %d:%s",
+          i % 4,
+          1 + random.nextInt(20),
+          21 + random.nextInt(20),
+          random.nextFloat()));
+    }
+    LinearModel model = this.train(lines, 1.0);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    model.write(output);
+    LinearModel read = LinearModel.read(new ByteArrayInputStream(output.toByteArray()));
+
+    assertArrayEquals(getLabels(model), getLabels(read));
+    double[] scores = new double[4];
+    double[] readScores = new double[4];
+    for (int index = 0; index < 45; ++index) {
+      FeatureVector vector = createVector(index, 1.0, 40 - index, 0.25);
+      model.score(vector, scores);
+      read.score(vector, readScores);
+      assertArrayEquals(scores, readScores, 0.0);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadRejectsOtherData() throws Exception {
+    LinearModel.read(new ByteArrayInputStream(new byte[] { 0, 0, 0, 1, 0, 0, 0, 0 }));
+  }
+
+  private LinearModel train(List<String> lines, double cost) throws IOException {
+    File file = new File(this.directory, "training-data.linear");
+    StringBuilder data = new StringBuilder();
+    for (String line : lines) {
+      data.append(line).append('\n');
+    }
+    Files.write(data, file, Charsets.UTF_8);
+    return LinearModel.train(file, cost, 0.01, 1000);
+  }
+
+  private static int[] getLabels(LinearModel model) {
+    int[] labels = new int[model.getNumberOfClasses()];
+    for (int c = 0; c < labels.length; ++c) {
+      labels[c] = model.getLabel(c);
+    }
+    return labels;
+  }
+
+  /**
+   * A vector from alternating indices and values.
+   */
+  private static FeatureVector createVector(Object... indicesAndValues) throws Exception {
+    FeatureVector vector = new SparseFeatureVector();
+    for (int i = 0; i < indicesAndValues.length; i += 2) {
+      int index = (Integer) indicesAndValues[i];
+      double value = ((Number) indicesAndValues[i + 1]).doubleValue();
+      vector.set(index, vector.get(index) + value);
+    }
+    return vector;
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
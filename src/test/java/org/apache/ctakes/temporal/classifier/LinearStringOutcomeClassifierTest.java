@@ -0,0 +1,125 @@
+package org.apache.ctakes.temporal.classifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.cleartk.classifier.DataWriter;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.Instance;
+import org.cleartk.classifier.ScoredOutcome;
+import org.cleartk.classifier.jar.JarClassifierBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+public class LinearStringOutcomeClassifierTest {
+
+  private static final String[] OUTCOMES = { "BEFORE", "OVERLAP", "AFTER", "BEFORE/OVERLAP" };
+
+  private File directory;
+
+  @Before
+  public void setUp() {
+    this.directory = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() {
+    delete(this.directory);
+  }
+
+  @Test
+  public void testSeparableOutcomes() throws Exception {
+    this.write(new LinearStringOutcomeDataWriter(this.directory));
+    JarClassifierBuilder.trainAndPackage(this.directory, "-c", "10");
+    this.assertClassifiesSeparableOutcomes();
+  }
+
+  @Test
+  public void testHashedFeatures() throws Exception {
+    this.write(new HashingLinearStringOutcomeDataWriter(this.directory, 12, 3));
+    JarClassifierBuilder.trainAndPackage(this.directory);
+    this.assertClassifiesSeparableOutcomes();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownArgument() throws Exception {
+    this.write(new LinearStringOutcomeDataWriter(this.directory));
+    JarClassifierBuilder.trainAndPackage(this.directory, "-t", "2");
+  }
+
+  /**
+   * Write instances whose outcome is told by which word they have, with a feature shared by all.
+   */
+  private void write(DataWriter<String> dataWriter) throws Exception {
+    Random random = new Random(42);
+    for (int i = 0; i < 200; ++i) {
+      String outcome = OUTCOMES[i % OUTCOMES.length];
+      dataWriter.write(new Instance<String>(outcome, createFeatures(random, outcome)));
+    }
+    dataWriter.finish();
+  }
+
+  /**
+   * Load the packaged classifier, and check that it classifies instances of each outcome (with a
+   * feature never seen in training) as that outcome, and that classifyAll and score agree with
+   * classify.
+   */
+  private void assertClassifiesSeparableOutcomes() throws Exception {
+    JarClassifierBuilder<?> builder = JarClassifierBuilder.fromTrainingDirectory(this.directory);
+    Object loaded = builder.loadClassifierFromTrainingDirectory(this.directory);
+    assertTrue(loaded instanceof LinearStringOutcomeClassifier);
+    LinearStringOutcomeClassifier classifier = (LinearStringOutcomeClassifier) loaded;
+
+    Random random = new Random(7);
+    List<List<Feature>> instanceFeatures = new ArrayList<List<Feature>>();
+    List<String> expected = new ArrayList<String>();
+    for (int i = 0; i < 100; ++i) {
+      String outcome = OUTCOMES[random.nextInt(OUTCOMES.length)];
+      List<Feature> features = createFeatures(random, outcome);
+      features.add(new Feature("unseen", "value" + i));
+      instanceFeatures.add(features);
+      expected.add(outcome);
+    }
+    List<String> outcomes = new ArrayList<String>();
+    for (List<Feature> features : instanceFeatures) {
+      String outcome = classifier.classify(features);
+      outcomes.add(outcome);
+
+      List<ScoredOutcome<String>> scored = classifier.score(features, OUTCOMES.length);
+      assertEquals(OUTCOMES.length, scored.size());
+      assertEquals(outcome, scored.get(0).getOutcome());
+      for (int i = 1; i < scored.size(); ++i) {
+        assertTrue(scored.get(i - 1).getScore() >= scored.get(i).getScore());
+      }
+      assertEquals(2, classifier.score(features, 2).size());
+    }
+    assertEquals(expected, outcomes);
+    assertEquals(outcomes, classifier.classifyAll(instanceFeatures));
+  }
+
+  private static List<Feature> createFeatures(Random random, String outcome) {
+    List<Feature> features = new ArrayList<Feature>();
+    features.add(new Feature("word", outcome.toLowerCase() + random.nextInt(3)));
+    features.add(new Feature("shared", "x" + random.nextInt(2)));
+    features.add(new Feature("distance", random.nextInt(4)));
+    return features;
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,28 @@
+package org.apache.ctakes.temporal.eval;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class Evaluation_ImplBaseTest {
+
+  @Test
+  public void testLinearArgumentsKeepCost() {
+    assertEquals(
+        Arrays.asList("-c", "10000"),
+        Arrays.asList(Evaluation_ImplBase.getLinearArguments("-c", "10000")));
+    assertEquals(0, Evaluation_ImplBase.getLinearArguments().length);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testLinearArgumentsRejectKernel() {
+    Evaluation_ImplBase.getLinearArguments("-c", "1000", "-t", "2");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testLinearArgumentsRejectMissingValue() {
+    Evaluation_ImplBase.getLinearArguments("-c");
+  }
+}
@@ -0,0 +1,91 @@
+package org.apache.ctakes.temporal.eval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Collections;
+
+import org.apache.ctakes.temporal.ae.TokenValidatedUmlsLookupAnnotator;
+import org.apache.ctakes.temporal.eval.PreprocessingCacheTest.CredentialsRecorder;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.cleartk.classifier.jar.DefaultDataWriterFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.uimafit.factory.AggregateBuilder;
+import org.uimafit.factory.AnalysisEngineFactory;
+
+import com.google.common.io.Files;
+
+public class InstanceCacheTest {
+
+  private static final URI DOCUMENT_URI = URI.create("file:/doc1/first");
+
+  private File directory;
+
+  @Before
+  public void setUp() {
+    this.directory = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() {
+    this.directory.delete();
+  }
+
+  @Test
+  public void testKeyHasNoCredentials() throws Exception {
+    assertEquals(this.getEntryFile("test-password-6515"), this.getEntryFile("another-password"));
+  }
+
+  @Test
+  public void testKeyDependsOnDescriptors() throws Exception {
+    File entryFile = this.getEntryFile("test-password-6515");
+    InstanceCache cache = new InstanceCache(
+        this.directory,
+        createPreprocessorDescription("test-password-6515"),
+        createDataWriterDescription(new File(this.directory, "other")));
+    assertEquals(entryFile, getEntryFile(cache));
+    cache = new InstanceCache(
+        this.directory,
+        createDataWriterDescription(this.directory),
+        createDataWriterDescription(this.directory));
+    assertFalse(entryFile.equals(getEntryFile(cache)));
+  }
+
+  private File getEntryFile(String password) throws Exception {
+    InstanceCache cache = new InstanceCache(
+        this.directory,
+        createPreprocessorDescription(password),
+        createDataWriterDescription(this.directory));
+    return getEntryFile(cache);
+  }
+
+  private static File getEntryFile(InstanceCache cache) {
+    return cache.getEntryFile(DOCUMENT_URI, Collections.<File> emptyList());
+  }
+
+  private static AnalysisEngineDescription createPreprocessorDescription(String password)
+      throws Exception {
+    AggregateBuilder builder = new AggregateBuilder();
+    builder.add(AnalysisEngineFactory.createPrimitiveDescription(
+        CredentialsRecorder.class,
+        TokenValidatedUmlsLookupAnnotator.PARAM_USER,
+        "test-user",
+        TokenValidatedUmlsLookupAnnotator.PARAM_PASSWORD,
+        password));
+    return builder.createAggregateDescription();
+  }
+
+  private static AnalysisEngineDescription createDataWriterDescription(File outputDirectory)
+      throws Exception {
+    return AnalysisEngineFactory.createPrimitiveDescription(
+        CredentialsRecorder.class,
+        DefaultDataWriterFactory.PARAM_DATA_WRITER_CLASS_NAME,
+        "org.cleartk.classifier.libsvm.LIBSVMStringOutcomeDataWriter",
+        DefaultDataWriterFactory.PARAM_OUTPUT_DIRECTORY,
+        outputDirectory.getPath());
+  }
+}
@@ -0,0 +1,93 @@
+package org.apache.ctakes.temporal.eval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.util.Progress;
+import org.junit.Test;
+import org.uimafit.component.JCasCollectionReader_ImplBase;
+import org.uimafit.component.NoOpAnnotator;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.CollectionReaderFactory;
+
+public class ParallelDocumentProcessorTest {
+
+  @Test
+  public void testSerial() throws Exception {
+    this.testProcess(1);
+  }
+
+  @Test
+  public void testParallel() throws Exception {
+    this.testProcess(4);
+  }
+
+  private void testProcess(int nThreads) throws Exception {
+    NumberReader.closed = false;
+    CollectionReader reader = CollectionReaderFactory.createCollectionReader(NumberReader.class);
+    final List<String> texts = new ArrayList<String>();
+    ParallelDocumentProcessor.process(
+        reader,
+        AnalysisEngineFactory.createPrimitiveDescription(NoOpAnnotator.class),
+        nThreads,
+        new ParallelDocumentProcessor.DocumentEvaluator<String>() {
+          @Override
+          public String evaluate(JCas jCas) throws Exception {
+            return jCas.getDocumentText();
+          }
+        },
+        new ParallelDocumentProcessor.ResultCollector<String>() {
+          @Override
+          public void collect(String text) throws Exception {
+            texts.add(text);
+          }
+        });
+
+    List<String> expected = new ArrayList<String>();
+    for (int i = 0; i < NumberReader.DOCUMENTS; ++i) {
+      expected.add(String.valueOf(i));
+    }
+    assertEquals(expected, texts);
+    assertTrue(NumberReader.closed);
+  }
+
+  /**
+   * Reads documents whose text is their number, and records whether it was closed.
+   */
+  public static class NumberReader extends JCasCollectionReader_ImplBase {
+
+    public static final int DOCUMENTS = 20;
+
+    public static volatile boolean closed;
+
+    private int next;
+
+    @Override
+    public boolean hasNext() throws IOException, CollectionException {
+      return this.next < DOCUMENTS;
+    }
+
+    @Override
+    public void getNext(JCas jCas) throws IOException, CollectionException {
+      jCas.setDocumentText(String.valueOf(this.next));
+      ++this.next;
+    }
+
+    @Override
+    public Progress[] getProgress() {
+      return new Progress[0];
+    }
+
+    @Override
+    public void close() throws IOException {
+      closed = true;
+    }
+  }
+}
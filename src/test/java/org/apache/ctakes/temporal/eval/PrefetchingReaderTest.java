@@ -0,0 +1,109 @@
+package org.apache.ctakes.temporal.eval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.util.CasCreationUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.uimafit.factory.CollectionReaderFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class PrefetchingReaderTest {
+
+  private File directory;
+
+  @Before
+  public void setUp() throws Exception {
+    this.directory = Files.createTempDir();
+    File setDirectory = new File(this.directory, "doc1");
+    setDirectory.mkdirs();
+    Files.write("The patient reported pain.", new File(setDirectory, "first"), Charsets.UTF_8);
+    Files.write("She was given aspirin.", new File(setDirectory, "second"), Charsets.UTF_8);
+  }
+
+  @After
+  public void tearDown() {
+    for (File file : new File(this.directory, "doc1").listFiles()) {
+      file.delete();
+    }
+    new File(this.directory, "doc1").delete();
+    this.directory.delete();
+  }
+
+  @Test(timeout = 10000)
+  public void testReadsAllDocuments() throws Exception {
+    CollectionReader reader = PrefetchingReader.getCollectionReader(
+        this.directory,
+        Arrays.asList(1),
+        null,
+        null);
+    assertEquals(2, readAll(reader));
+    assertFalse(reader.hasNext());
+    reader.close();
+  }
+
+  @Test(timeout = 10000)
+  public void testBackgroundFailureIsReported() throws Exception {
+    CollectionReader reader = CollectionReaderFactory.createCollectionReader(
+        FailingReader.class,
+        PrefetchingReader.PARAM_RAW_TEXT_DIRECTORY,
+        this.directory,
+        PrefetchingReader.PARAM_PATIENT_SETS,
+        new Integer[] { 1 });
+    try {
+      readAll(reader);
+      fail("expected the failure of the background thread");
+    } catch (CollectionException e) {
+      assertSame(FailingReader.FAILURE, e.getCause());
+    }
+
+    // the failure is reported again rather than hanging or ending quietly
+    try {
+      reader.hasNext();
+      fail("expected the failure of the background thread");
+    } catch (CollectionException e) {
+      assertSame(FailingReader.FAILURE, e.getCause());
+    }
+    reader.close();
+  }
+
+  private static int readAll(CollectionReader reader) throws Exception {
+    CAS cas = CasCreationUtils.createCas(reader.getProcessingResourceMetaData());
+    int count = 0;
+    while (reader.hasNext()) {
+      reader.getNext(cas);
+      cas.reset();
+      ++count;
+    }
+    return count;
+  }
+
+  /**
+   * Fails with an unchecked exception on the second document.
+   */
+  public static class FailingReader extends PrefetchingReader {
+
+    public static final RuntimeException FAILURE = new IllegalStateException("unreadable");
+
+    @Override
+    protected String readText(File file) throws IOException {
+      if (file.getName().equals("second")) {
+        throw FAILURE;
+      }
+      return super.readText(file);
+    }
+  }
+}
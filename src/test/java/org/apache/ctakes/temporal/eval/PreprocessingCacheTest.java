@@ -0,0 +1,221 @@
+package org.apache.ctakes.temporal.eval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ctakes.temporal.ae.TokenValidatedUmlsLookupAnnotator;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.jcas.JCas;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.AggregateBuilder;
+import org.uimafit.factory.AnalysisEngineFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class PreprocessingCacheTest {
+
+  private static final String USER = "test-user";
+
+  private static final String PASSWORD = "test-password-6515";
+
+  private File directory;
+
+  @Before
+  public void setUp() {
+    this.directory = Files.createTempDir();
+    CredentialsRecorder.password = null;
+  }
+
+  @After
+  public void tearDown() {
+    delete(this.directory);
+  }
+
+  @Test
+  public void testDescriptorHasNoCredentials() throws Exception {
+    AnalysisEngineDescription description = createDescription(PASSWORD);
+    AnalysisEngineDescription cacheDescription = PreprocessingCache.getDescription(
+        description,
+        this.directory,
+        Collections.<URL> emptyList());
+
+    String descriptorXML = Files.toString(getDescriptorFile(cacheDescription), Charsets.UTF_8);
+    assertFalse(descriptorXML.contains(PASSWORD));
+    assertFalse(descriptorXML.contains(USER));
+    assertTrue(toXML(description).contains(PASSWORD));
+
+    // the key does not depend on the credentials either
+    AnalysisEngineDescription otherCacheDescription = PreprocessingCache.getDescription(
+        createDescription("another-password"),
+        this.directory,
+        Collections.<URL> emptyList());
+    assertEquals(getEntryDirectory(cacheDescription), getEntryDirectory(otherCacheDescription));
+
+    // the engine still gets the credentials
+    process(cacheDescription);
+    assertEquals("another-password", CredentialsRecorder.password);
+  }
+
+  @Test
+  public void testCredentialsRestoredFromSystemProperties() throws Exception {
+    AnalysisEngineDescription cacheDescription = PreprocessingCache.getDescription(
+        createDescription(PASSWORD),
+        this.directory,
+        Collections.<URL> emptyList());
+
+    // a group that was created in another JVM has only the descriptor written to disk
+    File entryDirectory = new File(this.directory, "copy");
+    entryDirectory.mkdirs();
+    File descriptorFile = getDescriptorFile(cacheDescription);
+    Files.copy(descriptorFile, new File(entryDirectory, descriptorFile.getName()));
+    String oldPassword = System.getProperty(UmlsCredentials.PASSWORD_PROPERTY);
+    System.setProperty(UmlsCredentials.PASSWORD_PROPERTY, PASSWORD);
+    try {
+      process(AnalysisEngineFactory.createPrimitiveDescription(
+          PreprocessingCache.class,
+          PreprocessingCache.PARAM_ENTRY_DIRECTORY,
+          entryDirectory));
+    } finally {
+      if (oldPassword == null) {
+        System.clearProperty(UmlsCredentials.PASSWORD_PROPERTY);
+      } else {
+        System.setProperty(UmlsCredentials.PASSWORD_PROPERTY, oldPassword);
+      }
+    }
+    assertEquals(PASSWORD, CredentialsRecorder.password);
+  }
+
+  @Test
+  public void testOpeningDatabaseKeepsKey() throws Exception {
+    File databaseDirectory = new File(this.directory, "umls");
+    String url = "jdbc:hsqldb:file:" + new File(databaseDirectory, "umls");
+    Class.forName("org.hsqldb.jdbcDriver");
+    execute(url, "CREATE TABLE terms (id INTEGER, text VARCHAR(20))");
+    execute(url, "INSERT INTO terms VALUES (1, 'pain')");
+    execute(url, "SHUTDOWN");
+    List<URL> resources = Collections.singletonList(databaseDirectory.toURI().toURL());
+    File entryDirectory = this.getEntryDirectory(resources);
+
+    // opening the database rewrites its properties and adds a log
+    Connection connection = DriverManager.getConnection(url, "sa", "");
+    try {
+      ResultSet resultSet = connection.createStatement().executeQuery("SELECT text FROM terms");
+      assertTrue(resultSet.next());
+      assertTrue(new File(databaseDirectory, "umls.log").exists());
+      assertEquals(entryDirectory, this.getEntryDirectory(resources));
+    } finally {
+      connection.close();
+    }
+
+    // shutting it down rewrites the script, with the same content
+    execute(url, "SHUTDOWN");
+    assertEquals(entryDirectory, this.getEntryDirectory(resources));
+
+    // but changing the data starts a new group
+    execute(url, "INSERT INTO terms VALUES (2, 'aspirin')");
+    execute(url, "SHUTDOWN");
+    assertFalse(entryDirectory.equals(this.getEntryDirectory(resources)));
+  }
+
+  private File getEntryDirectory(List<URL> resources) throws Exception {
+    return getEntryDirectory(PreprocessingCache.getDescription(
+        createDescription(PASSWORD),
+        this.directory,
+        resources));
+  }
+
+  private static void execute(String url, String sql) throws Exception {
+    Connection connection = DriverManager.getConnection(url, "sa", "");
+    try {
+      Statement statement = connection.createStatement();
+      statement.execute(sql);
+      statement.close();
+    } finally {
+      connection.close();
+    }
+  }
+
+  private static AnalysisEngineDescription createDescription(String password) throws Exception {
+    AggregateBuilder builder = new AggregateBuilder();
+    builder.add(AnalysisEngineFactory.createPrimitiveDescription(
+        CredentialsRecorder.class,
+        TokenValidatedUmlsLookupAnnotator.PARAM_USER,
+        USER,
+        TokenValidatedUmlsLookupAnnotator.PARAM_PASSWORD,
+        password));
+    return builder.createAggregateDescription();
+  }
+
+  private static void process(AnalysisEngineDescription description) throws Exception {
+    AnalysisEngine engine = AnalysisEngineFactory.createPrimitive(description);
+    try {
+      JCas jCas = engine.newJCas();
+      jCas.setDocumentText("The patient reported pain.");
+      engine.process(jCas);
+    } finally {
+      engine.destroy();
+    }
+  }
+
+  private static File getEntryDirectory(AnalysisEngineDescription cacheDescription) {
+    Object value = cacheDescription.getAnalysisEngineMetaData().getConfigurationParameterSettings().getParameterValue(
+        PreprocessingCache.PARAM_ENTRY_DIRECTORY);
+    return new File(value.toString());
+  }
+
+  private static File getDescriptorFile(AnalysisEngineDescription cacheDescription) {
+    return new File(getEntryDirectory(cacheDescription), "descriptor.xml");
+  }
+
+  private static String toXML(AnalysisEngineDescription description) throws Exception {
+    StringWriter writer = new StringWriter();
+    description.toXML(writer);
+    return writer.toString();
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  /**
+   * Records the password it was configured with.
+   */
+  public static class CredentialsRecorder extends JCasAnnotator_ImplBase {
+
+    public static volatile String password;
+
+    @ConfigurationParameter(name = TokenValidatedUmlsLookupAnnotator.PARAM_USER)
+    private String userParameter;
+
+    @ConfigurationParameter(name = TokenValidatedUmlsLookupAnnotator.PARAM_PASSWORD)
+    private String passwordParameter;
+
+    @Override
+    public void process(JCas jCas) {
+      password = this.passwordParameter;
+    }
+  }
+}
@@ -0,0 +1,213 @@
+package org.apache.ctakes.temporal.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.io.Files;
+
+public class DictionarySnapshotTest {
+
+  private static final String LOOKUP_DESCRIPTOR = "<lookupSpecification>\n"
+      + "<dictionaries>\n"
+      + "<dictionary id=\"DICT_UMLS_MS\" externalResourceKey=\"DbConnection\">\n"
+      + "<implementation><jdbcImpl tableName=\"umls_ms\"/></implementation>\n"
+      + "<lookupField fieldName=\"fword\"/>\n"
+      + "<metaFields>\n"
+      + "<metaField fieldName=\"cui\"/>\n"
+      + "<metaField fieldName=\"tui\"/>\n"
+      + "<metaField fieldName=\"text\"/>\n"
+      + "</metaFields>\n"
+      + "</dictionary>\n"
+      + "<dictionary id=\"DICT_RXNORM\" externalResourceKey=\"RxnormIndexReader\">\n"
+      + "<implementation><luceneImpl/></implementation>\n"
+      + "<lookupField fieldName=\"first_word\"/>\n"
+      + "</dictionary>\n"
+      + "</dictionaries>\n"
+      + "</lookupSpecification>\n";
+
+  private File directory;
+
+  private File databaseDirectory;
+
+  private String url;
+
+  private File lookupDescriptor;
+
+  private File snapshotDirectory;
+
+  @Before
+  public void setUp() throws Exception {
+    this.directory = Files.createTempDir();
+    this.databaseDirectory = new File(this.directory, "umls");
+    this.url = "jdbc:hsqldb:file:" + new File(this.databaseDirectory, "umls");
+    this.lookupDescriptor = new File(this.directory, "LookupDesc_Db.xml");
+    Files.write(LOOKUP_DESCRIPTOR, this.lookupDescriptor, Charsets.UTF_8);
+    this.snapshotDirectory = new File(this.directory, "snapshot");
+
+    Class.forName("org.hsqldb.jdbcDriver");
+    this.execute("CREATE TABLE umls_ms (fword VARCHAR(20), cui VARCHAR(8), tui VARCHAR(4), "
+        + "text VARCHAR(40))");
+    this.execute("INSERT INTO umls_ms VALUES ('heart', 'C0018787', 'T023', 'heart')");
+    this.execute("INSERT INTO umls_ms VALUES ('heart', 'C0027051', 'T047', 'heart attack')");
+    this.execute("INSERT INTO umls_ms VALUES ('heart', 'C0027051', 'T047', 'heart attack')");
+    this.execute("INSERT INTO umls_ms VALUES ('Heart', 'C0018787', 'T023', 'Heart')");
+    this.execute("INSERT INTO umls_ms VALUES ('heart failure', 'C0018801', NULL, 'heart failure')");
+    this.execute("INSERT INTO umls_ms VALUES ('', 'C0000000', 'T000', '')");
+    this.execute("INSERT INTO umls_ms VALUES (NULL, 'C0000001', 'T000', 'nothing')");
+    this.execute("SHUTDOWN");
+  }
+
+  @After
+  public void tearDown() {
+    delete(this.directory);
+  }
+
+  @Test
+  public void testLookupsMatchDatabase() throws Exception {
+    List<String> dictionaryIds = this.update();
+    assertEquals(Arrays.asList("DICT_UMLS_MS"), dictionaryIds);
+
+    // only the database dictionary is replaced
+    String descriptor = Files.toString(
+        DictionarySnapshot.getLookupDescriptor(this.snapshotDirectory),
+        Charsets.UTF_8);
+    assertFalse(descriptor.contains("jdbcImpl"));
+    assertTrue(descriptor.contains(DictionarySnapshot.getResourceKey("DICT_UMLS_MS")));
+    assertTrue(descriptor.contains("RxnormIndexReader"));
+
+    File indexDirectory = DictionarySnapshot.getIndexDirectory(
+        this.snapshotDirectory,
+        "DICT_UMLS_MS");
+    for (String value : Arrays.asList("heart", "Heart", "HEART", "heart failure", "", "attack")) {
+      assertEquals(value, this.selectRows(value), selectDocuments(indexDirectory, value));
+    }
+    assertEquals(3, selectDocuments(indexDirectory, "heart").size());
+  }
+
+  @Test
+  public void testOpeningDatabaseKeepsSnapshot() throws Exception {
+    this.update();
+    File descriptor = DictionarySnapshot.getLookupDescriptor(this.snapshotDirectory);
+    Files.write("not rewritten", descriptor, Charsets.UTF_8);
+
+    // opening the database rewrites its properties, adds a log, and rewrites the script on shutdown
+    this.execute("SELECT * FROM umls_ms");
+    assertTrue(new File(this.databaseDirectory, "umls.log").exists());
+    this.update();
+    this.execute("SHUTDOWN");
+    this.update();
+    assertEquals("not rewritten", Files.toString(descriptor, Charsets.UTF_8));
+
+    // but changing the data rewrites the snapshot
+    this.execute("INSERT INTO umls_ms VALUES ('aspirin', 'C0004057', 'T121', 'aspirin')");
+    this.execute("SHUTDOWN");
+    this.update();
+    assertTrue(Files.toString(descriptor, Charsets.UTF_8).contains("luceneImpl"));
+    File indexDirectory = DictionarySnapshot.getIndexDirectory(
+        this.snapshotDirectory,
+        "DICT_UMLS_MS");
+    assertEquals(this.selectRows("aspirin"), selectDocuments(indexDirectory, "aspirin"));
+    assertEquals(1, selectDocuments(indexDirectory, "aspirin").size());
+  }
+
+  private List<String> update() throws Exception {
+    return DictionarySnapshot.update(
+        "org.hsqldb.jdbcDriver",
+        this.url,
+        this.databaseDirectory,
+        this.lookupDescriptor,
+        this.snapshotDirectory);
+  }
+
+  /**
+   * The meta fields of the rows that the JDBC dictionary would find, i.e. that
+   * <code>SELECT * FROM table WHERE lookupField = ?</code> returns.
+   */
+  private Multiset<List<String>> selectRows(String value) throws Exception {
+    Multiset<List<String>> rows = HashMultiset.create();
+    Connection connection = DriverManager.getConnection(this.url, "sa", "");
+    try {
+      PreparedStatement statement = connection.prepareStatement(
+          "SELECT * FROM umls_ms WHERE fword = ?");
+      statement.setString(1, value);
+      ResultSet resultSet = statement.executeQuery();
+      while (resultSet.next()) {
+        rows.add(Arrays.asList(
+            resultSet.getString("cui"),
+            resultSet.getString("tui"),
+            resultSet.getString("text")));
+      }
+      statement.close();
+    } finally {
+      connection.close();
+    }
+    return rows;
+  }
+
+  /**
+   * The meta fields of the documents that the Lucene dictionary would find, i.e. that a term query
+   * on the lookup field returns.
+   */
+  private static Multiset<List<String>> selectDocuments(File indexDirectory, String value)
+      throws Exception {
+    Multiset<List<String>> documents = HashMultiset.create();
+    IndexSearcher searcher = new IndexSearcher(FSDirectory.open(indexDirectory), true);
+    try {
+      TermQuery query = new TermQuery(new Term("fword", value));
+      for (ScoreDoc scoreDoc : searcher.search(query, 100).scoreDocs) {
+        Document document = searcher.doc(scoreDoc.doc);
+        documents.add(Arrays.asList(
+            document.get("cui"),
+            document.get("tui"),
+            document.get("text")));
+      }
+    } finally {
+      searcher.close();
+    }
+    return documents;
+  }
+
+  private void execute(String sql) throws Exception {
+    Connection connection = DriverManager.getConnection(this.url, "sa", "");
+    try {
+      Statement statement = connection.createStatement();
+      statement.execute(sql);
+      statement.close();
+    } finally {
+      connection.close();
+    }
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
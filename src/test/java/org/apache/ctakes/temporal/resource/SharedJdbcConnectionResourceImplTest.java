@@ -0,0 +1,165 @@
+package org.apache.ctakes.temporal.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.descriptor.ExternalResource;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.ExternalResourceFactory;
+
+import edu.mayo.bmi.uima.core.resource.JdbcConnectionResource;
+
+public class SharedJdbcConnectionResourceImplTest {
+
+  private Driver driver;
+
+  @Before
+  public void setUp() throws Exception {
+    this.driver = new TestDriver();
+    DriverManager.registerDriver(this.driver);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    DriverManager.deregisterDriver(this.driver);
+  }
+
+  @Test
+  public void testEachAggregateHasItsOwnConnection() throws Exception {
+    Connection connection1 = getConnection();
+    Connection connection2 = getConnection();
+    assertNotNull(connection1);
+    assertNotNull(connection2);
+    assertNotSame(connection1, connection2);
+  }
+
+  /**
+   * Create an engine (and so a new instance of the resource), and get the connection it was given.
+   */
+  private static Connection getConnection() throws Exception {
+    ConnectionRecorder.connections.clear();
+    AnalysisEngine engine = AnalysisEngineFactory.createPrimitive(AnalysisEngineFactory.createPrimitiveDescription(
+        ConnectionRecorder.class,
+        ConnectionRecorder.PARAM_CONNECTION,
+        ExternalResourceFactory.createExternalResourceDescription(
+            SharedJdbcConnectionResourceImpl.class,
+            "",
+            SharedJdbcConnectionResourceImpl.PARAM_DRIVER_CLASS_NAME,
+            TestDriver.class.getName(),
+            SharedJdbcConnectionResourceImpl.PARAM_URL,
+            TestDriver.URL)));
+    engine.destroy();
+    assertEquals(1, ConnectionRecorder.connections.size());
+    return ConnectionRecorder.connections.get(0);
+  }
+
+  /**
+   * Records the connection of its resource.
+   */
+  public static class ConnectionRecorder extends JCasAnnotator_ImplBase {
+
+    public static final List<Connection> connections = new ArrayList<Connection>();
+
+    public static final String PARAM_CONNECTION = "DbConnection";
+
+    @ExternalResource(key = PARAM_CONNECTION)
+    private JdbcConnectionResource connection;
+
+    @Override
+    public void initialize(UimaContext context) throws ResourceInitializationException {
+      super.initialize(context);
+      connections.add(this.connection.getConnection());
+    }
+
+    @Override
+    public void process(JCas jCas) {
+    }
+  }
+
+  /**
+   * Opens a new (do-nothing) connection for every request.
+   */
+  public static class TestDriver implements Driver {
+
+    public static final String URL = "jdbc:shared-resource-test:db";
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+      if (!this.acceptsURL(url)) {
+        return null;
+      }
+      return (Connection) Proxy.newProxyInstance(
+          Connection.class.getClassLoader(),
+          new Class<?>[] { Connection.class },
+          new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+              if (method.getName().equals("equals")) {
+                return proxy == args[0];
+              } else if (method.getName().equals("hashCode")) {
+                return System.identityHashCode(proxy);
+              } else if (method.getName().equals("toString")) {
+                return "connection@" + System.identityHashCode(proxy);
+              } else if (method.getReturnType() == boolean.class) {
+                return false;
+              } else if (method.getReturnType() == int.class) {
+                return 0;
+              }
+              return null;
+            }
+          });
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+      return URL.equals(url);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+      return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+      return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+      return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+      return false;
+    }
+
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+      throw new SQLFeatureNotSupportedException();
+    }
+  }
+}
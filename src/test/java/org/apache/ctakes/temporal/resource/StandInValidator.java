@@ -0,0 +1,13 @@
+package org.apache.ctakes.temporal.resource;
+
+/**
+ * A local stand-in for tests, which accepts any non-empty user and password without contacting
+ * any service.
+ */
+public class StandInValidator implements UmlsLicense.Validator {
+
+  @Override
+  public boolean isValid(String address, String vendor, String user, String password) {
+    return user != null && user.length() > 0 && password != null && password.length() > 0;
+  }
+}
@@ -0,0 +1,80 @@
+package org.apache.ctakes.temporal.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+public class UmlsLicenseTest {
+
+  private static final String VENDOR = "NLM-0000000000";
+
+  private File directory;
+
+  private File tokenFile;
+
+  @Before
+  public void setUp() {
+    this.directory = Files.createTempDir();
+    this.tokenFile = new File(this.directory, "umls.token");
+  }
+
+  @After
+  public void tearDown() {
+    this.tokenFile.delete();
+    this.directory.delete();
+  }
+
+  @Test
+  public void testTokenReplacesValidation() throws Exception {
+    CountingValidator validator = new CountingValidator();
+    assertTrue(this.isValid(validator, "user", "password"));
+    assertEquals(1, validator.calls);
+    assertTrue(this.tokenFile.exists());
+
+    // the token is accepted without asking the validator again
+    assertTrue(this.isValid(validator, "user", "password"));
+    assertEquals(1, validator.calls);
+
+    // but only for the same credentials
+    assertTrue(this.isValid(validator, "user", "another password"));
+    assertEquals(2, validator.calls);
+  }
+
+  @Test
+  public void testInvalidCredentials() throws Exception {
+    CountingValidator validator = new CountingValidator();
+    assertFalse(this.isValid(validator, "user", ""));
+    assertFalse(this.isValid(validator, "user", null));
+    assertFalse(this.tokenFile.exists());
+  }
+
+  private boolean isValid(UmlsLicense.Validator validator, String user, String password)
+      throws Exception {
+    return UmlsLicense.isValid(
+        validator,
+        UmlsLicense.UTS_ADDRESS,
+        VENDOR,
+        user,
+        password,
+        this.tokenFile);
+  }
+
+  private static class CountingValidator extends StandInValidator {
+
+    public int calls;
+
+    @Override
+    public boolean isValid(String address, String vendor, String user, String password) {
+      ++this.calls;
+      return super.isValid(address, vendor, user, password);
+    }
+  }
+}